@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import nu.nethome.home.impl.ActionModel;
+import nu.nethome.home.impl.AttributeModel;
+import nu.nethome.home.item.HomeItemAdapter;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Compares the ways of calling attribute getters and setters of a HomeItem: a direct call, plain
+ * Method.invoke, the bound methods of AttributeModel and ActionModel, and MethodHandle and
+ * LambdaMetafactory, which the server cannot use as long as it is built for Java 6.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessorBenchmark {
+
+    public static class Item extends HomeItemAdapter {
+        private String value = "Foo";
+
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"Item\" Category=\"Controls\" >"
+                    + "  <Attribute Name=\"Value\" Type=\"String\" Get=\"getValue\" Set=\"setValue\" />"
+                    + "  <Action Name=\"Run\" Method=\"run\" />"
+                    + "</HomeItem> ";
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public String run() {
+            return value;
+        }
+    }
+
+    private Item item;
+    private String[] values = {"Fie", "Fum"};
+    private int counter;
+    private Method getMethod;
+    private Method setMethod;
+    private AttributeModel attribute;
+    private ActionModel action;
+    private MethodHandle getHandle;
+    private MethodHandle setHandle;
+    private Function<Item, String> getLambda;
+    private BiConsumer<Item, String> setLambda;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void bind() throws Throwable {
+        item = new Item();
+        getMethod = Item.class.getMethod("getValue");
+        setMethod = Item.class.getMethod("setValue", String.class);
+        attribute = new AttributeModel("Value", "String", Item.class, "getValue", "setValue", null);
+        action = new ActionModel("Run", "run", Item.class);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        getHandle = lookup.unreflect(getMethod);
+        setHandle = lookup.unreflect(setMethod);
+        CallSite getSite = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class), getHandle, MethodType.methodType(String.class, Item.class));
+        getLambda = (Function<Item, String>) getSite.getTarget().invokeExact();
+        CallSite setSite = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class), setHandle,
+                MethodType.methodType(void.class, Item.class, String.class));
+        setLambda = (BiConsumer<Item, String>) setSite.getTarget().invokeExact();
+    }
+
+    private String nextValue() {
+        return values[counter++ & 1];
+    }
+
+    @Benchmark
+    public String getDirect() {
+        return item.getValue();
+    }
+
+    @Benchmark
+    public String getMethodInvoke() throws Exception {
+        return (String) getMethod.invoke(item, (Object[]) null);
+    }
+
+    @Benchmark
+    public String getAttributeModel() throws Exception {
+        return attribute.getValue(item);
+    }
+
+    @Benchmark
+    public String getMethodHandle() throws Throwable {
+        return (String) getHandle.invokeExact(item);
+    }
+
+    @Benchmark
+    public String getLambda() {
+        return getLambda.apply(item);
+    }
+
+    @Benchmark
+    public void setDirect() {
+        item.setValue(nextValue());
+    }
+
+    @Benchmark
+    public void setMethodInvoke() throws Exception {
+        setMethod.invoke(item, nextValue());
+    }
+
+    @Benchmark
+    public void setAttributeModel() throws Exception {
+        attribute.setValue(item, nextValue());
+    }
+
+    @Benchmark
+    public void setMethodHandle() throws Throwable {
+        setHandle.invokeExact(item, nextValue());
+    }
+
+    @Benchmark
+    public void setLambda() {
+        setLambda.accept(item, nextValue());
+    }
+
+    @Benchmark
+    public String callActionModel() throws Exception {
+        return action.call(item);
+    }
+}
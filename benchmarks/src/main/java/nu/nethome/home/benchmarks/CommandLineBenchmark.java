@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import nu.nethome.home.impl.CommandLineExecutor;
+import nu.nethome.home.impl.HomeServer;
+import nu.nethome.home.impl.MockHomeItem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures command port commands from parsing the command line to formatting the result
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandLineBenchmark {
+
+    private MockHomeItem item;
+    private CommandLineExecutor executor;
+
+    @Setup(Level.Trial)
+    public void createExecutor() {
+        HomeServer server = new HomeServer();
+        item = new MockHomeItem();
+        item.setName("Lamp");
+        item.setItemId(2);
+        server.registerInstance(item);
+        executor = new CommandLineExecutor(server, false);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearCalls() {
+        item.getCalledMethods().clear();
+    }
+
+    @Benchmark
+    public String get() {
+        return executor.executeCommandLine("get,Lamp,AttValueFoo");
+    }
+
+    @Benchmark
+    public String getAll() {
+        return executor.executeCommandLine("get,Lamp");
+    }
+
+    @Benchmark
+    public String set() {
+        return executor.executeCommandLine("set,Lamp,AttValueFoo,Fie");
+    }
+
+    @Benchmark
+    public String call() {
+        return executor.executeCommandLine("call,Lamp,ReturnFoo");
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import nu.nethome.home.impl.ItemDirectory;
+import nu.nethome.home.impl.MockHomeItem;
+import nu.nethome.home.item.HomeItem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up HomeItems in a directory of 5000 HomeItems from four threads at the same time,
+ * like when several web pages are served in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class DirectoryBenchmark {
+
+    public static final int ITEM_COUNT = 5000;
+    private static final long FIRST_ID = 1000;
+
+    private ItemDirectory directory;
+
+    @State(Scope.Thread)
+    public static class Lookup {
+        private int counter;
+
+        int next() {
+            counter = (counter + 1) % ITEM_COUNT;
+            return counter;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createDirectory() {
+        directory = new ItemDirectory();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            MockHomeItem item = new MockHomeItem();
+            item.setName("Item" + i);
+            item.setItemId(FIRST_ID + i);
+            directory.registerInstance(item);
+        }
+    }
+
+    @Benchmark
+    public HomeItem findByName(Lookup lookup) {
+        return directory.findInstance("Item" + lookup.next());
+    }
+
+    @Benchmark
+    public HomeItem findById(Lookup lookup) {
+        return directory.findInstance(Long.toString(FIRST_ID + lookup.next()));
+    }
+
+    @Benchmark
+    public HomeItem findMissing(Lookup lookup) {
+        return directory.findInstance("Missing" + lookup.next());
+    }
+
+    @Benchmark
+    public int listAll() {
+        return directory.listInstances("").size();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import nu.nethome.home.impl.InternalEvent;
+import nu.nethome.home.system.Event;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of creating Events the way protocol decoders do, and of reading them the way HomeItems do
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBenchmark {
+
+    private Event event;
+    private int counter;
+
+    @Setup
+    public void createEvent() {
+        event = createMessage(17);
+    }
+
+    private static Event createMessage(int temperature) {
+        Event result = new InternalEvent("UPM_Message");
+        result.setAttribute(Event.EVENT_VALUE_ATTRIBUTE, "");
+        result.setAttribute("Direction", "In");
+        result.setAttribute("UPM.HouseCode", 3);
+        result.setAttribute("UPM.DeviceCode", 2);
+        result.setAttribute("UPM.Primary", temperature);
+        result.setAttribute("UPM.Secondary", 45);
+        result.setAttribute("UPM.LowBattery", 0);
+        return result;
+    }
+
+    @Benchmark
+    public Event create() {
+        return createMessage(counter++);
+    }
+
+    @Benchmark
+    public void readAsReceiver(Blackhole blackhole) {
+        // This is what a typical sensor item does with each Event it is offered
+        blackhole.consume(event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE).equals("UPM_Message"));
+        blackhole.consume(event.getAttribute("Direction").equals("In"));
+        blackhole.consume(event.getAttributeInt("UPM.HouseCode"));
+        blackhole.consume(event.getAttributeInt("UPM.DeviceCode"));
+        blackhole.consume(event.getAttributeInt("UPM.Primary"));
+    }
+
+    @Benchmark
+    public void createAndRead(Blackhole blackhole) {
+        Event message = createMessage(counter++);
+        blackhole.consume(message.getAttributeInt("UPM.Primary"));
+        blackhole.consume(message.getAttributeFloat("UPM.Secondary"));
+    }
+
+    @Benchmark
+    public String toText() {
+        return event.toString();
+    }
+}
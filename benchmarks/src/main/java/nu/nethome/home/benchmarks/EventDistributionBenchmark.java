@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import nu.nethome.home.impl.HomeServer;
+import nu.nethome.home.impl.MockHomeItem;
+import nu.nethome.home.item.IllegalValueException;
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.FinalEventListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the whole path from HomeServer.send() until all HomeItems have received the Event and the
+ * FinalEventListeners have been called.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDistributionBenchmark {
+
+    public static final int EVENTS_PER_INVOCATION = 100;
+
+    @Param({"10", "100", "1000"})
+    public int itemCount;
+
+    private HomeServer server;
+    private final AtomicLong distributedEvents = new AtomicLong();
+    private long sentEvents;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IllegalValueException {
+        server = new HomeServer();
+        for (int i = 0; i < itemCount; i++) {
+            MockHomeItem item = new MockHomeItem();
+            item.setName("Item" + i);
+            item.setItemId(i + 2);
+            server.registerInstance(item);
+        }
+        server.registerFinalEventListener(new FinalEventListener() {
+            public void receiveFinalEvent(Event event, boolean isHandled) {
+                distributedEvents.incrementAndGet();
+            }
+        });
+        // Make send() wait instead of dropping Events when the queue is full
+        server.setNormalPriorityOverflow("Block");
+        server.activate(server);
+        sentEvents = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void sendAndDistribute() {
+        for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+            Event event = server.createEvent("Benchmark_Message", "");
+            event.setAttribute("Benchmark.Value", i);
+            server.send(event);
+        }
+        sentEvents += EVENTS_PER_INVOCATION;
+        while (distributedEvents.get() < sentEvents) {
+            LockSupport.parkNanos(1000);
+        }
+    }
+}
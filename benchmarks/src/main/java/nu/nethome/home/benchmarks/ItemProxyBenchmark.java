@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import nu.nethome.home.impl.HomeServer;
+import nu.nethome.home.impl.LocalHomeItemProxy;
+import nu.nethome.home.impl.MockHomeItem;
+import nu.nethome.home.impl.ModelException;
+import nu.nethome.home.item.ExecutionFailure;
+import nu.nethome.home.item.HomeItemProxy;
+import nu.nethome.home.item.IllegalValueException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures attribute access and action calls through LocalHomeItemProxy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemProxyBenchmark {
+
+    private MockHomeItem item;
+    private HomeItemProxy proxy;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void createProxy() throws ModelException {
+        item = new MockHomeItem();
+        item.setName("Item");
+        proxy = new LocalHomeItemProxy(item, new HomeServer());
+    }
+
+    @Setup(Level.Iteration)
+    public void clearCalls() {
+        // MockHomeItem remembers every call
+        item.getCalledMethods().clear();
+    }
+
+    @Benchmark
+    public String getAttribute() {
+        return proxy.getAttributeValue("AttValueFoo");
+    }
+
+    @Benchmark
+    public boolean setAttribute() throws IllegalValueException {
+        return proxy.setAttributeValue("AttValueFoo", (counter++ & 1) == 0 ? "Fie" : "Fum");
+    }
+
+    @Benchmark
+    public String callAction() throws ExecutionFailure {
+        return proxy.callAction("ReturnFoo");
+    }
+
+    @Benchmark
+    public Object getAllAttributes() {
+        return proxy.getAttributeValues();
+    }
+}
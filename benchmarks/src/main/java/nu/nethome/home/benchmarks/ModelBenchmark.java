@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.benchmarks;
+
+import com.sun.org.apache.xerces.internal.parsers.DOMParser;
+import nu.nethome.home.impl.StaticHomeItemModel;
+import nu.nethome.home.item.HomeItemAdapter;
+import nu.nethome.home.item.MorphingItem;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the models of a generated configuration of 5000 HomeItems from an empty cache, as
+ * is done when the server starts. The items are MorphingItems, so each of them gets its own model. With
+ * distinctModels the model of each item differs, like when items list their own ports, otherwise all
+ * items have the same model. domParse measures only the DOM parsing the models were built from before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ModelBenchmark {
+
+    public static final int ITEM_COUNT = 5000;
+
+    public static class Item extends HomeItemAdapter implements MorphingItem {
+        private final String model;
+        private String value = "Foo";
+
+        public Item(String model) {
+            this.model = model;
+        }
+
+        public long getModelVersion() {
+            return 0;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public String run() {
+            return value;
+        }
+    }
+
+    @Param({"false", "true"})
+    public boolean distinctModels;
+
+    private List<Item> items;
+
+    @Setup(Level.Trial)
+    public void createConfiguration() {
+        items = new ArrayList<Item>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(new Item(createModel(distinctModels ? "/dev/ttyUSB" + i : "/dev/ttyUSB0")));
+        }
+    }
+
+    private static String createModel(String port) {
+        StringBuilder model = new StringBuilder("<?xml version = \"1.0\"?> \n"
+                + "<HomeItem Class=\"Item\" Category=\"Hardware\" StartOrder=\"2\" Morphing=\"true\" >");
+        for (int i = 0; i < 8; i++) {
+            model.append("  <Attribute Name=\"Value").append(i)
+                    .append("\" Type=\"String\" Get=\"getValue\" Set=\"setValue\" />");
+        }
+        model.append("  <Attribute Name=\"Port\" Type=\"StringList\" Get=\"getValue\" Set=\"setValue\" >")
+                .append("<item>").append(port).append("</item><item>/dev/ttyS0</item><item>/dev/ttyS1</item></Attribute>");
+        model.append("  <Action Name=\"Run\" Method=\"run\" Default=\"true\" />")
+                .append("  <Action Name=\"Reconnect\" Method=\"run\" />")
+                .append("</HomeItem> ");
+        return model.toString();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        StaticHomeItemModel.clearCache();
+    }
+
+    @Benchmark
+    public int buildModels() throws Exception {
+        int attributes = 0;
+        for (Item item : items) {
+            attributes += StaticHomeItemModel.getModel(item).getAttributes().size();
+        }
+        return attributes;
+    }
+
+    @Benchmark
+    public int domParse() throws Exception {
+        int elements = 0;
+        for (Item item : items) {
+            DOMParser parser = new DOMParser();
+            parser.parse(new InputSource(new ByteArrayInputStream(item.getModel().getBytes("UTF-8"))));
+            Document document = parser.getDocument();
+            elements += document.getDocumentElement().getChildNodes().getLength();
+        }
+        return elements;
+    }
+}
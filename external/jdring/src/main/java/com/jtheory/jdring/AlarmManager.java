@@ -199,6 +199,20 @@ public class AlarmManager {
         waiter = new AlarmWaiter(this, isDaemon, threadName);
     }
     
+    /**
+     * Creates a new AlarmManager with the specified queue and waiter.
+     * Subclasses which implement an engine of their own pass null for both
+     * and override all the methods which access them.
+     *
+     * @param queue the sorted queue of AlarmEntry, or null
+     * @param waiter the waiter thread, or null
+     * @see com.jtheory.jdring.TimingWheelAlarmManager
+     */
+    protected AlarmManager(SortedSet queue, AlarmWaiter waiter) {
+        this.queue = queue;
+        this.waiter = waiter;
+    }
+    
     /**
      * Creates a new AlarmManager. The waiter thread will be started
      * only when the first alarm listener will be added. The waiter
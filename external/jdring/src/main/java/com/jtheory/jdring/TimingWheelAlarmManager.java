@@ -0,0 +1,470 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jtheory.jdring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An AlarmManager which keeps the alarms in a hierarchical timing wheel
+ * instead of a sorted queue, so adding and removing an alarm takes the same
+ * time regardless of the number of alarms. The wheel has five levels of 64
+ * slots each, where the first level has a resolution of TICK_MS and each
+ * following level a 64 times coarser one. Alarms further away than the top
+ * level can hold are kept in an overflow list which is checked each time the
+ * top level turns. Alarms are moved to a finer level when their slot is
+ * reached, so each alarm is moved at most five times before it rings.<p>
+ *
+ * All alarms are rung on a fixed number of ringer threads, so a slow
+ * listener does not delay other alarms unless all ringer threads are busy.
+ * Since all alarms are rung in a thread of their own, the setting of
+ * <code>AlarmEntry.setRingInNewThead()</code> has no effect. If an alarm is
+ * still ringing when it is due again, that ring is skipped.<p>
+ *
+ * Alarms are identified by identity, so <code>removeAlarm()</code> and
+ * <code>containsAlarm()</code> must be called with the AlarmEntry returned
+ * when the alarm was added.<p>
+ *
+ * The manager keeps statistics of how late the alarms are rung, measured
+ * from the alarm time to when the listener is called.
+ *
+ * @see com.jtheory.jdring.AlarmManager
+ */
+public class TimingWheelAlarmManager extends AlarmManager {
+
+    public static final long TICK_MS = 100;
+    public static final int DEFAULT_RINGER_COUNT = 2;
+    /** An alarm rung more than this many ms after its alarm time is counted as late */
+    public static final long LATE_LIMIT_MS = 1000;
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 5;
+    /** If the clock jumps more than this, the wheel is rebuilt instead of turned tick by tick */
+    private static final long MAX_CATCH_UP_TICKS = WHEEL_SIZE * WHEEL_SIZE;
+
+    private final Node[][] wheels = new Node[LEVELS][WHEEL_SIZE];
+    private final Node overflow = new Node(null);
+    private final Map<AlarmEntry, Node> alarms = new IdentityHashMap<AlarmEntry, Node>();
+    private final ExecutorService ringers;
+    private final Thread ticker;
+    private volatile long currentTick;
+    private volatile boolean stopped = false;
+
+    private final AtomicLong ringCount = new AtomicLong();
+    private final AtomicLong lateRingCount = new AtomicLong();
+    private final AtomicLong skippedRingCount = new AtomicLong();
+    private final AtomicLong totalLateness = new AtomicLong();
+    private final AtomicLong maxLateness = new AtomicLong();
+
+    /**
+     * Creates a new TimingWheelAlarmManager and starts its threads.
+     *
+     * @param isDaemon true if the threads should run as daemons.
+     * @param threadName the name of the ticker thread, the ringer
+     * threads are named threadName-1, threadName-2 and so on.
+     * @param ringerCount number of threads ringing alarms
+     */
+    public TimingWheelAlarmManager(final boolean isDaemon, final String threadName, int ringerCount) {
+        this(isDaemon, threadName, ringerCount, true);
+    }
+
+    /**
+     * Creates a new TimingWheelAlarmManager, optionally without the ticker
+     * thread. Without it the wheel is only turned by calls to advanceTo(),
+     * which lets tests control the time.
+     */
+    TimingWheelAlarmManager(final boolean isDaemon, final String threadName, int ringerCount, boolean startTicker) {
+        super(null, null);
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new Node(null);
+            }
+        }
+        currentTick = now();
+        ringers = new ThreadPoolExecutor(ringerCount, ringerCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName + "-" + threadNumber.getAndIncrement());
+                thread.setDaemon(isDaemon);
+                return thread;
+            }
+        });
+        ticker = new Thread(threadName) {
+            @Override
+            public void run() {
+                tickerTask();
+            }
+        };
+        ticker.setDaemon(isDaemon);
+        if (startTicker) {
+            ticker.start();
+        }
+    }
+
+    /**
+     * Creates a new TimingWheelAlarmManager with DEFAULT_RINGER_COUNT ringer
+     * threads. The threads will <i>not</i> run as daemons.
+     */
+    public TimingWheelAlarmManager() {
+        this(false, "AlarmManager", DEFAULT_RINGER_COUNT);
+    }
+
+    /**
+     * Adds an alarm for a specified AlarmEntry. An alarm time which has
+     * already passed rings at the next tick.
+     *
+     * @param _entry the AlarmEntry.
+     */
+    public synchronized void addAlarm(AlarmEntry _entry) throws PastDateException {
+        if (stopped) {
+            return;
+        }
+        if (alarms.isEmpty()) {
+            // The ticker has been idle, so start counting from now
+            currentTick = now();
+        }
+        Node node = alarms.get(_entry);
+        if (node == null) {
+            node = new Node(_entry);
+            alarms.put(_entry, node);
+        } else {
+            node.unlink();
+        }
+        node.deadlineTick = deadlineTick(_entry.alarmTime);
+        insert(node);
+        notifyAll();
+    }
+
+    /**
+     * Removes the specified AlarmEntry.
+     *
+     * @param _entry the AlarmEntry that needs to be removed.
+     * @return <code>true</code> if the alarm was found, <code>false</code> otherwise.
+     */
+    public synchronized boolean removeAlarm(AlarmEntry _entry) {
+        Node node = alarms.remove(_entry);
+        if (node == null) {
+            return false;
+        }
+        node.unlink();
+        return true;
+    }
+
+    public synchronized void removeAllAlarms() {
+        for (Node node : alarms.values()) {
+            node.unlink();
+        }
+        alarms.clear();
+    }
+
+    public synchronized void removeAllAlarmsAndStop() {
+        removeAllAlarms();
+        stopped = true;
+        ringers.shutdown();
+        notifyAll();
+        ticker.interrupt();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public synchronized boolean containsAlarm(AlarmEntry _alarmEntry) {
+        return alarms.containsKey(_alarmEntry);
+    }
+
+    /**
+     * Returns a copy of all alarms in the manager, sorted by alarm time.
+     */
+    public synchronized List getAllAlarms() {
+        List<AlarmEntry> result = new ArrayList<AlarmEntry>(alarms.keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Alarms are rung by the ticker thread of this manager, so this does nothing.
+     */
+    protected void ringNextAlarm() {
+    }
+
+    public void finalize() {
+        if (!stopped) {
+            removeAllAlarmsAndStop();
+        }
+    }
+
+    /**
+     * @return number of alarms in the manager
+     */
+    public synchronized int getAlarmCount() {
+        return alarms.size();
+    }
+
+    /**
+     * @return number of times a listener has been called
+     */
+    public long getRingCount() {
+        return ringCount.get();
+    }
+
+    /**
+     * @return number of rings which were more than LATE_LIMIT_MS late
+     */
+    public long getLateRingCount() {
+        return lateRingCount.get();
+    }
+
+    /**
+     * @return number of rings skipped because the alarm was still ringing
+     */
+    public long getSkippedRingCount() {
+        return skippedRingCount.get();
+    }
+
+    /**
+     * @return the largest time in ms from alarm time until the listener was called
+     */
+    public long getMaxLateness() {
+        return maxLateness.get();
+    }
+
+    /**
+     * @return the average time in ms from alarm time until the listener was called
+     */
+    public double getAverageLateness() {
+        long count = ringCount.get();
+        return count == 0 ? 0 : totalLateness.get() / (double) count;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / TICK_MS;
+    }
+
+    /**
+     * Rounded up, so an alarm is never rung before its time
+     */
+    private static long deadlineTick(long alarmTime) {
+        return (alarmTime + TICK_MS - 1) / TICK_MS;
+    }
+
+    /**
+     * Put the node in the slot which is reached when the alarm is due or when
+     * the node has to be moved to a finer level, whichever comes first.
+     */
+    private void insert(Node node) {
+        long nextTick = currentTick + 1;
+        long delta = node.deadlineTick - nextTick;
+        if (delta <= 0) {
+            wheels[0][(int) (nextTick & WHEEL_MASK)].add(node);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (WHEEL_BITS * (level + 1))) {
+                wheels[level][(int) ((node.deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(node);
+                return;
+            }
+        }
+        overflow.add(node);
+    }
+
+    private void tickerTask() {
+        while (!stopped) {
+            try {
+                synchronized (this) {
+                    while (alarms.isEmpty() && !stopped) {
+                        wait();
+                    }
+                }
+                long sleepTime = (currentTick + 1) * TICK_MS - System.currentTimeMillis();
+                if (sleepTime > 0) {
+                    Thread.sleep(sleepTime);
+                }
+                advanceTo(now());
+            } catch (InterruptedException e) {
+                // Checks for stop
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the last tick the wheel has been turned to
+     */
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Turn the wheel to a tick and ring the alarms which are due
+     */
+    synchronized void advanceTo(long nowTick) {
+        if (nowTick < currentTick || nowTick - currentTick > MAX_CATCH_UP_TICKS) {
+            rebuild(nowTick);
+        }
+        while (currentTick < nowTick) {
+            tick(currentTick + 1);
+        }
+    }
+
+    /**
+     * Re insert all alarms relative to a new time, used when the clock has jumped
+     */
+    private void rebuild(long nowTick) {
+        currentTick = nowTick - 1;
+        for (Node node : alarms.values()) {
+            node.unlink();
+            insert(node);
+        }
+    }
+
+    private void tick(long tick) {
+        long ticksIntoTopLevel = tick & ((1L << (WHEEL_BITS * (LEVELS - 1))) - 1);
+        if (ticksIntoTopLevel == 0) {
+            cascade(overflow);
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                cascade(wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)]);
+            }
+        }
+        // The tick is current before the slot is drained, so repeating alarms
+        // which are due again are inserted at the next tick and not in this slot
+        currentTick = tick;
+        Node slot = wheels[0][(int) (tick & WHEEL_MASK)];
+        Node node = slot.next;
+        slot.clear();
+        while (node != slot) {
+            Node next = node.next;
+            node.prev = node.next = null;
+            if (node.deadlineTick <= tick) {
+                ring(node);
+            } else {
+                insert(node);
+            }
+            node = next;
+        }
+    }
+
+    private void cascade(Node slot) {
+        Node node = slot.next;
+        slot.clear();
+        while (node != slot) {
+            Node next = node.next;
+            node.prev = node.next = null;
+            insert(node);
+            node = next;
+        }
+    }
+
+    private void ring(final Node node) {
+        final AlarmEntry entry = node.entry;
+        final long alarmTime = entry.alarmTime;
+        alarms.remove(entry);
+        if (node.isRinging) {
+            skippedRingCount.incrementAndGet();
+        } else {
+            node.isRinging = true;
+            ringers.execute(new Runnable() {
+                public void run() {
+                    try {
+                        updateLateness(System.currentTimeMillis() - alarmTime);
+                        entry.ringAlarm();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        node.isRinging = false;
+                    }
+                }
+            });
+        }
+        if (entry.isRepeating) {
+            entry.updateAlarmTime();
+            node.deadlineTick = deadlineTick(entry.alarmTime);
+            alarms.put(entry, node);
+            insert(node);
+        }
+    }
+
+    private void updateLateness(long lateness) {
+        ringCount.incrementAndGet();
+        totalLateness.addAndGet(lateness);
+        if (lateness > LATE_LIMIT_MS) {
+            lateRingCount.incrementAndGet();
+        }
+        long currentMax = maxLateness.get();
+        while (lateness > currentMax && !maxLateness.compareAndSet(currentMax, lateness)) {
+            currentMax = maxLateness.get();
+        }
+    }
+
+    /**
+     * An alarm in a doubly linked list of a slot. The list head of each slot
+     * is a Node without an entry.
+     */
+    private static class Node {
+        final AlarmEntry entry;
+        long deadlineTick;
+        Node prev;
+        Node next;
+        volatile boolean isRinging;
+
+        Node(AlarmEntry entry) {
+            this.entry = entry;
+            if (entry == null) {
+                prev = next = this;
+            }
+        }
+
+        void add(Node node) {
+            node.prev = prev;
+            node.next = this;
+            prev.next = node;
+            prev = node;
+        }
+
+        void unlink() {
+            if (prev != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = next = null;
+            }
+        }
+
+        void clear() {
+            prev = next = this;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jtheory.jdring;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The wheel is turned by the test with advanceTo(), so no ticker thread is
+ * running. An alarm which is rung is removed from the manager at once, while
+ * the listener is called later by a ringer thread.
+ */
+public class TimingWheelAlarmManagerTest {
+
+    private static final long WHEEL_SIZE = 64;
+    private static final long MAX_STEP = WHEEL_SIZE * WHEEL_SIZE;
+
+    private TimingWheelAlarmManager manager;
+    private AlarmListener listener;
+    private AtomicInteger ringCount;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new TimingWheelAlarmManager(true, "TestAlarmManager", 1, false);
+        ringCount = new AtomicInteger();
+        listener = new AlarmListener() {
+            public void handleAlarm(AlarmEntry entry) {
+                ringCount.incrementAndGet();
+            }
+        };
+        // Keeps the manager from restarting the time from the clock when an alarm is added
+        manager.addAlarm(alarmAt(Long.MAX_VALUE / TimingWheelAlarmManager.TICK_MS / 2));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.removeAllAlarmsAndStop();
+    }
+
+    private AlarmEntry alarmAt(long tick) throws PastDateException {
+        AlarmEntry entry = new AlarmEntry(new Date(System.currentTimeMillis() + 60000), listener);
+        entry.alarmTime = tick * TimingWheelAlarmManager.TICK_MS;
+        return entry;
+    }
+
+    /**
+     * Turn the wheel one tick at a time, so the alarms are moved between the levels
+     */
+    private void stepTo(long tick) {
+        while (manager.getCurrentTick() < tick) {
+            manager.advanceTo(Math.min(tick, manager.getCurrentTick() + MAX_STEP));
+        }
+    }
+
+    private void assertRingsAfter(long delta) throws Exception {
+        long deadline = manager.getCurrentTick() + delta;
+        AlarmEntry entry = alarmAt(deadline);
+        manager.addAlarm(entry);
+
+        stepTo(deadline - 1);
+        assertThat("Rung early, delta " + delta, manager.containsAlarm(entry), is(true));
+        stepTo(deadline);
+        assertThat("Not rung, delta " + delta, manager.containsAlarm(entry), is(false));
+    }
+
+    @Test
+    public void ringsListener() throws Exception {
+        final CountDownLatch rung = new CountDownLatch(1);
+        AlarmEntry entry = new AlarmEntry(new Date(System.currentTimeMillis() + 60000), new AlarmListener() {
+            public void handleAlarm(AlarmEntry entry) {
+                rung.countDown();
+            }
+        });
+        entry.alarmTime = (manager.getCurrentTick() + 5) * TimingWheelAlarmManager.TICK_MS;
+        manager.addAlarm(entry);
+
+        stepTo(manager.getCurrentTick() + 5);
+
+        assertThat(rung.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(manager.getRingCount(), is(1L));
+    }
+
+    @Test
+    public void ringsAtLevelBoundaries() throws Exception {
+        long[] boundaries = {WHEEL_SIZE, WHEEL_SIZE * WHEEL_SIZE, WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE};
+        assertRingsAfter(1);
+        for (long boundary : boundaries) {
+            assertRingsAfter(boundary - 2);
+            assertRingsAfter(boundary - 1);
+            assertRingsAfter(boundary);
+            assertRingsAfter(boundary + 1);
+        }
+    }
+
+    @Test
+    public void ringsAtTopLevelBoundary() throws Exception {
+        long boundary = WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE;
+        assertRingsAfter(boundary - 1);
+        assertRingsAfter(boundary);
+    }
+
+    @Test
+    public void keepsAlarmsBeyondTopLevelInOverflow() throws Exception {
+        long topLevelTurn = WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE;
+        long wheelSpan = topLevelTurn * WHEEL_SIZE;
+        // Start just before the top level turns, so the overflow is checked
+        long start = (manager.getCurrentTick() / topLevelTurn + 2) * topLevelTurn - 10;
+        manager.advanceTo(start);
+        long deadline = start + wheelSpan + 100;
+        AlarmEntry entry = alarmAt(deadline);
+        manager.addAlarm(entry);
+
+        stepTo(start + 20);
+        assertThat(manager.containsAlarm(entry), is(true));
+        // Jumps further than MAX_STEP rebuild the wheel, as when the clock is changed
+        manager.advanceTo(deadline - 1);
+        assertThat(manager.containsAlarm(entry), is(true));
+        manager.advanceTo(deadline);
+        assertThat(manager.containsAlarm(entry), is(false));
+    }
+
+    @Test
+    public void removedAlarmIsNotRung() throws Exception {
+        long deadline = manager.getCurrentTick() + 100;
+        AlarmEntry entry = alarmAt(deadline);
+        manager.addAlarm(entry);
+
+        assertThat(manager.removeAlarm(entry), is(true));
+        assertThat(manager.removeAlarm(entry), is(false));
+        stepTo(deadline + 1);
+        // Alarms are rung in order by the single ringer thread, so the removed alarm would have been rung first
+        final CountDownLatch rung = new CountDownLatch(1);
+        AlarmEntry other = new AlarmEntry(new Date(System.currentTimeMillis() + 60000), new AlarmListener() {
+            public void handleAlarm(AlarmEntry entry) {
+                rung.countDown();
+            }
+        });
+        other.alarmTime = (manager.getCurrentTick() + 1) * TimingWheelAlarmManager.TICK_MS;
+        manager.addAlarm(other);
+        stepTo(manager.getCurrentTick() + 1);
+
+        assertThat(rung.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(ringCount.get(), is(0));
+        assertThat(manager.getAlarmCount(), is(1));
+    }
+
+    @Test
+    public void readdedAlarmRingsAtNewTime() throws Exception {
+        long start = manager.getCurrentTick();
+        AlarmEntry entry = alarmAt(start + 5000);
+        manager.addAlarm(entry);
+        manager.removeAlarm(entry);
+        entry.alarmTime = (start + 70) * TimingWheelAlarmManager.TICK_MS;
+        manager.addAlarm(entry);
+        // Adding it again moves it without removing it first
+        entry.alarmTime = (start + 80) * TimingWheelAlarmManager.TICK_MS;
+        manager.addAlarm(entry);
+
+        stepTo(start + 79);
+        assertThat(manager.containsAlarm(entry), is(true));
+        stepTo(start + 80);
+        assertThat(manager.containsAlarm(entry), is(false));
+        assertThat(manager.getAlarmCount(), is(1));
+    }
+
+    @Test
+    public void ringsRepeatingAlarmAgain() throws Exception {
+        final long start = manager.getCurrentTick();
+        final AtomicInteger updates = new AtomicInteger();
+        AlarmEntry entry = new AlarmEntry(new Date(System.currentTimeMillis() + 60000), listener) {
+            @Override
+            public void updateAlarmTime() {
+                alarmTime += 200 * TimingWheelAlarmManager.TICK_MS;
+                updates.incrementAndGet();
+            }
+        };
+        entry.isRepeating = true;
+        entry.alarmTime = (start + 200) * TimingWheelAlarmManager.TICK_MS;
+        manager.addAlarm(entry);
+
+        stepTo(start + 599);
+        assertThat(updates.get(), is(2));
+        stepTo(start + 600);
+        assertThat(updates.get(), is(3));
+        assertThat(manager.containsAlarm(entry), is(true));
+    }
+
+    @Test
+    public void ringsRepeatingAlarmWhichIsDueAgainAtNextTick() throws Exception {
+        final long start = manager.getCurrentTick();
+        final AtomicInteger updates = new AtomicInteger();
+        AlarmEntry entry = new AlarmEntry(new Date(System.currentTimeMillis() + 60000), listener) {
+            @Override
+            public void updateAlarmTime() {
+                // The next alarm time has already passed
+                updates.incrementAndGet();
+            }
+        };
+        entry.isRepeating = true;
+        entry.alarmTime = (start + 10) * TimingWheelAlarmManager.TICK_MS;
+        manager.addAlarm(entry);
+
+        stepTo(start + 10);
+        assertThat(updates.get(), is(1));
+        stepTo(start + 11);
+        assertThat(updates.get(), is(2));
+        stepTo(start + 12);
+        assertThat(updates.get(), is(3));
+    }
+
+    @Test
+    public void ringsAtRightTimeAfterClockIsSetBack() throws Exception {
+        long start = manager.getCurrentTick();
+        AlarmEntry entry = alarmAt(start + 100);
+        manager.addAlarm(entry);
+
+        manager.advanceTo(start - 100000);
+        assertThat(manager.containsAlarm(entry), is(true));
+        stepTo(start + 99);
+        assertThat(manager.containsAlarm(entry), is(true));
+        stepTo(start + 100);
+        assertThat(manager.containsAlarm(entry), is(false));
+    }
+
+    @Test
+    public void ringsPassedAlarmsWhenClockIsSetForward() throws Exception {
+        long start = manager.getCurrentTick();
+        AlarmEntry passed = alarmAt(start + 100);
+        AlarmEntry later = alarmAt(start + 200000);
+        manager.addAlarm(passed);
+        manager.addAlarm(later);
+
+        manager.advanceTo(start + 100000);
+
+        assertThat(manager.containsAlarm(passed), is(false));
+        assertThat(manager.containsAlarm(later), is(true));
+        stepTo(start + 199999);
+        assertThat(manager.containsAlarm(later), is(true));
+        stepTo(start + 200000);
+        assertThat(manager.containsAlarm(later), is(false));
+    }
+}
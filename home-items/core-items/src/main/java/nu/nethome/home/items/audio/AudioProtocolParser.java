@@ -23,7 +23,11 @@ import nu.nethome.coders.decoders.*;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.MorphingItem;
 import nu.nethome.home.system.Event;
+import nu.nethome.home.system.ScheduledTask;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
 import nu.nethome.util.plugin.Plugin;
 import nu.nethome.util.ps.FieldValue;
 import nu.nethome.util.ps.ProtocolDecoder;
@@ -35,10 +39,10 @@ import nu.nethome.util.ps.impl.ProtocolDecoderGroup;
 import nu.nethome.util.ps.impl.SimpleFlankDetector;
 
 import javax.sound.sampled.Mixer.Info;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.StringTokenizer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -49,7 +53,7 @@ import java.util.logging.Logger;
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType("Hardware")
-public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, ProtocolDecoderSink {
+public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, ProtocolDecoderSink, MorphingItem {
 
     private final static String MODEL_1 = ("<?xml version = \"1.0\"?> \n"
             + "<HomeItem Class=\"AudioProtocolParser\"  Category=\"Hardware\" Morphing=\"true\" >"
@@ -74,19 +78,20 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
             + "  <Attribute Name=\"Received\" Type=\"String\" Get=\"getReceived\"  />"
             + "  <Attribute Name=\"Sent\" Type=\"String\" Get=\"getSent\"  />"
             + "  <Attribute Name=\"ActiveSource\" Type=\"String\" Get=\"getActiveSource\" />"
+            + "  <Attribute Name=\"Reconnects\" Type=\"String\" Get=\"getReconnects\" />"
             + "</HomeItem> ");
 
     private static final long RESTART_INTERVAL = 1000 * 60 * 60 * 1; // 1 hour
-    private static final long REACTIVATE_INTERVAL = 1000 * 9; // 9 seconds
 
     private static Logger logger = Logger.getLogger(AudioProtocolParser.class.getName());
-    private Timer restartTimer = new Timer("AudioProtocolParserRestarter");
-    private Timer reactivateTimer = new Timer("AudioProtocolParserReactivator");
+    private final AtomicLong modelVersion = new AtomicLong();
+    private ScheduledTask restartTask;
+    private SupervisedConnection connection;
     private AudioProtocolPort audioSampler;
     private SimpleFlankDetector flankDetector;
     private ProtocolDecoderGroup decoders = new ProtocolDecoderGroup();
     private FIRFilter6000 filter;
-    private boolean isActive = false;
+    private volatile boolean isActive = false;
 
 
     // Public attributes
@@ -96,7 +101,10 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
     private String sourceName = "";
     private int sent;
     private int maxRepeats = 0;
-    private boolean lostConnection = false;
+
+    public long getModelVersion() {
+        return modelVersion.get();
+    }
 
     public String getModel() {
         StringBuilder result = new StringBuilder(MODEL_1);
@@ -122,62 +130,52 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
      * Activate the instance
      */
     public void activate() {
+        isActive = true;
 
-        // Start the Sampler.
-        audioSampler.open();
+        // Start the Sampler. The connection supervisor checks the sampler on regular intervals and restarts
+        // it if needed, for example if a USB sound card is disconnected and then reconnected.
+        connection = server.getConnectionSupervisor().supervise(name, new SupervisedDevice() {
+            public void open() throws Exception {
+                openAudioSampler();
+            }
+
+            public void close() {
+                audioSampler.close();
+            }
+
+            public boolean isHealthy() {
+                return audioSampler.isOpen() && audioSampler.isActive();
+            }
+        });
 
         // Start the restart timer. On the Windows platform it seems that after a while
         // some kind of delay of the input signal is inserted. The only way I have found
         // to handle this is to simply restart the sampler on even intervals as this seems
         // to remove the problem.
         if (System.getProperty("os.name").toUpperCase().contains("WINDOWS")) {
-            restartTimer.schedule(new TimerTask() {
-                @Override
+            restartTask = server.getScheduler().scheduleAtFixedRate(new Runnable() {
                 public void run() {
                     logger.fine("Cycling audio sampling");
-                    // Restart sampling
-                    cycleAudioSampler(true);
+                    connection.reconnect();
                 }
             }, getRestartInterval(), getRestartInterval());
         }
-
-        // Verify sampler connection on regular intervals and restart if needed.
-        reactivateTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                cycleAudioSampler(false);
-            }
-        }, getReactivateInterval(), getReactivateInterval());
-
-        isActive = true;
     }
 
     /**
-     * Restart the audio sampler if needed. On windows platform the sampling may deteriorate after a while
-     * and if the sound card is USB-based, it may be disconnected and then reconnected.
+     * Open the audio sampler. If a source name is specified, the source is looked up again since the order of
+     * sources may have shifted, if for example a USB sound card was temporarily removed
      *
-     * @param force If true, the sampler is ALLWAYS restarted
+     * @throws IOException if the sampler could not be opened
      */
-    protected synchronized void cycleAudioSampler(boolean force) {
-        if (force) {
-            // Restart sampling and by setting source name again. The order of
-            // sources may have shifted, if for example a USB sound card was temporarily removed
-            setSourceName(getSourceName());
-            // No force - check if the channel is open and active - if not try to reactivate
-        } else if (!audioSampler.isOpen() || !audioSampler.isActive()) {
-            // If it was previously open - log that connection was lost
-            if (!lostConnection) {
-                logger.warning("Restarting audio sampler - lost connection");
-                lostConnection = true;
-            }
-            // Restart sampling and by setting source name again.
-            setSourceName(getSourceName());
-            // If we succeeded in opening it, log this
-            if (audioSampler.isOpen() && audioSampler.isActive()) {
-                logger.info("Audio Sampler resumed connection");
-            }
+    private synchronized void openAudioSampler() throws IOException {
+        if (sourceName.length() > 0) {
+            setSourceName(sourceName);
         } else {
-            lostConnection = false;
+            audioSampler.open();
+        }
+        if (!audioSampler.isOpen() || !audioSampler.isActive()) {
+            throw new IOException("Could not open audio source " + sourceName);
         }
     }
 
@@ -190,23 +188,19 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
         return result;
     }
 
-    private long getReactivateInterval() {
-        long result = REACTIVATE_INTERVAL;
-        String intervalString = System.getProperty("nu.nethome.home.items.audio.AudioProtocolParser.ReactivateInterval");
-        if (intervalString != null) {
-            result = Long.parseLong(intervalString) * 1000; // Scale to seconds
-        }
-        return result;
-    }
-
     /**
      * HomeItem method which stops all object activity for program termination
      */
     public void stop() {
         isActive = false;
         // Stop the timer
-        restartTimer.cancel();
-        reactivateTimer.cancel();
+        if (restartTask != null) {
+            restartTask.cancel();
+        }
+        if (connection != null) {
+            connection.stop();
+            connection = null;
+        }
 
         // Stop the sampler
         if (audioSampler != null) {
@@ -346,6 +340,7 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
             audioSampler.close();
             audioSampler.open();
         }
+        modelVersion.incrementAndGet();
     }
 
     /**
@@ -500,6 +495,7 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
         if (isActive && foundSource) {
             audioSampler.open();
         }
+        modelVersion.incrementAndGet();
     }
 
     public String getSourceName() {
@@ -560,5 +556,9 @@ public class AudioProtocolParser extends HomeItemAdapter implements HomeItem, Pr
     public String getConnected() {
         return audioSampler.isOpen() ? "Connected" : "Not Connected";
     }
+
+    public String getReconnects() {
+        return connection != null ? Long.toString(connection.getReconnectCount()) : "0";
+    }
 }
 
@@ -24,7 +24,11 @@ import nu.nethome.coders.encoders.ShortBeepEncoder;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.MorphingItem;
 import nu.nethome.home.system.Event;
+import nu.nethome.home.system.ScheduledTask;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
 import nu.nethome.home.util.EncoderFactory;
 import nu.nethome.util.plugin.Plugin;
 import nu.nethome.util.ps.BadMessageException;
@@ -33,8 +37,8 @@ import nu.nethome.util.ps.ProtocolEncoder;
 import nu.nethome.util.ps.impl.AudioPulsePlayer;
 
 import javax.sound.sampled.Mixer.Info;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -47,7 +51,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType("Hardware")
-public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeItem {
+public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeItem, MorphingItem {
 
     private final String m_Model_1 = ("<?xml version = \"1.0\"?> \n"
             + "<HomeItem Class=\"AudioProtocolTransmitter\" Category=\"Hardware\" Morphing=\"true\" >"
@@ -60,10 +64,13 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
             + "  <Action Name=\"PlayTestBeep\"		Method=\"playTestBeep\" />"
             + "  <Attribute Name=\"TestBeepFrequency\" Type=\"String\" Get=\"getTestBeepFrequency\" 	Set=\"setTestBeepFrequency\" />"
             + "  <Attribute Name=\"State\" Type=\"String\" Get=\"getState\"  Default=\"true\" />"
+            + "  <Attribute Name=\"Reconnects\" Type=\"String\" Get=\"getReconnects\" />"
             + "</HomeItem> ");
 
     private static Logger logger = Logger.getLogger(AudioProtocolTransmitter.class.getName());
-    protected Timer m_Timer = new Timer("AudioProtocolTransmitterRestarter");
+    private final AtomicLong modelVersion = new AtomicLong();
+    protected ScheduledTask m_RestartTask;
+    private SupervisedConnection connection;
     protected static long RESTART_INTERVAL = 1000 * 60 * 60 * 6; // 6 hours
     private EncoderFactory factory;
 
@@ -101,6 +108,10 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
         return false;
     }
 
+    public long getModelVersion() {
+        return modelVersion.get();
+    }
+
     public String getModel() {
         StringBuilder result = new StringBuilder(m_Model_1);
         result.append("<item>");
@@ -119,25 +130,39 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
       * @see ssg.home.HomeItem#activate()
       */
     public void activate() {
-        m_PulsePlayer.openLine();
+        connection = server.getConnectionSupervisor().supervise(name, new SupervisedDevice() {
+            public void open() throws Exception {
+                m_PulsePlayer.openLine();
+                if (!m_PulsePlayer.isOpen()) {
+                    throw new IOException("Could not open audio target " + m_SourceName);
+                }
+            }
+
+            public void close() {
+                if (m_PulsePlayer.isOpen()) {
+                    m_PulsePlayer.closeLine();
+                }
+            }
+
+            public boolean isHealthy() {
+                return m_PulsePlayer.isOpen();
+            }
+        });
 
         // Start the restart timer. On the Windows platform it seems that after a while
         // the sending line stops to work. The only way I have found
         // to handle this is to simply restart the line on even intervals as this seems
         // to remove the problem.
         if (System.getProperty("os.name").toUpperCase().indexOf("WINDOWS") != -1) {
-            m_Timer.schedule(new TimerTask() {
-                        @Override
+            m_RestartTask = server.getScheduler().scheduleAtFixedRate(new Runnable() {
                         public void run() {
-                            if (m_PulsePlayer.isOpen()) {
-                                m_PulsePlayer.closeLine();
-                                m_PulsePlayer.openLine();
-                            }
+                            connection.reconnect();
                             logger.fine("Restarting audio sampling");
                         }
                     }, RESTART_INTERVAL, RESTART_INTERVAL);
         }
         factory.addEncoderTypes(server.getPluginProvider().getPluginsForInterface(ProtocolEncoder.class));
+        modelVersion.incrementAndGet();
     }
 
     /**
@@ -145,11 +170,14 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
      */
     public void stop() {
         // Stop the timer
-        m_Timer.cancel();
+        if (m_RestartTask != null) {
+            m_RestartTask.cancel();
+        }
 
         // Stop the sampler
-        if (m_PulsePlayer.isOpen()) {
-            m_PulsePlayer.closeLine();
+        if (connection != null) {
+            connection.stop();
+            connection = null;
         }
     }
 
@@ -180,6 +208,7 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
             m_PulsePlayer.closeLine();
             m_PulsePlayer.openLine();
         }
+        modelVersion.incrementAndGet();
     }
 
     /**
@@ -207,6 +236,7 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
             m_PulsePlayer.closeLine();
             m_PulsePlayer.openLine();
         }
+        modelVersion.incrementAndGet();
     }
 
     public String getSourceName() {
@@ -296,4 +326,8 @@ public class AudioProtocolTransmitter extends HomeItemAdapter implements HomeIte
     public String getState() {
         return m_PulsePlayer.isOpen() ? "Connected" : "Not Connected";
     }
+
+    public String getReconnects() {
+        return connection != null ? Long.toString(connection.getReconnectCount()) : "0";
+    }
 }
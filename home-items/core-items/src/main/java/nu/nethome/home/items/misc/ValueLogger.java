@@ -23,6 +23,7 @@ import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.ValueItem;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
@@ -38,7 +39,7 @@ import java.util.logging.Logger;
  * 
  * @author Stefan
  */
-public class ValueLogger extends TimerTask implements HomeItem {
+public class ValueLogger implements HomeItem, Runnable {
 
 	private final String m_Model = ("<?xml version = \"1.0\"?> \n"
 			+ "<HomeItem Class=\"ValueLogger\" >"
@@ -53,7 +54,7 @@ public class ValueLogger extends TimerTask implements HomeItem {
 	protected String m_Name = "NoNameYet";
 	protected long m_ID = 0L;
 	protected HomeService m_EventBroker;
-	protected Timer m_Timer = new Timer();
+	protected ScheduledTask m_LogTask;
 
 	// Public attributes
 	protected String m_FileName = "c:\\data\\logs\\Temperature.log";
@@ -100,7 +101,7 @@ public class ValueLogger extends TimerTask implements HomeItem {
 	    date.set(Calendar.SECOND, 0);
 	    date.set(Calendar.MILLISECOND, 0);
 	    // Schedule the job at m_Interval minutes interval
-	    m_Timer.schedule(
+	    m_LogTask = server.getScheduler().scheduleAtFixedRate(
 	    		this,
 				date.getTime(),
 				1000 * 60 * m_Interval
@@ -111,7 +112,9 @@ public class ValueLogger extends TimerTask implements HomeItem {
 	 * HomeItem method which stops all object activity for program termination
 	 */
 	public void stop() {
-		m_Timer.cancel();
+		if (m_LogTask != null) {
+			m_LogTask.cancel();
+		}
 	}
 
 	public void run() {
@@ -23,6 +23,7 @@ import nu.nethome.home.impl.CommandLineExecutor;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.item.IllegalValueException;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
@@ -38,6 +39,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType("Controls")
+@ReceivesEvents(HomeService.MINUTE_EVENT_TYPE)
 public class ValueTrigger extends HomeItemAdapter implements HomeItem {
 
     private final String m_Model = ("<?xml version = \"1.0\"?> \n"
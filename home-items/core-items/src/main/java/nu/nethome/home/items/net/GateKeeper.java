@@ -25,10 +25,9 @@ import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
 import nu.nethome.util.plugin.Plugin;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 
@@ -62,21 +61,7 @@ public class GateKeeper extends HomeItemAdapter implements HomeItem {
 
     private static Logger logger = Logger.getLogger(GateKeeper.class.getName());
 
-    private class CloseTask extends TimerTask {
-        protected GateKeeper keeper;
-
-        public CloseTask(GateKeeper keeper) {
-            this.keeper = keeper;
-        }
-
-        public void run() {
-            logger.info("Closing gate due to timeout");
-            keeper.closeGate();
-        }
-    }
-
-    private Timer openTimer = new Timer();
-    private CloseTask closer = new CloseTask(this);
+    private ScheduledTask closeTask;
     private CommandLineExecutor commandLineExecutor;
 
     // Public attributes
@@ -146,11 +131,15 @@ public class GateKeeper extends HomeItemAdapter implements HomeItem {
         commandLineExecutor.executeCommandLine(openCommand);
 
         // Cancel any ongoing close timers
-        closer.cancel();
+        cancelCloseTask();
 
         // Create a new closing timer task
-        closer = new CloseTask(this);
-        openTimer.schedule(closer, openTime);
+        closeTask = server.getScheduler().schedule(new Runnable() {
+            public void run() {
+                logger.info("Closing gate due to timeout");
+                closeGate();
+            }
+        }, openTime);
         isOpen = true;
     }
 
@@ -158,7 +147,7 @@ public class GateKeeper extends HomeItemAdapter implements HomeItem {
         logger.fine("Closing Gate");
 
         // Cancel any ongoing close timers
-        closer.cancel();
+        cancelCloseTask();
 
         // Execute the close command
         commandLineExecutor.executeCommandLine(closeCommand);
@@ -172,7 +161,14 @@ public class GateKeeper extends HomeItemAdapter implements HomeItem {
         if (isActivated()) {
             closeGate();
         }
-        openTimer.cancel();
+        cancelCloseTask();
+    }
+
+    private synchronized void cancelCloseTask() {
+        if (closeTask != null) {
+            closeTask.cancel();
+            closeTask = null;
+        }
     }
 
     public String getCloseString() {
@@ -35,6 +35,7 @@ import nu.nethome.home.impl.CommandLineExecutor;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
 import nu.nethome.util.plugin.Plugin;
@@ -60,6 +61,7 @@ import java.util.logging.Logger;
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType("Ports")
+@ReceivesEvents(HomeService.MINUTE_EVENT_TYPE)
 public class TeamCityBuildMonitor extends HomeItemAdapter implements HomeItem {
 
     private static final String SUCCESS_STATUS = "SUCCESS";
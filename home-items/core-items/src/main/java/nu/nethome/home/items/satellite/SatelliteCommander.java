@@ -25,6 +25,7 @@ import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemProxy;
 import nu.nethome.home.item.HomeItemType;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
 import nu.nethome.util.plugin.Plugin;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClient;
@@ -65,9 +66,11 @@ public class SatelliteCommander extends HomeItemAdapter implements HomeItem {
 			+ "  <Action Name=\"Stop Service\"		Method=\"stopService\" />"
 			+ "</HomeItem> ");
 
+	// Timeout in ms of calls to the Satellite Service, so a service which does not answer does not hang the item
+	private static final int SERVICE_TIMEOUT = 30000;
 	private static Logger logger = Logger.getLogger(SatelliteCommander.class
 			.getName());
-	protected Timer m_TickTimer = null;
+	protected ScheduledTask m_TickTask = null;
 	protected String m_TimeFormat = "yyyy.MM.dd HH:mm:ss Z";
 
 	// Public attributes
@@ -274,9 +277,8 @@ public class SatelliteCommander extends HomeItemAdapter implements HomeItem {
 			Calendar tickDate = Calendar.getInstance();
 			tickDate.add(Calendar.MILLISECOND,
 					(int) (1000 * m_TickIntervalSecs));
-			m_TickTimer = new Timer();
 			// Schedule the job at m_Time minutes interval
-			m_TickTimer.schedule(new TimerTask() {
+			m_TickTask = server.getScheduler().scheduleAtFixedRate(new Runnable() {
 				public void run() {
 					tickTimerExpired();
 				}
@@ -292,9 +294,9 @@ public class SatelliteCommander extends HomeItemAdapter implements HomeItem {
 			return;
 		}
 		m_Active = false;
-		if (m_TickTimer != null) {
-			m_TickTimer.cancel();
-			m_TickTimer = null;
+		if (m_TickTask != null) {
+			m_TickTask.cancel();
+			m_TickTask = null;
 		}
 	}
 
@@ -353,6 +355,8 @@ public class SatelliteCommander extends HomeItemAdapter implements HomeItem {
 		XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
 		try {
 			config.setServerURL(new URL(getServiceUrl()));
+			config.setConnectionTimeout(SERVICE_TIMEOUT);
+			config.setReplyTimeout(SERVICE_TIMEOUT);
 			XmlRpcClient client = new XmlRpcClient();
 			client.setConfig(config);
 
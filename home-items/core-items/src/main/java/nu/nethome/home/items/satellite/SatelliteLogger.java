@@ -32,6 +32,7 @@ import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemProxy;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.system.ScheduledTask;
 import nu.nethome.util.plugin.Plugin;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClient;
@@ -67,9 +68,11 @@ public class SatelliteLogger extends HomeItemAdapter implements HomeItem {
 			+ "  <Action Name=\"Stop Service\"		Method=\"stopService\" />"
 			+ "</HomeItem> ");
 
+	// Timeout in ms of calls to the Satellite Service, so a service which does not answer does not hang the item
+	private static final int SERVICE_TIMEOUT = 30000;
 	private static Logger logger = Logger.getLogger(SatelliteLogger.class
 			.getName());
-	protected Timer m_TickTimer = null;
+	protected ScheduledTask m_TickTask = null;
 	protected String m_TimeFormat = "yyyy.MM.dd HH:mm:ss Z";
 
 	// Public attributes
@@ -268,9 +271,8 @@ public class SatelliteLogger extends HomeItemAdapter implements HomeItem {
 			Calendar tickDate = Calendar.getInstance();
 			tickDate.add(Calendar.MILLISECOND,
 					(int) (1000 * 60 * m_TickIntervalMin));
-			m_TickTimer = new Timer();
 			// Schedule the job at m_Time minutes interval
-			m_TickTimer.schedule(new TimerTask() {
+			m_TickTask = server.getScheduler().scheduleAtFixedRate(new Runnable() {
 				public void run() {
 					tickTimerExpired();
 				}
@@ -286,9 +288,9 @@ public class SatelliteLogger extends HomeItemAdapter implements HomeItem {
 			return;
 		}
 		m_Active = false;
-		if (m_TickTimer != null) {
-			m_TickTimer.cancel();
-			m_TickTimer = null;
+		if (m_TickTask != null) {
+			m_TickTask.cancel();
+			m_TickTask = null;
 		}
 	}
 
@@ -345,6 +347,8 @@ public class SatelliteLogger extends HomeItemAdapter implements HomeItem {
 		XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
 		try {
 			config.setServerURL(new URL(getServiceUrl()));
+			config.setConnectionTimeout(SERVICE_TIMEOUT);
+			config.setReplyTimeout(SERVICE_TIMEOUT);
 			config.setEncoding("UTF-8");
 			XmlRpcClient client = new XmlRpcClient();
 			client.setConfig(config);
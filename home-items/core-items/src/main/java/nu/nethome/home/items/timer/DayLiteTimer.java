@@ -74,6 +74,8 @@ public class DayLiteTimer extends WeekTimer implements HomeItem{
 			+ "  <Attribute Name=\"Timer Today\" Type=\"String\" Get=\"getTodayStartEnd\" />"
 			+ "  <Attribute Name=\"Sunrise Today\" Type=\"String\" Get=\"getSunriseToday\" />"
 			+ "  <Attribute Name=\"Sunset Today\" Type=\"String\" Get=\"getSunsetToday\" />"
+			+ "  <Attribute Name=\"LateAlarms\" Type=\"String\" Get=\"getLateAlarms\" />"
+			+ "  <Attribute Name=\"MaxAlarmDelay\" Type=\"String\" Get=\"getMaxAlarmDelay\" />"
 			+ "  <Attribute Name=\"Mondays\" Type=\"String\" Get=\"getMondays\" 	Set=\"setMondays\" />"
 			+ "  <Attribute Name=\"Tuesdays\" Type=\"String\" Get=\"getTuesdays\" 	Set=\"setTuesdays\" />"
 			+ "  <Attribute Name=\"Wednesdays\" Type=\"String\" Get=\"getWednesdays\" 	Set=\"setWednesdays\" />"
@@ -24,11 +24,10 @@ import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
 import nu.nethome.util.plugin.Plugin;
 
 import java.util.Calendar;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 /**
@@ -54,8 +53,8 @@ public class IntervalTimer extends HomeItemAdapter implements HomeItem {
 			+ "</HomeItem> "); 
 
 	private static Logger logger = Logger.getLogger(IntervalTimer.class.getName());
-	protected Timer timer = null;
-	protected Timer tickTimer = null;
+	protected ScheduledTask timer = null;
+	protected ScheduledTask tickTimer = null;
 	protected CommandLineExecutor executor;
 
 
@@ -109,19 +108,17 @@ public class IntervalTimer extends HomeItemAdapter implements HomeItem {
 		// Get current time
 	    Calendar date = Calendar.getInstance();
 	    date.add(Calendar.MILLISECOND, (int)(1000 * 60 * time));
-	    timer = new Timer();
 	    // Schedule the job at time minutes interval
-	    timer.schedule(
-	    		new TimerTask(){public void run() {timerExpired();}},
+	    timer = server.getScheduler().schedule(
+	    		new Runnable(){public void run() {timerExpired();}},
 				date.getTime()
 	    );
 	    if (tickInterval != 0.0f) {
 		    Calendar tickDate = Calendar.getInstance();
 		    tickDate.add(Calendar.MILLISECOND, (int)(1000 * 60 * tickInterval));
-		    tickTimer = new Timer();
 		    // Schedule the job at time minutes interval
-		    tickTimer.schedule(
-		    		new TimerTask(){public void run() {tickTimerExpired();}},
+		    tickTimer = server.getScheduler().scheduleAtFixedRate(
+		    		new Runnable(){public void run() {tickTimerExpired();}},
 		    		tickDate.getTime(),
 					(int)(1000 * 60 * tickInterval)
 		    );
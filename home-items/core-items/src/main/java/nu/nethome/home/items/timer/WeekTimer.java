@@ -23,6 +23,7 @@ import com.jtheory.jdring.AlarmEntry;
 import com.jtheory.jdring.AlarmListener;
 import com.jtheory.jdring.AlarmManager;
 import com.jtheory.jdring.PastDateException;
+import com.jtheory.jdring.TimingWheelAlarmManager;
 import nu.nethome.home.impl.CommandLineExecutor;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
@@ -49,11 +50,15 @@ public class WeekTimer extends HomeItemAdapter implements HomeItem {
 			+ "  <Attribute Name=\"WeekEndTimes\" Type=\"String\" Get=\"getWeekEndTimes\" 	Set=\"setWeekEndTimes\" />"
 			+ "  <Attribute Name=\"OnCommand\" Type=\"Command\" Get=\"getOnCommand\" 	Set=\"setOnCommand\" />"
 			+ "  <Attribute Name=\"OffCommand\" Type=\"Command\" Get=\"getOffCommand\" 	Set=\"setOffCommand\" />"
+			+ "  <Attribute Name=\"LateAlarms\" Type=\"String\" Get=\"getLateAlarms\" />"
+			+ "  <Attribute Name=\"MaxAlarmDelay\" Type=\"String\" Get=\"getMaxAlarmDelay\" />"
 			+ "  <Action Name=\"On\" 	Method=\"on\" />"
 			+ "  <Action Name=\"Off\" 	Method=\"off\" />"
 			+ "</HomeItem> "); 
 
 	private static Logger logger = Logger.getLogger(WeekTimer.class.getName());
+	private static final AlarmManager sharedAlarmManager = new TimingWheelAlarmManager(true, "WeekTimer",
+			TimingWheelAlarmManager.DEFAULT_RINGER_COUNT);
 	protected AlarmManager alarmManager;
 	protected LinkedList<AlarmEntry> weekDayAlarms = new LinkedList<AlarmEntry>();
 	protected LinkedList<AlarmEntry> weekEndAlarms = new LinkedList<AlarmEntry>();
@@ -72,7 +77,7 @@ public class WeekTimer extends HomeItemAdapter implements HomeItem {
 
 
 	public WeekTimer() {
-        alarmManager = new AlarmManager();
+        alarmManager = sharedAlarmManager;
 	}
 
 	/* (non-Javadoc)
@@ -94,7 +99,14 @@ public class WeekTimer extends HomeItemAdapter implements HomeItem {
 	 * HomeItem method which stops all object activity for program termination
 	 */
 	public void stop() {
-		alarmManager.removeAllAlarmsAndStop();
+		removeAlarms(weekDayAlarms);
+		removeAlarms(weekEndAlarms);
+	}
+
+	protected void removeAlarms(LinkedList<AlarmEntry> alarms) {
+		while (alarms.size() > 0) {
+			alarmManager.removeAlarm(alarms.remove());
+		}
 	}
 
 	protected void performCommand(String commandString) {
@@ -122,9 +134,7 @@ public class WeekTimer extends HomeItemAdapter implements HomeItem {
 	
 	public void calculateAlarmEntries(LinkedList<AlarmEntry> alarms, String timePeriodsString, int weekDays[]) {
 		// First remove all on alarm entries
-		while (alarms.size() > 0) {
-			alarmManager.removeAlarm(alarms.remove());
-		}
+		removeAlarms(alarms);
 		// Scan through the string and add all the on time alarms
 		String timePeriods[] = timePeriodsString.split(",");
 		for (int i = 0; i < timePeriods.length; i++) try {
@@ -220,6 +230,27 @@ public class WeekTimer extends HomeItemAdapter implements HomeItem {
 		m_OffCommand = OffCommand;
     }
 
+    /**
+     * @return number of alarms of all timers which were rung more than a second late
+     */
+    public String getLateAlarms() {
+        if (!(alarmManager instanceof TimingWheelAlarmManager)) {
+            return "";
+        }
+        TimingWheelAlarmManager manager = (TimingWheelAlarmManager) alarmManager;
+        return Long.toString(manager.getLateRingCount()) + " of " + Long.toString(manager.getRingCount());
+    }
+
+    /**
+     * @return the largest time in ms from alarm time until an alarm of any timer was rung
+     */
+    public String getMaxAlarmDelay() {
+        if (!(alarmManager instanceof TimingWheelAlarmManager)) {
+            return "";
+        }
+        return Long.toString(((TimingWheelAlarmManager) alarmManager).getMaxLateness());
+    }
+
     public void on() {
         performCommand(m_OnCommand);
     }
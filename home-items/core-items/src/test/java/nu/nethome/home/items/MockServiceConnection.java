@@ -19,6 +19,8 @@
 
 package nu.nethome.home.items;
 
+import nu.nethome.home.impl.BackoffConnectionSupervisor;
+import nu.nethome.home.impl.TimingWheelScheduler;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemInfo;
 import nu.nethome.home.item.HomeItemProxy;
@@ -38,6 +40,8 @@ public class MockServiceConnection implements HomeService {
 
     protected Map<String, MockHomeItemProxy> m_Instances = new HashMap<String, MockHomeItemProxy>();
     public List<HomeItem> m_Items = new LinkedList<HomeItem>();
+    private TimingWheelScheduler scheduler;
+    private BackoffConnectionSupervisor connectionSupervisor;
 
     public static class MockEvent implements Event {
 
@@ -148,6 +152,25 @@ public class MockServiceConnection implements HomeService {
         return null;
     }
 
+    public synchronized Scheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new TimingWheelScheduler(1);
+            scheduler.start();
+        }
+        return scheduler;
+    }
+
+    public synchronized ConnectionSupervisor getConnectionSupervisor() {
+        if (connectionSupervisor == null) {
+            connectionSupervisor = new BackoffConnectionSupervisor(getScheduler(), this);
+        }
+        return connectionSupervisor;
+    }
+
+    public TimeSeriesStore getTimeSeriesStore() {
+        return null;
+    }
+
     @Override
     public void stopServer() {
     }
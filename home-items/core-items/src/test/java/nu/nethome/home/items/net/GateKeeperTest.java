@@ -20,6 +20,7 @@
 package nu.nethome.home.items.net;
 
 import com.sun.org.apache.xerces.internal.parsers.SAXParser;
+import nu.nethome.home.impl.TimingWheelScheduler;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
 import org.junit.After;
@@ -44,11 +45,15 @@ public class GateKeeperTest {
     @Mock private HomeService server;
     @Mock private Event sentEvent;
     @Mock private Event receivedEvent;
+    private TimingWheelScheduler scheduler;
 
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
         gateKeeper = new GateKeeper();
+        scheduler = new TimingWheelScheduler(1);
+        scheduler.start();
+        when(server.getScheduler()).thenReturn(scheduler);
         when(server.createEvent(any(String.class), any(String.class))).thenReturn(sentEvent);
         gateKeeper.setOpenCommand("event,Open");
         gateKeeper.setCloseCommand("event,Close");
@@ -59,6 +64,7 @@ public class GateKeeperTest {
     @After
     public void tearDown() {
         gateKeeper.stop();
+        scheduler.stop();
     }
 
     @Test
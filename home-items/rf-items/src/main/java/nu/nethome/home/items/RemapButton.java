@@ -24,9 +24,8 @@ import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.items.nexa.NexaRemapButton;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,7 +44,7 @@ public abstract class RemapButton extends HomeItemAdapter {
     private long holdOffStart;
     private Event latestHoldOffEvent;
     private long latestReceivedEventTime;
-    private Timer holdOffTimer = new Timer("RemapHoldOffTimer", true);
+    private volatile ScheduledTask holdOffTask;
     private String onCommand = "";
     private String offCommand = "";
     private int holdOffTime = 200;
@@ -68,7 +67,7 @@ public abstract class RemapButton extends HomeItemAdapter {
     }
 
     private void startHoldoffTimer() {
-        holdOffTimer.schedule(new TimerTask() {
+        holdOffTask = server.getScheduler().schedule(new Runnable() {
             @Override
             public void run() {
                 checkHoldOff();
@@ -99,7 +98,10 @@ public abstract class RemapButton extends HomeItemAdapter {
 
     @Override
     public void stop() {
-        holdOffTimer.cancel();
+        ScheduledTask task = holdOffTask;
+        if (task != null) {
+            task.cancel();
+        }
         super.stop();
     }
 
@@ -27,6 +27,8 @@ import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
 import nu.nethome.home.util.EncoderFactory;
 import nu.nethome.util.plugin.Plugin;
 import nu.nethome.util.ps.*;
@@ -34,6 +36,7 @@ import nu.nethome.util.ps.impl.CULProtocolPort;
 import nu.nethome.util.ps.impl.ProtocolDecoderGroup;
 import nu.nethome.util.ps.impl.RawDecoder;
 
+import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
@@ -53,6 +56,7 @@ public class CULTransceiver extends HomeItemAdapter implements HomeItem, Protoco
             + "    <item>0</item><item>1</item><item>2</item><item>3</item><item>4</item><item>5</item><item>6</item><item>7</item></Attribute>"
             + "  <Attribute Name=\"SendCount\" Type=\"String\" Get=\"getSendCount\"  />"
             + "  <Attribute Name=\"Connected\" Type=\"String\" Get=\"getConnected\" Default=\"true\" />"
+            + "  <Attribute Name=\"Reconnects\" Type=\"String\" Get=\"getReconnects\" />"
             + "  <Action Name=\"Reconnect\"		Method=\"reconnect\" Default=\"true\" />"
             + "  <Action Name=\"PlayTestBeep\"		Method=\"playTestBeep\" />"
             + "  <Attribute Name=\"TestBeepFrequency\" Type=\"String\" Get=\"getTestBeepFrequency\" 	Set=\"setTestBeepFrequency\" />"
@@ -64,6 +68,7 @@ public class CULTransceiver extends HomeItemAdapter implements HomeItem, Protoco
     // Public attributes
     private int testBeepFrequency = 2000;
     CULProtocolPort culPort;
+    private SupervisedConnection connection;
     private long sendCount = 0;
     private float modulationFrequency = 0;
     private EncoderFactory factory;
@@ -153,15 +158,33 @@ public class CULTransceiver extends HomeItemAdapter implements HomeItem, Protoco
     public void activate(HomeService server) {
         super.activate(server);
         factory.addEncoderTypes(server.getPluginProvider().getPluginsForInterface(ProtocolEncoder.class));
-        culPort.open();
+        connection = server.getConnectionSupervisor().supervise(name, new SupervisedDevice() {
+            public void open() throws Exception {
+                culPort.open();
+                if (!culPort.isOpen()) {
+                    throw new IOException("Could not open CUL port " + culPort.getSerialPort());
+                }
+            }
+
+            public void close() {
+                if (culPort.isOpen()) {
+                    culPort.close();
+                }
+            }
+
+            public boolean isHealthy() {
+                return culPort.isOpen();
+            }
+        });
     }
 
     /**
      * HomeItem method which stops all object activity for program termination
      */
     public void stop() {
-        if (culPort.isOpen()) {
-            culPort.close();
+        if (connection != null) {
+            connection.stop();
+            connection = null;
         }
     }
 
@@ -169,10 +192,9 @@ public class CULTransceiver extends HomeItemAdapter implements HomeItem, Protoco
      * Reconnect the port
      */
     public void reconnect() {
-        if (culPort.isOpen()) {
-            culPort.close();
+        if (connection != null) {
+            connection.reconnect();
         }
-        culPort.open();
     }
 
     /**
@@ -198,9 +220,8 @@ public class CULTransceiver extends HomeItemAdapter implements HomeItem, Protoco
      */
     public void setSerialPort(String SerialPort) {
         culPort.setSerialPort(SerialPort);
-        if (culPort.isOpen()) {
-            culPort.close();
-            culPort.open();
+        if (connection != null) {
+            connection.reconnect();
         }
     }
 
@@ -222,6 +243,10 @@ public class CULTransceiver extends HomeItemAdapter implements HomeItem, Protoco
         return culPort.isOpen() ? "Connected" : "Not Connected";
     }
 
+    public String getReconnects() {
+        return connection != null ? Long.toString(connection.getReconnectCount()) : "0";
+    }
+
     public void parsedMessage(ProtocolMessage message) {
         // TODO Auto-generated method stub
 
@@ -22,6 +22,7 @@ package nu.nethome.home.items.deltronic;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
 
@@ -39,6 +40,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value="Lamps", creationEvents = "Deltronic_Message")
+@ReceivesEvents("Deltronic_Message,Init")
 public class DeltronicLamp extends HomeItemAdapter implements HomeItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
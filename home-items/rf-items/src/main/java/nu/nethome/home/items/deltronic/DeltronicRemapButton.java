@@ -21,6 +21,7 @@ package nu.nethome.home.items.deltronic;
 
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.items.RemapButton;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
@@ -32,6 +33,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value="Controls", creationEvents = "Deltronic_Message")
+@ReceivesEvents("Deltronic_Message,Init")
 public class DeltronicRemapButton extends RemapButton implements HomeItem {
 
     private final static String MODEL = ("<?xml version = \"1.0\"?> \n"
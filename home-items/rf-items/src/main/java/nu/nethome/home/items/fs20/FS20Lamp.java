@@ -22,6 +22,7 @@ package nu.nethome.home.items.fs20;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.items.Lamp;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
@@ -34,6 +35,7 @@ import nu.nethome.util.plugin.Plugin;
  */
 @Plugin
 @HomeItemType(value="Lamps", creationEvents = FHZ1000PcPort.EVENT_TYPE_FS20_EVENT)
+@ReceivesEvents(FHZ1000PcPort.EVENT_TYPE_FS20_EVENT + ",Init")
 public class FS20Lamp extends HomeItemAdapter implements HomeItem {
 
     private final String MODEL = ("<?xml version = \"1.0\"?> \n"
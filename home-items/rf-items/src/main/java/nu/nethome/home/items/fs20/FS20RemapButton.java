@@ -21,6 +21,7 @@ package nu.nethome.home.items.fs20;
 
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.items.RemapButton;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
@@ -36,6 +37,7 @@ import nu.nethome.util.plugin.Plugin;
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType(value="Controls", creationEvents = FHZ1000PcPort.EVENT_TYPE_FS20_EVENT)
+@ReceivesEvents(FHZ1000PcPort.EVENT_TYPE_FS20_EVENT + ",Init")
 public class FS20RemapButton extends RemapButton implements HomeItem {
 
 	private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
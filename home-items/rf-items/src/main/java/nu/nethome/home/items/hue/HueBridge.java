@@ -22,6 +22,8 @@ package nu.nethome.home.items.hue;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
 import nu.nethome.home.system.Event;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
 import nu.nethome.util.plugin.Plugin;
 
 import java.io.IOException;
@@ -46,6 +48,7 @@ public class HueBridge extends HomeItemAdapter {
             + "  <Attribute Name=\"SWVersion\" Type=\"String\" Get=\"getSWVersion\"  />"
             + "  <Attribute Name=\"UserName\" Type=\"String\" Get=\"getUserName\" Set=\"setUserName\" />"
             + "  <Attribute Name=\"RefreshInterval\" Type=\"String\" Get=\"getRefreshInterval\" Set=\"setRefreshInterval\" />"
+            + "  <Attribute Name=\"Reconnects\" Type=\"String\" Get=\"getReconnects\" />"
             + "  <Action Name=\"findBridge\" Method=\"findBridge\" />"
             + "  <Action Name=\"registerUser\" Method=\"registerUser\" />"
             + "  <Action Name=\"reconnect\" Method=\"reconnect\" />"
@@ -59,8 +62,9 @@ public class HueBridge extends HomeItemAdapter {
     private PhilipsHueBridge hueBridge;
     private int refreshInterval = 5;
     private int refreshCounter = 0;
-    private HueConfig configuration = null;
-    private String state = "Disconnected";
+    private volatile HueConfig configuration = null;
+    private volatile String state = "Disconnected";
+    private SupervisedConnection connection;
 
 
     @Override
@@ -70,11 +74,33 @@ public class HueBridge extends HomeItemAdapter {
 
     @Override
     public void activate() {
-        reconnect();
+        connection = server.getConnectionSupervisor().supervise(name, new SupervisedDevice() {
+            public void open() throws Exception {
+                hueBridge = new PhilipsHueBridge(url, bridgeIdentity);
+                configuration = hueBridge.getConfiguration(userName);
+                state = "Connected";
+            }
+
+            public void close() {
+                state = "Disconnected";
+            }
+
+            public boolean isHealthy() {
+                return state.equals("Connected");
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (connection != null) {
+            connection.stop();
+            connection = null;
+        }
+        super.stop();
     }
 
     public void reconnect() {
-        hueBridge = new PhilipsHueBridge(url, bridgeIdentity);
         checkConnection();
     }
 
@@ -95,15 +121,17 @@ public class HueBridge extends HomeItemAdapter {
     }
 
     private void checkConnection() {
-        try {
-            configuration = hueBridge.getConfiguration(userName);
-            state = "Connected";
-        } catch (IOException e) {
-            this.state = "Disconnected";
-            logger.log(Level.INFO, "Failed to contact HueBridge", e);
-        } catch (HueProcessingException e) {
+        if (connection != null) {
+            connection.reconnect();
+        }
+    }
+
+    private void connectionLost(IOException e) {
+        logger.log(Level.INFO, "Failed to contact HueBridge", e);
+        if (connection != null) {
+            connection.connectionLost();
+        } else {
             this.state = "Disconnected";
-            logger.log(Level.INFO, "Command failed in HueBridge", e);
         }
     }
 
@@ -139,8 +167,7 @@ public class HueBridge extends HomeItemAdapter {
                 reportLampState(id.getLampId());
             }
         } catch (IOException e) {
-            this.state = "Disconnected";
-            logger.log(Level.INFO, "Failed to contact HueBridge", e);
+            connectionLost(e);
         } catch (HueProcessingException e) {
             logger.log(Level.INFO, "Command failed in HueBridge", e);
         }
@@ -160,8 +187,7 @@ public class HueBridge extends HomeItemAdapter {
             event.setAttribute("Hue.Version", light.getSwversion());
             server.send(event);
         } catch (IOException e) {
-            this.state = "Disconnected";
-            logger.log(Level.INFO, "Failed to contact HueBridge", e);
+            connectionLost(e);
         } catch (HueProcessingException e) {
             logger.log(Level.INFO, "Command failed in HueBridge", e);
         }
@@ -175,8 +201,7 @@ public class HueBridge extends HomeItemAdapter {
         try {
             hueBridge.setLightState(userName, lampId, state);
         } catch (IOException e) {
-            this.state = "Disconnected";
-            logger.log(Level.INFO, "Failed to contact HueBridge", e);
+            connectionLost(e);
         } catch (HueProcessingException e) {
             logger.log(Level.INFO, "Command failed in HueBridge", e);
         }
@@ -202,8 +227,7 @@ public class HueBridge extends HomeItemAdapter {
             userName = result;
             checkConnection();
         } catch (IOException e) {
-            this.state = "Disconnected";
-            logger.log(Level.INFO, "Failed to contact HueBridge", e);
+            connectionLost(e);
         } catch (HueProcessingException e) {
             this.state = "Disconnected";
             logger.log(Level.INFO, "Command failed in HueBridge", e);
@@ -249,6 +273,10 @@ public class HueBridge extends HomeItemAdapter {
         return state;
     }
 
+    public String getReconnects() {
+        return connection != null ? Long.toString(connection.getReconnectCount()) : "0";
+    }
+
     public String getSWVersion() {
         return configuration != null ? configuration.getSwVersion() : "";
     }
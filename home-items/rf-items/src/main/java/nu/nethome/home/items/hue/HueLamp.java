@@ -22,12 +22,14 @@ package nu.nethome.home.items.hue;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
 
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType(value = "Lamps", creationEvents = "Hue_Message")
+@ReceivesEvents("Hue_Message,Init")
 public class HueLamp extends HomeItemAdapter implements HomeItem {
 
     public static final int DIM_STEP = 20;
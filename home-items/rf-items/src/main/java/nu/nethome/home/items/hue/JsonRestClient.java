@@ -57,6 +57,7 @@ public class JsonRestClient {
             connection = (HttpURLConnection) serverAddress.openConnection();
             connection.setRequestMethod(method);
             connection.setDoOutput(true);
+            connection.setConnectTimeout(10000);
             connection.setReadTimeout(10000);
             connection.setInstanceFollowRedirects(false);
             connection.setRequestProperty("Content-Type", "application/json");
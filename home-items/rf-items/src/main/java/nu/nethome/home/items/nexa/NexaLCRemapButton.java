@@ -21,6 +21,7 @@ package nu.nethome.home.items.nexa;
 
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.items.RemapButton;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
@@ -36,6 +37,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Controls", creationEvents = "NexaL_Message")
+@ReceivesEvents("NexaL_Message,Init")
 public class NexaLCRemapButton extends RemapButton implements HomeItem {
 
     private static final String m_Model = ("<?xml version = \"1.0\"?> \n"
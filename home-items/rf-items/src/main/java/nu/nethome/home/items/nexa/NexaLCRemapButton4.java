@@ -21,6 +21,7 @@ package nu.nethome.home.items.nexa;
 
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
 
@@ -35,6 +36,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Controls", creationEvents = "NexaL_Message")
+@ReceivesEvents("NexaL_Message,Init")
 public class NexaLCRemapButton4 extends NexaLCRemapButton implements HomeItem {
 
     class Button {
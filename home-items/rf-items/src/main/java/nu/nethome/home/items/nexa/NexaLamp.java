@@ -22,6 +22,7 @@ package nu.nethome.home.items.nexa;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
 
@@ -40,6 +41,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Lamps", creationEvents = "Nexa_Message")
+@ReceivesEvents("Nexa_Message,Init")
 public class NexaLamp extends HomeItemAdapter implements HomeItem {
 
 	private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
@@ -21,6 +21,7 @@ package nu.nethome.home.items.nexa;
 
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.items.RemapButton;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
@@ -32,6 +33,7 @@ import nu.nethome.util.plugin.Plugin;
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType(value = "Controls", creationEvents = "Nexa_Message")
+@ReceivesEvents("Nexa_Message,Init")
 public class NexaRemapButton extends RemapButton implements HomeItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
@@ -23,6 +23,7 @@ import nu.nethome.home.impl.CommandLineExecutor;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
 import nu.nethome.util.plugin.Plugin;
@@ -38,6 +39,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Controls", creationEvents = "NexaFire_Message")
+@ReceivesEvents("NexaFire_Message")
 public class NexaSmokeDetector extends HomeItemAdapter implements HomeItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
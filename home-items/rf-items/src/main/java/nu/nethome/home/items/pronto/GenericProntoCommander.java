@@ -23,6 +23,7 @@ package nu.nethome.home.items.pronto;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.MorphingItem;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
 
@@ -31,6 +32,7 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -44,7 +46,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType("Controls")
-public class GenericProntoCommander extends HomeItemAdapter implements HomeItem {
+public class GenericProntoCommander extends HomeItemAdapter implements HomeItem, MorphingItem {
 	
 	private static final int MAX_ACTIONS = 20;
 
@@ -66,6 +68,7 @@ public class GenericProntoCommander extends HomeItemAdapter implements HomeItem
 		}
 		public void setCommandName(String commandName) {
 			m_CommandName = commandName;
+			modelVersion.incrementAndGet();
 		}
 		public String getProntoString() {
 			return m_ProntoString1;
@@ -85,6 +88,7 @@ public class GenericProntoCommander extends HomeItemAdapter implements HomeItem
 	private final String m_ModelEnd = ("</HomeItem> "); 
 
 	private static Logger logger = Logger.getLogger(GenericProntoCommander.class.getName());
+	private final AtomicLong modelVersion = new AtomicLong();
 	protected ArrayList<ProntoCommand> m_ProntoCommands = new ArrayList<ProntoCommand>();
 
 	// Public attributes
@@ -96,6 +100,10 @@ public class GenericProntoCommander extends HomeItemAdapter implements HomeItem
 	public GenericProntoCommander() {
 	}
 	
+	public long getModelVersion() {
+		return modelVersion.get();
+	}
+
 	public String getModel() {
 		StringBuilder result = new StringBuilder(m_ModelStart);
 
@@ -150,6 +158,7 @@ public class GenericProntoCommander extends HomeItemAdapter implements HomeItem
 				logger.warning("Failed reading action file: " + m_ConfigFile);
 			}
 		}
+		modelVersion.incrementAndGet();
 	}
 
 	/**
@@ -21,18 +21,19 @@ package nu.nethome.home.items.pronto;
 
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.MorphingItem;
+import nu.nethome.home.system.ScheduledTask;
 import nu.nethome.util.plugin.Plugin;
 
 import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType("Controls")
-public class ProntoDevice extends ProntoLamp implements HomeItem {
+public class ProntoDevice extends ProntoLamp implements HomeItem, MorphingItem {
 
     private static Logger logger = Logger.getLogger(ProntoDevice.class.getName());
     public static final int COMMAND_COUNT = 10;
@@ -51,6 +52,7 @@ public class ProntoDevice extends ProntoLamp implements HomeItem {
 
         public void setCommandName(String commandName) {
             this.commandName = commandName;
+            modelVersion.incrementAndGet();
         }
 
         public String getProntoCode() {
@@ -59,6 +61,7 @@ public class ProntoDevice extends ProntoLamp implements HomeItem {
 
         public void setProntoCode(String prontoCode) {
             this.prontoCode = prontoCode;
+            modelVersion.incrementAndGet();
         }
     }
 
@@ -93,7 +96,8 @@ public class ProntoDevice extends ProntoLamp implements HomeItem {
 
     private String toggleCode = "";
     private int startupTime = 0;
-    private Timer startTimer = new Timer("ProntoDeviceTimer", true);
+    private volatile ScheduledTask startTask;
+    private final AtomicLong modelVersion = new AtomicLong();
     private volatile boolean isStartingUp = false;
     private Queue<String> commandQueue = new LinkedBlockingQueue<String>();
     private ProntoCommand[] commands = new ProntoCommand[COMMAND_COUNT];
@@ -104,6 +108,10 @@ public class ProntoDevice extends ProntoLamp implements HomeItem {
         }
     }
 
+    public long getModelVersion() {
+        return modelVersion.get();
+    }
+
     public String getModel() {
         StringBuilder builder = new StringBuilder(MODEL_START);
         for (int i = 0; i < COMMAND_COUNT; i++) {
@@ -140,7 +148,7 @@ public class ProntoDevice extends ProntoLamp implements HomeItem {
     private void initiateStartupState() {
         if (startupTime > 0) {
             isStartingUp = true;
-            startTimer.schedule(new TimerTask() {
+            startTask = server.getScheduler().schedule(new Runnable() {
                 @Override
                 public void run() {
                     endStartupState();
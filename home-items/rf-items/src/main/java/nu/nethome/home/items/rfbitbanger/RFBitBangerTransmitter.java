@@ -26,6 +26,8 @@ import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
 import nu.nethome.home.util.EncoderFactory;
 import nu.nethome.util.plugin.Plugin;
 import nu.nethome.util.ps.BadMessageException;
@@ -33,6 +35,7 @@ import nu.nethome.util.ps.Message;
 import nu.nethome.util.ps.ProtocolEncoder;
 import nu.nethome.util.ps.impl.RFBitBangerPort;
 
+import java.io.IOException;
 import java.util.logging.Logger;
 
 @Plugin
@@ -44,6 +47,7 @@ public class RFBitBangerTransmitter extends HomeItemAdapter implements HomeItem
             + "  <Attribute Name=\"State\" Type=\"String\" Get=\"getState\"  Default=\"true\" />"
             + "  <Attribute Name=\"DeviceName\" Type=\"String\" Get=\"getDeviceName\" 	Set=\"setDeviceName\" />"
             + "  <Attribute Name=\"SendCount\" Type=\"String\" Get=\"getSendCount\"  />"
+            + "  <Attribute Name=\"Reconnects\" Type=\"String\" Get=\"getReconnects\" />"
             + "  <Action Name=\"Reconnect\"		Method=\"reconnect\" Default=\"true\" />"
             + "  <Action Name=\"PlayTestBeep\"		Method=\"playTestBeep\" />"
             + "  <Attribute Name=\"TestBeepFrequency\" Type=\"String\" Get=\"getTestBeepFrequency\" 	Set=\"setTestBeepFrequency\" />"
@@ -54,10 +58,11 @@ public class RFBitBangerTransmitter extends HomeItemAdapter implements HomeItem
     // Public attributes
     private int testBeepFrequency = 2000;
     String deviceName = RFBitBangerPort.DEFAULT_DEVICE_NAME;
-    RFBitBangerPort port;
+    volatile RFBitBangerPort port;
     private long sendCount = 0;
     private EncoderFactory factory;
-    private boolean connected = false;
+    private volatile boolean connected = false;
+    private SupervisedConnection connection;
 
 
     public RFBitBangerTransmitter() {
@@ -68,7 +73,8 @@ public class RFBitBangerTransmitter extends HomeItemAdapter implements HomeItem
       * @see ssg.home.HomeItem#receiveEvent(ssg.home.Event)
       */
     public boolean receiveEvent(Event event) {
-        if (!event.getAttribute("Direction").equals("Out") || port == null) {
+        RFBitBangerPort currentPort = port;
+        if (!event.getAttribute("Direction").equals("Out") || currentPort == null) {
             return false;
         }
         ProtocolEncoder foundEncoder = factory.getEncoder(event);
@@ -76,8 +82,11 @@ public class RFBitBangerTransmitter extends HomeItemAdapter implements HomeItem
             try {
                 Message parameters = factory.extractMessage(event);
                 int repeat = calculateRepeat(event, foundEncoder);
-                connected = port.playMessage(foundEncoder.encode(parameters, ProtocolEncoder.Phase.REPEATED), repeat, 0);
+                connected = currentPort.playMessage(foundEncoder.encode(parameters, ProtocolEncoder.Phase.REPEATED), repeat, 0);
                 sendCount += connected ? 1 : 0;
+                if (!connected && connection != null) {
+                    connection.connectionLost();
+                }
             } catch (BadMessageException e) {
                 logger.warning("Bad protocol message received: " + event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE));
             }
@@ -101,21 +110,42 @@ public class RFBitBangerTransmitter extends HomeItemAdapter implements HomeItem
     public void activate(HomeService server) {
         super.activate(server);
         factory.addEncoderTypes(server.getPluginProvider().getPluginsForInterface(ProtocolEncoder.class));
-        reconnect();
+        connection = server.getConnectionSupervisor().supervise(name, new SupervisedDevice() {
+            public void open() throws Exception {
+                port = new RFBitBangerPort(deviceName);
+                connected = port.playMessage(new int[0], 0, 0);
+                if (!connected) {
+                    throw new IOException("Could not connect to RFBitBanger " + deviceName);
+                }
+            }
+
+            public void close() {
+                connected = false;
+            }
+
+            public boolean isHealthy() {
+                return connected;
+            }
+        });
     }
 
     /**
      * HomeItem method which stops all object activity for program termination
      */
     public void stop() {
+        if (connection != null) {
+            connection.stop();
+            connection = null;
+        }
     }
 
     /**
      * Reconnect the port
      */
     public void reconnect() {
-        port = new RFBitBangerPort(deviceName);
-        connected = port.playMessage(new int[0], 0, 0);
+        if (connection != null) {
+            connection.reconnect();
+        }
     }
 
     /**
@@ -157,4 +187,8 @@ public class RFBitBangerTransmitter extends HomeItemAdapter implements HomeItem
     public String getState() {
         return connected ? "Connected" : "Disconnected";
     }
+
+    public String getReconnects() {
+        return connection != null ? Long.toString(connection.getReconnectCount()) : "0";
+    }
 }
@@ -23,7 +23,10 @@ import nu.nethome.coders.encoders.Encoders;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.MorphingItem;
 import nu.nethome.home.system.Event;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
 import nu.nethome.home.util.EncoderFactory;
 import nu.nethome.util.plugin.Plugin;
 import nu.nethome.util.ps.*;
@@ -32,13 +35,14 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @SuppressWarnings("UnusedDeclaration")
 @Plugin
 @HomeItemType("Hardware")
-public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDecoderSink {
+public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDecoderSink, MorphingItem {
 
     public static final String RECIEVED_MESSAGE = "+W";
     public static final String RECIEVED_ACK = "+S";
@@ -46,6 +50,7 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
     public static final int INTER_MESSAGE_DELAY = 50;
     public static final int TIMEOUT_MILLISECONDS = 5000;
     private static Logger logger = Logger.getLogger(Tellstick.class.getName());
+    private final AtomicLong modelVersion = new AtomicLong();
 
     private static final String MODEL1 = ("<?xml version = \"1.0\"?> \n"
             + "<HomeItem Class=\"TellstickDuo\"  Category=\"Hardware\"  Morphing=\"true\" >"
@@ -57,10 +62,12 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
     private static final String MODEL2 = ("  <Attribute Name=\"FirmwareVersion\" Type=\"String\" Get=\"getFirmwareVersion\" />"
             + "  <Attribute Name=\"ReceivedMessages\" Type=\"String\" Get=\"getReceivedMessages\" />"
             + "  <Attribute Name=\"SentMessages\" Type=\"String\" Get=\"getSentMessages\" />"
+            + "  <Attribute Name=\"Reconnects\" Type=\"String\" Get=\"getReconnects\" />"
             + "  <Action Name=\"reconnect\" Method=\"reconnect\" Default=\"true\" />"
             + "</HomeItem> ");
 
-    private TellstickPort tellstick;
+    private volatile TellstickPort tellstick;
+    private SupervisedConnection connection;
     private EncoderFactory encoderFactory;
     private Map<String, TellstickEventReceiver> eventReceivers = new HashMap<String, TellstickEventReceiver>();
 
@@ -82,6 +89,10 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
         eventReceivers.put(eventReceiver.getEventType(), eventReceiver);
     }
 
+    public long getModelVersion() {
+        return modelVersion.get();
+    }
+
     @Override
     public String getModel() {
         StringBuilder model = new StringBuilder();
@@ -101,7 +112,8 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
     }
 
     public boolean receiveEvent(Event event) {
-        if (!event.getAttribute("Direction").equals("Out") || tellstick == null || !send) {
+        TellstickPort port = tellstick;
+        if (!event.getAttribute("Direction").equals("Out") || port == null || !send) {
             return false;
         }
         ProtocolEncoder foundEncoder = encoderFactory.getEncoder(event);
@@ -112,7 +124,7 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
                 int rawMessage[] = foundEncoder.encode(parameters, ProtocolEncoder.Phase.REPEATED);
                 RawMessage message = sendQueue.newMessage(new RawMessage(rawMessage, repeat));
                 if (message != null) {
-                    tellstick.sendCommand(message.getData(), message.getRepeat());
+                    port.sendCommand(message.getData(), message.getRepeat());
                     sentMessages++;
                 }
                 return true;
@@ -120,6 +132,7 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
                 logger.warning("Bad protocol message received: " + event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE));
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Could not send message to Tellstick", e);
+                connectionLost();
             }
         }
         return false;
@@ -135,6 +148,23 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
 
     @Override
     public void activate() {
+        // The port is opened in the background, and reopened if it is lost
+        connection = server.getConnectionSupervisor().supervise(name, new SupervisedDevice() {
+            public void open() throws Exception {
+                openPort();
+            }
+
+            public void close() {
+                closePort();
+            }
+
+            public boolean isHealthy() {
+                return tellstick != null;
+            }
+        });
+    }
+
+    private void openPort() throws IOException {
         try {
             tellstick = new TellstickPort(portName, new TellstickPort.Client() {
                 @Override
@@ -142,21 +172,35 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
                     receivedTellstickEvent(message);
                 }
             });
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "failed to open serial port to Tellstick: " + portName, e);
+        } finally {
+            modelVersion.incrementAndGet();
         }
     }
 
-    @Override
-    public void stop() {
+    private void closePort() {
         try {
             if (tellstick != null) {
                 tellstick.stop();
-                tellstick = null;
             }
         } catch (IOException e) {
             logger.log(Level.WARNING, "failed to close serial port: " + portName, e);
         }
+        tellstick = null;
+    }
+
+    private void connectionLost() {
+        SupervisedConnection current = connection;
+        if (current != null) {
+            current.connectionLost();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (connection != null) {
+            connection.stop();
+            connection = null;
+        }
     }
 
     public void receivedTellstickEvent(String message) {
@@ -220,14 +264,19 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
     }
 
     public void reconnect() {
-        stop();
-        activate();
+        if (connection != null) {
+            connection.reconnect();
+        }
     }
 
     public String getState() {
         return (getFirmwareVersion().length() > 0) ? "Connected" : "Not connected";
     }
 
+    public String getReconnects() {
+        return connection != null ? Long.toString(connection.getReconnectCount()) : "0";
+    }
+
     public String getReceivedMessages() {
         return Integer.toString(receivedMessages);
     }
@@ -242,10 +291,12 @@ public class Tellstick extends HomeItemAdapter implements HomeItem, ProtocolDeco
 
     public void setPortName(String m_PortName) {
         this.portName = m_PortName;
+        modelVersion.incrementAndGet();
     }
 
     public String getFirmwareVersion() {
-        return tellstick != null ? tellstick.getFirmwareVersion() : "";
+        TellstickPort port = tellstick;
+        return port != null ? port.getFirmwareVersion() : "";
     }
 
     public String isSend() {
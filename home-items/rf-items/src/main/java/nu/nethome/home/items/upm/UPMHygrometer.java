@@ -34,6 +34,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Gauges", creationEvents = "UPM_Message")
+@ReceivesEvents("UPM_Message,Init")
 public class UPMHygrometer extends HomeItemAdapter implements HomeItem, ValueItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
@@ -103,7 +104,7 @@ public class UPMHygrometer extends HomeItemAdapter implements HomeItem, ValueIte
       * @see ssg.home.HomeItem#activate()
       */
     public void activate() {
-        moistureLoggerComponent.activate();
+        moistureLoggerComponent.activate(server);
     }
 
     /**
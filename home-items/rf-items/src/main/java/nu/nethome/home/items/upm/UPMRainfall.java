@@ -36,6 +36,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType("Gauges")
+@ReceivesEvents("UPM_Message")
 public class UPMRainfall extends HomeItemAdapter implements HomeItem, ValueItem {
 
 	private final String m_Model = ("<?xml version = \"1.0\"?> \n"
@@ -115,7 +116,7 @@ public class UPMRainfall extends HomeItemAdapter implements HomeItem, ValueItem
 	 */
 	public void activate() {
 		// Activate the logger component
-		m_RainfallLogger.activate();
+		m_RainfallLogger.activate(server);
 	}
 
 	/**
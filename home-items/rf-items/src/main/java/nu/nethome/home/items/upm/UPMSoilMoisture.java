@@ -33,6 +33,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Gauges", creationEvents = "UPM_Message")
+@ReceivesEvents("UPM_Message,Init")
 public class UPMSoilMoisture extends HomeItemAdapter implements HomeItem, ValueItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
@@ -119,7 +120,7 @@ public class UPMSoilMoisture extends HomeItemAdapter implements HomeItem, ValueI
     public void activate(HomeService server) {
         super.activate(server);
         // Activate the logger component
-        tempLoggerComponent.activate();
+        tempLoggerComponent.activate(server);
     }
 
     /**
@@ -37,6 +37,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Thermometers", creationEvents = "UPM_Message")
+@ReceivesEvents("UPM_Message,Init")
 public class UPMThermometer extends HomeItemAdapter implements HomeItem, ValueItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
@@ -110,7 +111,7 @@ public class UPMThermometer extends HomeItemAdapter implements HomeItem, ValueIt
     public void activate(HomeService server) {
         super.activate(server);
         // Activate the logger component
-        tempLoggerComponent.activate();
+        tempLoggerComponent.activate(server);
     }
 
     /**
@@ -36,6 +36,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType("Gauges")
+@ReceivesEvents("UPM_Message")
 public class UPMWindDirection extends HomeItemAdapter implements HomeItem, ValueItem {
 
     private final String m_Model = ("<?xml version = \"1.0\"?> \n"
@@ -101,7 +102,7 @@ public class UPMWindDirection extends HomeItemAdapter implements HomeItem, Value
      */
     public void activate() {
         // Activate the logger component
-        m_WindDirectionLogger.activate();
+        m_WindDirectionLogger.activate(server);
     }
 
     /**
@@ -38,6 +38,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType("Gauges")
+@ReceivesEvents("UPM_Message")
 public class UPMWindSpeed extends HomeItemAdapter implements HomeItem, ValueItem {
 
 	private final String m_Model = ("<?xml version = \"1.0\"?> \n"
@@ -127,7 +128,7 @@ public class UPMWindSpeed extends HomeItemAdapter implements HomeItem, ValueItem
 	public void activate() {
 		// Activate the logger component
 		m_WindSpeedLogger.setInterval(Integer.toString(m_LogInterval));
-		m_WindSpeedLogger.activate();
+		m_WindSpeedLogger.activate(server);
 	}
 
 	/**
@@ -22,6 +22,7 @@ package nu.nethome.home.items.zhejiang;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemAdapter;
 import nu.nethome.home.item.HomeItemType;
+import nu.nethome.home.item.ReceivesEvents;
 import nu.nethome.home.system.Event;
 import nu.nethome.util.plugin.Plugin;
 
@@ -38,6 +39,7 @@ import java.util.logging.Logger;
  */
 @Plugin
 @HomeItemType(value = "Lamps", creationEvents = "Zhejiang_Message")
+@ReceivesEvents("Zhejiang_Message,Init")
 public class ZhejiangLamp extends HomeItemAdapter implements HomeItem {
 
     private static final String MODEL = ("<?xml version = \"1.0\"?> \n"
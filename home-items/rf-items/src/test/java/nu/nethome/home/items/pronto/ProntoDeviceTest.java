@@ -23,11 +23,13 @@ import com.sun.org.apache.xerces.internal.parsers.SAXParser;
 import nu.nethome.home.impl.HomeServer;
 import nu.nethome.home.impl.ModelException;
 import nu.nethome.home.impl.LocalHomeItemProxy;
+import nu.nethome.home.impl.TimingWheelScheduler;
 import nu.nethome.home.item.ExecutionFailure;
 import nu.nethome.home.item.HomeItemProxy;
 import nu.nethome.home.item.IllegalValueException;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -50,16 +52,26 @@ public class ProntoDeviceTest {
     @Mock private HomeService server;
     @Mock private HomeServer realServer;
     @Mock private Event sentEvent;
+    private TimingWheelScheduler scheduler;
 
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
+        scheduler = new TimingWheelScheduler(1);
+        scheduler.start();
+        when(server.getScheduler()).thenReturn(scheduler);
+        when(realServer.getScheduler()).thenReturn(scheduler);
         when(server.createEvent(any(String.class), any(String.class))).thenReturn(sentEvent);
         when(realServer.createEvent(any(String.class), any(String.class))).thenReturn(sentEvent);
         pronto = new ProntoDevice();
         pronto.activate(server);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        scheduler.stop();
+    }
+
     @Test
     public void modelIsParsableXML() throws SAXException, IOException {
         SAXParser parser = new SAXParser();
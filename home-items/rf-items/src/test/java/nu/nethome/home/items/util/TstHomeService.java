@@ -19,6 +19,8 @@
 
 package nu.nethome.home.items.util;
 
+import nu.nethome.home.impl.BackoffConnectionSupervisor;
+import nu.nethome.home.impl.TimingWheelScheduler;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemInfo;
 import nu.nethome.home.item.HomeItemProxy;
@@ -37,6 +39,8 @@ public class TstHomeService implements HomeService {
     public List<HomeItem> items = new LinkedList<HomeItem>();
     protected Map<String, TstHomeItemProxy> m_Instances = new HashMap<String, TstHomeItemProxy>();
     public List<Event> sentEvents = new ArrayList<Event>();
+    private TimingWheelScheduler scheduler;
+    private BackoffConnectionSupervisor connectionSupervisor;
 
 
     public int registerInstance(HomeItem item) {
@@ -90,6 +94,25 @@ public class TstHomeService implements HomeService {
         return null;
     }
 
+    public synchronized Scheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new TimingWheelScheduler(1);
+            scheduler.start();
+        }
+        return scheduler;
+    }
+
+    public synchronized ConnectionSupervisor getConnectionSupervisor() {
+        if (connectionSupervisor == null) {
+            connectionSupervisor = new BackoffConnectionSupervisor(getScheduler(), this);
+        }
+        return connectionSupervisor;
+    }
+
+    public TimeSeriesStore getTimeSeriesStore() {
+        return null;
+    }
+
     public void stopServer() {
     }
 
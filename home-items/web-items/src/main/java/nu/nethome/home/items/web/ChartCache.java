@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.items.web;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of rendered chart images, where the least recently used chart is removed first when the cache
+ * is full. Each chart is stored with the version of the data it was rendered from, and is only used as long as
+ * the data has the same version.
+ */
+public class ChartCache {
+
+    private static final double NANO_PER_MILLI = 1000000.0;
+
+    /**
+     * A rendered chart image
+     */
+    public static class Chart {
+        private final String version;
+        private final byte[] image;
+        private final String eTag;
+        private final long lastModified;
+
+        Chart(String version, byte[] image, String eTag, long lastModified) {
+            this.version = version;
+            this.image = image;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getImage() {
+            return image;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return time in ms when the data of the chart was last modified
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    private final int maxCharts;
+    private final long maxBytes;
+    private final Map<String, Chart> charts = new LinkedHashMap<String, Chart>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long renders = 0;
+    private long totalRenderTime = 0;
+    private long maxRenderTime = 0;
+
+    /**
+     * @param maxCharts maximum number of charts in the cache
+     * @param maxBytes  maximum total size of the chart images in the cache
+     */
+    public ChartCache(int maxCharts, long maxBytes) {
+        this.maxCharts = maxCharts;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return an entity tag which identifies a chart rendered from a version of the data
+     */
+    public static String eTag(String key, String version) {
+        return "\"" + Integer.toHexString(key.hashCode()) + "-" + version + "\"";
+    }
+
+    /**
+     * @param key     identifies the chart, for example by data, time range and look
+     * @param version version of the data the chart should be rendered from
+     * @return the cached chart, or null if there is no chart of the data version
+     */
+    public synchronized Chart get(String key, String version) {
+        Chart chart = charts.get(key);
+        if (chart != null && chart.version.equals(version)) {
+            hits++;
+            return chart;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Add a rendered chart, which replaces any earlier chart with the same key
+     *
+     * @param renderTime   time in ns it took to render the chart
+     * @param lastModified time in ms when the data was last modified
+     * @return the added chart
+     */
+    public synchronized Chart put(String key, String version, byte[] image, long renderTime, long lastModified) {
+        renders++;
+        totalRenderTime += renderTime;
+        maxRenderTime = Math.max(maxRenderTime, renderTime);
+        Chart chart = new Chart(version, image, eTag(key, version), lastModified);
+        Chart oldChart = charts.put(key, chart);
+        if (oldChart != null) {
+            bytes -= oldChart.image.length;
+        }
+        bytes += image.length;
+        Iterator<Chart> leastRecentlyUsed = charts.values().iterator();
+        while ((charts.size() > maxCharts || bytes > maxBytes) && leastRecentlyUsed.hasNext()) {
+            bytes -= leastRecentlyUsed.next().image.length;
+            leastRecentlyUsed.remove();
+        }
+        return chart;
+    }
+
+    public synchronized int size() {
+        return charts.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return percentage of the requested charts that were found in the cache
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests > 0 ? hits * 100.0 / requests : 0;
+    }
+
+    /**
+     * @return average time in ms to render a chart
+     */
+    public synchronized double getAverageRenderTime() {
+        return renders > 0 ? totalRenderTime / NANO_PER_MILLI / renders : 0;
+    }
+
+    /**
+     * @return longest time in ms to render a chart
+     */
+    public synchronized double getMaxRenderTime() {
+        return maxRenderTime / NANO_PER_MILLI;
+    }
+}
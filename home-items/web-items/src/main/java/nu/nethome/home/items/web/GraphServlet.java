@@ -19,6 +19,10 @@
 
 package nu.nethome.home.items.web;
 
+import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.SampleVisitor;
+import nu.nethome.home.system.TimeSeriesStore;
+import nu.nethome.home.util.LogFileIndex;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
@@ -37,16 +41,14 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.awt.*;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.Scanner;
 
 /**
  * Generate a graph jpeg image given a file log of values.
@@ -56,14 +58,22 @@ public class GraphServlet extends HttpServlet {
 
 	private static final long serialVersionUID = 1L;
 
-	private SimpleDateFormat m_Format = new SimpleDateFormat("yyyyMMddHHmmss");
+	private static final String PARAMETER_DATE_FORMAT = "yyyyMMddHHmmss";
+	private static final int MAX_CACHED_CHARTS = 64;
+	private static final long MAX_CACHED_BYTES = 8 * 1024 * 1024;
+	private static final long MS_PER_MINUTE = 60 * 1000;
+	private HomeService service;
+	private final ChartCache cache = new ChartCache(MAX_CACHED_CHARTS, MAX_CACHED_BYTES);
+
+	public GraphServlet(HomeService service) {
+		this.service = service;
+	}
 
 	/**
 	 * This is the main enterence point of the class. This is called when a http request is
 	 * routed to this servlet.
 	 */
 	public void service(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
-		ServletOutputStream p = res.getOutputStream();
 		Date startTime = null;
 		Date stopTime = null;
 
@@ -72,12 +82,13 @@ public class GraphServlet extends HttpServlet {
 		if (fileName != null) fileName = fromURL(fileName);
 		String startTimeString = req.getParameter("start");
 		String stopTimeString = req.getParameter("stop");
+		SimpleDateFormat parameterFormat = new SimpleDateFormat(PARAMETER_DATE_FORMAT);
 		try {
 			if (startTimeString != null) {
-				startTime = m_Format.parse(startTimeString);
+				startTime = parameterFormat.parse(startTimeString);
 			}
 			if (stopTimeString != null) {
-				stopTime = m_Format.parse(stopTimeString);
+				stopTime = parameterFormat.parse(stopTimeString);
 			}
 		} catch (ParseException e1) {
 			e1.printStackTrace();
@@ -85,96 +96,87 @@ public class GraphServlet extends HttpServlet {
 		String look = req.getParameter("look");
 		if (look == null) look = "";
 
-		TimeSeries timeSeries = new TimeSeries("Data", Minute.class);
+		// Calculate time window. The current time is truncated to whole minutes, so repeated requests
+		// within a minute give the same chart
+		long now = System.currentTimeMillis();
+		Date currentTime = new Date(now - now % MS_PER_MINUTE);
 
-		// Calculate time window
-		Calendar cal = Calendar.getInstance();
-		Date currentTime = cal.getTime();
-		cal.set(Calendar.HOUR_OF_DAY , 0);
-		cal.set(Calendar.MINUTE , 0);
-		cal.set(Calendar.SECOND , 0);
-		Date startOfDay = cal.getTime();
-		cal.set(Calendar.DAY_OF_WEEK , Calendar.MONDAY);
-		Date startOfWeek = cal.getTime();
-		cal.set(Calendar.DAY_OF_MONTH , 1);
-		Date startOfMonth = cal.getTime();
-		cal.set(Calendar.MONTH , Calendar.JANUARY);
-		Date startOfYear = cal.getTime();  
-		
-		// if (startTime == null) startTime = startOfWeek;
 		if (stopTime == null) stopTime = currentTime;
 		if (startTime == null) startTime = new Date(stopTime.getTime() - 1000L * 60L * 60L * 24L * 2L);
 
-		try {
-			// Open the data file
-			File logFile = new File(fileName);
-			Scanner fileScanner = new Scanner(logFile);
-			Long startTimeMs = startTime.getTime();
-			Long month = 1000L * 60L * 60L * 24L * 30L;
-			boolean doOptimize = true;
-			boolean justOptimized = false;
-			try {
-				while (fileScanner.hasNext()) {
-					try {
-						// Get next log entry
-						String line = fileScanner.nextLine();
-						if (line.length() > 21) {
-							// Adapt the time format
-							String minuteTime = line.substring(0, 16).replace('.', '-');
-							// Parse the time stamp
-							Minute min = Minute.parseMinute(minuteTime);
-							
-							// Ok, this is an ugly optimization. If the current time position in the file
-							// is more than a month (30 days) ahead of the start of the time window, we
-							// quick read two weeks worth of data, assuming that there is 4 samples per hour.
-							// This may lead to scanning past start of window if there are holes in the data
-							// series.
-							if (doOptimize && ((startTimeMs - min.getFirstMillisecond()) > month)) {
-								for (int i = 0; (i < (24 * 4 * 14)) && fileScanner.hasNext(); i++) {
-									fileScanner.nextLine();
-								}
-								justOptimized = true;
-								continue;
-							}
-							// Detect if we have scanned past the window start position just after an optimization scan.
-							// If this is the case it may be because of the optimization. In that case we have to switch 
-							// optimization off and start over.
-							if ((min.getFirstMillisecond() > startTimeMs) && doOptimize && justOptimized) {
-								logFile = new File(fileName);
-								fileScanner = new Scanner(logFile);
-								doOptimize = false;
-								continue;
-							}
-							justOptimized = false;
-							// Check if value is within time window
-							if ((min.getFirstMillisecond() > startTimeMs) &&
-									(min.getFirstMillisecond() < stopTime.getTime())) {
-								// Parse the value
-								double value = Double.parseDouble((line.substring(20)).replace(',', '.'));
-								// Add the entry
-								timeSeries.add(min, value);
-								doOptimize = false;
-							}
-						}
-					}
-					catch (SeriesException se) {
-						// Bad entry, for example due to duplicates at daylight saving time switch
-					}
-					catch (NumberFormatException nfe) {
-						// Bad number format in a line, try to continue
-					}
-				}
-			}
-			catch (Exception e) {
-				System.out.println(e.toString());
-			}
-			finally {
-				fileScanner.close();
+		// Use the cached chart if the data has not changed since it was rendered
+		String key = fileName + "|" + startTime.getTime() + "|" + stopTime.getTime() + "|" + look;
+		File logFile = fileName != null ? new File(fileName) : null;
+		String version = dataVersion(fileName, logFile);
+		String eTag = ChartCache.eTag(key, version);
+		if (eTag.equals(req.getHeader("If-None-Match"))) {
+			res.setHeader("ETag", eTag);
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		ChartCache.Chart chart = cache.get(key, version);
+		if (chart == null) {
+			long renderStart = System.nanoTime();
+			byte[] image = renderChart(fileName, startTime, stopTime, look);
+			if (image == null) {
+				return;
 			}
+			chart = cache.put(key, version, image, System.nanoTime() - renderStart, dataLastModified(fileName, logFile, now));
 		}
-		catch (FileNotFoundException f) {
-			System.out.println(f.toString());
+		long lastModified = chart.getLastModified() - chart.getLastModified() % 1000;
+		long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+		if (req.getHeader("If-None-Match") == null && ifModifiedSince >= lastModified) {
+			res.setHeader("ETag", eTag);
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
 		}
+		res.setContentType("image/png");
+		res.setHeader("Cache-Control", "no-cache, must-revalidate");
+		res.setHeader("ETag", chart.getETag());
+		res.setDateHeader("Last-Modified", lastModified);
+		res.setContentLength(chart.getImage().length);
+		res.setStatus(HttpServletResponse.SC_OK);
+		ServletOutputStream p = res.getOutputStream();
+		p.write(chart.getImage());
+		p.flush();
+		p.close();
+	}
+
+	/**
+	 * @return a version of the data, which changes when the data changes
+	 */
+	private String dataVersion(String fileName, File logFile) {
+		TimeSeriesStore store = service.getTimeSeriesStore();
+		if (fileName != null && store != null && store.hasSeries(fileName)) {
+			return "s" + store.getSampleCount(fileName) + "-" + store.getLastSampleTime(fileName);
+		}
+		if (logFile != null && logFile.isFile()) {
+			return "f" + logFile.length() + "-" + logFile.lastModified();
+		}
+		return "none";
+	}
+
+	/**
+	 * @return the time the data was last changed. For a stored series this is the time of its last sample,
+	 * as the old log file is left unchanged after it has been imported.
+	 */
+	private long dataLastModified(String fileName, File logFile, long now) {
+		TimeSeriesStore store = service.getTimeSeriesStore();
+		if (fileName != null && store != null && store.hasSeries(fileName)) {
+			return store.getLastSampleTime(fileName);
+		}
+		if (logFile != null && logFile.isFile()) {
+			return logFile.lastModified();
+		}
+		return now;
+	}
+
+	/**
+	 * @return the chart of the values as a PNG image, or null if it could not be created
+	 */
+	private byte[] renderChart(String fileName, Date startTime, Date stopTime, String look) {
+		TimeSeries timeSeries = new TimeSeries("Data", Minute.class);
+		readSeries(timeSeries, fileName, startTime, stopTime);
 
 		// Create a collection for plotting
 		TimeSeriesCollection data = new TimeSeriesCollection();
@@ -225,20 +227,49 @@ public class GraphServlet extends HttpServlet {
 
 		try
 		{
-			res.setContentType("image/png");
-			res.setHeader("Cache-Control", "no-store, no-cache, must-revalidate, post-check=0, pre-check=0");
-			res.setHeader("Pragma", "no-cache");
-			res.setStatus( HttpServletResponse.SC_OK );
-			ChartUtilities.writeChartAsPNG(p, chart, xSize, ySize);
+			ByteArrayOutputStream image = new ByteArrayOutputStream();
+			ChartUtilities.writeChartAsPNG(image, chart, xSize, ySize);
+			return image.toByteArray();
 		}
 		catch (IOException e)
 		{
 			System.err.println("Problem occurred creating chart.");
+			return null;
 		}
+	}
 
-		p.flush();
-		p.close();
-		return;
+	public ChartCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Read the values from the time series store, or from the log file if the series is not stored
+	 */
+	private void readSeries(final TimeSeries timeSeries, String fileName, Date startTime, Date stopTime) {
+		SampleVisitor adder = new SampleVisitor() {
+			public void sample(long time, double value) {
+				try {
+					timeSeries.add(new Minute(new Date(time)), value);
+				}
+				catch (SeriesException se) {
+					// Duplicate entry within the same minute, for example at daylight saving time switch
+				}
+			}
+		};
+		if (fileName == null) {
+			return;
+		}
+		TimeSeriesStore store = service.getTimeSeriesStore();
+		if (store != null && store.hasSeries(fileName)) {
+			store.read(fileName, startTime.getTime(), stopTime.getTime(), adder);
+			return;
+		}
+		try {
+			LogFileIndex.forFile(new File(fileName)).read(startTime.getTime(), stopTime.getTime(), adder);
+		}
+		catch (IOException e) {
+			System.out.println(e.toString());
+		}
 	}
 
 	public static String fromURL(String aURLFragment){
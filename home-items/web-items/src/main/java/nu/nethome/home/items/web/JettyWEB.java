@@ -75,6 +75,9 @@ public class JettyWEB extends HomeItemAdapter implements HomeItem, HomeWebServer
             + "<HomeItem Class=\"JettyWEB\" Category=\"GUI\" StartOrder=\"7\" >"
             + "  <Attribute Name=\"Port\" Type=\"String\" Get=\"getPort\" 	Set=\"setPort\" Default=\"true\" />"
             + "  <Attribute Name=\"MediaDirectory\" Type=\"String\" Get=\"getMediaDirectory\" 	Set=\"setMediaDirectory\" />"
+            + "  <Attribute Name=\"GraphCacheHitRate\" Type=\"String\" Get=\"getGraphCacheHitRate\" />"
+            + "  <Attribute Name=\"GraphRenderTime\" Type=\"String\" Get=\"getGraphRenderTime\" />"
+            + "  <Attribute Name=\"MaxGraphRenderTime\" Type=\"String\" Get=\"getMaxGraphRenderTime\" />"
             + "</HomeItem> ");
 
     private static Logger logger = Logger.getLogger(JettyWEB.class.getName());
@@ -82,6 +85,7 @@ public class JettyWEB extends HomeItemAdapter implements HomeItem, HomeWebServer
     protected List<Registration> externalServlets = new LinkedList<Registration>();
     protected boolean isRunning = false;
     private String mediaDirectory = "../media";
+    private GraphServlet graphServlet;
     Context applicationsContext;
 
     // Public attributes
@@ -126,7 +130,8 @@ public class JettyWEB extends HomeItemAdapter implements HomeItem, HomeWebServer
             applicationsContext.addServlet(new ServletHolder(resourceHandler), resourceHandler.getPathSpecification());
 
             // Create a graph Servlet
-            applicationsContext.addServlet(new ServletHolder(new GraphServlet()), "/Graph");
+            graphServlet = new GraphServlet(server);
+            applicationsContext.addServlet(new ServletHolder(graphServlet), "/Graph");
 
             // Create a rest Servlet
             applicationsContext.addServlet(new ServletHolder(new RestServlet(server)), "/rest/*");
@@ -185,6 +190,22 @@ public class JettyWEB extends HomeItemAdapter implements HomeItem, HomeWebServer
     public void setMediaDirectory(String mediaDirectory) {
         this.mediaDirectory = mediaDirectory;
     }
-}
 
+    /**
+     * @return percentage of the graph requests that were served from the cache of rendered graphs
+     */
+    public String getGraphCacheHitRate() {
+        return graphServlet != null ? String.format("%.2f", graphServlet.getCache().getHitRate()) : "";
+    }
+
+    /**
+     * @return average time in ms to render a graph
+     */
+    public String getGraphRenderTime() {
+        return graphServlet != null ? String.format("%.2f", graphServlet.getCache().getAverageRenderTime()) : "";
+    }
 
+    public String getMaxGraphRenderTime() {
+        return graphServlet != null ? String.format("%.2f", graphServlet.getCache().getMaxRenderTime()) : "";
+    }
+}
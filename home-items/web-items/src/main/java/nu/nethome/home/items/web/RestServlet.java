@@ -20,8 +20,13 @@
 package nu.nethome.home.items.web;
 
 import nu.nethome.home.item.HomeItemProxy;
+import nu.nethome.home.item.LoggerComponent;
 import nu.nethome.home.system.HomeService;
-import org.jfree.data.general.SeriesException;
+import nu.nethome.home.system.RollupVisitor;
+import nu.nethome.home.system.SampleVisitor;
+import nu.nethome.home.system.TimeSeriesStore;
+import nu.nethome.home.util.LogFileIndex;
+import nu.nethome.home.util.LttbDownsampler;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -44,12 +49,18 @@ import java.util.regex.Pattern;
 public class RestServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
-    private static final SimpleDateFormat inputDateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-    private static final SimpleDateFormat fileDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    private static final String INPUT_DATE_FORMAT = "yyyyMMddHHmmss";
+    private static final String OUTPUT_DATE_FORMAT = "yyyy-MM-dd HH:mm";
     private static final String START_TIME_PARAMETER = "start";
-    private static final int LINE_LENGTH=23;
     private static final String STOP_TIME_PARAMETER = "stop";
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    private static final String FORMAT_PARAMETER = "format";
+    private static final String TEXT_FORMAT = "text";
+    private static final String RESOLUTION_PARAMETER = "resolution";
+    private static final String POINTS_PARAMETER = "points";
+    private static final long MS_PER_HOUR = 1000L * 60L * 60L;
+    private static final long MS_PER_DAY = MS_PER_HOUR * 24L;
+    private static final long MAX_RAW_SPAN = 8 * MS_PER_DAY;
+    private static final long MAX_HOUR_SPAN = 32 * MS_PER_DAY;
     private Pattern logsPattern = Pattern.compile("/logs/([0-9]*)");
     private HomeService service;
 
@@ -72,9 +83,6 @@ public class RestServlet extends HttpServlet {
     }
 
     private void getLog(HttpServletRequest req, HttpServletResponse res, String itemId) throws IOException {
-        ServletOutputStream p = res.getOutputStream();
-
-        p.print("[");
         Date startTime = parseParameterDate(req, START_TIME_PARAMETER);
         Date stopTime = parseParameterDate(req, STOP_TIME_PARAMETER);
         if (stopTime == null) {
@@ -89,80 +97,152 @@ public class RestServlet extends HttpServlet {
             fileName = item.getAttributeValue("LogFile");
         }
         if (fileName != null) fileName = fromURL(fileName);
+        TimeSeriesStore store = service.getTimeSeriesStore();
+        boolean isStored = fileName != null && store != null && store.hasSeries(fileName);
 
-        try {
-            // Open the data file
-            FileReader reader = new FileReader(fileName);
-            Long startTimeMs = startTime.getTime();
-            Long month = 1000L * 60L * 60L * 24L * 30L;
-            boolean doOptimize = true;
-            boolean justOptimized = false;
-            boolean isFirst = true;
-            BufferedReader br = new BufferedReader(reader);
-            String line;
-            try {
-                while ((line = br.readLine()) != null) {
-                    try {
-                        // Get next log entry
-                        if (line.length() > 21) {
-                            // Adapt the time format
-                            String minuteTime = line.substring(0, 16).replace('.', '-');
-                            // Parse the time stamp
-
-                            Date min = fileDateFormat.parse(minuteTime);
-
-                            // Ok, this is an ugly optimization. If the current time position in the file
-                            // is more than two months (60 days) ahead of the start of the time window, we
-                            // quick read 1 month worth of data, assuming that there is 4 samples per hour.
-                            // This may lead to scanning past start of window if there are holes in the data
-                            // series.
-                            if (doOptimize && ((startTimeMs - min.getTime()) > month * 2)) {
-                                long skiped = br.skip(24 * 4 * 30 * LINE_LENGTH);
-                                justOptimized = true;
-                                continue;
-                            }
-                            // Detect if we have scanned past the window start position just after an optimization scan.
-                            // If this is the case it may be because of the optimization. In that case we have to switch
-                            // optimization off and start over.
-                            if ((min.getTime() > startTimeMs) && doOptimize && justOptimized) {
-                                reader.reset();
-                                doOptimize = false;
-                                continue;
-                            }
-                            justOptimized = false;
-                            // Check if value is within time window
-                            if ((min.getTime() > startTimeMs) &&
-                                    (min.getTime() < stopTime.getTime())) {
-                                // Parse the value
-                                double value = Double.parseDouble((line.substring(20)).replace(',', '.'));
-                                // Add the entry
-                                printEntry(p, min, value, isFirst);
-                                isFirst = false;
-                                doOptimize = false;
-                            }
-                        }
-                    } catch (SeriesException se) {
-                        // Bad entry, for example due to duplicates at daylight saving time switch
-                    } catch (NumberFormatException nfe) {
-                        // Bad number format in a line, try to continue
-                    }
-                }
-            } catch (Exception e) {
-                System.out.println(e.toString());
-            } finally {
-                br.close();
+        if (TEXT_FORMAT.equals(req.getParameter(FORMAT_PARAMETER))) {
+            // Export in the same format as the old log files
+            res.setContentType("text/plain");
+            Writer out = new OutputStreamWriter(res.getOutputStream(), "UTF-8");
+            if (isStored) {
+                store.exportText(fileName, startTime.getTime(), stopTime.getTime(), LoggerComponent.DEFAULT_TIME_FORMAT, out);
             }
-        } catch (FileNotFoundException f) {
-            System.out.println(f.toString());
+            out.close();
+            return;
+        }
+        int points = parsePoints(req);
+        String resolution = selectResolution(req.getParameter(RESOLUTION_PARAMETER),
+                stopTime.getTime() - startTime.getTime(), points);
+        ServletOutputStream p = res.getOutputStream();
+        p.print("[");
+        if (isStored && !TimeSeriesStore.RAW.equals(resolution) && points == 0) {
+            printRollups(p, store, fileName, resolution, startTime, stopTime);
+        } else {
+            printEntries(p, isStored ? store : null, fileName, resolution, points, startTime, stopTime);
         }
         p.print("]");
         p.flush();
         p.close();
-        return;
     }
 
-    private void printEntry(ServletOutputStream p, Date time, double value, boolean isFirst) throws IOException {
-        p.print(String.format("%s[\"%s\", %s]", (isFirst ? "" : ","), dateFormat.format(time), value));
+    /**
+     * Print the values from the time series store, or from the log file if the series is not stored. If a number
+     * of points is given, the values are downsampled to at most that many entries, and for a rollup resolution
+     * the mean of each period is used as value.
+     */
+    private void printEntries(final ServletOutputStream p, TimeSeriesStore store, String fileName, String resolution,
+                              int points, Date startTime, Date stopTime) throws IOException {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(OUTPUT_DATE_FORMAT);
+        final IOException[] failure = new IOException[1];
+        SampleVisitor printer = new SampleVisitor() {
+            private boolean isFirst = true;
+
+            public void sample(long time, double value) {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    printEntry(p, dateFormat.format(new Date(time)), value, isFirst);
+                    isFirst = false;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        LttbDownsampler downsampler = null;
+        if (points > 0) {
+            downsampler = new LttbDownsampler(points, startTime.getTime(), stopTime.getTime(), printer);
+        }
+        final SampleVisitor visitor = downsampler != null ? downsampler : printer;
+        if (store != null && !TimeSeriesStore.RAW.equals(resolution)) {
+            store.readRollups(fileName, startTime.getTime(), stopTime.getTime(), resolution, new RollupVisitor() {
+                public void rollup(long time, double min, double max, double mean, long count) {
+                    visitor.sample(time, mean);
+                }
+            });
+        } else if (store != null) {
+            store.read(fileName, startTime.getTime(), stopTime.getTime(), visitor);
+        } else if (fileName != null) {
+            try {
+                LogFileIndex.forFile(new File(fileName)).read(startTime.getTime(), stopTime.getTime(), visitor);
+            } catch (FileNotFoundException f) {
+                System.out.println(f.toString());
+            }
+        }
+        if (downsampler != null) {
+            downsampler.finish();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Print the rollups of a stored series as entries of the start time of the period and the mean, min and max value
+     */
+    private void printRollups(final ServletOutputStream p, TimeSeriesStore store, String series, String resolution,
+                              Date startTime, Date stopTime) throws IOException {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(OUTPUT_DATE_FORMAT);
+        final IOException[] failure = new IOException[1];
+        store.readRollups(series, startTime.getTime(), stopTime.getTime(), resolution, new RollupVisitor() {
+            private boolean isFirst = true;
+
+            public void rollup(long time, double min, double max, double mean, long count) {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    p.print(String.format("%s[\"%s\", %s, %s, %s]", (isFirst ? "" : ","),
+                            dateFormat.format(new Date(time)), mean, min, max));
+                    isFirst = false;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * @return the requested resolution, or if no valid resolution is requested, one which gives at most
+     * about a thousand entries for the time span. If the entries are downsampled to a number of points, the
+     * coarsest resolution which still gives at least that many entries is selected.
+     */
+    static String selectResolution(String requested, long span, int points) {
+        if (TimeSeriesStore.RAW.equals(requested) || TimeSeriesStore.HOUR.equals(requested) ||
+                TimeSeriesStore.DAY.equals(requested)) {
+            return requested;
+        }
+        if (points > 0) {
+            if (span / MS_PER_DAY >= points) {
+                return TimeSeriesStore.DAY;
+            }
+            return span / MS_PER_HOUR >= points ? TimeSeriesStore.HOUR : TimeSeriesStore.RAW;
+        }
+        if (span <= MAX_RAW_SPAN) {
+            return TimeSeriesStore.RAW;
+        }
+        return span <= MAX_HOUR_SPAN ? TimeSeriesStore.HOUR : TimeSeriesStore.DAY;
+    }
+
+    private void printEntry(ServletOutputStream p, String time, double value, boolean isFirst) throws IOException {
+        p.print(String.format("%s[\"%s\", %s]", (isFirst ? "" : ","), time, value));
+    }
+
+    /**
+     * @return the requested number of points to downsample to, at least LttbDownsampler.MIN_POINTS,
+     * or 0 if the values should not be downsampled
+     */
+    private int parsePoints(HttpServletRequest req) {
+        String points = req.getParameter(POINTS_PARAMETER);
+        try {
+            int result = points != null ? Integer.parseInt(points) : 0;
+            return result > 0 ? Math.max(LttbDownsampler.MIN_POINTS, result) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     private Date oneWeekBack(Date stopTime) {
@@ -174,7 +254,7 @@ public class RestServlet extends HttpServlet {
         Date result = null;
         try {
             if (timeString != null) {
-                result = inputDateFormat.parse(timeString);
+                result = new SimpleDateFormat(INPUT_DATE_FORMAT).parse(timeString);
             }
         } catch (ParseException e1) {
             // Silently ignore
@@ -76,22 +76,18 @@ public class CommandAttributePrinter implements AttributeTypePrinterInterface {
     }
 
     private void printItemSelection(PrintWriter p, String identity, String targetItemName) {
-        List<DirectoryEntry> directoryEntries = server.listInstances("");
+        List<DirectoryEntry> directoryEntries = server.listInstances("@hasAction");
         p.println("  <td>");
         p.println("  <select class=\"attributecmd-item\" name=\""
                 + identity + "\">");
         p.println("  <optgroup label=\"Select a home item\">");
         p.println("  <option class=\"attributecmd-itemdim\" value=\"\">[No Action Selected]</option>");
         for (DirectoryEntry directoryEntry : directoryEntries) {
-            HomeItemProxy item = server.openInstance(directoryEntry.getInstanceName());
-            List<Action> actions = item.getModel().getActions();
-            if (actions.size() == 0)
-                continue;
             p.println("  <option value=\""
-                    + item.getAttributeValue("ID")
+                    + directoryEntry.getInstanceId()
                     + "\""
                     + (directoryEntry.getInstanceName().equals(targetItemName) ? " selected='selected'" : "")
-                    + ">" + item.getAttributeValue("Name")
+                    + ">" + directoryEntry.getInstanceName()
                     + "</option>");
         }
         p.println("  </optgroup>");
@@ -89,16 +89,11 @@ public class EditItemPage extends PortletPage {
     }
 
     private String findServerInstanceId() {
-        List<DirectoryEntry> names = this.server.listInstances("");
-        for (DirectoryEntry directoryEntry : names) {
-            // Open the instance so we know class and category
-            HomeItemProxy item = this.server.openInstance(directoryEntry.getInstanceName());
-            HomeItemModel model = item.getModel();
-            if (model.getClassName().equals("HomeServer")) {
-                return item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE);
-            }
+        List<DirectoryEntry> servers = this.server.listInstances("@class=HomeServer&@limit=1");
+        if (servers.isEmpty()) {
+            return "";
         }
-        return "";
+        return Long.toString(servers.get(0).getInstanceId());
     }
 
     @Override
@@ -782,18 +777,13 @@ public class EditItemPage extends PortletPage {
     private void printRoomsAsOptions(PrintWriter p) {
         p.println("  <optgroup label=\"Select a Location\">");
         p.println("  <option>[Select Location]</option>");
-        List<DirectoryEntry> directoryEntries = server.listInstances("");
+        List<DirectoryEntry> directoryEntries = server.listInstances("@category=Infrastructure");
         for (DirectoryEntry directoryEntry : directoryEntries) {
-            // Open the instance so we know class and category
-            HomeItemProxy item = server.openInstance(directoryEntry.getInstanceName());
-            HomeItemModel model = item.getModel();
-            if (model.getCategory().equalsIgnoreCase("Infrastructure")) {
-                p.println("  <option value=\""
-                        + item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE)
-                        + "\""
-                        + ">" + HTMLEncode.encode(item.getAttributeValue("Name"))
-                        + "</option>");
-            }
+            p.println("  <option value=\""
+                    + directoryEntry.getInstanceId()
+                    + "\""
+                    + ">" + HTMLEncode.encode(directoryEntry.getInstanceName())
+                    + "</option>");
         }
         p.println("  </optgroup>");
     }
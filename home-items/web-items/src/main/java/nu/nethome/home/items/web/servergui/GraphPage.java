@@ -38,6 +38,8 @@ public class GraphPage extends PortletPage {
 
     public static final int HOURS_24_IN_MS = 24 * 60 * 60 * 1000;
     public static final int DAYS_IN_WEEK = 7;
+    // About the width of the chart in pixels, more points than this are not visible
+    public static final int GRAPH_POINTS = 1000;
 
     private class GraphPageArguments extends HomeGUIArguments {
 
@@ -147,10 +149,11 @@ public class GraphPage extends PortletPage {
         Date endOfDay = new Date(cal.getTime().getTime() + HOURS_24_IN_MS * (DAYS_IN_WEEK - 1));
         String graphTitle = String.format("%s, Week starting %2$tA %2$tF", item.getAttributeValue(HomeItemProxy.NAME_ATTRIBUTE), startOfWeek);
         printParameter(p, "graph_title", graphTitle);
-        printParameter(p, "jsonurl", String.format("/rest/logs/%s?start=%s&stop=%s",
+        printParameter(p, "jsonurl", String.format("/rest/logs/%s?start=%s&stop=%s&points=%d",
                 item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE),
                 logDateFormat.format(startOfWeek),
-                logDateFormat.format(endOfDay)));
+                logDateFormat.format(endOfDay),
+                GRAPH_POINTS));
         printParameter(p, "tick_format", "%a %R");
 
         printGraphNavigationPanel(p, item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE),
@@ -222,10 +225,11 @@ public class GraphPage extends PortletPage {
         Date previousMonth = cal.getTime();
         String graphTitle = String.format("%s, %2$tB %2$tY", item.getAttributeValue(HomeItemProxy.NAME_ATTRIBUTE), currentTime);
         printParameter(p, "graph_title", graphTitle);
-        printParameter(p, "jsonurl", String.format("/rest/logs/%s?start=%s&stop=%s",
+        printParameter(p, "jsonurl", String.format("/rest/logs/%s?start=%s&stop=%s&points=%d",
                 item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE),
                 logDateFormat.format(startOfMonth),
-                logDateFormat.format(endOfMonth)));
+                logDateFormat.format(endOfMonth),
+                GRAPH_POINTS));
         printParameter(p, "tick_format", "%a %#d");
 
         printGraphNavigationPanel(p, item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE),
@@ -252,10 +256,11 @@ public class GraphPage extends PortletPage {
         Date endOfDay = cal.getTime();
         String graphTitle = String.format("%s %2$tA %2$tF", item.getAttributeValue(HomeItemProxy.NAME_ATTRIBUTE), currentTime);
         printParameter(p, "graph_title", graphTitle);
-        printParameter(p, "jsonurl", String.format("/rest/logs/%s?start=%s&stop=%s",
+        printParameter(p, "jsonurl", String.format("/rest/logs/%s?start=%s&stop=%s&points=%d",
                 item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE),
                 logDateFormat.format(startOfDay),
-                logDateFormat.format(endOfDay)));
+                logDateFormat.format(endOfDay),
+                GRAPH_POINTS));
         printParameter(p, "tick_format", "%R");
 
         printGraphNavigationPanel(p, item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE),
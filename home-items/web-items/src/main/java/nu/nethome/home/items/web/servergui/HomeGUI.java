@@ -290,18 +290,15 @@ public class HomeGUI extends HttpServlet implements FinalEventListener, HomeItem
         if (funcId != null && funcId.equals("eventtable")) {
             printEventsTable(p);
         } else if (funcId != null && funcId.compareToIgnoreCase("gethomeitems") == 0) {
-            List<DirectoryEntry> names = homeServer.listInstances("");
+            List<DirectoryEntry> names = homeServer.listInstances("@hasAction");
 
-            // Loop through all instances to find all home items
+            // Loop through all instances with actions
             p.format("{\"results\":[");
             boolean b = false;
             for (DirectoryEntry directoryEntry : names) {
-                // Open the instance so we know class and category
+                // Open the instance so we know the class
                 HomeItemProxy item = homeServer.openInstance(directoryEntry.getInstanceName());
                 HomeItemModel model = item.getModel();
-                List<Action> actions = model.getActions();
-                if (actions.size() == 0)
-                    continue;
                 if (b) p.print(",");
                 p.format("{\"class\":\"%s\", \"id\":\"%s\", \"name\":\"%s\"}",
                         model.getClassName(), item.getAttributeValue("ID"), item.getAttributeValue("Name"));
@@ -181,17 +181,11 @@ public class PlanPage implements HomePageInterface {
     }
 
     private HomeItemProxy findAnyPlanItem(HomeService server) {
-        List<DirectoryEntry> names = server.listInstances("");
-        for (DirectoryEntry directoryEntry : names) {
-            // Open the instance so we know class and category
-            HomeItemProxy planItem = server.openInstance(directoryEntry.getInstanceName());
-            HomeItemModel model = planItem.getModel();
-            // Check if it is a Plan-item
-            if (model.getClassName().equals("Plan")) {
-                return planItem;
-            }
+        List<DirectoryEntry> plans = server.listInstances("@class=Plan&@limit=1");
+        if (plans.isEmpty()) {
+            return null;
         }
-        return null;
+        return server.openInstance(Long.toString(plans.get(0).getInstanceId()));
     }
 
     /**
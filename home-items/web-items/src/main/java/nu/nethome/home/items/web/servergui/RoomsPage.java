@@ -23,7 +23,6 @@
  */
 package nu.nethome.home.items.web.servergui;
 
-import nu.nethome.home.item.HomeItemModel;
 import nu.nethome.home.item.HomeItemProxy;
 import nu.nethome.home.item.IllegalValueException;
 import nu.nethome.home.system.DirectoryEntry;
@@ -154,17 +153,13 @@ public class RoomsPage extends PortletPage {
 
     private void addAllRooms(HomeItemProxy foundLocationItem, HomeService server) {
 
-        List<DirectoryEntry> directoryEntries = server.listInstances("");
+        List<DirectoryEntry> directoryEntries = server.listInstances("@class=Room");
         StringBuilder result = new StringBuilder();
         String separator = "";
         for (DirectoryEntry directoryEntry : directoryEntries) {
-            HomeItemProxy item = server.openInstance(directoryEntry.getInstanceName());
-            HomeItemModel model = item.getModel();
-            if (model.getClassName().equals("Room")) {
-                result.append(separator);
-                result.append(item.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE));
-                separator = ",";
-            }
+            result.append(separator);
+            result.append(directoryEntry.getInstanceId());
+            separator = ",";
         }
         try {
             foundLocationItem.setAttributeValue("Items", result.toString());
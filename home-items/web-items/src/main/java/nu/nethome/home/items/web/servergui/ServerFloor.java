@@ -24,7 +24,6 @@
 package nu.nethome.home.items.web.servergui;
 
 import nu.nethome.home.item.HomeItemModel;
-import nu.nethome.home.item.HomeItemProxy;
 import nu.nethome.home.system.DirectoryEntry;
 import nu.nethome.home.system.HomeService;
 
@@ -34,7 +33,6 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.List;
 
 public class ServerFloor extends PortletPage {
 
@@ -64,16 +62,13 @@ public class ServerFloor extends PortletPage {
         }
 
         PrintWriter p = res.getWriter();
-        List<DirectoryEntry> directoryEntries = server.listInstances("");
         ArrayList<String> categoryItems = new ArrayList<String>();
 
-        // Loop through all instances to find the rooms and categorize them after column
-        for (DirectoryEntry directoryEntry : directoryEntries) {
-            // Open the instance so we know class and category
-            HomeItemProxy item = server.openInstance(directoryEntry.getInstanceName());
-            HomeItemModel model = item.getModel();
-            if (model.getCategory().equals(selectedCategory)) {
-                categoryItems.add(item.getAttributeValue("Name"));
+        // Loop through all instances in the selected category. Only known categories are searched for, so the
+        // subpage cannot add other terms to the search pattern
+        if (isCategory(selectedCategory)) {
+            for (DirectoryEntry directoryEntry : server.listInstances("@category=" + selectedCategory)) {
+                categoryItems.add(directoryEntry.getInstanceName());
             }
         }
 
@@ -104,4 +99,13 @@ public class ServerFloor extends PortletPage {
         // End right column
         printColumnEnd(p);
     }
+
+    private static boolean isCategory(String name) {
+        for (String category : HomeItemModel.HOME_ITEM_CATEGORIES) {
+            if (category.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
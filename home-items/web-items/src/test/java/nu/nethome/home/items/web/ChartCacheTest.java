@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.items.web;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ChartCacheTest {
+
+    ChartCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ChartCache(3, 100);
+    }
+
+    @Test
+    public void returnsChartOfSameVersion() {
+        cache.put("a", "v1", new byte[10], 1000000, 5000);
+
+        ChartCache.Chart chart = cache.get("a", "v1");
+
+        assertThat(chart.getImage().length, is(10));
+        assertThat(chart.getETag(), is(ChartCache.eTag("a", "v1")));
+        assertThat(chart.getLastModified(), is(5000L));
+    }
+
+    @Test
+    public void missesWhenDataVersionChanges() {
+        cache.put("a", "v1", new byte[10], 1000000, 5000);
+
+        assertThat(cache.get("a", "v2") == null, is(true));
+        assertThat(ChartCache.eTag("a", "v1").equals(ChartCache.eTag("a", "v2")), is(false));
+    }
+
+    @Test
+    public void removesLeastRecentlyUsedChart() {
+        cache.put("a", "v1", new byte[10], 0, 0);
+        cache.put("b", "v1", new byte[10], 0, 0);
+        cache.put("c", "v1", new byte[10], 0, 0);
+        cache.get("a", "v1");
+
+        cache.put("d", "v1", new byte[10], 0, 0);
+
+        assertThat(cache.size(), is(3));
+        assertThat(cache.get("a", "v1") != null, is(true));
+        assertThat(cache.get("b", "v1") == null, is(true));
+    }
+
+    @Test
+    public void limitsTotalSize() {
+        cache.put("a", "v1", new byte[60], 0, 0);
+        cache.put("b", "v1", new byte[60], 0, 0);
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getBytes(), is(60L));
+        cache.put("b", "v2", new byte[30], 0, 0);
+        assertThat(cache.getBytes(), is(30L));
+    }
+
+    @Test
+    public void measuresHitRateAndRenderTime() {
+        cache.get("a", "v1");
+        cache.put("a", "v1", new byte[10], 2000000, 0);
+        cache.get("a", "v1");
+        cache.get("a", "v1");
+        cache.get("a", "v1");
+        cache.put("b", "v1", new byte[10], 4000000, 0);
+
+        assertThat(cache.getHitRate(), is(75.0));
+        assertThat(cache.getAverageRenderTime(), is(3.0));
+        assertThat(cache.getMaxRenderTime(), is(4.0));
+    }
+}
@@ -23,15 +23,14 @@ import nu.nethome.home.item.Action;
 import nu.nethome.home.item.HomeItem;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 public class ActionModel implements Action {
     private final String name;
-    private final Method actionMethod;
+    private final ItemMethod actionMethod;
 
     public ActionModel(String actionName, String actionMethod, Class<? extends HomeItem> clazz) throws NoSuchMethodException {
 		this.name = actionName;
-        this.actionMethod = clazz.getMethod(actionMethod, (Class[]) null);
+        this.actionMethod = ItemMethod.bind(clazz, actionMethod);
 	}
 
     public String getName() {
@@ -39,6 +38,6 @@ public class ActionModel implements Action {
     }
 
     public String call(HomeItem item) throws InvocationTargetException, IllegalAccessException {
-        return (String) actionMethod.invoke(item, (Object[]) null);
+        return (String) actionMethod.call(item);
     }
 }
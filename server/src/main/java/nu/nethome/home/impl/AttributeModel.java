@@ -22,14 +22,13 @@ package nu.nethome.home.impl;
 import nu.nethome.home.item.HomeItem;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
 
 public class AttributeModel {
-    private final Method setMethod;
-    private final Method getMethod;
-    private final Method initMethod;
+    private final ItemMethod setMethod;
+    private final ItemMethod getMethod;
+    private final ItemMethod initMethod;
     private final String name;
     private final List<String> valueList;
     private final String type;
@@ -45,21 +44,13 @@ public class AttributeModel {
                           String initMethodName, List<String> valueList) {
         this.name = name;
         this.type = type;
-        this.setMethod = getGetMethod(clazz, setMethodName, new Class[]{String.class});
-        this.getMethod = getGetMethod(clazz, getMethodName, (Class[]) null);
-        Method init = getGetMethod(clazz, initMethodName, new Class[]{String.class});
+        this.setMethod = ItemMethod.bindIfPresent(clazz, setMethodName, String.class);
+        this.getMethod = ItemMethod.bindIfPresent(clazz, getMethodName);
+        ItemMethod init = ItemMethod.bindIfPresent(clazz, initMethodName, String.class);
         initMethod = init != null ? init : setMethod;
         this.valueList = Collections.unmodifiableList(valueList);
     }
 
-    private Method getGetMethod(Class<? extends HomeItem> clazz, String methodName, Class<?>... parameterType) {
-        try {
-            return methodName != null ? clazz.getMethod(methodName, parameterType) : null;
-        } catch (NoSuchMethodException e) {
-            return null;
-        }
-    }
-
     public String getName() {
         return name;
     }
@@ -86,7 +77,7 @@ public class AttributeModel {
 
     public String getValue(HomeItem item) throws InvocationTargetException, IllegalAccessException, ModelException {
         if (getMethod != null) {
-            return (String) getMethod.invoke(item, (Object[]) null);
+            return (String) getMethod.call(item);
         } else {
             throw new ModelException("No Get Method");
         }
@@ -94,7 +85,7 @@ public class AttributeModel {
 
     public void setValue(HomeItem item, String value) throws InvocationTargetException, IllegalAccessException, ModelException {
         if (setMethod != null) {
-            setMethod.invoke(item, value);
+            setMethod.call(item, value);
         } else {
             throw new ModelException("No Set Method");
         }
@@ -102,7 +93,7 @@ public class AttributeModel {
 
     public void initValue(HomeItem item, String value) throws InvocationTargetException, IllegalAccessException, ModelException {
         if (initMethod != null) {
-            initMethod.invoke(item, value);
+            initMethod.call(item, value);
         } else {
             throw new ModelException("No Init Method");
         }
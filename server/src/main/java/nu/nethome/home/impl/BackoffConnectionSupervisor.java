@@ -0,0 +1,478 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.ConnectionSupervisor;
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
+import nu.nethome.home.system.Scheduler;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A ConnectionSupervisor which retries with exponential backoff and jitter. The delays are kept by the shared
+ * Scheduler, while the calls to the devices run on worker threads, since opening a connection may block for
+ * some time. The calls to one device are made one at a time and never with a lock held, so a device which hangs
+ * only occupies one worker thread and does not hold up the supervision of the other devices.
+ */
+public class BackoffConnectionSupervisor implements ConnectionSupervisor {
+
+    public static final long DEFAULT_INITIAL_DELAY = 1000;
+    public static final long DEFAULT_MAX_DELAY = 5 * 60 * 1000;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 5000;
+    public static final long DEFAULT_STOP_TIMEOUT = 2000;
+    private static final double JITTER = 0.2;
+    private static Logger logger = Logger.getLogger(BackoffConnectionSupervisor.class.getName());
+
+    private final Scheduler scheduler;
+    private final HomeService server;
+    private final ThreadPoolExecutor workers;
+    private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+    private final Random random = new Random();
+    private long initialDelay = DEFAULT_INITIAL_DELAY;
+    private long maxDelay = DEFAULT_MAX_DELAY;
+    private long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+    private long stopTimeout = DEFAULT_STOP_TIMEOUT;
+
+    /**
+     * @param scheduler used for the delays and health checks
+     * @param server    used to send the Events about state changes, may be null
+     */
+    public BackoffConnectionSupervisor(Scheduler scheduler, HomeService server) {
+        this.scheduler = scheduler;
+        this.server = server;
+        // Each connection uses at most one worker at a time, so the number of threads is limited by the
+        // number of connections with a call in progress
+        workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ConnectionSupervisor-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param initialDelay delay in ms before the first retry
+     * @param maxDelay     max delay in ms between retries
+     */
+    public void setDelays(long initialDelay, long maxDelay) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = Math.max(initialDelay, maxDelay);
+    }
+
+    /**
+     * @param healthCheckInterval time in ms between checks of open connections
+     */
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * @param stopTimeout max time in ms to wait for a call to a device in progress when a connection is stopped,
+     *                    before the closing of the device is left to the background
+     */
+    public void setStopTimeout(long stopTimeout) {
+        this.stopTimeout = stopTimeout;
+    }
+
+    public SupervisedConnection supervise(String deviceName, SupervisedDevice device) {
+        Connection connection = new Connection(deviceName, device);
+        connections.add(connection);
+        connection.start();
+        return connection;
+    }
+
+    /**
+     * @return all supervised connections
+     */
+    public List<SupervisedConnection> getConnections() {
+        return new ArrayList<SupervisedConnection>(connections);
+    }
+
+    /**
+     * Stop supervising and close all connections
+     */
+    public void stop() {
+        for (Connection connection : connections) {
+            connection.stop();
+        }
+        workers.shutdown();
+    }
+
+    long withJitter(long delay) {
+        double factor = 1.0 + JITTER * (random.nextDouble() * 2 - 1);
+        return Math.max(1, (long) (delay * factor));
+    }
+
+    /**
+     * The state of a connection is changed with the lock held, while the calls to the device are queued and
+     * made by one worker at a time without the lock. Each call checks the attempt number when it is done, so
+     * the result of a call which has been overtaken by a reconnect or stop is ignored.
+     */
+    private class Connection implements SupervisedConnection {
+        private final String deviceName;
+        private final SupervisedDevice device;
+        // Read without the lock, so HomeItems can check the state while a device call is running
+        private volatile String state = DISCONNECTED;
+        private boolean isStopped = false;
+        private volatile long connectedSince;
+        private long nextDelay = initialDelay;
+        private boolean hasBeenConnected = false;
+        private volatile long reconnectCount;
+        private volatile long failedAttempts;
+        // Incremented each time a new attempt is planned, so older planned attempts are ignored
+        private int attemptNumber = 0;
+        private ScheduledTask pendingAttempt;
+        private ScheduledTask healthCheck;
+        // Calls to the device waiting for the one in progress
+        private final Queue<Runnable> deviceCalls = new ArrayDeque<Runnable>();
+        private boolean isBusy = false;
+        private boolean isOpen = false;
+        private boolean isHealthCheckQueued = false;
+
+        private final Runnable callRunner = new Runnable() {
+            public void run() {
+                while (true) {
+                    Runnable call;
+                    synchronized (Connection.this) {
+                        call = deviceCalls.poll();
+                        if (call == null) {
+                            isBusy = false;
+                            Connection.this.notifyAll();
+                            return;
+                        }
+                    }
+                    try {
+                        call.run();
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Failed to call " + deviceName, e);
+                    }
+                }
+            }
+        };
+
+        Connection(String deviceName, SupervisedDevice device) {
+            this.deviceName = deviceName;
+            this.device = device;
+        }
+
+        synchronized void start() {
+            setState(CONNECTING);
+            scheduleAttempt(0);
+        }
+
+        /**
+         * Queue a call to the device. Must be called with the lock held.
+         */
+        private void queueCall(Runnable call) {
+            deviceCalls.add(call);
+            if (!isBusy) {
+                isBusy = true;
+                try {
+                    workers.execute(callRunner);
+                } catch (RejectedExecutionException e) {
+                    // The supervisor is stopped
+                    deviceCalls.clear();
+                    isBusy = false;
+                }
+            }
+        }
+
+        /**
+         * Plan an attempt to open the connection. Must be called with the lock held.
+         */
+        private void scheduleAttempt(long delay) {
+            final int attempt = ++attemptNumber;
+            cancelTasks();
+            final Runnable call = new Runnable() {
+                public void run() {
+                    attemptOpen(attempt);
+                }
+            };
+            if (delay == 0) {
+                queueCall(call);
+            } else {
+                pendingAttempt = scheduler.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (Connection.this) {
+                            if (!isStopped && attempt == attemptNumber) {
+                                queueCall(call);
+                            }
+                        }
+                    }
+                }, delay);
+            }
+        }
+
+        private void attemptOpen(int attempt) {
+            synchronized (this) {
+                if (isStopped || attempt != attemptNumber) {
+                    return;
+                }
+            }
+            Exception failure = null;
+            try {
+                device.open();
+            } catch (Exception e) {
+                failure = e;
+            }
+            boolean isUnused;
+            synchronized (this) {
+                if (!isStopped && attempt == attemptNumber) {
+                    if (failure != null) {
+                        openFailed(failure);
+                    } else {
+                        opened(attempt);
+                    }
+                    return;
+                }
+                // A reconnect or stop came while the device was opened. A reconnect has queued a call
+                // which closes it, while a stop may already have passed.
+                isOpen = failure == null;
+                isUnused = isStopped && isOpen;
+            }
+            if (isUnused) {
+                closeDevice();
+            }
+        }
+
+        /**
+         * Must be called with the lock held.
+         */
+        private void openFailed(Exception failure) {
+            failedAttempts++;
+            long delay = withJitter(nextDelay);
+            // Only the first failure in a row is reported as a warning, to avoid filling the log
+            Level level = nextDelay == initialDelay ? Level.WARNING : Level.FINE;
+            nextDelay = Math.min(nextDelay * 2, maxDelay);
+            logger.log(level, "Failed to open " + deviceName + ", retrying in " + delay + " ms", failure);
+            setState(DISCONNECTED);
+            scheduleAttempt(delay);
+        }
+
+        /**
+         * Must be called with the lock held.
+         */
+        private void opened(final int attempt) {
+            if (hasBeenConnected) {
+                reconnectCount++;
+            }
+            hasBeenConnected = true;
+            isOpen = true;
+            nextDelay = initialDelay;
+            connectedSince = System.currentTimeMillis();
+            setState(CONNECTED);
+            healthCheck = scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    synchronized (Connection.this) {
+                        // A health check which is still waiting or running is not queued again
+                        if (!isStopped && attempt == attemptNumber && !isHealthCheckQueued) {
+                            isHealthCheckQueued = true;
+                            queueCall(new Runnable() {
+                                public void run() {
+                                    checkHealth(attempt);
+                                }
+                            });
+                        }
+                    }
+                }
+            }, healthCheckInterval, healthCheckInterval);
+        }
+
+        private void checkHealth(int attempt) {
+            synchronized (this) {
+                isHealthCheckQueued = false;
+                if (isStopped || attempt != attemptNumber || !state.equals(CONNECTED)) {
+                    return;
+                }
+            }
+            boolean isHealthy;
+            try {
+                isHealthy = device.isHealthy();
+            } catch (Exception e) {
+                isHealthy = false;
+            }
+            synchronized (this) {
+                if (!isHealthy && !isStopped && attempt == attemptNumber && state.equals(CONNECTED)) {
+                    logger.info("Lost connection to " + deviceName + ", reconnecting");
+                    reopen(withJitter(initialDelay));
+                }
+            }
+        }
+
+        /**
+         * Close the connection and plan a new attempt to open it. Must be called with the lock held.
+         */
+        private void reopen(long delay) {
+            setState(CONNECTING);
+            connectedSince = 0;
+            queueCall(new Runnable() {
+                public void run() {
+                    closeDevice();
+                }
+            });
+            scheduleAttempt(delay);
+        }
+
+        /**
+         * Close the device if it is open. Called without the lock.
+         */
+        private void closeDevice() {
+            synchronized (this) {
+                isOpen = false;
+                connectedSince = 0;
+            }
+            try {
+                device.close();
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Failed to close " + deviceName, e);
+            }
+        }
+
+        public void reconnect() {
+            synchronized (this) {
+                if (!isStopped) {
+                    nextDelay = initialDelay;
+                    reopen(0);
+                }
+            }
+        }
+
+        public void connectionLost() {
+            synchronized (this) {
+                if (!isStopped && state.equals(CONNECTED)) {
+                    logger.info("Lost connection to " + deviceName + ", reconnecting");
+                    reopen(withJitter(initialDelay));
+                }
+            }
+        }
+
+        public void stop() {
+            boolean isClosedHere;
+            synchronized (this) {
+                if (isStopped) {
+                    return;
+                }
+                isStopped = true;
+                cancelTasks();
+                state = DISCONNECTED;
+                connectedSince = 0;
+                // The waiting calls are for the connection which is stopped
+                deviceCalls.clear();
+                long end = System.currentTimeMillis() + stopTimeout;
+                long remaining = stopTimeout;
+                while (isBusy && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = end - System.currentTimeMillis();
+                }
+                isClosedHere = !isBusy;
+                if (isOpen && !isClosedHere) {
+                    // The device hangs, so it is closed when the call in progress returns
+                    logger.warning("Call to " + deviceName + " does not return, closing it in the background");
+                    queueCall(new Runnable() {
+                        public void run() {
+                            closeDevice();
+                        }
+                    });
+                }
+                isClosedHere &= isOpen;
+            }
+            if (isClosedHere) {
+                closeDevice();
+            }
+            connections.remove(this);
+        }
+
+        private void cancelTasks() {
+            if (pendingAttempt != null) {
+                pendingAttempt.cancel();
+                pendingAttempt = null;
+            }
+            if (healthCheck != null) {
+                healthCheck.cancel();
+                healthCheck = null;
+            }
+        }
+
+        private void setState(String newState) {
+            if (newState.equals(state)) {
+                return;
+            }
+            state = newState;
+            if (server != null) {
+                Event event = server.createEvent(CONNECTION_STATE_EVENT, newState);
+                event.setAttribute(DEVICE_ATTRIBUTE, deviceName);
+                event.setAttribute(RECONNECTS_ATTRIBUTE, Long.toString(reconnectCount));
+                server.send(event);
+            }
+        }
+
+        public boolean isConnected() {
+            return state.equals(CONNECTED);
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public long getUptime() {
+            long since = connectedSince;
+            return since != 0 ? System.currentTimeMillis() - since : 0;
+        }
+
+        public long getReconnectCount() {
+            return reconnectCount;
+        }
+
+        public long getFailedAttempts() {
+            return failedAttempts;
+        }
+
+        @Override
+        public String toString() {
+            return deviceName;
+        }
+    }
+}
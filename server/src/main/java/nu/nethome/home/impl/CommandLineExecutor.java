@@ -23,6 +23,7 @@ import nu.nethome.home.item.*;
 import nu.nethome.home.system.DirectoryEntry;
 import nu.nethome.home.system.Event;
 import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.LatencySummary;
 
 import java.io.IOException;
 import java.util.Iterator;
@@ -104,6 +105,9 @@ public class CommandLineExecutor {
         if (command.equalsIgnoreCase("rename")) {
             return performRename(it);
         }
+        if (command.equalsIgnoreCase("statistics")) {
+            return performStatistics(it);
+        }
         // Ok, it must be one of the commands which require an instance, get the instance
         if (!it.hasNext()) {
             return "error,2,No Instance specified";
@@ -268,4 +272,31 @@ public class CommandLineExecutor {
         }
         return "ok";
     }
-}
\ No newline at end of file
+
+    /**
+     * Lists Event processing latencies per item, or per Event type if the argument "events" is given.
+     * Each entry is: name,count,p50,p90,p99,p99.9,max where the times are in ms. Slowest entries first.
+     */
+    String performStatistics(Iterator<String> it) {
+        String kind = it.hasNext() ? it.next() : "items";
+        List<LatencySummary> latencies;
+        if (kind.equalsIgnoreCase("items")) {
+            latencies = server.getState().getItemLatencies();
+        } else if (kind.equalsIgnoreCase("events")) {
+            latencies = server.getState().getEventTypeLatencies();
+        } else {
+            return "error,16,Unknown statistics: " + CommandLineParser.quote(kind);
+        }
+        StringBuilder result = new StringBuilder("ok");
+        for (LatencySummary latency : latencies) {
+            result.append(",").append(CommandLineParser.quote(latency.getName()))
+                    .append(",").append(latency.getCount())
+                    .append(",").append(String.format("%.2f", latency.getPercentile(50)))
+                    .append(",").append(String.format("%.2f", latency.getPercentile(90)))
+                    .append(",").append(String.format("%.2f", latency.getPercentile(99)))
+                    .append(",").append(String.format("%.2f", latency.getPercentile(99.9)))
+                    .append(",").append(String.format("%.2f", latency.getMax()));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.Event;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses repeated inbound protocol messages. RF transmitters send each message several times and the same
+ * message may be received by several receivers, but the rest of the system only needs to see it once.
+ * An incoming protocol message (Direction=In and a type ending with "_Message") is a duplicate if an Event
+ * with the same type and attribute values was let through less than the window time ago. Attributes
+ * that differ between repeats, like the repeat counter, can be ignored in the comparison.
+ */
+public class DuplicateEventFilter {
+
+    public static final String MESSAGE_SUFFIX = "_Message";
+    public static final String DEFAULT_IGNORED_ATTRIBUTES = "Repeat,Sender";
+    private static final int MAX_REMEMBERED_MESSAGES = 1000;
+
+    private final LinkedHashMap<String, Long> recentMessages = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_REMEMBERED_MESSAGES;
+        }
+    };
+    private final ConcurrentMap<String, AtomicLong> suppressedPerProtocol = new ConcurrentHashMap<String, AtomicLong>();
+    private volatile long windowMs;
+    private volatile Set<String> ignoredAttributes;
+
+    /**
+     * @param windowMs time in ms a message is remembered. 0 disables the filter
+     */
+    public DuplicateEventFilter(long windowMs) {
+        this.windowMs = windowMs;
+        setIgnoredAttributes(DEFAULT_IGNORED_ATTRIBUTES);
+    }
+
+    /**
+     * Check if an Event is a duplicate of a recently seen Event. If it is not, it is remembered.
+     *
+     * @param event Event to check
+     * @param now   current time in ms
+     * @return true if the Event should be suppressed
+     */
+    public boolean isDuplicate(Event event, long now) {
+        long window = windowMs;
+        String type = event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE);
+        if (window <= 0 || !type.endsWith(MESSAGE_SUFFIX) || !event.getAttribute("Direction").equals("In")) {
+            return false;
+        }
+        String key = messageKey(event);
+        synchronized (recentMessages) {
+            removeExpired(now - window);
+            Long seen = recentMessages.get(key);
+            if (seen == null) {
+                recentMessages.put(key, now);
+                return false;
+            }
+        }
+        counter(type.substring(0, type.length() - MESSAGE_SUFFIX.length())).incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Messages are added in time order, so the expired ones are always first
+     */
+    private void removeExpired(long oldestValid) {
+        Iterator<Long> times = recentMessages.values().iterator();
+        while (times.hasNext() && times.next() <= oldestValid) {
+            times.remove();
+        }
+    }
+
+    /**
+     * @return the compared attributes of the Event as a string. Each name and value is prefixed with its
+     * length, so different attributes can never give the same string.
+     */
+    private String messageKey(Event event) {
+        Set<String> ignored = ignoredAttributes;
+        StringBuilder key = new StringBuilder();
+        for (String name : event.getAttributeNames()) {
+            int dot = name.lastIndexOf('.');
+            if (ignored.contains(dot < 0 ? name : name.substring(dot + 1))) {
+                continue;
+            }
+            String value = event.getAttribute(name);
+            key.append(name.length()).append(':').append(name).append(value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    private AtomicLong counter(String protocol) {
+        AtomicLong result = suppressedPerProtocol.get(protocol);
+        if (result == null) {
+            AtomicLong newCounter = new AtomicLong();
+            result = suppressedPerProtocol.putIfAbsent(protocol, newCounter);
+            if (result == null) {
+                result = newCounter;
+            }
+        }
+        return result;
+    }
+
+    public long getWindow() {
+        return windowMs;
+    }
+
+    public void setWindow(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    public String getIgnoredAttributes() {
+        StringBuilder result = new StringBuilder();
+        for (String name : ignoredAttributes) {
+            result.append(result.length() > 0 ? "," : "").append(name);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Set which attributes are not compared. A name matches an attribute both with and without protocol prefix,
+     * so "Repeat" also ignores "UPM.Repeat".
+     *
+     * @param names comma separated attribute names
+     */
+    public void setIgnoredAttributes(String names) {
+        Set<String> result = new LinkedHashSet<String>();
+        for (String name : names.split(",")) {
+            if (name.trim().length() > 0) {
+                result.add(name.trim());
+            }
+        }
+        ignoredAttributes = result;
+    }
+
+    /**
+     * @return number of suppressed messages per protocol
+     */
+    public Map<String, Long> getSuppressedCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : suppressedPerProtocol.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    public void resetStatistics() {
+        suppressedPerProtocol.clear();
+    }
+}
@@ -19,139 +19,141 @@
 
 package nu.nethome.home.impl;
 
+import nu.nethome.home.system.LatencySummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Keeps track of Event distribution timing and statistics
+ * Keeps track of Event distribution timing and statistics. The values are updated from all
+ * distribution lanes without locking, so reading several values may give a slightly inconsistent view.
  * @author Stefan Str�mberg
  */
 public class EventDistributionStatistics {
 	
 	public static final double NANO_PER_MILLI = 1000000.0;
-	private volatile long m_RoundStartTime;
-	private volatile boolean m_RoundActive = false;
-	private volatile long m_ItemStartTime;
-	private volatile boolean m_ItemActive = false;
-	
-	private volatile long m_MaxRoundTime = 0;
-	private volatile long m_MinRoundTime = Long.MAX_VALUE;
-	private volatile long m_SumRoundTime = 0;
-	private volatile long m_NumberOfRounds = 0;
-
-	private volatile long m_MaxItemTime = 0;
-	private volatile long m_MinItemTime = Long.MAX_VALUE;
-	private volatile long m_SumItemTime = 0;
-	private volatile long m_NumberOfItems = 0;
-	private volatile String m_CurrentItem = "";
+	public static final double SORT_PERCENTILE = 99.0;
+
+	private final AtomicLong m_MaxRoundTime = new AtomicLong(0);
+	private final AtomicLong m_MinRoundTime = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong m_SumRoundTime = new AtomicLong(0);
+	private final AtomicLong m_NumberOfRounds = new AtomicLong(0);
+
+	private final AtomicLong m_MaxItemTime = new AtomicLong(0);
+	private final AtomicLong m_MinItemTime = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong m_SumItemTime = new AtomicLong(0);
+	private final AtomicLong m_NumberOfItems = new AtomicLong(0);
 	private volatile String m_MaxItem = "";
+
+	private final AtomicLong m_SumSkippedItems = new AtomicLong(0);
+	private final AtomicLong m_SkippedItemsRounds = new AtomicLong(0);
+	private volatile long m_LastRoundSkippedItems = 0;
+
+	// Keyed by Item ID, so a renamed Item or a new Item with the same name does not get the samples of another
+	private final ConcurrentMap<Long, LatencyHistogram> m_ItemLatencies = new ConcurrentHashMap<Long, LatencyHistogram>();
+	private final ConcurrentMap<String, LatencyHistogram> m_EventTypeLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
 	
 	/**
 	 * Reset all statistics values
 	 */
 	public void resetStatistics() {
-		synchronized (this) {
-			m_MaxRoundTime = 0;
-			m_MinRoundTime = Long.MAX_VALUE;
-			m_SumRoundTime = 0;
-			m_NumberOfRounds = 0;
-			m_MaxItemTime = 0;
-			m_MinItemTime = Long.MAX_VALUE;
-			m_SumItemTime = 0;
-			m_NumberOfItems = 0;
-			m_MaxItem = "";
-		}
+		m_MaxRoundTime.set(0);
+		m_MinRoundTime.set(Long.MAX_VALUE);
+		m_SumRoundTime.set(0);
+		m_NumberOfRounds.set(0);
+		m_MaxItemTime.set(0);
+		m_MinItemTime.set(Long.MAX_VALUE);
+		m_SumItemTime.set(0);
+		m_NumberOfItems.set(0);
+		m_MaxItem = "";
+		m_SumSkippedItems.set(0);
+		m_SkippedItemsRounds.set(0);
+		m_LastRoundSkippedItems = 0;
+		m_ItemLatencies.clear();
+		m_EventTypeLatencies.clear();
 	}
 
 	/**
-	 * Mark the start of an event distribution round
+	 * Record the time it took to distribute an event to all items
+	 * @param time time in ns
 	 */
-	public void startDistributionRound() {
-		synchronized (this) {
-			m_RoundStartTime = System.nanoTime();
-			m_RoundActive = true;
-		}
+	public void roundDistributed(long time) {
+		updateMax(m_MaxRoundTime, time);
+		updateMin(m_MinRoundTime, time);
+		m_SumRoundTime.addAndGet(time);
+		m_NumberOfRounds.incrementAndGet();
 	}
-
+	
 	/**
-	 * Mark the end of an event distribution round
+	 * Record how many items were not offered the event of the current distribution round,
+	 * since they do not subscribe to its type
 	 */
-	public void endDistributionRound() {
-		synchronized (this) {
-			m_RoundActive = false;
-			long time = System.nanoTime() - m_RoundStartTime;
-			if (time > m_MaxRoundTime) {
-                m_MaxRoundTime = time;
-            }
-			if (time < m_MinRoundTime) {
-                m_MinRoundTime = time;
-            }
-			m_SumRoundTime+= time;
-			m_NumberOfRounds++;
-		}
+	public void skippedItems(int count) {
+		m_LastRoundSkippedItems = count;
+		m_SumSkippedItems.addAndGet(count);
+		m_SkippedItemsRounds.incrementAndGet();
 	}
-	
+
 	/**
-	 * Mark the start of distributing an event to an item
+	 * Record the time it took for an item to process an event
+	 * @param itemId ID of the item
+	 * @param itemName name of the item
+	 * @param eventType type of the processed event
+	 * @param time time in ns
 	 */
-	public void startItemDistribution(String itemName) {
-		synchronized (this) {
-			m_ItemStartTime = System.nanoTime();
-			m_CurrentItem = itemName;
-			m_ItemActive = true;
-		}		
+	public void itemDistributed(long itemId, String itemName, String eventType, long time) {
+		if (updateMax(m_MaxItemTime, time)) {
+			m_MaxItem = itemName;
+		}
+		updateMin(m_MinItemTime, time);
+		m_SumItemTime.addAndGet(time);
+		m_NumberOfItems.incrementAndGet();
+		histogram(m_ItemLatencies, itemId, itemName).record(time);
+		histogram(m_EventTypeLatencies, eventType, eventType).record(time);
 	}
 
 	/**
-	 * Mark the end of distributing an event to an item
+	 * Forget the latencies of an item, when it is removed or renamed
+	 * @param itemId ID of the item
 	 */
-	public void endItemDistribution() {
-		synchronized (this) {
-			m_ItemActive = false;
-            long time = currentItemProcessingTime();
-            if (time > m_MaxItemTime) {
-				m_MaxItemTime = time;
-				m_MaxItem = m_CurrentItem;
-			}
-			if (time < m_MinItemTime) {
-                m_MinItemTime = time;
-            }
-			m_SumItemTime+= time;
-			m_NumberOfItems++;
-			m_CurrentItem = "";
-		}		
+	public void itemRemoved(long itemId) {
+		m_ItemLatencies.remove(itemId);
 	}
 
-    public long currentItemProcessingTime() {
-        return System.nanoTime() - m_ItemStartTime;
-    }
-
-    public boolean isItemCurrentlyProcessingEvent() {
-        return m_ItemActive;
-    }
+	private static <K> LatencyHistogram histogram(ConcurrentMap<K, LatencyHistogram> histograms, K key, String name) {
+		LatencyHistogram result = histograms.get(key);
+		if (result == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram(name);
+			result = histograms.putIfAbsent(key, newHistogram);
+			if (result == null) {
+				result = newHistogram;
+			}
+		}
+		return result;
+	}
 
-	/**
-	 * Get the time in ms the current distribution round has been active. Returns 0 if
-	 * no round is active.
-	 * @return time in ms
-	 */
-	public double getCurrentRoundTime() {
-		synchronized(this) {
-			if (!m_RoundActive) {
-                return 0;
-            }
-			return (System.nanoTime() - m_RoundStartTime) / NANO_PER_MILLI;
+	private static boolean updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current) {
+			if (max.compareAndSet(current, value)) {
+				return true;
+			}
+			current = max.get();
 		}
+		return false;
 	}
 
-	/**
-	 * Get the time in ms the distribution of the event to the current item has been
-	 * going on. Returns 0 if no Item distribution is active. 
-	 * @return time in ms
-	 */
-	public double getCurrentItemTime() {
-		synchronized(this) {
-			if (!m_ItemActive) {
-                return 0;
-            }
-			return (System.nanoTime() - m_ItemStartTime) / NANO_PER_MILLI;
+	private static void updateMin(AtomicLong min, long value) {
+		long current = min.get();
+		while (value < current && !min.compareAndSet(current, value)) {
+			current = min.get();
 		}
 	}
 
@@ -160,7 +162,7 @@ public class EventDistributionStatistics {
 	 * @return time in ms
 	 */
 	public double getMaxRoundTime() {
-		return m_MaxRoundTime / NANO_PER_MILLI;
+		return m_MaxRoundTime.get() / NANO_PER_MILLI;
 	}
 
 	/**
@@ -168,7 +170,7 @@ public class EventDistributionStatistics {
 	 * @return time in ms
 	 */
 	public double getMinRoundTime() {
-		return m_MinRoundTime / NANO_PER_MILLI;
+		return m_MinRoundTime.get() / NANO_PER_MILLI;
 	}
 
 	/**
@@ -176,12 +178,11 @@ public class EventDistributionStatistics {
 	 * @return time in ms
 	 */
 	public double getAvarageRoundTime() {
-		synchronized (this) {
-			if (m_NumberOfRounds == 0) {
-                return 0;
-            }
-			return (m_SumRoundTime / m_NumberOfRounds) / NANO_PER_MILLI;
+		long rounds = m_NumberOfRounds.get();
+		if (rounds == 0) {
+			return 0;
 		}
+		return (m_SumRoundTime.get() / rounds) / NANO_PER_MILLI;
 	}
 
 	/**
@@ -189,7 +190,7 @@ public class EventDistributionStatistics {
 	 * @return number of rounds
 	 */
 	public long getNumberOfRounds() {
-		return m_NumberOfRounds;
+		return m_NumberOfRounds.get();
 	}
 
 	/**
@@ -197,7 +198,7 @@ public class EventDistributionStatistics {
 	 * @return time in ms
 	 */
 	public double getMaxItemTime() {
-		return m_MaxItemTime / NANO_PER_MILLI;
+		return m_MaxItemTime.get() / NANO_PER_MILLI;
 	}
 
 	/**
@@ -205,7 +206,7 @@ public class EventDistributionStatistics {
 	 * @return time in ms
 	 */
 	public long getMinItemTime() {
-		return m_MinItemTime;
+		return m_MinItemTime.get();
 	}
 
 	/**
@@ -213,12 +214,11 @@ public class EventDistributionStatistics {
 	 * @return time in ms
 	 */
 	public double getAvarageItemTime() {
-		synchronized (this) {
-			if (m_NumberOfItems == 0) {
-                return 0;
-            }
-			return (m_SumItemTime / m_NumberOfItems) / NANO_PER_MILLI;
+		long items = m_NumberOfItems.get();
+		if (items == 0) {
+			return 0;
 		}
+		return (m_SumItemTime.get() / items) / NANO_PER_MILLI;
 	}
 
 	/**
@@ -226,16 +226,27 @@ public class EventDistributionStatistics {
 	 * @return number
 	 */
 	public long getNumberOfItems() {
-		return m_NumberOfItems;
+		return m_NumberOfItems.get();
 	}
 
 	/**
-	 * Get the name of the current Item receiving an Event. "" if no Event processing
-	 * is currently on going. 
-	 * @return name of Item or ""
+	 * Get the number of items skipped in the latest distribution round
+	 * @return number of items
 	 */
-	public String getCurrentItemName() {
-		return m_CurrentItem;
+	public long getLastRoundSkippedItems() {
+		return m_LastRoundSkippedItems;
+	}
+
+	/**
+	 * Get the average number of items skipped per distribution round
+	 * @return number of items
+	 */
+	public double getAverageSkippedItems() {
+		long rounds = m_SkippedItemsRounds.get();
+		if (rounds == 0) {
+			return 0;
+		}
+		return m_SumSkippedItems.get() / (double) rounds;
 	}
 
 	/**
@@ -245,4 +256,35 @@ public class EventDistributionStatistics {
 	public String getMaxItemName() {
 		return m_MaxItem;
 	}
+
+	/**
+	 * Get the Event processing latencies per Item
+	 * @return latencies, slowest (by 99th percentile) first
+	 */
+	public List<LatencySummary> getItemLatencies() {
+		return sortedBySlowest(m_ItemLatencies);
+	}
+
+	/**
+	 * Get the Event processing latencies per Event type, summed over the Items receiving them
+	 * @return latencies, slowest (by 99th percentile) first
+	 */
+	public List<LatencySummary> getEventTypeLatencies() {
+		return sortedBySlowest(m_EventTypeLatencies);
+	}
+
+	private static List<LatencySummary> sortedBySlowest(ConcurrentMap<?, LatencyHistogram> histograms) {
+		final List<LatencySummary> result = new ArrayList<LatencySummary>(histograms.size());
+		final Map<LatencySummary, Double> sortKeys = new HashMap<LatencySummary, Double>();
+		for (LatencyHistogram histogram : histograms.values()) {
+			result.add(histogram);
+			sortKeys.put(histogram, histogram.getPercentile(SORT_PERCENTILE));
+		}
+		Collections.sort(result, new Comparator<LatencySummary>() {
+			public int compare(LatencySummary o1, LatencySummary o2) {
+				return Double.compare(sortKeys.get(o2), sortKeys.get(o1));
+			}
+		});
+		return result;
+	}
 }
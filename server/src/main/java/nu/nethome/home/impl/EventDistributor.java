@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.FinalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distributes Events to HomeItems on a number of parallel lanes. Each HomeItem is pinned to one lane
+ * by its identity, and each lane delivers its Events in the order they were distributed. This means
+ * that every HomeItem receives the Events in the order they were sent, while a HomeItem that is slow
+ * to process an Event only delays the other HomeItems on the same lane.
+ * When all lanes have offered an Event to their HomeItems, the FinalEventListeners are called with the
+ * combined result. This is done in Event order from a separate thread.
+ */
+public class EventDistributor {
+
+    public static final int LANE_QUEUE_SIZE = 100;
+
+    private static Logger logger = Logger.getLogger(EventDistributor.class.getName());
+    private static final Round STOP_ROUND = new Round(null, 0);
+
+    private final Lane[] lanes;
+    private final EventDistributionStatistics statistics;
+    private final List<FinalEventListener> finalEventListeners;
+    private final BlockingQueue<Round> pendingRounds = new LinkedBlockingQueue<Round>();
+    private volatile Thread finalEventThread;
+
+    /**
+     * @param laneCount           number of parallel lanes, at least 1
+     * @param statistics          statistics to update with distribution times
+     * @param finalEventListeners listeners to call after each Event. The list is synchronized on when used.
+     */
+    public EventDistributor(int laneCount, EventDistributionStatistics statistics, List<FinalEventListener> finalEventListeners) {
+        this.statistics = statistics;
+        this.finalEventListeners = finalEventListeners;
+        lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i);
+        }
+    }
+
+    public void start() {
+        for (Lane lane : lanes) {
+            lane.start();
+        }
+        finalEventThread = new Thread("FinalEventDistributor") {
+            @Override
+            public void run() {
+                finalEventTask();
+            }
+        };
+        finalEventThread.start();
+    }
+
+    /**
+     * Stop all lanes after the already distributed Events have been delivered
+     */
+    public void stop() {
+        try {
+            for (Lane lane : lanes) {
+                lane.queue.put(new LaneTask(STOP_ROUND, null));
+            }
+            pendingRounds.put(STOP_ROUND);
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Interrupted stopping event distribution", e);
+        }
+    }
+
+    /**
+     * Distribute an Event to the specified HomeItems. Will only block if the queue of a lane is full.
+     *
+     * @param event     Event to distribute
+     * @param receivers HomeItems to offer the Event to
+     * @throws InterruptedException if interrupted while waiting for a full lane
+     */
+    public void distribute(Event event, List<HomeItem> receivers) throws InterruptedException {
+        List<List<HomeItem>> itemsPerLane = new ArrayList<List<HomeItem>>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            itemsPerLane.add(null);
+        }
+        int usedLanes = 0;
+        for (HomeItem item : receivers) {
+            int laneIndex = laneIndexOf(item);
+            List<HomeItem> laneItems = itemsPerLane.get(laneIndex);
+            if (laneItems == null) {
+                laneItems = new ArrayList<HomeItem>();
+                itemsPerLane.set(laneIndex, laneItems);
+                usedLanes++;
+            }
+            laneItems.add(item);
+        }
+        Round round = new Round(event, usedLanes);
+        pendingRounds.put(round);
+        for (int i = 0; i < lanes.length; i++) {
+            if (itemsPerLane.get(i) != null) {
+                lanes[i].queue.put(new LaneTask(round, itemsPerLane.get(i)));
+            }
+        }
+    }
+
+    int laneIndexOf(HomeItem item) {
+        long id = item.getItemId();
+        int hash = (int) (id ^ (id >>> 32));
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * @return true if the thread is one of the threads delivering Events for this distributor
+     */
+    public boolean isDistributionThread(Thread thread) {
+        if (thread == finalEventThread) {
+            return true;
+        }
+        for (Lane lane : lanes) {
+            if (lane == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @return number of Events waiting in the queue of each lane
+     */
+    public int[] getLaneQueueDepths() {
+        int[] result = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            result[i] = lanes[i].queue.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return the lane which has been busy with the same HomeItem for the longest time, or null if no lane is busy
+     */
+    public Lane getLongestBusyLane() {
+        Lane result = null;
+        for (Lane lane : lanes) {
+            if (lane.isBusy() && (result == null || lane.currentItemProcessingTime() > result.currentItemProcessingTime())) {
+                result = lane;
+            }
+        }
+        return result;
+    }
+
+    private void finalEventTask() {
+        while (true) {
+            try {
+                Round round = pendingRounds.take();
+                if (round == STOP_ROUND) {
+                    return;
+                }
+                round.awaitDelivery();
+                synchronized (finalEventListeners) {
+                    for (FinalEventListener listener : finalEventListeners) {
+                        try {
+                            listener.receiveFinalEvent(round.event, round.isHandled());
+                        } catch (Exception e) {
+                            logger.log(Level.WARNING, "Failed to distribute final event (" + round.event.toString() + ") ", e);
+                        }
+                    }
+                }
+                statistics.roundDistributed(System.nanoTime() - round.startTime);
+            } catch (InterruptedException e) {
+                // Do Dinada
+            }
+        }
+    }
+
+    /**
+     * One Event being distributed on all lanes
+     */
+    private static class Round {
+        private final Event event;
+        private final long startTime = System.nanoTime();
+        private final CountDownLatch remainingLanes;
+        private final AtomicInteger handledCount = new AtomicInteger();
+
+        Round(Event event, int laneCount) {
+            this.event = event;
+            this.remainingLanes = new CountDownLatch(laneCount);
+        }
+
+        void laneDelivered(boolean isHandled) {
+            if (isHandled) {
+                handledCount.incrementAndGet();
+            }
+            remainingLanes.countDown();
+        }
+
+        void awaitDelivery() throws InterruptedException {
+            remainingLanes.await();
+        }
+
+        boolean isHandled() {
+            return handledCount.get() > 0;
+        }
+    }
+
+    private static class LaneTask {
+        private final Round round;
+        private final List<HomeItem> items;
+
+        LaneTask(Round round, List<HomeItem> items) {
+            this.round = round;
+            this.items = items;
+        }
+    }
+
+    /**
+     * A lane delivering Events to its HomeItems in order
+     */
+    public class Lane extends Thread {
+        private final BlockingQueue<LaneTask> queue = new LinkedBlockingQueue<LaneTask>(LANE_QUEUE_SIZE);
+        private volatile String currentItemName = "";
+        private volatile long currentItemStartTime;
+        private volatile boolean busy = false;
+
+        Lane(int laneNumber) {
+            super("EventDistributor-" + laneNumber);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    LaneTask task = queue.take();
+                    if (task.round == STOP_ROUND) {
+                        return;
+                    }
+                    boolean eventIsHandled = false;
+                    try {
+                        eventIsHandled = deliver(task.round.event, task.items);
+                    } finally {
+                        task.round.laneDelivered(eventIsHandled);
+                    }
+                } catch (InterruptedException e) {
+                    // Do Dinada
+                }
+            }
+        }
+
+        private boolean deliver(Event event, List<HomeItem> items) {
+            boolean eventIsHandled = false;
+            for (HomeItem home : items) {
+                String itemName = home.getName();
+                currentItemName = itemName;
+                currentItemStartTime = System.nanoTime();
+                busy = true;
+                try {
+                    logger.finest("Distributing event to " + itemName);
+                    eventIsHandled |= home.receiveEvent(event);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Failed to distribute event to \"" + itemName + "\" (" + event.toString() + ") ", e);
+                }
+                busy = false;
+                statistics.itemDistributed(home.getItemId(), itemName, event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE), System.nanoTime() - currentItemStartTime);
+            }
+            currentItemName = "";
+            return eventIsHandled;
+        }
+
+        public boolean isBusy() {
+            return busy;
+        }
+
+        public String getCurrentItemName() {
+            return currentItemName;
+        }
+
+        /**
+         * @return time in ns the current HomeItem has been processing the Event
+         */
+        public long currentItemProcessingTime() {
+            return System.nanoTime() - currentItemStartTime;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.Event;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append only journal of Events, stored in a directory as a number of memory mapped segment files of fixed size.
+ * When a segment is full, a new one is started and the oldest segments are deleted if the journal has grown
+ * larger or older than the retention limits. Segments which are pinned, for example while they are replayed,
+ * and the segments after them are not deleted until they are unpinned.
+ * Each record in a segment is: record length (int), time stamp in ms (long), attribute count (short) and then
+ * the name and value of each attribute as length prefixed UTF-8 strings. A record length of 0 marks the end of
+ * the written part of the segment. The length is written last, so a record is either complete or not present.
+ */
+public class EventJournal {
+
+    public static final String SEGMENT_SUFFIX = ".journal";
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 2;
+    private static final int MAX_STRING_SIZE = 0xFFFF;
+    private static final int SEGMENT_NAME_DIGITS = 15;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static Logger logger = Logger.getLogger(EventJournal.class.getName());
+
+    private final File directory;
+    private final int segmentSize;
+    private long maxTotalSize = 0;
+    private int maxAgeDays = 0;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private long writtenRecords = 0;
+    private final Set<File> pinnedSegments = new HashSet<File>();
+
+    /**
+     * @param directory   directory to store the segments in, created if it does not exist
+     * @param segmentSize size of each segment file in bytes
+     */
+    public EventJournal(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Add an Event to the journal. Failures are logged but not reported, since the journal must never
+     * stop the Event distribution.
+     *
+     * @param event Event to add
+     * @param time  time stamp of the Event in ms
+     */
+    public synchronized void append(Event event, long time) {
+        byte[] record = encode(event, time);
+        if (record == null || record.length + 4 > segmentSize) {
+            logger.warning("Event too large for event journal: " + event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE));
+            return;
+        }
+        try {
+            if (segment == null || segment.remaining() < record.length + 4) {
+                startNewSegment(time);
+            }
+            int position = segment.position();
+            segment.position(position + 4);
+            segment.put(record, 4, record.length - 4);
+            segment.putInt(position, record.length);
+            writtenRecords++;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write event journal in " + directory.getPath(), e);
+            closeSegment();
+        }
+    }
+
+    private static byte[] encode(Event event, long time) {
+        String[] names = event.getAttributeNames();
+        byte[][] strings = new byte[names.length * 2][];
+        int size = RECORD_HEADER_SIZE;
+        for (int i = 0; i < names.length; i++) {
+            strings[i * 2] = names[i].getBytes(UTF8);
+            strings[i * 2 + 1] = event.getAttribute(names[i]).getBytes(UTF8);
+            if (strings[i * 2].length > MAX_STRING_SIZE || strings[i * 2 + 1].length > MAX_STRING_SIZE) {
+                return null;
+            }
+            size += strings[i * 2].length + strings[i * 2 + 1].length + 4;
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        result.putInt(size);
+        result.putLong(time);
+        result.putShort((short) names.length);
+        for (byte[] string : strings) {
+            result.putShort((short) string.length);
+            result.put(string);
+        }
+        return result.array();
+    }
+
+    /**
+     * Close the current segment, so the next Event starts a new one
+     */
+    public synchronized void rotate() {
+        closeSegment();
+    }
+
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    private void startNewSegment(long time) throws IOException {
+        closeSegment();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory");
+        }
+        File file = new File(directory, String.format("%015d-%06d", time, 0) + SEGMENT_SUFFIX);
+        for (int i = 1; file.exists(); i++) {
+            file = new File(directory, String.format("%015d-%06d", time, i) + SEGMENT_SUFFIX);
+        }
+        segmentFile = new RandomAccessFile(file, "rw");
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        applyRetention(time, file);
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (segmentFile != null) {
+            try {
+                segmentFile.close();
+            } catch (IOException e) {
+                // Do Dinada
+            }
+            segmentFile = null;
+        }
+    }
+
+    private void applyRetention(long now, File current) {
+        List<File> segments = listSegments(directory);
+        long totalSize = 0;
+        for (File file : segments) {
+            totalSize += file.length();
+        }
+        for (int i = 0; i < segments.size() - 1; i++) {
+            File file = segments.get(i);
+            // A segment ends when the next one is started
+            long endTime = segmentStartTime(segments.get(i + 1));
+            boolean tooLarge = maxTotalSize > 0 && totalSize > maxTotalSize;
+            boolean tooOld = maxAgeDays > 0 && endTime < now - maxAgeDays * MS_PER_DAY;
+            if (file.equals(current) || pinnedSegments.contains(file) || !(tooLarge || tooOld)) {
+                break;
+            }
+            totalSize -= file.length();
+            if (!file.delete()) {
+                logger.warning("Failed to delete old event journal segment " + file.getName());
+            }
+        }
+    }
+
+    private static long segmentStartTime(File segment) {
+        try {
+            return Long.parseLong(segment.getName().substring(0, SEGMENT_NAME_DIGITS));
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return the sequence number of a segment started in the same ms as an earlier one, 0 for the first one
+     */
+    private static int segmentSequence(File segment) {
+        String name = segment.getName();
+        if (name.length() <= SEGMENT_NAME_DIGITS || name.charAt(SEGMENT_NAME_DIGITS) != '-') {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_NAME_DIGITS + 1, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Orders segments by start time and then by sequence number, which also works for segment names
+     * without sequence number
+     */
+    private static final Comparator<File> SEGMENT_ORDER = new Comparator<File>() {
+        public int compare(File first, File second) {
+            long firstTime = segmentStartTime(first);
+            long secondTime = segmentStartTime(second);
+            if (firstTime != secondTime) {
+                return firstTime < secondTime ? -1 : 1;
+            }
+            int firstSequence = segmentSequence(first);
+            int secondSequence = segmentSequence(second);
+            if (firstSequence != secondSequence) {
+                return firstSequence < secondSequence ? -1 : 1;
+            }
+            return first.getName().compareTo(second.getName());
+        }
+    };
+
+    /**
+     * @return the segment files in a directory, oldest first
+     */
+    public static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        Arrays.sort(files, SEGMENT_ORDER);
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getWrittenRecords() {
+        return writtenRecords;
+    }
+
+    /**
+     * @param maxTotalSize max size in bytes of all segments, 0 means no limit
+     */
+    public synchronized void setMaxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * @param maxAgeDays segments older than this are deleted, 0 means no limit
+     */
+    public synchronized void setMaxAgeDays(int maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+
+    /**
+     * Keep segments from being deleted by the retention limits, until they are unpinned
+     *
+     * @param segments segment files to keep
+     */
+    public synchronized void pin(Collection<File> segments) {
+        pinnedSegments.addAll(segments);
+    }
+
+    public synchronized void unpin(Collection<File> segments) {
+        pinnedSegments.removeAll(segments);
+    }
+
+    /**
+     * Reads the Events of a journal in the order they were written
+     */
+    public static class Reader {
+        private final List<File> segments;
+        private ByteBuffer segment;
+        private long timeStamp;
+
+        /**
+         * @param segments segment files to read, in order
+         */
+        public Reader(List<File> segments) {
+            this.segments = new ArrayList<File>(segments);
+        }
+
+        /**
+         * @return next Event, or null if there are no more Events
+         * @throws IOException if a segment could not be read
+         */
+        public Event next() throws IOException {
+            while (true) {
+                if (segment != null && segment.remaining() >= RECORD_HEADER_SIZE) {
+                    int start = segment.position();
+                    int length = segment.getInt();
+                    if (length >= RECORD_HEADER_SIZE && start + length <= segment.limit()) {
+                        try {
+                            return decode();
+                        } catch (BufferUnderflowException e) {
+                            throw new IOException("Corrupt event journal record");
+                        }
+                    }
+                }
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                segment = map(segments.remove(0));
+            }
+        }
+
+        private Event decode() {
+            timeStamp = segment.getLong();
+            int count = segment.getShort();
+            Event result = newEvent();
+            for (int i = 0; i < count; i++) {
+                String name = readString();
+                result.setAttribute(name, readString());
+            }
+            return result;
+        }
+
+        /**
+         * @return an empty Event to read the attributes of the next record into
+         */
+        protected Event newEvent() {
+            return new InternalEvent("");
+        }
+
+        private String readString() {
+            byte[] bytes = new byte[segment.getShort() & 0xFFFF];
+            segment.get(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        private static ByteBuffer map(File file) throws IOException {
+            RandomAccessFile segmentFile = new RandomAccessFile(file, "r");
+            try {
+                return segmentFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segmentFile.length());
+            } finally {
+                segmentFile.close();
+            }
+        }
+
+        /**
+         * @return time stamp in ms of the Event last returned by next()
+         */
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+    }
+}
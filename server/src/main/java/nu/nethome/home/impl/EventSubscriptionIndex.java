@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.ReceivesEvents;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which Event types the registered HomeItems want to receive, so an Event only
+ * has to be offered to the HomeItems subscribing to its type. HomeItems that do not declare their
+ * Events with {@link ReceivesEvents} are offered all Events.
+ * The receiver list for each Event type is built the first time it is needed and keeps the
+ * registration order of the HomeItems.
+ */
+public class EventSubscriptionIndex {
+
+    private static final int MAX_CACHED_EVENT_TYPES = 500;
+
+    private final Map<HomeItem, Set<String>> subscriptions = new LinkedHashMap<HomeItem, Set<String>>();
+    private final Map<String, List<HomeItem>> receiversByType = new ConcurrentHashMap<String, List<HomeItem>>();
+
+    public synchronized void addItem(HomeItem item) {
+        subscriptions.put(item, subscribedEventTypes(item.getClass()));
+        receiversByType.clear();
+    }
+
+    public synchronized void removeItem(HomeItem item) {
+        subscriptions.remove(item);
+        receiversByType.clear();
+    }
+
+    public synchronized void clear() {
+        subscriptions.clear();
+        receiversByType.clear();
+    }
+
+    /**
+     * Get the HomeItems which should be offered an Event of the specified type
+     *
+     * @param eventType type of the Event
+     * @return unmodifiable list of receivers in registration order
+     */
+    public List<HomeItem> getReceivers(String eventType) {
+        List<HomeItem> receivers = receiversByType.get(eventType);
+        if (receivers == null) {
+            receivers = buildReceivers(eventType);
+        }
+        return receivers;
+    }
+
+    public synchronized int getItemCount() {
+        return subscriptions.size();
+    }
+
+    private synchronized List<HomeItem> buildReceivers(String eventType) {
+        List<HomeItem> receivers = new ArrayList<HomeItem>();
+        for (Map.Entry<HomeItem, Set<String>> subscription : subscriptions.entrySet()) {
+            if (subscription.getValue() == null || subscription.getValue().contains(eventType)) {
+                receivers.add(subscription.getKey());
+            }
+        }
+        receivers = Collections.unmodifiableList(receivers);
+        if (receiversByType.size() >= MAX_CACHED_EVENT_TYPES) {
+            receiversByType.clear();
+        }
+        receiversByType.put(eventType, receivers);
+        return receivers;
+    }
+
+    /**
+     * @return the Event types the class subscribes to, or null if it wants all Events
+     */
+    static Set<String> subscribedEventTypes(Class<?> itemClass) {
+        ReceivesEvents receivesEvents = itemClass.getAnnotation(ReceivesEvents.class);
+        if (receivesEvents == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<String>();
+        for (String eventType : receivesEvents.value().split(",")) {
+            String trimmedType = eventType.trim();
+            if (trimmedType.equals(ReceivesEvents.ALL_EVENTS)) {
+                return null;
+            }
+            if (trimmedType.length() > 0) {
+                result.add(trimmedType);
+            }
+        }
+        return result;
+    }
+}
@@ -21,143 +21,374 @@ package nu.nethome.home.impl;
 
 import nu.nethome.home.item.Attribute;
 import nu.nethome.home.item.HomeItem;
-import nu.nethome.home.item.HomeItemModel;
 import nu.nethome.home.item.HomeItemProxy;
-import org.apache.xerces.parsers.DOMParser;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Loads HomeItems from an XML file. The file is read with a streaming parser, after which the HomeItems are
+ * created and their attribute values applied on a small pool of threads.
+ */
 public class HomeItemFileLoader implements HomeItemLoader {
 
     private static Logger logger = Logger.getLogger(HomeItemFileLoader.class.getName());
+    static final int MAX_LOAD_THREADS = 4;
+    private static final long NANO_PER_MS = 1000000L;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final XMLInputFactory inputFactory;
+
+    public HomeItemFileLoader() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
 
-    public final void saveItems(List<HomeItem> items, String fileName) {
+    /**
+     * Save the HomeItems to a temporary file which is synced to disk and then renamed to the specified file name
+     */
+    public final void saveItems(List<HomeItem> items, String fileName, long changeLogGeneration) throws IOException {
+        File temporary = new File(fileName + TEMPORARY_SUFFIX);
+        FileOutputStream stream = new FileOutputStream(temporary);
         try {
-            Iterator<HomeItem> i = items.iterator();
-            // Open the output file and make sure we use UTF-8 as encoding
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(fileName), "UTF-8"));
+            // Make sure we use UTF-8 as encoding
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
 
             // Print XML Header
             out.write("<?xml version = \"1.0\" encoding=\"UTF-8\"?>");
             out.newLine();
-            out.write("<HomeItems>");
+            out.write("<HomeItems " + ItemChangeLog.GENERATION_ATTRIBUTE + "=\"" + changeLogGeneration + "\">");
             out.newLine();
-            while (i.hasNext()) {
-                HomeItem rawItem = i.next();
-                HomeItemProxy item = new LocalHomeItemProxy(rawItem);
-                // Begin Item
-                out.write("\t<HomeItem Class=\"" + rawItem.getClass().getSimpleName()
-                        + "\" >");
-                out.newLine();
-                out.write("\t\t<Attribute Name=\"ID\">" + rawItem.getItemId()
-                        + "</Attribute>");
-                out.newLine();
-                out.write("\t\t<Attribute Name=\"Name\">" + rawItem.getName()
-                        + "</Attribute>");
-                out.newLine();
-
-                // Print attributes
-                for (Attribute attribute : item.getAttributeValues()) {
-                    if (!attribute.isWriteOnly()) {
-                        try {
-                            String name = escape(attribute.getName());
-                            String value = escape(attribute.getValue());
-                            out.write("\t\t<Attribute Name=\"" + name + "\">" + value + "</Attribute>");
-                            out.newLine();
-                        } catch (Exception e) {
-                            logger.info("Warning! the attribute name or value throws exception: " + e.toString());
-                        }
+            for (HomeItem item : items) {
+                writeItem(out, item);
+            }
+            out.write("</HomeItems>");
+            out.newLine();
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        File target = new File(fileName);
+        if (!temporary.renameTo(target)) {
+            // Some platforms cannot rename onto an existing file
+            if (!target.delete() || !temporary.renameTo(target)) {
+                throw new IOException("Could not replace " + fileName);
+            }
+        }
+    }
 
-                    }
+    public void writeItem(Writer out, HomeItem rawItem) throws IOException {
+        HomeItemProxy item;
+        try {
+            item = new LocalHomeItemProxy(rawItem);
+        } catch (ModelException e) {
+            logger.warning("Could not save " + rawItem.getName() + ", bad model: " + e.getMessage());
+            return;
+        }
+        // Begin Item
+        out.write("\t<HomeItem Class=\"" + rawItem.getClass().getSimpleName() + "\" >\n");
+        out.write("\t\t<Attribute Name=\"ID\">" + rawItem.getItemId() + "</Attribute>\n");
+        out.write("\t\t<Attribute Name=\"Name\">" + escape(rawItem.getName()) + "</Attribute>\n");
+
+        // Print attributes
+        for (Attribute attribute : item.getAttributeValues()) {
+            if (!attribute.isWriteOnly()) {
+                try {
+                    String name = escape(attribute.getName());
+                    String value = escape(attribute.getValue());
+                    out.write("\t\t<Attribute Name=\"" + name + "\">" + value + "</Attribute>\n");
+                } catch (Exception e) {
+                    logger.info("Warning! the attribute name or value throws exception: " + e.toString());
                 }
+            }
+        }
+
+        // Print end of Item
+        out.write("\t</HomeItem>\n");
+    }
 
-                // Print end of Item
-                out.write("\t</HomeItem>");
-                out.newLine();
+    public long readLogGeneration(String fileName) {
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(fileName));
+            try {
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                try {
+                    return nextElement(reader) ? parseLogGeneration(reader) : 0;
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                in.close();
             }
-            out.write("</HomeItems>");
-            out.newLine();
-            out.close();
         } catch (IOException e) {
-            logger.log(Level.WARNING, "Could not save HomeItems", e);
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Could not save HomeItems", e);
+            return 0;
+        } catch (XMLStreamException e) {
+            return 0;
+        }
+    }
+
+    private static long parseLogGeneration(XMLStreamReader reader) {
+        String generation = reader.getAttributeValue(null, ItemChangeLog.GENERATION_ATTRIBUTE);
+        try {
+            return generation == null ? 0 : Long.parseLong(generation);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
-    public final List<HomeItem> loadItems(String fileName, HomeItemFactory factory, HomeServer homeServer) {
+    public final List<HomeItem> loadItems(String fileName, HomeItemFactory factory, HomeServer homeServer, LoadTimes times) {
+        logger.info("Loading Items from " + fileName);
+        long parseStart = System.nanoTime();
+        List<ItemRecord> records;
+        try {
+            records = parseItemRecords(fileName);
+        } catch (XMLStreamException e) {
+            logger.warning(fileName + " is not well-formed.");
+            records = Collections.emptyList();
+        } catch (IOException e) {
+            logger.warning("Due to an IOException, the parser could not load " + fileName);
+            records = Collections.emptyList();
+        }
+        times.setParseTime(msSince(parseStart));
 
-        // Create a collection where the Items get sorted on start order
-        TreeSet<HomeItem> sortedItems = new TreeSet<HomeItem>(new Comparator<HomeItem>() {
-            public int compare(HomeItem o1, HomeItem o2) {
-                try {
-                    HomeItemModel m1 = StaticHomeItemModel.getModel(o1);
-                    HomeItemModel m2 = StaticHomeItemModel.getModel(o2);
-                    if (m1.getStartOrder() == m2.getStartOrder()) {
-                        return o1.getName().compareTo(o2.getName());
+        ExecutorService pool = createPool(records.size());
+        try {
+            long constructStart = System.nanoTime();
+            constructItems(records, factory, homeServer, pool);
+            times.setConstructTime(msSince(constructStart));
+            long initStart = System.nanoTime();
+            initItems(records, homeServer, pool);
+            times.setInitTime(msSince(initStart));
+        } finally {
+            pool.shutdown();
+        }
+        return sortInStartOrder(records);
+    }
+
+    static long msSince(long startNanoTime) {
+        return (System.nanoTime() - startNanoTime) / NANO_PER_MS;
+    }
+
+    /**
+     * Read the class name and attribute values of all HomeItems in the file and apply the changes
+     * in its change logs, without creating the HomeItems
+     */
+    private List<ItemRecord> parseItemRecords(String fileName) throws IOException, XMLStreamException {
+        List<ItemRecord> records = new ArrayList<ItemRecord>();
+        long logGeneration = 0;
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName));
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                if (nextElement(reader)) {
+                    logGeneration = parseLogGeneration(reader);
+                    while (nextElement(reader)) {
+                        if (reader.getLocalName().equals("HomeItem")) {
+                            records.add(parseItemRecord(reader, records.size()));
+                        } else {
+                            skipElement(reader);
+                        }
                     }
-                    return m1.getStartOrder() > m2.getStartOrder() ? 1 : -1;
-                } catch (ModelException e) {
-                    // This should not happen...
-                    return 0;
                 }
+            } finally {
+                reader.close();
             }
-        });
+        } finally {
+            in.close();
+        }
+        return applyChangeLogs(fileName, logGeneration, records);
+    }
 
+    private List<ItemRecord> applyChangeLogs(String fileName, long logGeneration, List<ItemRecord> records) throws IOException {
+        List<File> logs = ItemChangeLog.listLogs(new File(fileName), logGeneration);
+        if (logs.isEmpty()) {
+            return records;
+        }
+        Map<String, Integer> recordsById = new HashMap<String, Integer>();
+        for (int i = 0; i < records.size(); i++) {
+            String id = records.get(i).getAttributeValue(HomeItemProxy.ID_ATTRIBUTE);
+            if (id != null && !recordsById.containsKey(id)) {
+                recordsById.put(id, i);
+            }
+        }
+        int changeCount = 0;
+        for (File log : logs) {
+            try {
+                for (byte[] batch : ItemChangeLog.readBatches(log)) {
+                    changeCount += applyChanges(batch, records, recordsById);
+                }
+            } catch (XMLStreamException e) {
+                logger.warning("Bad changes in " + log.getName() + ", ignoring the rest of it. " + e.getMessage());
+            }
+        }
+        logger.info("Applied " + changeCount + " changes from " + logs.size() + " change logs");
+        List<ItemRecord> result = new ArrayList<ItemRecord>(records.size());
+        for (ItemRecord record : records) {
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    private int applyChanges(byte[] batch, List<ItemRecord> records, Map<String, Integer> recordsById) throws XMLStreamException {
+        int changeCount = 0;
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(batch), "UTF-8");
         try {
-            logger.info("Loading Items from " + fileName);
-            DOMParser parser = new DOMParser();
-            parser.parse(fileName);
-            Document document = parser.getDocument();
-            Node firstNode = document.getDocumentElement();
-            NodeList elements = firstNode.getChildNodes();
-            int numberOfChilds = elements.getLength();
+            if (nextElement(reader)) {
+                while (nextElement(reader)) {
+                    if (reader.getLocalName().equals("HomeItem")) {
+                        ItemRecord record = parseItemRecord(reader, records.size());
+                        Integer index = recordsById.get(record.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE));
+                        if (index == null) {
+                            recordsById.put(record.getAttributeValue(HomeItemProxy.ID_ATTRIBUTE), records.size());
+                            records.add(record);
+                        } else {
+                            records.set(index, record);
+                        }
+                        changeCount++;
+                    } else if (reader.getLocalName().equals("RemovedItem")) {
+                        Integer index = recordsById.remove(reader.getAttributeValue(null, HomeItemProxy.ID_ATTRIBUTE));
+                        if (index != null) {
+                            records.set(index, null);
+                        }
+                        skipElement(reader);
+                        changeCount++;
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return changeCount;
+    }
+
+    private ItemRecord parseItemRecord(XMLStreamReader reader, int index) throws XMLStreamException {
+        ItemRecord record = new ItemRecord(index, reader.getAttributeValue(null, "Class"));
+        while (nextElement(reader)) {
+            String attributeName = reader.getLocalName().equals("Attribute") ? reader.getAttributeValue(null, "Name") : null;
+            if (attributeName != null) {
+                record.attributeNames.add(attributeName);
+                record.attributeValues.add(readFirstText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Move to the next child element of the current element.
+     *
+     * @return true if positioned on a child start element, false if the end of the current element was reached
+     */
+    private static boolean nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
 
+    /**
+     * Read the text before the first child element of the current element, and move to its end
+     */
+    private static String readFirstText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        boolean isInText = true;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                isInText = false;
+                skipElement(reader);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            } else if (isInText && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE)) {
+                text.append(reader.getText());
+            }
+        }
+        return text.toString();
+    }
 
-            // Loop through all instances in the file and create the HomeItems
-            for (int loopIndex = 0; loopIndex < numberOfChilds; loopIndex++) {
-                if (elements.item(loopIndex).getNodeName().equals("HomeItem")) {
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
 
-                    // Create the HomeItem from the attribute values
+    private ExecutorService createPool(int itemCount) {
+        int threadCount = Math.max(1, Math.min(Math.min(Runtime.getRuntime().availableProcessors(), MAX_LOAD_THREADS), itemCount));
+        return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ItemLoader-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void constructItems(List<ItemRecord> records, final HomeItemFactory factory, final HomeServer homeServer, ExecutorService pool) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(records.size());
+        for (final ItemRecord record : records) {
+            tasks.add(Executors.callable(new Runnable() {
+                public void run() {
                     try {
-                        sortedItems.add(createItemFromNode(elements.item(loopIndex), factory, homeServer));
+                        record.item = createItem(record.className, factory, homeServer);
                     } catch (Exception e) {
-                        logger.warning("Failed to load Item nr" + Integer.toString(loopIndex) + "from file. " + e.getMessage());
+                        record.fail(e);
                     }
                 }
-            }
-        } catch (SAXException e) {
-            logger.warning(fileName + " is not well-formed.");
-        } catch (IOException e) {
-            logger.warning("Due to an IOException, the parser could not load " + fileName);
+            }));
         }
-        return new LinkedList<HomeItem>(sortedItems);
+        runAll(pool, tasks);
     }
 
-    private HomeItem createItemFromNode(Node itemNode, HomeItemFactory factory, HomeServer homeServer) throws Exception {
+    private HomeItem createItem(String className, HomeItemFactory factory, HomeServer homeServer) throws Exception {
         HomeItem result;
-        String className = extractItemClassName(itemNode);
         if (className == null) {
             throw new Exception("No class name specified");
         }
 
         // Check if it is us
-        if (className.equals(homeServer.getClass().getName()) ||
-                className.equals(homeServer.getClass().getSimpleName()) ||
-                className.equals("BridgeBroker")) {
+        if (isHomeServerClass(className, homeServer)) {
             // Yes, this is us (and we are already created)
             result = homeServer;
         } else {
@@ -167,77 +398,96 @@ public class HomeItemFileLoader implements HomeItemLoader {
         if (result == null) {
             throw new Exception("Could not create class: " + className);
         }
-        extractAndApplyAttributeValues(itemNode, result);
-
         return result;
     }
 
-    private String extractItemClassName(Node itemNode) {
-        String className = null;
-        int numberAttributes = 0;
+    private boolean isHomeServerClass(String className, HomeServer homeServer) {
+        return className.equals(homeServer.getClass().getName()) ||
+                className.equals(homeServer.getClass().getSimpleName()) ||
+                className.equals("BridgeBroker");
+    }
 
-        // Get the attributes of the Item Node
-        if (itemNode.getAttributes() != null) {
-            numberAttributes = itemNode.getAttributes().getLength();
+    /**
+     * Apply the attribute values to the created HomeItems and find their start orders. The values of one
+     * HomeItem are applied in file order by one thread. The HomeServer itself may occur several times in
+     * the file, so it is initialized in the calling thread.
+     */
+    private void initItems(List<ItemRecord> records, HomeServer homeServer, ExecutorService pool) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(records.size());
+        for (final ItemRecord record : records) {
+            if (record.item != null && record.item != homeServer) {
+                tasks.add(Executors.callable(new Runnable() {
+                    public void run() {
+                        initItem(record);
+                    }
+                }));
+            }
         }
-        // Loop through them (but currently there should only be one)
-        for (int loopIndex = 0; loopIndex < numberAttributes; loopIndex++) {
-            Attr attribute = (Attr) itemNode.getAttributes().item(loopIndex);
-            // Check for Class Element
-            if (attribute.getNodeName().equals("Class")) {
-                className = attribute.getNodeValue();
+        runAll(pool, tasks);
+        for (ItemRecord record : records) {
+            if (record.item == homeServer) {
+                initItem(record);
             }
         }
-        return className;
     }
 
-    private void extractAndApplyAttributeValues(Node itemNode, HomeItem item) throws ModelException {
-        StaticHomeItemModel model = StaticHomeItemModel.getModel(item);
-        NodeList attributeElements = itemNode.getChildNodes();
-
-        for (int attributeIndex = 0; attributeIndex < attributeElements.getLength(); attributeIndex++) {
-            Node attributeNode = attributeElements.item(attributeIndex);
-            if (isItemAttributeNode(attributeNode)) {
-                String attributeName = extractItemAttributeName(attributeNode);
-                if (attributeName != null) {
-                    initiateAttributeValue(item, model, attributeName, extractItemAttributeValue(attributeNode));
-                }
+    private void initItem(ItemRecord record) {
+        try {
+            StaticHomeItemModel model = StaticHomeItemModel.getModel(record.item);
+            for (int i = 0; i < record.attributeNames.size(); i++) {
+                initiateAttributeValue(record.item, model, record.attributeNames.get(i), record.attributeValues.get(i));
+            }
+            // The model may depend on the attribute values, so the start order is taken when they are applied
+            record.startOrder = StaticHomeItemModel.getModel(record.item).getStartOrder();
+            record.name = record.item.getName();
+            if (record.name == null) {
+                throw new Exception("No name specified");
             }
+        } catch (Exception e) {
+            record.fail(e);
         }
     }
 
-    private boolean isItemAttributeNode(Node attributeNode) {
-        return attributeNode.getNodeName().equals("Attribute");
-    }
-
-    private String extractItemAttributeValue(Node attributeNode) {
-        // Get the actual value of the attribute
-        Node attributeValue = attributeNode.getFirstChild();
-        String value;
-        if (attributeValue != null) {
-            value = attributeValue.getNodeValue();
-        } else {
-            value = "";
+    private void runAll(ExecutorService pool, List<Callable<Object>> tasks) {
+        try {
+            pool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            logger.warning("Interrupted while loading Items");
+            Thread.currentThread().interrupt();
         }
-        return value;
     }
 
-    private String extractItemAttributeName(Node attributeNode) {
-        int numberAttributes;// Get the attributes of the Attribute Node
-        numberAttributes = 0;
-        if (attributeNode.getAttributes() != null) {
-            numberAttributes = attributeNode.getAttributes().getLength();
-        }
-        String attributeName = null;
-        // Loop through them (but currently there should only be one)
-        for (int loopIndex = 0; loopIndex < numberAttributes; loopIndex++) {
-            Attr attribute = (Attr) attributeNode.getAttributes().item(loopIndex);
-            // Check for Name Element
-            if (attribute.getNodeName().equals("Name")) {
-                attributeName = attribute.getNodeValue();
+    /**
+     * Sort the created HomeItems on start order and name. As before, only the first HomeItem in the file
+     * with a given start order and name is kept.
+     */
+    private List<HomeItem> sortInStartOrder(List<ItemRecord> records) {
+        List<ItemRecord> loaded = new ArrayList<ItemRecord>(records.size());
+        for (ItemRecord record : records) {
+            if (record.failure != null) {
+                logger.warning("Failed to load Item nr" + Integer.toString(record.index) + "from file. " + record.failure.getMessage());
+            } else if (record.item != null && record.name != null) {
+                loaded.add(record);
+            }
+        }
+        // The sort is stable, so equal HomeItems stay in file order
+        Collections.sort(loaded, new Comparator<ItemRecord>() {
+            public int compare(ItemRecord r1, ItemRecord r2) {
+                if (r1.startOrder == r2.startOrder) {
+                    return r1.name.compareTo(r2.name);
+                }
+                return r1.startOrder > r2.startOrder ? 1 : -1;
+            }
+        });
+        List<HomeItem> result = new ArrayList<HomeItem>(loaded.size());
+        ItemRecord previous = null;
+        for (ItemRecord record : loaded) {
+            if (previous == null || previous.startOrder != record.startOrder || !previous.name.equals(record.name)) {
+                result.add(record.item);
+                previous = record;
             }
         }
-        return attributeName;
+        return result;
     }
 
     private void initiateAttributeValue(HomeItem item, StaticHomeItemModel model, String attributeName, String value) {
@@ -286,5 +536,32 @@ public class HomeItemFileLoader implements HomeItemLoader {
         return buffer.toString();
     }
 
+    /**
+     * One HomeItem in the file, and the state of loading it
+     */
+    private static class ItemRecord {
+        private final int index;
+        private final String className;
+        private final List<String> attributeNames = new ArrayList<String>();
+        private final List<String> attributeValues = new ArrayList<String>();
+        private volatile HomeItem item;
+        private volatile int startOrder;
+        private volatile String name;
+        private volatile Exception failure;
+
+        ItemRecord(int index, String className) {
+            this.index = index;
+            this.className = className;
+        }
 
-}
\ No newline at end of file
+        String getAttributeValue(String attributeName) {
+            int index = attributeNames.indexOf(attributeName);
+            return index < 0 ? null : attributeValues.get(index);
+        }
+
+        void fail(Exception e) {
+            failure = e;
+            item = null;
+        }
+    }
+}
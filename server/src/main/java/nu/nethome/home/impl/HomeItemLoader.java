@@ -21,6 +21,8 @@ package nu.nethome.home.impl;
 
 import nu.nethome.home.item.HomeItem;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -30,15 +32,32 @@ public interface HomeItemLoader {
 
     /**
      * Save all HomeItems in the list to the specified resource. The state of the HomeItems
-     * is extracted by calling the get-methods for all attributes.
+     * is extracted by calling the get-methods for all attributes. The resource is replaced
+     * in one step, so it is never left half written.
      * @param items List of items to save
      * @param name Name of the resource to save to, file name for example
+     * @param changeLogGeneration first generation of change logs not included in the saved state
+     * @throws IOException if the items could not be saved
      */
-    void saveItems(List<HomeItem> items, String name);
+    void saveItems(List<HomeItem> items, String name, long changeLogGeneration) throws IOException;
 
     /**
-     * Load HomeItems from the specified source. The HomeItems are created and their
-     * state is loaded by applying the sep-methods for all attributes
+     * Write the state of one HomeItem in the same format as saveItems
      */
-    List<HomeItem> loadItems(String fileName, HomeItemFactory factory, HomeServer homeServer);
+    void writeItem(Writer out, HomeItem item) throws IOException;
+
+    /**
+     * @return the first generation of change logs that is not included in the specified resource,
+     * 0 if it does not exist
+     */
+    long readLogGeneration(String name);
+
+    /**
+     * Load HomeItems from the specified source, and apply the changes in its change logs.
+     * The HomeItems are created and their
+     * state is loaded by applying the sep-methods for all attributes. The returned HomeItems
+     * are sorted on start order and name.
+     * @param times the time spent parsing, constructing and initiating the HomeItems is stored here
+     */
+    List<HomeItem> loadItems(String fileName, HomeItemFactory factory, HomeServer homeServer, LoadTimes times);
 }
@@ -23,10 +23,10 @@ import nu.nethome.home.item.*;
 import nu.nethome.home.system.*;
 import nu.nethome.util.plugin.PluginProvider;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -51,24 +51,79 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
                 + "  <Attribute Name=\"SentEventCount\" Type=\"String\" Get=\"getSentEventCount\" />"
                 + "  <Attribute Name=\"EventsPerMinute\" Type=\"String\" Get=\"getEventsPerMinute\" />"
                 + "  <Attribute Name=\"FileName\" Type=\"String\" Get=\"getFileName\" Set=\"setFileName\" />"
+                + "  <Attribute Name=\"TimeSeriesDirectory\" Type=\"String\" Get=\"getTimeSeriesDirectory\" Set=\"setTimeSeriesDirectory\" />"
                 + "  <Attribute Name=\"UpgradeCommand\" Type=\"String\" Get=\"getUpgradeCommand\" Set=\"setUpgradeCommand\" />"
                 + "  <Attribute Name=\"LogFile\" Type=\"String\" Get=\"getLogFile\" 	Set=\"setLogFile\" />"
                 + "  <Attribute Name=\"UpTime\" Type=\"String\" Get=\"getUpTime\" />"
+                + "  <Attribute Name=\"EnqueuedEvents\" Type=\"String\" Get=\"getEnqueuedEvents\" />"
+                + "  <Attribute Name=\"DroppedEvents\" Type=\"String\" Get=\"getDroppedEvents\" />"
+                + "  <Attribute Name=\"CoalescedEvents\" Type=\"String\" Get=\"getCoalescedEvents\" />"
+                + "  <Attribute Name=\"EventQueueCapacity\" Type=\"String\" Get=\"getEventQueueCapacity\" Set=\"setEventQueueCapacity\" />"
+                + "  <Attribute Name=\"HighPriorityOverflow\" Type=\"StringList\" Get=\"getHighPriorityOverflow\" Set=\"setHighPriorityOverflow\" >"
+                + "     <item>Block</item> <item>DropOldest</item> <item>Coalesce</item></Attribute>"
+                + "  <Attribute Name=\"NormalPriorityOverflow\" Type=\"StringList\" Get=\"getNormalPriorityOverflow\" Set=\"setNormalPriorityOverflow\" >"
+                + "     <item>Block</item> <item>DropOldest</item> <item>Coalesce</item></Attribute>"
+                + "  <Attribute Name=\"LowPriorityOverflow\" Type=\"StringList\" Get=\"getLowPriorityOverflow\" Set=\"setLowPriorityOverflow\" >"
+                + "     <item>Block</item> <item>DropOldest</item> <item>Coalesce</item></Attribute>"
+                + "  <Attribute Name=\"DuplicateWindow\" Type=\"String\" Get=\"getDuplicateWindow\" Set=\"setDuplicateWindow\" />"
+                + "  <Attribute Name=\"DuplicateIgnoredAttributes\" Type=\"String\" Get=\"getDuplicateIgnoredAttributes\" Set=\"setDuplicateIgnoredAttributes\" />"
+                + "  <Attribute Name=\"SuppressedDuplicates\" Type=\"String\" Get=\"getSuppressedDuplicates\" />"
+                + "  <Attribute Name=\"JournalDirectory\" Type=\"String\" Get=\"getJournalDirectory\" Set=\"setJournalDirectory\" />"
+                + "  <Attribute Name=\"JournalMaxSize\" Type=\"String\" Get=\"getJournalMaxSize\" Set=\"setJournalMaxSize\" />"
+                + "  <Attribute Name=\"JournalMaxAge\" Type=\"String\" Get=\"getJournalMaxAge\" Set=\"setJournalMaxAge\" />"
+                + "  <Attribute Name=\"JournaledEvents\" Type=\"String\" Get=\"getJournaledEvents\" />"
+                + "  <Attribute Name=\"ReplayDirectory\" Type=\"String\" Get=\"getReplayDirectory\" Set=\"setReplayDirectory\" />"
+                + "  <Attribute Name=\"ReplaySpeed\" Type=\"StringList\" Get=\"getReplaySpeed\" Set=\"setReplaySpeed\" >"
+                + "     <item>RealTime</item> <item>Max</item></Attribute>"
+                + "  <Attribute Name=\"ReplayCommands\" Type=\"Boolean\" Get=\"getReplayCommands\" Set=\"setReplayCommands\" />"
+                + "  <Attribute Name=\"ReplayedEvents\" Type=\"String\" Get=\"getReplayedEvents\" />"
+                + "  <Attribute Name=\"ScheduledTasks\" Type=\"String\" Get=\"getScheduledTasks\" />"
+                + "  <Attribute Name=\"SchedulerLateness\" Type=\"String\" Get=\"getSchedulerLateness\" />"
                 + "  <Attribute Name=\"MaxDistributionTime\" Type=\"String\" Get=\"getMaxDistributionTime\" />"
+                + "  <Attribute Name=\"LaneQueueDepths\" Type=\"String\" Get=\"getLaneQueueDepths\" />"
+                + "  <Attribute Name=\"DistributionLanes\" Type=\"String\" Get=\"getDistributionLanes\" Set=\"setDistributionLanes\" />"
                 + "  <Attribute Name=\"AverageDistributionTime\" Type=\"String\" Get=\"getAverageDistributionTime\" />"
                 + "  <Attribute Name=\"MaxItemTime\" Type=\"String\" Get=\"getMaxItemTime\" />"
                 + "  <Attribute Name=\"MaxItemName\" Type=\"String\" Get=\"getMaxItemName\" />"
+                + "  <Attribute Name=\"SkippedItemsPerRound\" Type=\"String\" Get=\"getSkippedItemsPerRound\" />"
+                + "  <Attribute Name=\"SlowestItems\" Type=\"String\" Get=\"getSlowestItems\" />"
+                + "  <Attribute Name=\"SlowestEventTypes\" Type=\"String\" Get=\"getSlowestEventTypes\" />"
                 + "  <Attribute Name=\"AlarmCount\" Type=\"String\" Get=\"getCurrentAlarmCountString\" />"
                 + "  <Attribute Name=\"TotalLogRows\" Type=\"String\" Get=\"getTotalLogRecordCountString\" />"
+                + "  <Attribute Name=\"AutoSaveInterval\" Type=\"String\" Get=\"getAutoSaveInterval\" Set=\"setAutoSaveInterval\" />"
+                + "  <Attribute Name=\"UnsavedChanges\" Type=\"String\" Get=\"getUnsavedChanges\" />"
+                + "  <Attribute Name=\"SavedChanges\" Type=\"String\" Get=\"getSavedChanges\" />"
+                + "  <Attribute Name=\"ActivationThreads\" Type=\"String\" Get=\"getActivationThreads\" Set=\"setActivationThreads\" />"
+                + "  <Attribute Name=\"ActivationTimeout\" Type=\"String\" Get=\"getActivationTimeout\" Set=\"setActivationTimeout\" />"
+                + "  <Attribute Name=\"SlowestActivations\" Type=\"String\" Get=\"getSlowestActivations\" />"
+                + "  <Attribute Name=\"TimedOutActivations\" Type=\"String\" Get=\"getTimedOutActivations\" />"
+                + "  <Attribute Name=\"Connections\" Type=\"String\" Get=\"getConnections\" />"
+                + "  <Attribute Name=\"TimeSeries\" Type=\"String\" Get=\"getTimeSeries\" />"
+                + "  <Attribute Name=\"LoadParseTime\" Type=\"String\" Get=\"getLoadParseTime\" />"
+                + "  <Attribute Name=\"LoadConstructTime\" Type=\"String\" Get=\"getLoadConstructTime\" />"
+                + "  <Attribute Name=\"LoadInitTime\" Type=\"String\" Get=\"getLoadInitTime\" />"
+                + "  <Attribute Name=\"LoadRegisterTime\" Type=\"String\" Get=\"getLoadRegisterTime\" />"
+                + "  <Attribute Name=\"LoadActivateTime\" Type=\"String\" Get=\"getLoadActivateTime\" />"
                 + "  <Action Name=\"LoadItems\" Method=\"loadItems\" />"
                 + "  <Action Name=\"SaveItems\" Method=\"saveItems\" />"
+                + "  <Action Name=\"SaveAllItems\" Method=\"saveAllItems\" />"
                 + "  <Action Name=\"StopServer\" Method=\"stopServer\" />"
                 + "  <Action Name=\"UpgradeServer\" Method=\"upgradeServer\" />"
                 + "  <Action Name=\"ResetStatistics\" Method=\"resetStatistics\" />"
+                + "  <Action Name=\"ReplayJournal\" Method=\"replayJournal\" />"
                 + "</HomeItem> ");
     }
 
-    private static final int MAX_QUEUE_SIZE = 20;
+    private static final int DEFAULT_QUEUE_CAPACITY = 20;
+    private static final int DEFAULT_DISTRIBUTION_LANES = 4;
+    private static final int DEFAULT_ACTIVATION_THREADS = 4;
+    private static final int DEFAULT_ACTIVATION_TIMEOUT_S = 30;
+    private static final int SLOWEST_LIST_LENGTH = 5;
+    private static final int DEFAULT_JOURNAL_MAX_SIZE_MB = 100;
+    private static final int DEFAULT_JOURNAL_MAX_AGE_DAYS = 7;
+    private static final int BYTES_PER_MB = 1024 * 1024;
+    private static final String DEFAULT_TIME_SERIES_DIRECTORY = "timeseries";
+    private static final int TIME_SERIES_FLUSH_INTERVAL = 10 * 1000;
     private static final String QUIT_EVENT = "BrokerQuitEvent";
     public static final int LOG_RECORD_CAPACITY = 50;
     public static final int EVENT_COUNT_PERIOD = 15;
@@ -85,11 +140,36 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
     private String upgradeCommand = "/usr/local/lib/home-manager/upgrade.sh";
     private Date startTime = new Date();
     private long maxID = 0;
-    private LinkedBlockingQueue<Event> eventQueue;
+    private PriorityEventQueue eventQueue;
+    private volatile Thread eventThread;
     private EventDistributionStatistics statistics = new EventDistributionStatistics();
-    private Timer minuteTimer = new Timer();
+    private final DuplicateEventFilter duplicateFilter = new DuplicateEventFilter(0);
+    private volatile EventJournal journal;
+    private String journalDirectory = "";
+    private int journalMaxSize = DEFAULT_JOURNAL_MAX_SIZE_MB;
+    private int journalMaxAge = DEFAULT_JOURNAL_MAX_AGE_DAYS;
+    private String replayDirectory = "";
+    private boolean replayRealTime = true;
+    private boolean replayCommands = false;
+    private volatile Thread replayThread;
+    private volatile long replayedEvents = 0;
+    private volatile EventDistributor distributor;
+    private int distributionLanes = DEFAULT_DISTRIBUTION_LANES;
+    private final TimingWheelScheduler scheduler = new TimingWheelScheduler(TimingWheelScheduler.DEFAULT_WORKER_COUNT);
+    private final BackoffConnectionSupervisor connectionSupervisor = new BackoffConnectionSupervisor(scheduler, this);
+    private volatile MappedTimeSeriesStore timeSeriesStore = new MappedTimeSeriesStore(new File(DEFAULT_TIME_SERIES_DIRECTORY));
+    private ScheduledTask timeSeriesFlushTask;
+    private ScheduledTask minuteTask;
     private Event minuteEvent;
     private String fileName = "system.xml";
+    private final LoadTimes loadTimes = new LoadTimes();
+    private volatile ItemChangeLog changeLog;
+    private int autoSaveInterval = 0;
+    private ScheduledTask autoSaveTask;
+    private int activationThreads = DEFAULT_ACTIVATION_THREADS;
+    private int activationTimeout = DEFAULT_ACTIVATION_TIMEOUT_S;
+    private volatile Map<String, Long> activationTimes = Collections.emptyMap();
+    private volatile int timedOutActivations = 0;
     private int sentEventCount = 0;
     private final ItemDirectory itemDirectory = new ItemDirectory();
     private HomeItemFactory factory;
@@ -105,10 +185,18 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
     private long eventsCountPerPeriod = 0;
 
     public HomeServer() {
-        eventQueue = new LinkedBlockingQueue<Event>(MAX_QUEUE_SIZE);
+        eventQueue = new PriorityEventQueue(DEFAULT_QUEUE_CAPACITY);
         logRecords = new LinkedBlockingDeque<LogRecord>(LOG_RECORD_CAPACITY);
         setupLogger();
-        eventCountlogger.activate();
+        // The scheduler is started when the server is run or activated, and stopped when it is stopped
+        // Logged values are forced to disk in groups, rather than one by one. Forcing blocks on disk I/O,
+        // so it runs on the item workers
+        timeSeriesFlushTask = scheduler.getItemScheduler().scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                timeSeriesStore.flush();
+            }
+        }, TIME_SERIES_FLUSH_INTERVAL, TIME_SERIES_FLUSH_INTERVAL);
+        eventCountlogger.activate(this);
     }
 
     private void setupLogger() {
@@ -162,6 +250,7 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         this.factory = factory;
         this.homeItemLoader = loader;
         this.pluginProvider = pluginProvider;
+        scheduler.start();
 
         // Load the configuration file
         loadItems();
@@ -169,8 +258,16 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         waitForEnd();
 
         // When we get this far, the application is closing down.
+        // Save the last changes if autosave is on, since the user relies on it
+        if (stopAutoSave()) {
+            saveItems();
+        }
         // Stop all HomeItems and empty the instance list.
         stopAndRemoveItems();
+        connectionSupervisor.stop();
+        timeSeriesFlushTask.cancel();
+        timeSeriesStore.close();
+        scheduler.stop();
 
         // Upgrade server
         handleUpgrade();
@@ -198,7 +295,10 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
     }
 
     public void activate(HomeService server) {
-        Thread eventThread = new Thread("EventDistributor") {
+        scheduler.start();
+        distributor = new EventDistributor(distributionLanes, statistics, finalEventListeners);
+        distributor.start();
+        eventThread = new Thread("EventDistributor") {
             @Override
             public void run() {
                 eventDistributorTask();
@@ -214,9 +314,8 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         date.set(Calendar.SECOND, 0);
         date.set(Calendar.MILLISECOND, 0);
         // Schedule the job at m_Interval minutes interval
-        minuteTimer.schedule(
-                new TimerTask() {
-                    @Override
+        minuteTask = scheduler.scheduleAtFixedRate(
+                new Runnable() {
                     public void run() {
                         send(minuteEvent);
                     }
@@ -264,7 +363,7 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         HomeItem item = itemDirectory.findInstance(name);
         if (item != null) {
             try {
-                return new LocalHomeItemProxy(item, this);
+                return new LocalHomeItemProxy(item, this, itemDirectory, changeLog);
             } catch (ModelException e) {
                 // return null
             }
@@ -273,7 +372,15 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
     }
 
     public boolean renameInstance(String fromInstanceName, String toInstanceName) {
-        return itemDirectory.renameInstance(fromInstanceName, toInstanceName);
+        boolean isRenamed = itemDirectory.renameInstance(fromInstanceName, toInstanceName);
+        if (isRenamed) {
+            HomeItem item = itemDirectory.findInstance(toInstanceName);
+            statistics.itemRemoved(item.getItemId());
+            if (changeLog != null) {
+                changeLog.itemChanged(item);
+            }
+        }
+        return isRenamed;
     }
 
     public boolean removeInstance(String instanceName) {
@@ -282,6 +389,10 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
             // Item does not exist
             return false;
         }
+        statistics.itemRemoved(item.getItemId());
+        if (changeLog != null) {
+            changeLog.itemRemoved(item);
+        }
 
         // Stop the instance unless it is never started
         if (!item.getName().startsWith("#")) {
@@ -304,60 +415,77 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
       */
     public void send(Event event) {
         logger.fine(event.toString());
-        if (!eventQueue.offer(event)) {
-            handleEventDistributionFaliure(event);
+        if (duplicateFilter.isDuplicate(event, System.currentTimeMillis())) {
+            return;
+        }
+        queueEvent(event, PriorityEventQueue.priorityOf(event));
+    }
+
+    private void queueEvent(Event event, PriorityEventQueue.Priority priority) {
+        // The distribution threads must never wait for room in the queue, since they are the ones emptying it
+        PriorityEventQueue.Outcome outcome = eventQueue.put(event, priority, !isDistributionThread());
+        if (outcome == PriorityEventQueue.Outcome.REJECTED) {
+            handleEventDistributionFaliure("Event queue full trying to distribute " + event.toString());
         } else {
             sentEventCount++;
             eventsCount++;
+            if (outcome == PriorityEventQueue.Outcome.DROPPED_OLDEST) {
+                handleEventDistributionFaliure("Event queue full, dropped oldest " + priority.name() + " priority event");
+            }
         }
     }
 
-    private void handleEventDistributionFaliure(Event event) {
-        if (statistics.isItemCurrentlyProcessingEvent()) {
-            logger.severe("Event queue full. Current Item processing is \"" + statistics.getCurrentItemName() + "\"  since " + getCurrentItemProcessingTime() + " ms");
+    private boolean isDistributionThread() {
+        Thread current = Thread.currentThread();
+        return current == eventThread || (distributor != null && distributor.isDistributionThread(current));
+    }
+
+    private void handleEventDistributionFaliure(String message) {
+        EventDistributor.Lane busyLane = distributor != null ? distributor.getLongestBusyLane() : null;
+        if (busyLane != null) {
+            logger.severe(message + ". Current Item processing is \"" + busyLane.getCurrentItemName() + "\"  since " + getCurrentItemProcessingTime() + " ms");
         } else {
-            logger.severe("Event queue full trying to distribute " + event.toString());
+            logger.severe(message);
         }
     }
 
     public void eventDistributorTask() {
         while (true) {
-            Event event;
-            String itemName = "";
             try {
                 // Take the next event from the queue, will wait if no events yet
-                event = eventQueue.take();
+                Event event = eventQueue.take();
                 // Check if it was the quit event, quit in that case
                 if (event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE).equals(QUIT_EVENT)) {
+                    distributor.stop();
+                    closeJournal();
+                    stopScheduling();
                     return;
                 }
-                // Loop over all Items and offer the event
-                statistics.startDistributionRound();
-                boolean eventIsHandled = false;
-                for (HomeItem home : itemDirectory.getHomeItems()) {
-                    try {
-                        itemName = home.getName();
-                        logger.finest("Distributing event to " + itemName);
-                        statistics.startItemDistribution(itemName);
-                        eventIsHandled |= home.receiveEvent(event);
-                    } catch (Exception e) {
-                        logger.log(Level.WARNING, "Failed to distribute event to \"" + itemName + "\" (" + event.toString() + ") ", e);
-                    }
-                    statistics.endItemDistribution();
-                }
-                synchronized (finalEventListeners) {
-                    for (FinalEventListener listener : finalEventListeners) {
-                        listener.receiveFinalEvent(event, eventIsHandled);
-                    }
+                EventJournal currentJournal = journal;
+                // Replayed Events are already in a journal
+                if (currentJournal != null && !(event instanceof ReplayedEvent)) {
+                    currentJournal.append(event, System.currentTimeMillis());
                 }
+                // Offer the event to all Items subscribing to this event type
+                List<HomeItem> receivers = itemDirectory.getEventReceivers(event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE));
+                statistics.skippedItems(itemDirectory.getItemCount() - receivers.size());
+                distributor.distribute(event, receivers);
             } catch (InterruptedException e) {
                 // Do Dinada
-            } finally {
-                statistics.endDistributionRound();
             }
         }
     }
 
+    /**
+     * Stop the threads of the scheduler and close the time series store. This is done when the server is
+     * stopped, after the Events queued before the stop have been distributed.
+     */
+    private void stopScheduling() {
+        timeSeriesFlushTask.cancel();
+        timeSeriesStore.close();
+        scheduler.stop();
+    }
+
     /**
      * Register a new HomeItem
      *
@@ -391,12 +519,15 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
      * HomeItem method which stops all object activity for program termination
      */
     public void stop() {
-        // Stop the event distribution thread by sending the quit event
+        // Stop the event distribution thread by sending the quit event. It is queued with the lowest
+        // priority, so the Events queued before it are distributed first
         Event quitEvent = new InternalEvent(QUIT_EVENT);
-        send(quitEvent);
+        queueEvent(quitEvent, PriorityEventQueue.Priority.LOW);
 
         // Stop the minute timer
-        minuteTimer.cancel();
+        if (minuteTask != null) {
+            minuteTask.cancel();
+        }
     }
 
     public String getSentEventCount() {
@@ -405,12 +536,19 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
 
     /**
      * Load HomeItems from a file and activate them. This is done in two steps: First the Items are
-     * registered in the internal directory. After that the Items are activated in start order.
+     * registered in the internal directory. After that the Items are activated in start order, where
+     * Items with the same start order are activated in parallel once the Items they point to are activated.
      * This means that at activation, all Items are reachable in the directory even those which are
      * not yet activated.
      */
     public void loadItems() {
-        List<HomeItem> sortedItems = homeItemLoader.loadItems(getFileName(), factory, this);
+        if (changeLog == null) {
+            changeLog = new ItemChangeLog(new File(getFileName()), homeItemLoader);
+        } else {
+            changeLog.moveTo(new File(getFileName()));
+        }
+        List<HomeItem> sortedItems = homeItemLoader.loadItems(getFileName(), factory, this, loadTimes);
+        long registerStart = System.nanoTime();
 
         for (HomeItem item : sortedItems) {
             if (item.getItemId() > maxID) {
@@ -419,47 +557,87 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         }
         maxID += 1;
 
-        // Loop through all created Items, and register them
+        // This is a backward compatibility check. If an Item has no valid ID, assign one
         for (HomeItem item : sortedItems) {
-
-            // This is a backward compatibility check. If the Item has no valid ID, assign one
             if (item.getItemId() == 0) {
                 item.setItemId(maxID);
                 maxID += 1;
             }
+        }
 
-            // Register the new instance
-            int regResult = registerInstance(item);
+        // Register all created Items in one go
+        int[] regResults = itemDirectory.registerInstances(sortedItems);
+        int itemIndex = 0;
+        for (HomeItem item : sortedItems) {
+            int regResult = regResults[itemIndex++];
             if (regResult != 0) {
                 // IF we fail to register the instance, mark it as bad by setting ID = 0
                 HomeServer.logger.warning("Failed to register Item " + item.getName() + " Error " + Integer.toString(regResult));
                 item.setItemId(0);
+            } else {
+                changeLog.watchItem(item);
             }
         }
+        loadTimes.setRegisterTime(HomeItemFileLoader.msSince(registerStart));
 
-        // Now loop through all Items again in start order and activate them
+        // Now activate the Items in start order, in parallel where possible
         int itemCount = sortedItems.size();
         int activatedItemCount = 0;
-        for (HomeItem item : sortedItems) {
-            if (!item.getName().startsWith("#") && (item.getItemId() != 0)) {
-                try {
-                    item.activate(this);
-                    activatedItemCount++;
-                } catch (Exception e) {
-                    HomeServer.logger.warning("Failed to activate Item " + item.getName() + " Error " + e.getMessage());
-                }
-            }
+        long activateStart = System.nanoTime();
+        ItemActivator activator = new ItemActivator(itemDirectory, activationThreads, activationTimeout * 1000L);
+        try {
+            activatedItemCount = activator.activate(sortedItems, this);
+        } catch (InterruptedException e) {
+            HomeServer.logger.warning("Interrupted activating Items");
         }
+        activationTimes = activator.getActivationTimes();
+        timedOutActivations = activator.getTimedOutCount();
+        loadTimes.setActivateTime(HomeItemFileLoader.msSince(activateStart));
         HomeServer.logger.info("Activated " + Integer.toString(activatedItemCount) + " of " + Integer.toString(itemCount) + " Items");
+        HomeServer.logger.info("Loaded Items in " + Long.toString(loadTimes.getTotalTime()) + " ms (" + loadTimes.toString() + ")");
     }
 
+    /**
+     * Save the HomeItems changed since the last save to the change log of the configuration file, both those
+     * changed via their attributes and those which have changed themselves. If the configuration file does not
+     * exist or has been given a new name, all HomeItems are saved to it instead.
+     */
     public void saveItems() {
-        List<HomeItem> items = new LinkedList<HomeItem>();
-        Iterator<HomeItem> i = itemDirectory.iterator();
-        while (i.hasNext()) {
-            items.add(i.next());
+        ItemChangeLog log = changeLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            File file = new File(getFileName());
+            if (!file.equals(log.getConfigFile())) {
+                log.moveTo(file);
+                log.compact(itemDirectory);
+            } else if (!file.exists()) {
+                log.compact(itemDirectory);
+            } else {
+                log.flush();
+                if (log.isCompactionNeeded()) {
+                    log.compactInBackground(itemDirectory);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not save HomeItems", e);
+        }
+    }
+
+    /**
+     * Write the state of all HomeItems to the configuration file, which replaces its change logs.
+     * This is done in the background.
+     */
+    public void saveAllItems() {
+        ItemChangeLog log = changeLog;
+        if (log != null) {
+            if (new File(getFileName()).equals(log.getConfigFile())) {
+                log.compactInBackground(itemDirectory);
+            } else {
+                saveItems();
+            }
         }
-        homeItemLoader.saveItems(items, fileName);
     }
 
     /**
@@ -556,8 +734,12 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         maxID += 1;
         newItem.setItemId(maxID);
         registerInstance(newItem);
+        if (changeLog != null) {
+            changeLog.itemChanged(newItem);
+            changeLog.watchItem(newItem);
+        }
         try {
-            return new LocalHomeItemProxy(newItem, this);
+            return new LocalHomeItemProxy(newItem, this, itemDirectory, changeLog);
         } catch (ModelException e) {
             return null;
         }
@@ -575,6 +757,41 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         return this;
     }
 
+    public Scheduler getScheduler() {
+        return scheduler.getItemScheduler();
+    }
+
+    public ConnectionSupervisor getConnectionSupervisor() {
+        return connectionSupervisor;
+    }
+
+    public TimeSeriesStore getTimeSeriesStore() {
+        return timeSeriesStore;
+    }
+
+    public String getTimeSeriesDirectory() {
+        return timeSeriesStore.getDirectory().getPath();
+    }
+
+    /**
+     * Set the directory where the values logged by HomeItems are stored. Series already stored in the old
+     * directory are not moved.
+     *
+     * @param directory path of the directory
+     */
+    public void setTimeSeriesDirectory(String directory) {
+        String path = directory.trim().length() > 0 ? directory.trim() : DEFAULT_TIME_SERIES_DIRECTORY;
+        MappedTimeSeriesStore oldStore = timeSeriesStore;
+        if (!oldStore.getDirectory().getPath().equals(new File(path).getPath())) {
+            timeSeriesStore = new MappedTimeSeriesStore(new File(path));
+            oldStore.close();
+        }
+    }
+
+    public String getTimeSeries() {
+        return Integer.toString(timeSeriesStore.getSeriesNames().size());
+    }
+
     public String getMaxDistributionTime() {
         Double value = statistics.getMaxRoundTime();
         return String.format("%.2f", value);
@@ -590,17 +807,395 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         return String.format("%.2f", value);
     }
 
+    public String getSkippedItemsPerRound() {
+        Double value = statistics.getAverageSkippedItems();
+        return String.format("%.2f", value);
+    }
+
     public String getCurrentItemProcessingTime() {
-        Double value = statistics.currentItemProcessingTime() / EventDistributionStatistics.NANO_PER_MILLI;
+        EventDistributor.Lane busyLane = distributor != null ? distributor.getLongestBusyLane() : null;
+        Double value = busyLane != null ? busyLane.currentItemProcessingTime() / EventDistributionStatistics.NANO_PER_MILLI : 0;
         return String.format("%.2f", value);
     }
 
+    public String getEnqueuedEvents() {
+        return Long.toString(eventQueue.getEnqueuedCount());
+    }
+
+    public String getDroppedEvents() {
+        return Long.toString(eventQueue.getDroppedCount());
+    }
+
+    public String getCoalescedEvents() {
+        return Long.toString(eventQueue.getCoalescedCount());
+    }
+
+    public String getEventQueueCapacity() {
+        return Integer.toString(eventQueue.getCapacity());
+    }
+
+    public void setEventQueueCapacity(String capacity) throws IllegalValueException {
+        try {
+            int value = Integer.parseInt(capacity);
+            if (value < 1) {
+                throw new IllegalValueException("Capacity must be at least 1", capacity);
+            }
+            eventQueue.setCapacity(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", capacity);
+        }
+    }
+
+    public String getHighPriorityOverflow() {
+        return eventQueue.getOverflowPolicy(PriorityEventQueue.Priority.HIGH).name();
+    }
+
+    public void setHighPriorityOverflow(String policy) throws IllegalValueException {
+        setOverflowPolicy(PriorityEventQueue.Priority.HIGH, policy);
+    }
+
+    public String getNormalPriorityOverflow() {
+        return eventQueue.getOverflowPolicy(PriorityEventQueue.Priority.NORMAL).name();
+    }
+
+    public void setNormalPriorityOverflow(String policy) throws IllegalValueException {
+        setOverflowPolicy(PriorityEventQueue.Priority.NORMAL, policy);
+    }
+
+    public String getLowPriorityOverflow() {
+        return eventQueue.getOverflowPolicy(PriorityEventQueue.Priority.LOW).name();
+    }
+
+    public void setLowPriorityOverflow(String policy) throws IllegalValueException {
+        setOverflowPolicy(PriorityEventQueue.Priority.LOW, policy);
+    }
+
+    private void setOverflowPolicy(PriorityEventQueue.Priority priority, String policy) throws IllegalValueException {
+        try {
+            eventQueue.setOverflowPolicy(priority, PriorityEventQueue.OverflowPolicy.valueOf(policy));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalValueException("Unknown overflow policy", policy);
+        }
+    }
+
+    public String getDuplicateWindow() {
+        return Long.toString(duplicateFilter.getWindow());
+    }
+
+    /**
+     * Set the time repeated inbound protocol messages are suppressed
+     *
+     * @param window time in ms, 0 turns off the suppression
+     */
+    public void setDuplicateWindow(String window) throws IllegalValueException {
+        try {
+            long value = Long.parseLong(window);
+            if (value < 0) {
+                throw new IllegalValueException("Window must not be negative", window);
+            }
+            duplicateFilter.setWindow(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", window);
+        }
+    }
+
+    public String getDuplicateIgnoredAttributes() {
+        return duplicateFilter.getIgnoredAttributes();
+    }
+
+    public void setDuplicateIgnoredAttributes(String attributes) {
+        duplicateFilter.setIgnoredAttributes(attributes);
+    }
+
+    public String getSuppressedDuplicates() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> entry : duplicateFilter.getSuppressedCounts().entrySet()) {
+            result.append(result.length() > 0 ? ", " : "").append(entry.getKey()).append(":").append(entry.getValue());
+        }
+        return result.toString();
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Set the directory where all distributed Events are journaled. An empty value turns off the journal.
+     *
+     * @param directory path of the journal directory
+     */
+    public synchronized void setJournalDirectory(String directory) {
+        journalDirectory = directory.trim();
+        closeJournal();
+        if (journalDirectory.length() > 0) {
+            EventJournal newJournal = new EventJournal(new File(journalDirectory), EventJournal.DEFAULT_SEGMENT_SIZE);
+            newJournal.setMaxTotalSize((long) journalMaxSize * BYTES_PER_MB);
+            newJournal.setMaxAgeDays(journalMaxAge);
+            journal = newJournal;
+        }
+    }
+
+    private void closeJournal() {
+        EventJournal oldJournal = journal;
+        journal = null;
+        if (oldJournal != null) {
+            oldJournal.close();
+        }
+    }
+
+    public String getJournalMaxSize() {
+        return Integer.toString(journalMaxSize);
+    }
+
+    /**
+     * @param maxSize max total size of the journal in MB, 0 means no limit
+     */
+    public synchronized void setJournalMaxSize(String maxSize) throws IllegalValueException {
+        journalMaxSize = parseJournalLimit(maxSize);
+        EventJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.setMaxTotalSize((long) journalMaxSize * BYTES_PER_MB);
+        }
+    }
+
+    public String getJournalMaxAge() {
+        return Integer.toString(journalMaxAge);
+    }
+
+    /**
+     * @param maxAge max age of the journal in days, 0 means no limit
+     */
+    public synchronized void setJournalMaxAge(String maxAge) throws IllegalValueException {
+        journalMaxAge = parseJournalLimit(maxAge);
+        EventJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.setMaxAgeDays(journalMaxAge);
+        }
+    }
+
+    private int parseJournalLimit(String limit) throws IllegalValueException {
+        try {
+            int value = Integer.parseInt(limit);
+            if (value < 0) {
+                throw new IllegalValueException("Limit must not be negative", limit);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", limit);
+        }
+    }
+
+    public String getJournaledEvents() {
+        EventJournal currentJournal = journal;
+        return currentJournal != null ? Long.toString(currentJournal.getWrittenRecords()) : "";
+    }
+
+    public String getReplayDirectory() {
+        return replayDirectory;
+    }
+
+    /**
+     * @param directory journal directory to replay. If empty, the current journal directory is replayed
+     */
+    public void setReplayDirectory(String directory) {
+        replayDirectory = directory.trim();
+    }
+
+    public String getReplaySpeed() {
+        return replayRealTime ? "RealTime" : "Max";
+    }
+
+    public void setReplaySpeed(String speed) throws IllegalValueException {
+        if (speed.equals("RealTime") || speed.equals("Max")) {
+            replayRealTime = speed.equals("RealTime");
+        } else {
+            throw new IllegalValueException("Unknown replay speed", speed);
+        }
+    }
+
+    public String getReplayCommands() {
+        return replayCommands ? "Yes" : "No";
+    }
+
+    /**
+     * @param send true if journaled commands to devices, Events with Direction=Out, are sent when replaying
+     */
+    public void setReplayCommands(String send) {
+        replayCommands = send.equalsIgnoreCase("true") || send.equalsIgnoreCase("yes");
+    }
+
+    public String getReplayedEvents() {
+        return Long.toString(replayedEvents);
+    }
+
+    /**
+     * Send all Events in a journal again, either with the original timing or as fast as the Events are
+     * distributed. If the current journal is replayed, only Events journaled before the replay started are sent,
+     * and its segments are kept until the replay is done. Replayed Events are not journaled again, and
+     * commands to devices are only replayed if ReplayCommands is set.
+     */
+    public synchronized void replayJournal() {
+        if (replayThread != null) {
+            return;
+        }
+        String directory = replayDirectory.length() > 0 ? replayDirectory : journalDirectory;
+        if (directory.length() == 0) {
+            return;
+        }
+        EventJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.rotate();
+        }
+        final List<File> segments = EventJournal.listSegments(new File(directory));
+        final EventJournal.Reader reader = new EventJournal.Reader(segments) {
+            @Override
+            protected Event newEvent() {
+                return new ReplayedEvent();
+            }
+        };
+        final EventJournal pinningJournal = currentJournal;
+        if (pinningJournal != null) {
+            pinningJournal.pin(segments);
+        }
+        final boolean realTime = replayRealTime;
+        final boolean withCommands = replayCommands;
+        replayedEvents = 0;
+        replayThread = new Thread("EventJournalReplay") {
+            @Override
+            public void run() {
+                try {
+                    replay(reader, realTime, withCommands);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to replay event journal", e);
+                } catch (InterruptedException e) {
+                    // Do Dinada
+                } finally {
+                    if (pinningJournal != null) {
+                        pinningJournal.unpin(segments);
+                    }
+                    replayThread = null;
+                }
+            }
+        };
+        replayThread.start();
+    }
+
+    private void replay(EventJournal.Reader reader, boolean realTime, boolean withCommands)
+            throws IOException, InterruptedException {
+        long firstEventTime = -1;
+        long replayStartTime = System.currentTimeMillis();
+        Event event;
+        while ((event = reader.next()) != null) {
+            if (!withCommands && event.getAttribute(PriorityEventQueue.DIRECTION_ATTRIBUTE).equals("Out")) {
+                continue;
+            }
+            if (firstEventTime < 0) {
+                firstEventTime = reader.getTimeStamp();
+            }
+            if (realTime) {
+                long delay = (reader.getTimeStamp() - firstEventTime) - (System.currentTimeMillis() - replayStartTime);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            } else {
+                // Do not overflow the event queue when replaying at max speed
+                while (eventQueue.size() >= eventQueue.getCapacity()) {
+                    Thread.sleep(1);
+                }
+            }
+            send(event);
+            replayedEvents++;
+        }
+    }
+
+    /**
+     * An Event read from a journal to be replayed
+     */
+    private static class ReplayedEvent extends InternalEvent {
+        ReplayedEvent() {
+            super("");
+        }
+    }
+
+    public String getScheduledTasks() {
+        return Integer.toString(scheduler.getScheduledCount());
+    }
+
+    /**
+     * @return how late scheduled tasks run, as "p50/p99/max" in ms
+     */
+    public String getSchedulerLateness() {
+        LatencySummary lateness = scheduler.getLateness();
+        return String.format("%.0f/%.0f/%.0f", lateness.getPercentile(50), lateness.getPercentile(99), lateness.getMax());
+    }
+
+    public String getLaneQueueDepths() {
+        if (distributor == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (int depth : distributor.getLaneQueueDepths()) {
+            result.append(result.length() > 0 ? "," : "").append(depth);
+        }
+        return result.toString();
+    }
+
+    public String getDistributionLanes() {
+        return Integer.toString(distributionLanes);
+    }
+
+    /**
+     * Set the number of parallel event distribution lanes. The new value is used the next time the server starts.
+     *
+     * @param lanes number of lanes
+     */
+    public void setDistributionLanes(String lanes) throws IllegalValueException {
+        try {
+            int value = Integer.parseInt(lanes);
+            if (value < 1) {
+                throw new IllegalValueException("Lanes must be at least 1", lanes);
+            }
+            distributionLanes = value;
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", lanes);
+        }
+    }
+
     public String getMaxItemName() {
         return statistics.getMaxItemName();
     }
 
+    public List<LatencySummary> getItemLatencies() {
+        return statistics.getItemLatencies();
+    }
+
+    public List<LatencySummary> getEventTypeLatencies() {
+        return statistics.getEventTypeLatencies();
+    }
+
+    public String getSlowestItems() {
+        return formatSlowest(statistics.getItemLatencies());
+    }
+
+    public String getSlowestEventTypes() {
+        return formatSlowest(statistics.getEventTypeLatencies());
+    }
+
+    /**
+     * Format the first latencies in the list as "name:p99" with the time in ms
+     */
+    private String formatSlowest(List<LatencySummary> latencies) {
+        StringBuilder result = new StringBuilder();
+        for (LatencySummary latency : latencies.subList(0, Math.min(SLOWEST_LIST_LENGTH, latencies.size()))) {
+            result.append(result.length() > 0 ? ", " : "");
+            result.append(latency.getName()).append(":").append(String.format("%.2f", latency.getPercentile(99)));
+        }
+        return result.toString();
+    }
+
     public void resetStatistics() {
         statistics.resetStatistics();
+        duplicateFilter.resetStatistics();
     }
 
     public String getVersion() {
@@ -624,6 +1219,155 @@ public class HomeServer implements HomeItem, HomeService, ServiceState, ValueIte
         return Integer.toString(currentWarningCount);
     }
 
+    public String getAutoSaveInterval() {
+        return Integer.toString(autoSaveInterval);
+    }
+
+    /**
+     * @param interval seconds between saving changed HomeItems, 0 means no autosave
+     */
+    public synchronized void setAutoSaveInterval(String interval) throws IllegalValueException {
+        int value;
+        try {
+            value = Integer.parseInt(interval);
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", interval);
+        }
+        if (value < 0) {
+            throw new IllegalValueException("Interval must not be negative", interval);
+        }
+        stopAutoSave();
+        autoSaveInterval = value;
+        if (autoSaveInterval > 0) {
+            long period = autoSaveInterval * 1000L;
+            autoSaveTask = scheduler.getItemScheduler().scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    // HomeItems may have changed their own attributes, so save also when no changes are marked
+                    saveItems();
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * @return true if autosave was on
+     */
+    private synchronized boolean stopAutoSave() {
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
+            autoSaveTask = null;
+            return true;
+        }
+        return false;
+    }
+
+    public String getUnsavedChanges() {
+        ItemChangeLog log = changeLog;
+        return Integer.toString(log == null ? 0 : log.getPendingChangeCount());
+    }
+
+    public String getSavedChanges() {
+        ItemChangeLog log = changeLog;
+        return Long.toString(log == null ? 0 : log.getSavedChanges());
+    }
+
+    public String getActivationThreads() {
+        return Integer.toString(activationThreads);
+    }
+
+    public void setActivationThreads(String threads) throws IllegalValueException {
+        try {
+            int value = Integer.parseInt(threads);
+            if (value < 1) {
+                throw new IllegalValueException("Threads must be at least 1", threads);
+            }
+            activationThreads = value;
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", threads);
+        }
+    }
+
+    public String getActivationTimeout() {
+        return Integer.toString(activationTimeout);
+    }
+
+    /**
+     * @param timeout max time in seconds to wait for the activation of one Item
+     */
+    public void setActivationTimeout(String timeout) throws IllegalValueException {
+        try {
+            int value = Integer.parseInt(timeout);
+            if (value < 1) {
+                throw new IllegalValueException("Timeout must be at least 1", timeout);
+            }
+            activationTimeout = value;
+        } catch (NumberFormatException e) {
+            throw new IllegalValueException("Not a number", timeout);
+        }
+    }
+
+    /**
+     * @return the Items that took longest to activate as "name:time" with the time in ms
+     */
+    public String getSlowestActivations() {
+        List<Map.Entry<String, Long>> times = new ArrayList<Map.Entry<String, Long>>(activationTimes.entrySet());
+        Collections.sort(times, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> t1, Map.Entry<String, Long> t2) {
+                return t2.getValue().compareTo(t1.getValue());
+            }
+        });
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> time : times.subList(0, Math.min(SLOWEST_LIST_LENGTH, times.size()))) {
+            result.append(result.length() > 0 ? ", " : "");
+            result.append(time.getKey()).append(":").append(time.getValue());
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return time in ms each Item took to activate at the last load
+     */
+    public Map<String, Long> getActivationTimes() {
+        return activationTimes;
+    }
+
+    public String getTimedOutActivations() {
+        return Integer.toString(timedOutActivations);
+    }
+
+    /**
+     * @return the supervised connections as "name:state/reconnects"
+     */
+    public String getConnections() {
+        StringBuilder result = new StringBuilder();
+        for (SupervisedConnection connection : connectionSupervisor.getConnections()) {
+            result.append(result.length() > 0 ? ", " : "");
+            result.append(connection.toString()).append(":").append(connection.getState())
+                    .append("/").append(connection.getReconnectCount());
+        }
+        return result.toString();
+    }
+
+    public String getLoadParseTime() {
+        return Long.toString(loadTimes.getParseTime());
+    }
+
+    public String getLoadConstructTime() {
+        return Long.toString(loadTimes.getConstructTime());
+    }
+
+    public String getLoadInitTime() {
+        return Long.toString(loadTimes.getInitTime());
+    }
+
+    public String getLoadRegisterTime() {
+        return Long.toString(loadTimes.getRegisterTime());
+    }
+
+    public String getLoadActivateTime() {
+        return Long.toString(loadTimes.getActivateTime());
+    }
+
     public String getTotalLogRecordCountString() {
         return Long.toString(totalLogRecordCount);
     }
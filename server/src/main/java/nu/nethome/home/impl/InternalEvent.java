@@ -21,13 +21,32 @@ package nu.nethome.home.impl;
 
 import nu.nethome.home.system.Event;
 
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
 
+/**
+ * Event implementation which keeps its attributes in small arrays sorted by name instead of a map.
+ * Integer, float and integer array values are stored in their native form and are only converted to
+ * strings when they are read as strings, so an Event created by a protocol decoder and read with
+ * getAttributeInt by the receiving items never creates any strings for its numeric attributes.
+ * Attribute names are normally string literals, so they are first compared by identity.
+ */
 public class InternalEvent implements Event {
 
-    private Map<String, String> attributes = new TreeMap<String, String>();
+    private static final int INITIAL_CAPACITY = 4;
+    private static final byte STRING = 0;
+    private static final byte INT = 1;
+    private static final byte FLOAT = 2;
+    private static final byte ARRAY = 3;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] numbers = new int[INITIAL_CAPACITY];
+    /**
+     * String values, int[] values, and the string form of numeric values once it has been created
+     */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
 
     /**
      * Create a new event with given type and value
@@ -36,8 +55,8 @@ public class InternalEvent implements Event {
      * @param value The value of the Event
      */
     InternalEvent(String type, String value) {
-        attributes.put(EVENT_TYPE_ATTRIBUTE, type);
-        attributes.put(EVENT_VALUE_ATTRIBUTE, value);
+        setAttribute(EVENT_TYPE_ATTRIBUTE, type);
+        setAttribute(EVENT_VALUE_ATTRIBUTE, value);
     }
 
     /**
@@ -46,29 +65,33 @@ public class InternalEvent implements Event {
      * @param type Type of event (The name of the Event)
      */
     public InternalEvent(String type) {
-        attributes.put(EVENT_TYPE_ATTRIBUTE, type);
+        setAttribute(EVENT_TYPE_ATTRIBUTE, type);
     }
 
     public String toString() {
         StringBuilder result = new StringBuilder("event,");
         result.append(getAttribute(EVENT_TYPE_ATTRIBUTE));
-        for (Entry<String, String> e : attributes.entrySet()) {
-            if (!e.getKey().equals(EVENT_TYPE_ATTRIBUTE)) {
+        for (int i = 0; i < size; i++) {
+            if (!names[i].equals(EVENT_TYPE_ATTRIBUTE)) {
                 result.append(",");
-                result.append(e.getKey());
+                result.append(names[i]);
                 result.append(",");
-                result.append(e.getValue());
+                result.append(stringValue(i));
             }
         }
         return result.toString();
     }
 
     public String getAttribute(String name) {
-        Object temp = attributes.get(name);
-        return temp == null ? "" : temp.toString();
+        int index = indexOf(name);
+        return index < 0 || values[index] == null && kinds[index] == STRING ? "" : stringValue(index);
     }
 
     public int getAttributeInt(String name) {
+        int index = indexOf(name);
+        if (index >= 0 && kinds[index] == INT) {
+            return numbers[index];
+        }
         try {
             return Integer.parseInt(getAttribute(name));
         } catch (NumberFormatException n) {
@@ -77,6 +100,13 @@ public class InternalEvent implements Event {
     }
 
     public float getAttributeFloat(String name) {
+        int index = indexOf(name);
+        if (index >= 0 && kinds[index] == FLOAT) {
+            return Float.intBitsToFloat(numbers[index]);
+        }
+        if (index >= 0 && kinds[index] == INT) {
+            return (float) numbers[index];
+        }
         try {
             return Float.parseFloat(getAttribute(name));
         } catch (NumberFormatException n) {
@@ -85,18 +115,28 @@ public class InternalEvent implements Event {
     }
 
     public void setAttribute(String name, String value) {
-        attributes.put(name, value);
+        put(name, STRING, 0, value);
     }
 
     public void setAttribute(String name, int value) {
-        attributes.put(name, Integer.toString(value));
+        put(name, INT, value, null);
     }
 
     public void setAttribute(String name, float value) {
-        attributes.put(name, Float.toString(value));
+        put(name, FLOAT, Float.floatToRawIntBits(value), null);
     }
 
     public int[] getAttributeArr(String name) {
+        int index = indexOf(name);
+        if (index >= 0 && kinds[index] == ARRAY) {
+            // Same result as if the array had been stored as a hex string, one byte per value
+            int[] stored = (int[]) values[index];
+            int arr[] = new int[stored.length];
+            for (int i = 0; i < stored.length; i++) {
+                arr[i] = stored[i] & 0xFF;
+            }
+            return arr;
+        }
         String arrString = getAttribute(name);
         int arr[] = new int[arrString.length() / 2];
         for (int i = 0; i < arrString.length(); i += 2) {
@@ -106,20 +146,102 @@ public class InternalEvent implements Event {
     }
 
     public void setAttribute(String name, int[] value) {
-        StringBuilder buildAttribute = new StringBuilder();
-        for (int valueItem : value) {
-            buildAttribute.append(Integer.toHexString((valueItem >> 4) & 0xF).toUpperCase());
-            buildAttribute.append(Integer.toHexString(valueItem & 0xF).toUpperCase());
-        }
-        attributes.put(name, buildAttribute.toString());
+        put(name, ARRAY, 0, value.clone());
     }
 
     public boolean hasAttribute(String name) {
-        return attributes.containsKey(name);
+        return indexOf(name) >= 0;
     }
 
     @Override
     public String[] getAttributeNames() {
-        return attributes.keySet().toArray(new String[attributes.size()]);
+        return Arrays.copyOf(names, size);
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void put(String name, byte kind, int number, Object value) {
+        int index = indexOf(name);
+        if (index < 0) {
+            index = insertionPoint(name);
+            if (size == names.length) {
+                grow();
+            }
+            int moved = size - index;
+            System.arraycopy(names, index, names, index + 1, moved);
+            System.arraycopy(kinds, index, kinds, index + 1, moved);
+            System.arraycopy(numbers, index, numbers, index + 1, moved);
+            System.arraycopy(values, index, values, index + 1, moved);
+            names[index] = name;
+            size++;
+        }
+        kinds[index] = kind;
+        numbers[index] = number;
+        values[index] = value;
+    }
+
+    /**
+     * Attributes are kept sorted by name so toString and getAttributeNames give the same order as before
+     */
+    private int insertionPoint(String name) {
+        int index = 0;
+        while (index < size && names[index].compareTo(name) < 0) {
+            index++;
+        }
+        return index;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    private String stringValue(int index) {
+        Object value = values[index];
+        if (value instanceof String) {
+            return (String) value;
+        }
+        String result;
+        switch (kinds[index]) {
+            case INT:
+                result = Integer.toString(numbers[index]);
+                break;
+            case FLOAT:
+                result = Float.toString(Float.intBitsToFloat(numbers[index]));
+                break;
+            case ARRAY:
+                result = toHexString((int[]) value);
+                break;
+            default:
+                return String.valueOf(value);
+        }
+        if (kinds[index] != ARRAY) {
+            values[index] = result;
+        }
+        return result;
+    }
+
+    private static String toHexString(int[] value) {
+        char[] result = new char[value.length * 2];
+        for (int i = 0; i < value.length; i++) {
+            result[i * 2] = HEX_DIGITS[(value[i] >> 4) & 0xF];
+            result[i * 2 + 1] = HEX_DIGITS[value[i] & 0xF];
+        }
+        return new String(result);
     }
 }
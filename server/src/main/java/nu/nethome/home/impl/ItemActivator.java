@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.system.HomeService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Activates HomeItems level by level in start order. The HomeItems on the same level are activated in parallel
+ * on a bounded pool of threads, but a HomeItem is not activated before the HomeItems on the same level it points
+ * to via its Item/Items attributes. HomeItems in a circular dependency are activated in list order.
+ * An activation that takes longer than the timeout is left running, and the HomeItems waiting for it are
+ * activated anyway. Its thread is replaced, so a hanging activation does not make the pool smaller.
+ */
+class ItemActivator {
+
+    private static Logger logger = Logger.getLogger(ItemActivator.class.getName());
+    private static final long NANO_PER_MS = 1000000L;
+
+    private final ItemDirectory directory;
+    private final int threadCount;
+    private final long timeout;
+    private final BlockingQueue<Activation> finished = new LinkedBlockingQueue<Activation>();
+    private final Map<String, Long> activationTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private final AtomicInteger activatedCount = new AtomicInteger();
+    private int timedOutCount = 0;
+    private ThreadPoolExecutor pool;
+
+    /**
+     * @param directory   used to find the HomeItems each HomeItem points to
+     * @param threadCount max number of HomeItems activated at the same time
+     * @param timeout     max time in ms to wait for the activation of one HomeItem
+     */
+    ItemActivator(ItemDirectory directory, int threadCount, long timeout) {
+        this.directory = directory;
+        this.threadCount = Math.max(1, threadCount);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Activate the HomeItems. HomeItems with a name starting with "#" or without an ID are not activated.
+     *
+     * @param sortedItems HomeItems sorted on start order
+     * @param server      passed to the HomeItems when activated
+     * @return number of HomeItems activated within the timeout
+     */
+    int activate(List<HomeItem> sortedItems, HomeService server) throws InterruptedException {
+        pool = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ItemActivator-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Activation> level = new ArrayList<Activation>();
+            int levelStartOrder = 0;
+            for (HomeItem item : sortedItems) {
+                if (item.getName().startsWith("#") || item.getItemId() == 0) {
+                    continue;
+                }
+                int startOrder = startOrderOf(item);
+                if (!level.isEmpty() && startOrder != levelStartOrder) {
+                    activateLevel(level, server);
+                    level = new ArrayList<Activation>();
+                }
+                levelStartOrder = startOrder;
+                level.add(new Activation(item));
+            }
+            activateLevel(level, server);
+        } finally {
+            pool.shutdown();
+        }
+        return activatedCount.get();
+    }
+
+    private static int startOrderOf(HomeItem item) {
+        try {
+            return StaticHomeItemModel.getModel(item).getStartOrder();
+        } catch (ModelException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private void activateLevel(List<Activation> level, HomeService server) throws InterruptedException {
+        Map<HomeItem, Activation> activationsByItem = new IdentityHashMap<HomeItem, Activation>();
+        for (Activation activation : level) {
+            activationsByItem.put(activation.item, activation);
+        }
+        for (Activation activation : level) {
+            for (HomeItem dependency : directory.getDependencies(activation.item)) {
+                Activation dependencyActivation = activationsByItem.get(dependency);
+                if (dependencyActivation != null && dependencyActivation != activation) {
+                    dependencyActivation.dependents.add(activation);
+                    activation.remainingDependencies++;
+                }
+            }
+        }
+        for (Activation activation : level) {
+            if (activation.remainingDependencies == 0) {
+                submit(activation, server);
+            }
+        }
+        int finishedCount = 0;
+        while (finishedCount < level.size()) {
+            Activation done = finished.poll(nextTimeout(level), TimeUnit.MILLISECONDS);
+            if (done != null) {
+                if (done.isFinished) {
+                    // Finished after it had timed out
+                    continue;
+                }
+                finishedCount += finish(done, server);
+            } else {
+                finishedCount += finishTimedOut(level, server);
+            }
+            if (finishedCount < level.size() && !isAnySubmittedRunning(level)) {
+                breakCircularDependency(level, server);
+            }
+        }
+    }
+
+    private void submit(final Activation activation, final HomeService server) {
+        activation.isSubmitted = true;
+        pool.execute(new Runnable() {
+            public void run() {
+                activation.startTime = System.nanoTime();
+                try {
+                    activation.item.activate(server);
+                    activation.isActivated = true;
+                } catch (Exception e) {
+                    logger.warning("Failed to activate Item " + activation.item.getName() + " Error " + e.getMessage());
+                }
+                long duration = System.nanoTime() - activation.startTime;
+                activationTimes.put(activation.item.getName(), duration / NANO_PER_MS);
+                if (activation.isActivated) {
+                    activatedCount.incrementAndGet();
+                }
+                finished.add(activation);
+            }
+        });
+    }
+
+    /**
+     * Mark the activation as finished and submit the HomeItems which were waiting for it
+     *
+     * @return number of finished activations
+     */
+    private int finish(Activation activation, HomeService server) {
+        activation.isFinished = true;
+        for (Activation dependent : activation.dependents) {
+            dependent.remainingDependencies--;
+            if (dependent.remainingDependencies == 0 && !dependent.isSubmitted) {
+                submit(dependent, server);
+            }
+        }
+        return 1;
+    }
+
+    private int finishTimedOut(List<Activation> level, HomeService server) {
+        int result = 0;
+        long now = System.nanoTime();
+        for (Activation activation : level) {
+            if (activation.isRunning() && now - activation.startTime >= timeout * NANO_PER_MS) {
+                logger.warning("Activation of " + activation.item.getName() + " did not finish within "
+                        + timeout + " ms, continuing without it");
+                timedOutCount++;
+                // Replace the thread that is busy with the hanging activation
+                pool.setMaximumPoolSize(pool.getMaximumPoolSize() + 1);
+                pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+                result += finish(activation, server);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return time in ms until the first running activation times out
+     */
+    private long nextTimeout(List<Activation> level) {
+        long result = timeout;
+        long now = System.nanoTime();
+        for (Activation activation : level) {
+            if (activation.isRunning()) {
+                result = Math.min(result, timeout - (now - activation.startTime) / NANO_PER_MS);
+            }
+        }
+        return Math.max(1, result);
+    }
+
+    private boolean isAnySubmittedRunning(List<Activation> level) {
+        for (Activation activation : level) {
+            if (activation.isSubmitted && !activation.isFinished) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void breakCircularDependency(List<Activation> level, HomeService server) {
+        for (Activation activation : level) {
+            if (!activation.isSubmitted) {
+                logger.info("Circular dependency, activating " + activation.item.getName() + " before the Items it points to");
+                submit(activation, server);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return time in ms each HomeItem took to activate, in the order they finished
+     */
+    Map<String, Long> getActivationTimes() {
+        synchronized (activationTimes) {
+            return new LinkedHashMap<String, Long>(activationTimes);
+        }
+    }
+
+    /**
+     * @return number of activations that did not finish within the timeout
+     */
+    int getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    private static class Activation {
+        private final HomeItem item;
+        private final List<Activation> dependents = new ArrayList<Activation>();
+        private int remainingDependencies;
+        private boolean isSubmitted;
+        private boolean isFinished;
+        private volatile long startTime;
+        private volatile boolean isActivated;
+
+        Activation(HomeItem item) {
+            this.item = item;
+        }
+
+        boolean isRunning() {
+            return isSubmitted && !isFinished && startTime != 0;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.BufferedInputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Incremental storage of changes to the HomeItems in a configuration file. HomeItems that are created, changed,
+ * renamed or removed are marked, and flush() appends the current state of the marked HomeItems to a change log
+ * next to the configuration file. The change log is synced to disk once per flush. HomeItems may also change their
+ * own attributes, so the record of each watched HomeItem is compared with the record last written or seen for it,
+ * and the HomeItems where they differ are saved as well.
+ * When the change log grows too large it is compacted: the state of all HomeItems is written to a new
+ * configuration file which replaces the old one by an atomic rename, after which the old change logs are deleted.
+ * <p/>
+ * The change logs are numbered by generation, and the configuration file stores the first generation that is not
+ * included in it. Each flush is written as one batch: length (int), CRC32 (long) and an XML document with a
+ * HomeItem element for each changed HomeItem and a RemovedItem element for each removed one. A batch that was
+ * not completely written when the server stopped fails the length or CRC check, and the rest of that log is
+ * ignored when loading.
+ */
+public class ItemChangeLog {
+
+    public static final String LOG_SUFFIX = ".changes";
+    public static final long DEFAULT_COMPACTION_SIZE = 1024 * 1024;
+    public static final String GENERATION_ATTRIBUTE = "LogGeneration";
+    private static final int BATCH_HEADER_SIZE = 4 + 8;
+    private static Logger logger = Logger.getLogger(ItemChangeLog.class.getName());
+
+    private final HomeItemLoader loader;
+    private final ConcurrentMap<Long, HomeItem> changedItems = new ConcurrentHashMap<Long, HomeItem>();
+    private final Set<Long> removedItems = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final ConcurrentMap<Long, WatchedItem> watchedItems = new ConcurrentHashMap<Long, WatchedItem>();
+    private final Object compactionLock = new Object();
+    private final AtomicBoolean isCompacting = new AtomicBoolean();
+    private long compactionSize = DEFAULT_COMPACTION_SIZE;
+    private volatile File configFile;
+    private long generation;
+    private FileOutputStream log;
+    private long logSize;
+    private long savedChanges;
+
+    /**
+     * @param configFile configuration file the changes are stored next to
+     * @param loader     used to write the HomeItems
+     */
+    public ItemChangeLog(File configFile, HomeItemLoader loader) {
+        this.loader = loader;
+        moveTo(configFile);
+    }
+
+    /**
+     * Store the changes next to another configuration file. The pending changes are kept, but changes
+     * already saved are not moved, so the HomeItems should be compacted to the new file.
+     */
+    public synchronized void moveTo(File configFile) {
+        closeLog();
+        this.configFile = configFile;
+        // Start a new log, so a batch that was cut short in the last one is never followed by new batches
+        long lastGeneration = -1;
+        for (File file : listLogs(configFile, 0)) {
+            lastGeneration = Math.max(lastGeneration, logGeneration(configFile, file));
+        }
+        generation = Math.max(lastGeneration + 1, loader.readLogGeneration(configFile.getPath()));
+    }
+
+    /**
+     * Mark a HomeItem as created or changed
+     */
+    public void itemChanged(HomeItem item) {
+        if (item != null && item.getItemId() != 0) {
+            removedItems.remove(item.getItemId());
+            changedItems.put(item.getItemId(), item);
+        }
+    }
+
+    /**
+     * Save the HomeItem at the next flush if its record differs from the record it has now, also if the change
+     * is not marked. This is for HomeItems which change their own attributes.
+     */
+    public void watchItem(HomeItem item) {
+        if (item != null && item.getItemId() != 0) {
+            watchedItems.put(item.getItemId(), new WatchedItem(item, record(item)));
+        }
+    }
+
+    /**
+     * @return the record of a HomeItem, as it is written to the change log
+     */
+    private String record(HomeItem item) {
+        StringWriter out = new StringWriter();
+        try {
+            loader.writeItem(out, item);
+        } catch (IOException e) {
+            // Does not happen when writing to a string
+        }
+        return out.toString();
+    }
+
+    /**
+     * Mark the watched HomeItems where the record differs from the one last written or seen
+     */
+    private void markChangedWatchedItems() {
+        for (WatchedItem watched : watchedItems.values()) {
+            if (!changedItems.containsKey(watched.item.getItemId()) && !record(watched.item).equals(watched.record)) {
+                itemChanged(watched.item);
+            }
+        }
+    }
+
+    /**
+     * Mark a HomeItem as removed
+     */
+    public void itemRemoved(HomeItem item) {
+        if (item != null && item.getItemId() != 0) {
+            watchedItems.remove(item.getItemId());
+            changedItems.remove(item.getItemId());
+            removedItems.add(item.getItemId());
+        }
+    }
+
+    /**
+     * @return number of HomeItems changed or removed since the last flush
+     */
+    public int getPendingChangeCount() {
+        return changedItems.size() + removedItems.size();
+    }
+
+    public synchronized long getSavedChanges() {
+        return savedChanges;
+    }
+
+    public File getConfigFile() {
+        return configFile;
+    }
+
+    /**
+     * @param compactionSize the change log is compacted when it grows larger than this many bytes
+     */
+    public void setCompactionSize(long compactionSize) {
+        this.compactionSize = compactionSize;
+    }
+
+    public synchronized boolean isCompactionNeeded() {
+        return logSize > compactionSize;
+    }
+
+    /**
+     * Append the state of all HomeItems changed since the last flush to the change log, and sync it to disk.
+     *
+     * @return number of saved changes
+     * @throws IOException if the change log could not be written. The changes are then kept for the next flush.
+     */
+    public synchronized int flush() throws IOException {
+        markChangedWatchedItems();
+        List<HomeItem> changed = new ArrayList<HomeItem>();
+        for (Map.Entry<Long, HomeItem> entry : changedItems.entrySet()) {
+            if (changedItems.remove(entry.getKey(), entry.getValue())) {
+                changed.add(entry.getValue());
+            }
+        }
+        List<Long> removed = new ArrayList<Long>();
+        for (Long id : removedItems) {
+            if (removedItems.remove(id)) {
+                removed.add(id);
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        try {
+            appendBatch(encodeBatch(changed, removed));
+        } catch (IOException e) {
+            for (HomeItem item : changed) {
+                changedItems.putIfAbsent(item.getItemId(), item);
+            }
+            removedItems.addAll(removed);
+            closeLog();
+            throw e;
+        }
+        savedChanges += changed.size() + removed.size();
+        return changed.size() + removed.size();
+    }
+
+    private byte[] encodeBatch(List<HomeItem> changed, List<Long> removed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(bytes, "UTF-8");
+        out.write("<HomeItems>\n");
+        for (HomeItem item : changed) {
+            String record = record(item);
+            out.write(record);
+            WatchedItem watched = watchedItems.get(item.getItemId());
+            if (watched != null && watched.item == item) {
+                watched.record = record;
+            }
+        }
+        for (Long id : removed) {
+            out.write("\t<RemovedItem ID=\"" + id + "\" />\n");
+        }
+        out.write("</HomeItems>\n");
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void appendBatch(byte[] batch) throws IOException {
+        if (log == null) {
+            log = new FileOutputStream(logFile(configFile, generation), true);
+            logSize = log.getChannel().size();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(batch);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(batch.length + BATCH_HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(batch.length);
+        out.writeLong(crc.getValue());
+        out.write(batch);
+        out.close();
+        log.write(record.toByteArray());
+        log.getFD().sync();
+        logSize += record.size();
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // Do Dinada
+            }
+            log = null;
+        }
+        logSize = 0;
+    }
+
+    public synchronized void close() {
+        closeLog();
+    }
+
+    /**
+     * Write the state of all HomeItems to the configuration file and delete the change logs it replaces.
+     * Changes made while the configuration file is written are stored in a new change log.
+     *
+     * @param items all HomeItems. They are read after the new change log has been started.
+     * @throws IOException if the configuration file could not be written. The old file and change logs are kept.
+     */
+    public void compact(Iterable<HomeItem> items) throws IOException {
+        synchronized (compactionLock) {
+            long snapshotGeneration;
+            File snapshotFile;
+            synchronized (this) {
+                flush();
+                closeLog();
+                generation++;
+                snapshotGeneration = generation;
+                snapshotFile = configFile;
+            }
+            List<HomeItem> itemList = new ArrayList<HomeItem>();
+            for (HomeItem item : items) {
+                itemList.add(item);
+            }
+            loader.saveItems(itemList, snapshotFile.getPath(), snapshotGeneration);
+            for (File file : listLogs(snapshotFile, 0)) {
+                if (logGeneration(snapshotFile, file) < snapshotGeneration && !file.delete()) {
+                    logger.warning("Failed to delete old change log " + file.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compact the change log in a separate thread, unless a compaction is already running
+     */
+    public void compactInBackground(final Iterable<HomeItem> items) {
+        if (!isCompacting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread compaction = new Thread("ItemChangeLogCompaction") {
+            @Override
+            public void run() {
+                try {
+                    compact(items);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to compact the change log of " + configFile.getPath(), e);
+                } finally {
+                    isCompacting.set(false);
+                }
+            }
+        };
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    private static class WatchedItem {
+        final HomeItem item;
+        volatile String record;
+
+        WatchedItem(HomeItem item, String record) {
+            this.item = item;
+            this.record = record;
+        }
+    }
+
+    public static File logFile(File configFile, long generation) {
+        return new File(configFile.getPath() + "." + generation + LOG_SUFFIX);
+    }
+
+    private static long logGeneration(File configFile, File logFile) {
+        String name = logFile.getName();
+        String prefix = configFile.getName() + ".";
+        if (!name.startsWith(prefix) || !name.endsWith(LOG_SUFFIX)) {
+            return -1;
+        }
+        String generation = name.substring(prefix.length(), name.length() - LOG_SUFFIX.length());
+        for (int i = 0; i < generation.length(); i++) {
+            if (!Character.isDigit(generation.charAt(i))) {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(generation);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the change logs of a configuration file from the specified generation, oldest first
+     */
+    public static List<File> listLogs(final File configFile, long fromGeneration) {
+        File directory = configFile.getAbsoluteFile().getParentFile();
+        File[] files = directory == null ? null : directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && logGeneration(configFile, file) >= 0;
+            }
+        });
+        List<File> result = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (logGeneration(configFile, file) >= fromGeneration) {
+                    result.add(file);
+                }
+            }
+        }
+        Collections.sort(result, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long g1 = logGeneration(configFile, f1);
+                long g2 = logGeneration(configFile, f2);
+                return g1 < g2 ? -1 : (g1 == g2 ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Read the complete batches of a change log. Reading stops at the first batch that was not completely written.
+     *
+     * @return the XML document of each batch, in the order they were written
+     */
+    public static List<byte[]> readBatches(File logFile) throws IOException {
+        List<byte[]> result = new ArrayList<byte[]>();
+        long remaining = logFile.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        try {
+            while (remaining >= BATCH_HEADER_SIZE) {
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (length < 0 || length > remaining - BATCH_HEADER_SIZE) {
+                    break;
+                }
+                byte[] batch = new byte[length];
+                in.readFully(batch);
+                CRC32 crc = new CRC32();
+                crc.update(batch);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                result.add(batch);
+                remaining -= BATCH_HEADER_SIZE + length;
+            }
+        } catch (EOFException e) {
+            // Do Dinada
+        } finally {
+            in.close();
+        }
+        if (remaining > 0) {
+            logger.warning("Ignoring " + remaining + " bytes of incomplete changes at the end of " + logFile.getName());
+        }
+        return result;
+    }
+}
@@ -19,87 +19,316 @@
 
 package nu.nethome.home.impl;
 
-import nu.nethome.home.impl.relation.RelationCache;
+import nu.nethome.home.impl.relation.RelationIndex;
+import nu.nethome.home.item.Action;
 import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.MorphingItem;
 import nu.nethome.home.system.DirectoryEntry;
 
 import java.util.*;
 
-public class ItemDirectory {
+/**
+ * Keeps track of the registered HomeItems and finds them by name or ID. The registrations are kept in an
+ * immutable snapshot, which is replaced as a whole when HomeItems are registered, renamed or removed. Lookups
+ * and listings read the current snapshot without locking, so they never wait for each other or for a change.
+ * The snapshot also indexes the HomeItems by class, category, attributes and actions, as they were described by
+ * their models when they were registered, so listings of such HomeItems do not have to look at the others.
+ * HomeItems with morphing models are indexed again when a listing finds that their model has changed. The
+ * search patterns are described in ItemQuery.
+ */
+public class ItemDirectory implements Iterable<HomeItem> {
 
     public static final String RELATED_SEARCH_KEYWORD = "@related=";
-    private volatile List<HomeItem> homeItems = new LinkedList<HomeItem>();
-    private volatile AbstractMap<String, HomeItem> homeItemNameMap = new TreeMap<String, HomeItem>();
-    private volatile AbstractMap<Long, HomeItem> homeItemIDMap = new TreeMap<Long, HomeItem>();
-    private volatile AbstractMap<Long, String> categoryMap = new TreeMap<Long, String>();
-    private volatile RelationCache relationCache = new RelationCache();
+    public static final String DEPENDENCIES_SEARCH_KEYWORD = "@dependencies=";
+    private static final int MAX_ID_DIGITS = 19;
+    private static final String ANY_ACTION = "";
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile RelationIndex relationIndex = new RelationIndex();
+    private final EventSubscriptionIndex subscriptionIndex = new EventSubscriptionIndex();
 
     public ItemDirectory() {
     }
 
-    Iterator<HomeItem> iterator() {
-        return homeItems.iterator();
+    /**
+     * @return iterator over the HomeItems registered when it was created, in registration order
+     */
+    public Iterator<HomeItem> iterator() {
+        return snapshot.getItems().iterator();
+    }
+
+    /**
+     * Get the HomeItems which subscribe to Events of the specified type.
+     *
+     * @param eventType type of the Event to distribute
+     * @return HomeItems to offer the Event to, in registration order
+     */
+    final List<HomeItem> getEventReceivers(String eventType) {
+        return subscriptionIndex.getReceivers(eventType);
     }
 
-    final List<HomeItem> getHomeItems() {
-        return Collections.unmodifiableList(homeItems);
+    final int getItemCount() {
+        return snapshot.items.size();
     }
 
     public synchronized int registerInstance(HomeItem item) {
+        return registerInstances(Collections.singletonList(item))[0];
+    }
+
+    /**
+     * Register several HomeItems with one change of the directory
+     *
+     * @param items HomeItems to register
+     * @return the result of registering each of the HomeItems, as returned by registerInstance
+     */
+    public synchronized int[] registerInstances(List<HomeItem> items) {
+        Snapshot next = new Snapshot(snapshot);
+        int[] results = new int[items.size()];
+        int i = 0;
+        for (HomeItem item : items) {
+            results[i++] = register(next, item);
+        }
+        snapshot = next;
+        return results;
+    }
+
+    private int register(Snapshot next, HomeItem item) {
         String name = item.getName();
         if (name == null) {
             return 1;
         }
-        if (homeItemNameMap.containsKey(name)) {
+        if (next.itemsByName.containsKey(name)) {
             return 2;
         }
-        if (homeItemIDMap.containsKey(item.getItemId()) || (item.getItemId() == 0)) {
+        if (next.itemsById.containsKey(item.getItemId()) || (item.getItemId() == 0)) {
             return 3;
         }
-        homeItems.add(item);
-        homeItemNameMap.put(name, item);
-        homeItemIDMap.put(item.getItemId(), item);
+        next.items.add(item);
+        next.itemsByName.put(name, item);
+        next.itemsById.put(item.getItemId(), item);
+        subscriptionIndex.addItem(item);
         try {
-            categoryMap.put(item.getItemId(), StaticHomeItemModel.getModel(item).getCategory());
-            relationCache.addItem(item);
+            StaticHomeItemModel model = StaticHomeItemModel.getModel(item);
+            ItemInfo info = new ItemInfo(model, modelVersion(item, model));
+            next.infos.put(item.getItemId(), info);
+            next.addToIndexes(item, info);
+            if (model.isMorphing()) {
+                next.morphingItems.add(item);
+            }
+            relationIndex.addItem(item);
         } catch (ModelException e) {
             return 4;
         }
         return 0;
     }
 
-    public synchronized List<DirectoryEntry> listInstances(String pattern) {
-        LinkedList<DirectoryEntry> result = new LinkedList<DirectoryEntry>();
-        List<HomeItem> itemsToList = getFilteredItemList(pattern);
-        for (HomeItem current : itemsToList) {
-                result.add(new InternalDirectoryEntry(current.getName(),
-                        current.getItemId(),
-                        categoryMap.get(current.getItemId())));
+    /**
+     * @return the version of the model of a HomeItem, which is only meaningful for morphing models
+     */
+    private static long modelVersion(HomeItem item, StaticHomeItemModel model) {
+        if (item instanceof MorphingItem) {
+            return ((MorphingItem) item).getModelVersion();
+        }
+        return model.isMorphing() ? item.getModel().hashCode() : 0;
+    }
+
+    /**
+     * @return the current snapshot, after indexing the HomeItems with morphing models again if their models
+     * have changed since they were indexed
+     */
+    private Snapshot indexedSnapshot() {
+        Snapshot current = snapshot;
+        for (HomeItem item : current.morphingItems) {
+            if (hasMorphed(current, item)) {
+                return reindexMorphedItems();
+            }
+        }
+        return current;
+    }
+
+    private static boolean hasMorphed(Snapshot current, HomeItem item) {
+        ItemInfo info = current.infos.get(item.getItemId());
+        if (info == null) {
+            return false;
+        }
+        try {
+            return modelVersion(item, StaticHomeItemModel.getModel(item)) != info.modelVersion;
+        } catch (ModelException e) {
+            return false;
+        }
+    }
+
+    private synchronized Snapshot reindexMorphedItems() {
+        Snapshot next = new Snapshot(snapshot);
+        for (HomeItem item : next.morphingItems) {
+            if (hasMorphed(next, item)) {
+                next.removeFromIndexes(item, next.infos.get(item.getItemId()));
+                try {
+                    StaticHomeItemModel model = StaticHomeItemModel.getModel(item);
+                    ItemInfo info = new ItemInfo(model, modelVersion(item, model));
+                    next.infos.put(item.getItemId(), info);
+                    next.addToIndexes(item, info);
+                } catch (ModelException e) {
+                    next.infos.remove(item.getItemId());
+                }
+            }
+        }
+        snapshot = next;
+        return next;
+    }
+
+    public List<DirectoryEntry> listInstances(String pattern) {
+        Snapshot registered = indexedSnapshot();
+        ItemQuery query = ItemQuery.parse(pattern);
+        List<DirectoryEntry> result = new ArrayList<DirectoryEntry>();
+        if (!query.isValid()) {
+            return result;
+        }
+        int itemsToSkip = query.getOffset();
+        for (HomeItem current : getCandidates(registered, query)) {
+            if (result.size() >= query.getLimit()) {
+                break;
+            }
+            if (matches(registered, query, current)) {
+                if (itemsToSkip > 0) {
+                    itemsToSkip--;
+                } else {
+                    ItemInfo info = registered.infos.get(current.getItemId());
+                    result.add(new InternalDirectoryEntry(current.getName(),
+                            current.getItemId(),
+                            info != null ? info.category : null));
+                }
+            }
         }
         return result;
     }
 
-    private List<HomeItem> getFilteredItemList(String pattern) {
-        if (pattern.length() == 0) {
-            return homeItems;
-        } else if (pattern.startsWith(RELATED_SEARCH_KEYWORD) && pattern.length() > RELATED_SEARCH_KEYWORD.length()) {
-            return relationCache.getRelatedTo(pattern.split("=")[1]);
+    /**
+     * @return the HomeItems which may match the query, from the smallest index the query can use
+     */
+    private List<HomeItem> getCandidates(Snapshot registered, ItemQuery query) {
+        if (query.getRelatedTo() != null) {
+            return relationIndex.getRelatedTo(query.getRelatedTo());
+        } else if (query.getDependenciesOf() != null) {
+            return getDependencies(registered, query.getDependenciesOf());
+        }
+        List<HomeItem> candidates = registered.getItems();
+        candidates = smallest(candidates, query.getClassName(), registered.itemsByClass);
+        candidates = smallest(candidates, categoryKey(query.getCategory()), registered.itemsByCategory);
+        candidates = smallest(candidates, query.getAttribute(), registered.itemsByAttribute);
+        candidates = smallest(candidates, query.getAction(), registered.itemsByAction);
+        return candidates;
+    }
+
+    private static List<HomeItem> smallest(List<HomeItem> candidates, String key, ItemIndex index) {
+        if (key == null) {
+            return candidates;
+        }
+        List<HomeItem> indexedItems = index.get(key);
+        return indexedItems.size() < candidates.size() ? indexedItems : candidates;
+    }
+
+    private boolean matches(Snapshot registered, ItemQuery query, HomeItem item) {
+        ItemInfo info = registered.infos.get(item.getItemId());
+        if (info == null) {
+            return query.getClassName() == null && query.getCategory() == null && query.getAttribute() == null
+                    && query.getAction() == null && query.matchesName(item.getName());
+        }
+        if ((query.getClassName() != null && !query.getClassName().equals(info.className)) ||
+                (query.getCategory() != null && !query.getCategory().equalsIgnoreCase(info.category)) ||
+                (query.getAttribute() != null && !info.attributes.contains(query.getAttribute())) ||
+                (query.getAction() != null && !info.actions.contains(query.getAction()))) {
+            return false;
+        }
+        if (!query.matchesName(item.getName())) {
+            return false;
+        }
+        // The candidates are taken from the relations, so they only need to be checked if both are searched for
+        return query.getRelatedTo() == null || query.getDependenciesOf() == null ||
+                getDependencies(registered, query.getDependenciesOf()).contains(item);
+    }
+
+    /**
+     * @return the key of a category in the category index, where categories are compared ignoring case
+     */
+    private static String categoryKey(String category) {
+        return category != null ? category.toLowerCase(Locale.ENGLISH) : null;
+    }
+
+    /**
+     * @return the registered HomeItems which the specified HomeItem points to
+     */
+    private List<HomeItem> getDependencies(Snapshot current, String name) {
+        HomeItem item = findInstance(current, name);
+        if (item == null) {
+            return Collections.emptyList();
+        }
+        return getDependencies(current, item);
+    }
+
+    /**
+     * @return the registered HomeItems which the specified HomeItem points to
+     */
+    List<HomeItem> getDependencies(HomeItem item) {
+        return getDependencies(snapshot, item);
+    }
+
+    private List<HomeItem> getDependencies(Snapshot current, HomeItem item) {
+        List<HomeItem> result = new ArrayList<HomeItem>();
+        for (String id : relationIndex.getRelationsOf(item)) {
+            HomeItem dependency = findInstance(current, id);
+            if (dependency != null) {
+                result.add(dependency);
+            }
         }
-        return Collections.emptyList();
+        return result;
+    }
+
+    /**
+     * Update the relations of a HomeItem after one of its attributes which may point to other HomeItems has changed
+     */
+    void updateRelations(HomeItem item) {
+        relationIndex.updateItem(item);
     }
 
-    public synchronized HomeItem findInstance(String name) {
-        HomeItem item = homeItemNameMap.get(name);
+    public HomeItem findInstance(String name) {
+        return findInstance(snapshot, name);
+    }
+
+    private static HomeItem findInstance(Snapshot current, String name) {
+        HomeItem item = current.itemsByName.get(name);
         if (item == null) {
-            try {
-                item = homeItemIDMap.get(Long.parseLong(name));
-            } catch (NumberFormatException n) {
-                // Do Dinada
+            Long id = parseItemId(name);
+            if (id != null) {
+                item = current.itemsById.get(id);
             }
         }
         return item;
     }
 
+    /**
+     * @return the ID, or null if the string is not a number
+     */
+    static Long parseItemId(String name) {
+        if (name == null) {
+            return null;
+        }
+        int start = name.startsWith("-") ? 1 : 0;
+        if (name.length() == start || name.length() - start > MAX_ID_DIGITS) {
+            return null;
+        }
+        for (int i = start; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return null;
+            }
+        }
+        try {
+            return Long.parseLong(name);
+        } catch (NumberFormatException n) {
+            // Only happens for 19 digit numbers out of range
+            return null;
+        }
+    }
+
     public synchronized boolean renameInstance(String fromInstanceName, String toInstanceName) {
         HomeItem item = findInstance(fromInstanceName);
         if (item == null) {
@@ -107,16 +336,16 @@ public class ItemDirectory {
             return false;
         }
 
-        if (homeItemNameMap.containsKey(toInstanceName)) {
+        if (snapshot.itemsByName.containsKey(toInstanceName)) {
             // New name already exists, quit
             return false;
         }
 
-        // Register under the new name
-        homeItemNameMap.put(toInstanceName, item);
-
-        // Remove registration under the old name
-        homeItemNameMap.remove(fromInstanceName);
+        // Register under the new name and remove registration under the old name
+        Snapshot next = new Snapshot(snapshot);
+        next.itemsByName.put(toInstanceName, item);
+        next.itemsByName.remove(item.getName());
+        snapshot = next;
 
         // Rename the instance
         item.setName(toInstanceName);
@@ -132,18 +361,116 @@ public class ItemDirectory {
         }
 
         // Remove registration of instance
-        categoryMap.remove(item.getItemId());
-        homeItemIDMap.remove(item.getItemId());
-        homeItemNameMap.remove(instanceName);
-        homeItems.remove(item);
-        relationCache.removeItem(item.getItemId());
+        Snapshot next = new Snapshot(snapshot);
+        ItemInfo info = next.infos.remove(item.getItemId());
+        if (info != null) {
+            next.removeFromIndexes(item, info);
+        }
+        next.itemsById.remove(item.getItemId());
+        next.itemsByName.remove(item.getName());
+        next.items.remove(item);
+        next.morphingItems.remove(item);
+        snapshot = next;
+        subscriptionIndex.removeItem(item);
+        relationIndex.removeItem(item);
         return item;
     }
 
     public synchronized void clear() {
-        categoryMap.clear();
-        homeItems.clear();
-        homeItemNameMap.clear();
-        homeItemIDMap.clear();
+        snapshot = new Snapshot();
+        subscriptionIndex.clear();
+        relationIndex = new RelationIndex();
+    }
+
+    /**
+     * What the model of a HomeItem said when the HomeItem was registered, or when its morphing model was last indexed
+     */
+    private static class ItemInfo {
+        private final String className;
+        private final String category;
+        private final long modelVersion;
+        private final Set<String> attributes = new HashSet<String>();
+        private final Set<String> actions = new HashSet<String>();
+
+        ItemInfo(StaticHomeItemModel model, long modelVersion) {
+            this.modelVersion = modelVersion;
+            className = model.getClassName();
+            category = model.getCategory();
+            for (AttributeModel attribute : model.getAttributes()) {
+                attributes.add(attribute.getName());
+            }
+            for (Action action : model.getActions()) {
+                actions.add(action.getName());
+            }
+            if (!actions.isEmpty()) {
+                actions.add(ANY_ACTION);
+            }
+        }
+    }
+
+    /**
+     * The registrations at one point in time. A snapshot is only modified by the writer which created it,
+     * before it is published.
+     */
+    private static class Snapshot {
+        private final List<HomeItem> items;
+        private final List<HomeItem> morphingItems;
+        private final Map<String, HomeItem> itemsByName;
+        private final Map<Long, HomeItem> itemsById;
+        private final Map<Long, ItemInfo> infos;
+        private final ItemIndex itemsByClass;
+        private final ItemIndex itemsByCategory;
+        private final ItemIndex itemsByAttribute;
+        private final ItemIndex itemsByAction;
+
+        Snapshot() {
+            items = new ArrayList<HomeItem>();
+            morphingItems = new ArrayList<HomeItem>();
+            itemsByName = new HashMap<String, HomeItem>();
+            itemsById = new HashMap<Long, HomeItem>();
+            infos = new HashMap<Long, ItemInfo>();
+            itemsByClass = new ItemIndex();
+            itemsByCategory = new ItemIndex();
+            itemsByAttribute = new ItemIndex();
+            itemsByAction = new ItemIndex();
+        }
+
+        Snapshot(Snapshot original) {
+            items = new ArrayList<HomeItem>(original.items);
+            morphingItems = new ArrayList<HomeItem>(original.morphingItems);
+            itemsByName = new HashMap<String, HomeItem>(original.itemsByName);
+            itemsById = new HashMap<Long, HomeItem>(original.itemsById);
+            infos = new HashMap<Long, ItemInfo>(original.infos);
+            itemsByClass = new ItemIndex(original.itemsByClass);
+            itemsByCategory = new ItemIndex(original.itemsByCategory);
+            itemsByAttribute = new ItemIndex(original.itemsByAttribute);
+            itemsByAction = new ItemIndex(original.itemsByAction);
+        }
+
+        List<HomeItem> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+        void addToIndexes(HomeItem item, ItemInfo info) {
+            itemsByClass.add(info.className, item);
+            itemsByCategory.add(categoryKey(info.category), item);
+            for (String attribute : info.attributes) {
+                itemsByAttribute.add(attribute, item);
+            }
+            for (String action : info.actions) {
+                itemsByAction.add(action, item);
+            }
+        }
+
+        void removeFromIndexes(HomeItem item, ItemInfo info) {
+            itemsByClass.remove(info.className, item);
+            itemsByCategory.remove(categoryKey(info.category), item);
+            for (String attribute : info.attributes) {
+                itemsByAttribute.remove(attribute, item);
+            }
+            for (String action : info.actions) {
+                itemsByAction.remove(action, item);
+            }
+        }
     }
-}
\ No newline at end of file
+}
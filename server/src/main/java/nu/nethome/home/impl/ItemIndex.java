@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lists of HomeItems by a key, as a part of a snapshot of the ItemDirectory. A copy of an index shares the
+ * lists with the original, and a list is only copied the first time it is changed in the copy. This way a
+ * change only costs as much as the lists it touches, and the lists of the original are never changed.
+ */
+final class ItemIndex {
+    private final Map<String, List<HomeItem>> lists;
+    private final Set<List<HomeItem>> ownLists = Collections.newSetFromMap(new IdentityHashMap<List<HomeItem>, Boolean>());
+
+    ItemIndex() {
+        lists = new HashMap<String, List<HomeItem>>();
+    }
+
+    ItemIndex(ItemIndex original) {
+        lists = new HashMap<String, List<HomeItem>>(original.lists);
+    }
+
+    void add(String key, HomeItem item) {
+        editableList(key).add(item);
+    }
+
+    void remove(String key, HomeItem item) {
+        if (lists.containsKey(key)) {
+            List<HomeItem> list = editableList(key);
+            list.remove(item);
+            if (list.isEmpty()) {
+                lists.remove(key);
+                ownLists.remove(list);
+            }
+        }
+    }
+
+    /**
+     * @return the HomeItems with the key in the order they were added
+     */
+    List<HomeItem> get(String key) {
+        List<HomeItem> list = lists.get(key);
+        return list != null ? Collections.unmodifiableList(list) : Collections.<HomeItem>emptyList();
+    }
+
+    private List<HomeItem> editableList(String key) {
+        List<HomeItem> list = lists.get(key);
+        if (list == null || !ownLists.contains(list)) {
+            list = list == null ? new ArrayList<HomeItem>() : new ArrayList<HomeItem>(list);
+            lists.put(key, list);
+            ownLists.add(list);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A method of a HomeItem class which is looked up once when the model of the class is built.
+ * The access check is turned off when the method is bound, so it is not repeated on each call,
+ * and calls without arguments share one empty argument array. Bound methods are shared by all models
+ * of the same class, so building a model for each instance of a morphing HomeItem does not look up the
+ * methods again.
+ */
+final class ItemMethod {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, ItemMethod>> boundMethods = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, ItemMethod>>();
+    private final Method method;
+
+    private ItemMethod(Method method) {
+        this.method = method;
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            // Do Dinada, the method is public so it can be called anyway
+        }
+    }
+
+    /**
+     * @return the bound method
+     * @throws NoSuchMethodException if the class has no public method with the name and parameters
+     */
+    static ItemMethod bind(Class<? extends HomeItem> clazz, String methodName, Class<?>... parameterTypes) throws NoSuchMethodException {
+        ConcurrentMap<String, ItemMethod> classMethods = boundMethods.get(clazz);
+        if (classMethods == null) {
+            classMethods = new ConcurrentHashMap<String, ItemMethod>();
+            ConcurrentMap<String, ItemMethod> existing = boundMethods.putIfAbsent(clazz, classMethods);
+            classMethods = existing != null ? existing : classMethods;
+        }
+        String signature = methodName + Arrays.toString(parameterTypes);
+        ItemMethod result = classMethods.get(signature);
+        if (result == null) {
+            result = new ItemMethod(clazz.getMethod(methodName, parameterTypes));
+            classMethods.put(signature, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the bound method, or null if the method name is null or the class has no such method
+     */
+    static ItemMethod bindIfPresent(Class<? extends HomeItem> clazz, String methodName, Class<?>... parameterTypes) {
+        try {
+            return methodName != null ? bind(clazz, methodName, parameterTypes) : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    Object call(HomeItem item) throws InvocationTargetException, IllegalAccessException {
+        return method.invoke(item, NO_ARGUMENTS);
+    }
+
+    Object call(HomeItem item, String argument) throws InvocationTargetException, IllegalAccessException {
+        return method.invoke(item, argument);
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A parsed search pattern for listing HomeItems in the ItemDirectory. The pattern consists of terms separated
+ * by "&amp;", which all have to match:
+ * <ul>
+ * <li>@class=name, HomeItems with the class name in their model</li>
+ * <li>@category=name, HomeItems in the category, ignoring case</li>
+ * <li>@hasAttribute=name, HomeItems with the attribute</li>
+ * <li>@hasAction=name, HomeItems with the action, or @hasAction for HomeItems with any action</li>
+ * <li>@name~regex, HomeItems where a part of the name matches the regular expression</li>
+ * <li>@related=id, HomeItems which point to the HomeItem with the ID</li>
+ * <li>@dependencies=name, HomeItems which the named HomeItem points to</li>
+ * <li>@offset=n and @limit=n, skip the first n matching HomeItems and list at most n HomeItems</li>
+ * </ul>
+ * An empty pattern matches all HomeItems, and a pattern with an unknown or malformed term matches nothing.
+ */
+final class ItemQuery {
+
+    static final String SEPARATOR = "&";
+    static final String CLASS_KEYWORD = "@class=";
+    static final String CATEGORY_KEYWORD = "@category=";
+    static final String HAS_ATTRIBUTE_KEYWORD = "@hasAttribute=";
+    static final String HAS_ACTION_KEYWORD = "@hasAction";
+    static final String NAME_KEYWORD = "@name~";
+    static final String OFFSET_KEYWORD = "@offset=";
+    static final String LIMIT_KEYWORD = "@limit=";
+
+    private boolean isValid = true;
+    private String className;
+    private String category;
+    private String attribute;
+    private String action;
+    private Pattern namePattern;
+    private String relatedTo;
+    private String dependenciesOf;
+    private int offset = 0;
+    private int limit = Integer.MAX_VALUE;
+
+    private ItemQuery() {
+    }
+
+    static ItemQuery parse(String pattern) {
+        ItemQuery query = new ItemQuery();
+        if (pattern.length() > 0) {
+            for (String term : pattern.split(SEPARATOR)) {
+                query.parseTerm(term.trim());
+            }
+        }
+        return query;
+    }
+
+    private void parseTerm(String term) {
+        if (term.startsWith(CLASS_KEYWORD)) {
+            className = valueOf(term, CLASS_KEYWORD);
+        } else if (term.startsWith(CATEGORY_KEYWORD)) {
+            category = valueOf(term, CATEGORY_KEYWORD);
+        } else if (term.startsWith(HAS_ATTRIBUTE_KEYWORD)) {
+            attribute = valueOf(term, HAS_ATTRIBUTE_KEYWORD);
+        } else if (term.equals(HAS_ACTION_KEYWORD)) {
+            action = "";
+        } else if (term.startsWith(HAS_ACTION_KEYWORD + "=")) {
+            action = valueOf(term, HAS_ACTION_KEYWORD + "=");
+        } else if (term.startsWith(NAME_KEYWORD)) {
+            parseNamePattern(term.substring(NAME_KEYWORD.length()));
+        } else if (term.startsWith(ItemDirectory.RELATED_SEARCH_KEYWORD)) {
+            relatedTo = valueOf(term, ItemDirectory.RELATED_SEARCH_KEYWORD);
+        } else if (term.startsWith(ItemDirectory.DEPENDENCIES_SEARCH_KEYWORD)) {
+            dependenciesOf = valueOf(term, ItemDirectory.DEPENDENCIES_SEARCH_KEYWORD);
+        } else if (term.startsWith(OFFSET_KEYWORD)) {
+            offset = numberOf(term, OFFSET_KEYWORD);
+        } else if (term.startsWith(LIMIT_KEYWORD)) {
+            limit = numberOf(term, LIMIT_KEYWORD);
+        } else {
+            isValid = false;
+        }
+    }
+
+    private String valueOf(String term, String keyword) {
+        String value = term.substring(keyword.length());
+        if (value.length() == 0) {
+            isValid = false;
+        }
+        return value;
+    }
+
+    private int numberOf(String term, String keyword) {
+        try {
+            int value = Integer.parseInt(term.substring(keyword.length()));
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        isValid = false;
+        return 0;
+    }
+
+    private void parseNamePattern(String regex) {
+        try {
+            namePattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            isValid = false;
+        }
+    }
+
+    boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * @return the class name to search for, or null
+     */
+    String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the category to search for, or null
+     */
+    String getCategory() {
+        return category;
+    }
+
+    /**
+     * @return the attribute to search for, or null
+     */
+    String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @return the action to search for, an empty string for any action, or null
+     */
+    String getAction() {
+        return action;
+    }
+
+    boolean matchesName(String name) {
+        return namePattern == null || namePattern.matcher(name).find();
+    }
+
+    /**
+     * @return the ID of the HomeItem the listed HomeItems should point to, or null
+     */
+    String getRelatedTo() {
+        return relatedTo;
+    }
+
+    /**
+     * @return the name or ID of the HomeItem which should point to the listed HomeItems, or null
+     */
+    String getDependenciesOf() {
+        return dependenciesOf;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+}
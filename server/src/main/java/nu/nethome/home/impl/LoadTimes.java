@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+/**
+ * Time in ms spent in each phase of the last load of HomeItems from the configuration
+ */
+public class LoadTimes {
+    private volatile long parseTime;
+    private volatile long constructTime;
+    private volatile long initTime;
+    private volatile long registerTime;
+    private volatile long activateTime;
+
+    public long getParseTime() {
+        return parseTime;
+    }
+
+    public void setParseTime(long parseTime) {
+        this.parseTime = parseTime;
+    }
+
+    public long getConstructTime() {
+        return constructTime;
+    }
+
+    public void setConstructTime(long constructTime) {
+        this.constructTime = constructTime;
+    }
+
+    public long getInitTime() {
+        return initTime;
+    }
+
+    public void setInitTime(long initTime) {
+        this.initTime = initTime;
+    }
+
+    public long getRegisterTime() {
+        return registerTime;
+    }
+
+    public void setRegisterTime(long registerTime) {
+        this.registerTime = registerTime;
+    }
+
+    public long getActivateTime() {
+        return activateTime;
+    }
+
+    public void setActivateTime(long activateTime) {
+        this.activateTime = activateTime;
+    }
+
+    public long getTotalTime() {
+        return parseTime + constructTime + initTime + registerTime + activateTime;
+    }
+
+    @Override
+    public String toString() {
+        return "parse " + parseTime + " ms, construct " + constructTime + " ms, init " + initTime
+                + " ms, register " + registerTime + " ms, activate " + activateTime + " ms";
+    }
+}
@@ -23,6 +23,7 @@ import nu.nethome.home.impl.AttributeModel;
 import nu.nethome.home.impl.ModelException;
 import nu.nethome.home.impl.NewInternalAttribute;
 import nu.nethome.home.impl.StaticHomeItemModel;
+import nu.nethome.home.impl.relation.RelationIndex;
 import nu.nethome.home.item.*;
 import nu.nethome.home.system.HomeService;
 
@@ -35,14 +36,26 @@ public class LocalHomeItemProxy implements HomeItemProxy {
     private final HomeItem item;
     private final StaticHomeItemModel model;
     private HomeService server;
+    private final ItemDirectory directory;
+    private final ItemChangeLog changeLog;
 
     public LocalHomeItemProxy(HomeItem item) throws ModelException {
         this(item, null);
     }
 
     public LocalHomeItemProxy(HomeItem item, HomeService server) throws ModelException {
+        this(item, server, null, null);
+    }
+
+    /**
+     * @param directory directory to tell when an attribute pointing to other HomeItems is changed, may be null
+     * @param changeLog change log to mark the HomeItem as changed in when an attribute is set, may be null
+     */
+    LocalHomeItemProxy(HomeItem item, HomeService server, ItemDirectory directory, ItemChangeLog changeLog) throws ModelException {
         this.item = item;
         this.server = server;
+        this.directory = directory;
+        this.changeLog = changeLog;
         model = StaticHomeItemModel.getModel(item);
     }
 
@@ -90,10 +103,17 @@ public class LocalHomeItemProxy implements HomeItemProxy {
     }
 
     public boolean setAttributeValue(String attributeName, String attributeValue, boolean isActivated) throws IllegalValueException, ModelException, InvocationTargetException, IllegalAccessException {
+        AttributeModel attribute = model.getAttribute(attributeName);
         if (isActivated) {
-            model.getAttribute(attributeName).setValue(item, attributeValue);
+            attribute.setValue(item, attributeValue);
         } else {
-            model.getAttribute(attributeName).initValue(item, attributeValue);
+            attribute.initValue(item, attributeValue);
+        }
+        if (directory != null && RelationIndex.isRelationType(attribute.getType())) {
+            directory.updateRelations(item);
+        }
+        if (changeLog != null) {
+            changeLog.itemChanged(item);
         }
         return true;
     }
@@ -0,0 +1,689 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.RollupVisitor;
+import nu.nethome.home.system.SampleVisitor;
+import nu.nethome.home.system.TimeSeriesStore;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A TimeSeriesStore which keeps each series in a directory of its own, as a number of memory mapped segment
+ * files of fixed size. Each record is the time in epoch seconds (long) followed by the value (double).
+ * The value is written before the time, and a time of 0 marks the end of the written part of a segment, so a
+ * record is either complete or not present. Samples are written directly to the mapped segments, and are
+ * forced to disk in groups each time the store is flushed.
+ * The hour and day rollups of a series are kept in the same way in the sub directories "hour" and "day" of the
+ * series directory, with the min, max, mean and count of each period after its start time. A period is written
+ * when the first sample of a later period arrives, and when a series is opened the period in progress is
+ * recreated from the samples after the last written period.
+ */
+public class MappedTimeSeriesStore implements TimeSeriesStore {
+
+    public static final String SEGMENT_SUFFIX = ".series";
+    public static final int RECORD_SIZE = 8 + 8;
+    public static final int ROLLUP_RECORD_SIZE = 8 + 4 * 8;
+    public static final int DEFAULT_SEGMENT_RECORDS = 16 * 1024;
+    private static final int SEGMENT_NAME_DIGITS = 12;
+    private static final long MS_PER_SECOND = 1000;
+    private static final long SECONDS_PER_HOUR = 60 * 60;
+    private static final long SECONDS_PER_DAY = 24 * SECONDS_PER_HOUR;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static Logger logger = Logger.getLogger(MappedTimeSeriesStore.class.getName());
+
+    private final File directory;
+    private final int segmentRecords;
+    private final TimeZone timeZone;
+    private final Map<String, Series> seriesByName = new HashMap<String, Series>();
+
+    /**
+     * @param directory directory to store the series in, created if it does not exist
+     */
+    public MappedTimeSeriesStore(File directory) {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * @param directory      directory to store the series in, created if it does not exist
+     * @param segmentRecords number of records in each segment file
+     */
+    public MappedTimeSeriesStore(File directory, int segmentRecords) {
+        this(directory, segmentRecords, TimeZone.getDefault());
+    }
+
+    /**
+     * @param directory      directory to store the series in, created if it does not exist
+     * @param segmentRecords number of records in each segment file
+     * @param timeZone       time zone which decides where the days of the day rollups start
+     */
+    public MappedTimeSeriesStore(File directory, int segmentRecords, TimeZone timeZone) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.timeZone = timeZone;
+    }
+
+    public boolean append(String name, long time, double value) {
+        Series series = getSeries(name, true);
+        return series != null && series.append(time / MS_PER_SECOND, value);
+    }
+
+    public int read(String name, long from, long to, final SampleVisitor visitor) {
+        Series series = getSeries(name, false);
+        if (series == null) {
+            return 0;
+        }
+        return series.read(toSeconds(from), toSeconds(to), new RecordVisitor() {
+            public void record(long time, Segment segment, int index) {
+                visitor.sample(time * MS_PER_SECOND, segment.valueAt(index, 0));
+            }
+        });
+    }
+
+    public int readRollups(String name, long from, long to, String resolution, RollupVisitor visitor) {
+        Series series = getSeries(name, false);
+        if (series == null) {
+            return 0;
+        }
+        for (Rollup rollup : series.rollups) {
+            if (rollup.resolution.equals(resolution)) {
+                return rollup.read(toSeconds(from), toSeconds(to), visitor);
+            }
+        }
+        throw new IllegalArgumentException("Unknown resolution: " + resolution);
+    }
+
+    /**
+     * @return the first whole second at or after the time
+     */
+    private static long toSeconds(long time) {
+        return time / MS_PER_SECOND + (time % MS_PER_SECOND > 0 ? 1 : 0);
+    }
+
+    public boolean hasSeries(String name) {
+        return getSampleCount(name) > 0;
+    }
+
+    public long getSampleCount(String name) {
+        Series series = getSeries(name, false);
+        return series != null ? series.getCount() : 0;
+    }
+
+    public long getLastSampleTime(String name) {
+        Series series = getSeries(name, false);
+        return series != null ? series.getLastTime() * MS_PER_SECOND : 0;
+    }
+
+    public List<String> getSeriesNames() {
+        File[] directories = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        List<String> result = new ArrayList<String>();
+        if (directories != null) {
+            for (File seriesDirectory : directories) {
+                result.add(decodeName(seriesDirectory.getName()));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    public void exportText(String series, long from, long to, String timeFormat, final Writer out) throws IOException {
+        final SimpleDateFormat formatter = new SimpleDateFormat(timeFormat);
+        final IOException[] failure = new IOException[1];
+        read(series, from, to, new SampleVisitor() {
+            public void sample(long time, double value) {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    out.write(formatter.format(new Date(time)) + formatValue(value) + LINE_SEPARATOR);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * @return the value as it is normally written by the HomeItems, without exponent and without decimals
+     * for whole numbers, for example "21" and "21.5"
+     */
+    static String formatValue(double value) {
+        if (value == 0) {
+            return "0";
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.toString(value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    public long importText(String series, File logFile, String timeFormat) throws IOException {
+        SimpleDateFormat formatter = new SimpleDateFormat(timeFormat);
+        BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        long imported = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ParsePosition position = new ParsePosition(0);
+                Date time = formatter.parse(line, position);
+                if (time == null) {
+                    continue;
+                }
+                try {
+                    double value = Double.parseDouble(line.substring(position.getIndex()).trim().replace(',', '.'));
+                    // Lines older than the last sample are skipped, for example duplicates at daylight saving time switch
+                    if (append(series, time.getTime(), value)) {
+                        imported++;
+                    }
+                } catch (NumberFormatException e) {
+                    // Bad number format in a line, try to continue
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return imported;
+    }
+
+    public void flush() {
+        for (Series series : getOpenSeries()) {
+            series.force();
+        }
+    }
+
+    /**
+     * Flush all series and release them. The store may still be used after it is closed.
+     */
+    public void close() {
+        List<Series> openSeries = getOpenSeries();
+        synchronized (this) {
+            seriesByName.clear();
+        }
+        for (Series series : openSeries) {
+            series.force();
+        }
+    }
+
+    private synchronized List<Series> getOpenSeries() {
+        return new ArrayList<Series>(seriesByName.values());
+    }
+
+    private synchronized Series getSeries(String name, boolean create) {
+        Series series = seriesByName.get(name);
+        if (series == null) {
+            File seriesDirectory = new File(directory, encodeName(name));
+            if (!create && !seriesDirectory.isDirectory()) {
+                return null;
+            }
+            series = new Series(seriesDirectory, RECORD_SIZE);
+            series.rollups = new Rollup[]{
+                    new Rollup(series, new File(seriesDirectory, HOUR), HOUR, SECONDS_PER_HOUR),
+                    new Rollup(series, new File(seriesDirectory, DAY), DAY, SECONDS_PER_DAY)};
+            try {
+                series.open();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to open time series in " + seriesDirectory.getPath(), e);
+                return null;
+            }
+            seriesByName.put(name, series);
+        }
+        return series;
+    }
+
+    /**
+     * @return the name of a series as a name which is valid as a file name on all platforms
+     */
+    static String encodeName(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace("+", "%20").replace("*", "%2A").replace(".", "%2E");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+    }
+
+    static String decodeName(String fileName) {
+        try {
+            return URLDecoder.decode(fileName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+    }
+
+    /**
+     * Orders segments by start time and then by the sequence number of segments started in the same second
+     */
+    private static final Comparator<File> SEGMENT_ORDER = new Comparator<File>() {
+        public int compare(File first, File second) {
+            long firstTime = Segment.segmentStartTime(first);
+            long secondTime = Segment.segmentStartTime(second);
+            if (firstTime != secondTime) {
+                return firstTime < secondTime ? -1 : 1;
+            }
+            int firstSequence = segmentSequence(first);
+            int secondSequence = segmentSequence(second);
+            if (firstSequence != secondSequence) {
+                return firstSequence < secondSequence ? -1 : 1;
+            }
+            return first.getName().compareTo(second.getName());
+        }
+    };
+
+    private static int segmentSequence(File segment) {
+        String name = segment.getName();
+        if (name.length() <= SEGMENT_NAME_DIGITS || name.charAt(SEGMENT_NAME_DIGITS) != '-') {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_NAME_DIGITS + 1, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return the segment files of a series, oldest first
+     */
+    public static List<File> listSegments(File seriesDirectory) {
+        File[] files = seriesDirectory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        Arrays.sort(files, SEGMENT_ORDER);
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private interface RecordVisitor {
+        void record(long time, Segment segment, int index);
+    }
+
+    /**
+     * The records of one series. Records are appended with the lock held, while reads only take the lock
+     * to get the number of written records and then read the mapped segments without it.
+     */
+    private class Series {
+        private final File seriesDirectory;
+        private final int recordSize;
+        private final List<Segment> segments = new ArrayList<Segment>();
+        private Rollup[] rollups = new Rollup[0];
+        private long count = 0;
+        private long lastTime = 0;
+        private boolean isDirty = false;
+
+        Series(File seriesDirectory, int recordSize) {
+            this.seriesDirectory = seriesDirectory;
+            this.recordSize = recordSize;
+        }
+
+        synchronized void open() throws IOException {
+            List<File> files = listSegments(seriesDirectory);
+            for (int i = 0; i < files.size(); i++) {
+                Segment segment = new Segment(files.get(i), recordSize, i == files.size() - 1);
+                segments.add(segment);
+                count += segment.count;
+                if (segment.count > 0) {
+                    lastTime = segment.timeAt(segment.count - 1);
+                }
+            }
+            for (final Rollup rollup : rollups) {
+                rollup.periods.open();
+                long periodsEnd = rollup.periods.count > 0 ? rollup.periodEnd(rollup.periods.lastTime) : 0;
+                read(periodsEnd, Long.MAX_VALUE, new RecordVisitor() {
+                    public void record(long time, Segment segment, int index) {
+                        rollup.add(time, segment.valueAt(index, 0));
+                    }
+                });
+            }
+        }
+
+        synchronized boolean append(long time, double value) {
+            if (!appendRecord(time, value)) {
+                return false;
+            }
+            for (Rollup rollup : rollups) {
+                rollup.add(time, value);
+            }
+            return true;
+        }
+
+        synchronized boolean appendRecord(long time, double... values) {
+            if (time <= 0 || time < lastTime) {
+                return false;
+            }
+            try {
+                Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                if (segment == null || segment.count == segment.capacity) {
+                    segment = startSegment(segment, time);
+                }
+                int position = segment.count * recordSize;
+                for (int i = 0; i < values.length; i++) {
+                    segment.buffer.putDouble(position + 8 + i * 8, values[i]);
+                }
+                segment.buffer.putLong(position, time);
+                segment.count++;
+                count++;
+                lastTime = time;
+                isDirty = true;
+                return true;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to write time series in " + seriesDirectory.getPath(), e);
+                return false;
+            }
+        }
+
+        private Segment startSegment(Segment previous, long time) throws IOException {
+            if (!seriesDirectory.isDirectory() && !seriesDirectory.mkdirs()) {
+                throw new IOException("Could not create directory");
+            }
+            File file = new File(seriesDirectory, String.format("%012d-%06d", time, 0) + SEGMENT_SUFFIX);
+            for (int i = 1; file.exists(); i++) {
+                file = new File(seriesDirectory, String.format("%012d-%06d", time, i) + SEGMENT_SUFFIX);
+            }
+            Segment segment = new Segment(file, recordSize, segmentRecords);
+            if (previous != null) {
+                previous.buffer.force();
+            }
+            segments.add(segment);
+            return segment;
+        }
+
+        int read(long from, long to, RecordVisitor visitor) {
+            Segment[] snapshot;
+            int[] counts;
+            synchronized (this) {
+                snapshot = segments.toArray(new Segment[segments.size()]);
+                counts = new int[snapshot.length];
+                for (int i = 0; i < snapshot.length; i++) {
+                    counts[i] = snapshot[i].count;
+                }
+            }
+            int first = 0;
+            for (int i = 1; i < snapshot.length; i++) {
+                if (snapshot[i].startTime < from) {
+                    first = i;
+                }
+            }
+            int result = 0;
+            for (int i = first; i < snapshot.length; i++) {
+                Segment segment = snapshot[i];
+                for (int index = segment.search(from, counts[i]); index < counts[i]; index++) {
+                    long time = segment.timeAt(index);
+                    if (time >= to) {
+                        return result;
+                    }
+                    visitor.record(time, segment, index);
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        synchronized long getCount() {
+            return count;
+        }
+
+        synchronized long getLastTime() {
+            return lastTime;
+        }
+
+        synchronized void force() {
+            if (isDirty && !segments.isEmpty()) {
+                segments.get(segments.size() - 1).buffer.force();
+                isDirty = false;
+            }
+            for (Rollup rollup : rollups) {
+                rollup.periods.force();
+            }
+        }
+    }
+
+    /**
+     * The rollups of a series for periods of one length. The written periods are kept in a series of their own,
+     * while the period in progress is kept in memory. Updated with the lock of the series held.
+     */
+    private class Rollup {
+        private final Series owner;
+        private final Series periods;
+        private final String resolution;
+        private final long length;
+        private long start;
+        private long end;
+        private double min;
+        private double max;
+        private double sum;
+        private long count = 0;
+
+        Rollup(Series owner, File directory, String resolution, long length) {
+            this.owner = owner;
+            this.periods = new Series(directory, ROLLUP_RECORD_SIZE);
+            this.resolution = resolution;
+            this.length = length;
+        }
+
+        void add(long time, double value) {
+            if (count > 0 && time >= end) {
+                periods.appendRecord(start, min, max, sum / count, count);
+                count = 0;
+            }
+            if (count == 0) {
+                start = periodStart(time);
+                end = periodEnd(start);
+                min = value;
+                max = value;
+                sum = 0;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+
+        /**
+         * @return start of the period of the time in local time, in epoch seconds
+         */
+        long periodStart(long time) {
+            if (length >= SECONDS_PER_DAY) {
+                return localMidnight(time).getTimeInMillis() / MS_PER_SECOND;
+            }
+            long localTime = time + timeZone.getOffset(time * MS_PER_SECOND) / MS_PER_SECOND;
+            long sinceStart = localTime % length;
+            return time - (sinceStart < 0 ? sinceStart + length : sinceStart);
+        }
+
+        /**
+         * @return end of the period starting at the time, in epoch seconds. Days end at the next local midnight,
+         * so a day is 23 or 25 hours long when daylight saving time starts or ends.
+         */
+        long periodEnd(long start) {
+            if (length >= SECONDS_PER_DAY) {
+                Calendar calendar = localMidnight(start);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                return calendar.getTimeInMillis() / MS_PER_SECOND;
+            }
+            return start + length;
+        }
+
+        private Calendar localMidnight(long time) {
+            Calendar calendar = Calendar.getInstance(timeZone);
+            calendar.setTimeInMillis(time * MS_PER_SECOND);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            return calendar;
+        }
+
+        int read(long from, long to, final RollupVisitor visitor) {
+            long currentStart;
+            double currentMin;
+            double currentMax;
+            double currentMean;
+            long currentCount;
+            synchronized (owner) {
+                currentStart = start;
+                currentMin = min;
+                currentMax = max;
+                currentMean = count > 0 ? sum / count : 0;
+                currentCount = count;
+            }
+            // Periods written after the snapshot are left out, as they are included as the period in progress
+            int result = periods.read(periodStart(from), currentCount > 0 ? Math.min(to, currentStart) : to,
+                    new RecordVisitor() {
+                        public void record(long time, Segment segment, int index) {
+                            visitor.rollup(time * MS_PER_SECOND, segment.valueAt(index, 0), segment.valueAt(index, 1),
+                                    segment.valueAt(index, 2), (long) segment.valueAt(index, 3));
+                        }
+                    });
+            if (currentCount > 0 && currentStart >= periodStart(from) && currentStart < to) {
+                visitor.rollup(currentStart * MS_PER_SECOND, currentMin, currentMax, currentMean, currentCount);
+                result++;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * One segment file of a series
+     */
+    private static class Segment {
+        private final long startTime;
+        private final MappedByteBuffer buffer;
+        private final int recordSize;
+        private final int capacity;
+        private int count;
+
+        /**
+         * Create a new empty segment file
+         */
+        Segment(File file, int recordSize, int capacity) throws IOException {
+            this.recordSize = recordSize;
+            this.capacity = capacity;
+            startTime = segmentStartTime(file);
+            buffer = map(file, FileChannel.MapMode.READ_WRITE, (long) capacity * recordSize);
+            count = 0;
+        }
+
+        /**
+         * Open an existing segment file
+         */
+        Segment(File file, int recordSize, boolean isWritable) throws IOException {
+            this.recordSize = recordSize;
+            startTime = segmentStartTime(file);
+            capacity = (int) (file.length() / recordSize);
+            buffer = map(file, isWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    (long) capacity * recordSize);
+            // Records are in time order, so the unwritten part starts where the time is 0
+            int low = 0;
+            int high = capacity;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timeAt(middle) != 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            count = low;
+        }
+
+        private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+            RandomAccessFile segmentFile = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+            try {
+                return segmentFile.getChannel().map(mode, 0, size);
+            } finally {
+                segmentFile.close();
+            }
+        }
+
+        private static long segmentStartTime(File segment) {
+            try {
+                return Long.parseLong(segment.getName().substring(0, SEGMENT_NAME_DIGITS));
+            } catch (RuntimeException e) {
+                return 0;
+            }
+        }
+
+        long timeAt(int index) {
+            return buffer.getLong(index * recordSize);
+        }
+
+        double valueAt(int index, int valueIndex) {
+            return buffer.getDouble(index * recordSize + 8 + valueIndex * 8);
+        }
+
+        /**
+         * @return index of the first record at or after the time, among the first records of the segment
+         */
+        int search(long time, int records) {
+            int low = 0;
+            int high = records;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timeAt(middle) < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
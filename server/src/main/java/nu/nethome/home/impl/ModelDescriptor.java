@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The content of a HomeItem model description, independent of the class it describes. The model XML is
+ * read with a streaming parser without building a DOM, and descriptors are shared by all models with the
+ * same XML, so each distinct model description is only parsed once no matter how many classes or
+ * instances use it. Parsing is serialized, which lets the JDK parser reuse one reader for all models
+ * instead of setting up a new one for each.
+ */
+final class ModelDescriptor {
+
+    static final int MAX_CACHED_DESCRIPTORS = 1000;
+    private static final String REUSE_INSTANCE_PROPERTY = "reuse-instance";
+    private static final ConcurrentMap<String, ModelDescriptor> descriptorCache = new ConcurrentHashMap<String, ModelDescriptor>();
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private String className = "";
+    private String category = "";
+    private int startOrder = 5;
+    private boolean isMorphing = false;
+    private final List<AttributeDescriptor> attributes = new ArrayList<AttributeDescriptor>();
+    private final List<ActionDescriptor> actions = new ArrayList<ActionDescriptor>();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        try {
+            factory.setProperty(REUSE_INSTANCE_PROPERTY, Boolean.TRUE);
+        } catch (IllegalArgumentException e) {
+            // Do Dinada, other parsers set up a new reader for each model
+        }
+        return factory;
+    }
+
+    /**
+     * @param modelXML model description of a HomeItem
+     * @return the parsed description, shared with all other models with the same description
+     * @throws ModelException if the description could not be parsed
+     */
+    static ModelDescriptor forModel(String modelXML) throws ModelException {
+        ModelDescriptor descriptor = descriptorCache.get(modelXML);
+        if (descriptor == null) {
+            descriptor = parse(modelXML);
+            if (descriptorCache.size() >= MAX_CACHED_DESCRIPTORS) {
+                // Models which change all the time should not fill up the memory
+                descriptorCache.clear();
+            }
+            descriptorCache.put(modelXML, descriptor);
+        }
+        return descriptor;
+    }
+
+    static void clearCache() {
+        descriptorCache.clear();
+    }
+
+    static ModelDescriptor parse(String modelXML) throws ModelException {
+        ModelDescriptor descriptor = new ModelDescriptor();
+        synchronized (inputFactory) {
+            descriptor.parseModel(modelXML);
+        }
+        return descriptor;
+    }
+
+    private void parseModel(String modelXML) throws ModelException {
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(modelXML));
+            try {
+                if (nextElement(reader) != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("HomeItem")) {
+                    throw new ModelException("Parsing failed, Not a HomeItem");
+                }
+                parseItemAttributes(reader);
+                while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+                    if (reader.getLocalName().equals("Action")) {
+                        parseAction(reader);
+                    } else if (reader.getLocalName().equals("Attribute")) {
+                        parseAttribute(reader);
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new ModelException("Parsing failed", e);
+        } catch (NumberFormatException e) {
+            throw new ModelException("Parsing failed, bad StartOrder", e);
+        }
+    }
+
+    private void parseItemAttributes(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            String value = reader.getAttributeValue(i);
+            if (name.equals("Class")) {
+                className = value;
+            }
+            if (name.equals("Category")) {
+                category = value;
+            }
+            if (name.equals("StartOrder")) {
+                startOrder = Integer.parseInt(value);
+            }
+            if (name.equals("Morphing") && value.equalsIgnoreCase("true")) {
+                isMorphing = true;
+            }
+        }
+    }
+
+    private void parseAction(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getAttributeValue(null, "Name");
+        String method = reader.getAttributeValue(null, "Method");
+        boolean isDefault = reader.getAttributeValue(null, "Default") != null;
+        skipElement(reader);
+        if (name != null && method != null) {
+            actions.add(new ActionDescriptor(name, method, isDefault));
+        }
+    }
+
+    private void parseAttribute(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getAttributeValue(null, "Name");
+        String type = reader.getAttributeValue(null, "Type");
+        String getMethod = reader.getAttributeValue(null, "Get");
+        String setMethod = reader.getAttributeValue(null, "Set");
+        String initMethod = reader.getAttributeValue(null, "Init");
+        boolean isDefault = reader.getAttributeValue(null, "Default") != null;
+        List<String> values = new ArrayList<String>();
+        while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+            if (reader.getLocalName().equalsIgnoreCase("item")) {
+                values.add(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        if (name != null && type != null) {
+            attributes.add(new AttributeDescriptor(name, type, getMethod, setMethod, initMethod, isDefault, values));
+        }
+    }
+
+    /**
+     * Move to the next start or end tag, skipping any text, comments and processing instructions
+     *
+     * @return START_ELEMENT, END_ELEMENT or END_DOCUMENT
+     */
+    private static int nextElement(XMLStreamReader reader) throws XMLStreamException {
+        int event;
+        do {
+            event = reader.next();
+        } while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT
+                && event != XMLStreamConstants.END_DOCUMENT);
+        return event;
+    }
+
+    /**
+     * Read all text in the current element and its sub elements and leave the reader at its end tag
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getText());
+            }
+        }
+        return text.toString();
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getCategory() {
+        return category;
+    }
+
+    int getStartOrder() {
+        return startOrder;
+    }
+
+    boolean isMorphing() {
+        return isMorphing;
+    }
+
+    List<AttributeDescriptor> getAttributes() {
+        return Collections.unmodifiableList(attributes);
+    }
+
+    List<ActionDescriptor> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    static final class AttributeDescriptor {
+        final String name;
+        final String type;
+        final String getMethod;
+        final String setMethod;
+        final String initMethod;
+        final boolean isDefault;
+        final List<String> values;
+
+        AttributeDescriptor(String name, String type, String getMethod, String setMethod, String initMethod,
+                            boolean isDefault, List<String> values) {
+            this.name = name;
+            this.type = type;
+            this.getMethod = getMethod;
+            this.setMethod = setMethod;
+            this.initMethod = initMethod;
+            this.isDefault = isDefault;
+            this.values = Collections.unmodifiableList(values);
+        }
+    }
+
+    static final class ActionDescriptor {
+        final String name;
+        final String method;
+        final boolean isDefault;
+
+        ActionDescriptor(String name, String method, boolean isDefault) {
+            this.name = name;
+            this.method = method;
+            this.isDefault = isDefault;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.HomeService;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Event queue with one bounded queue per priority class. Events are always taken from the highest priority
+ * class that has queued Events, so outgoing commands are not delayed by a flood of incoming sensor data.
+ * What happens when a priority class is full is decided by the overflow policy of that class.
+ */
+public class PriorityEventQueue {
+
+    public static final String DIRECTION_ATTRIBUTE = "Direction";
+    public static final long MAX_BLOCK_TIME_MS = 2000;
+
+    public enum Priority {
+        /**
+         * Outgoing commands, Direction=Out
+         */
+        HIGH,
+        /**
+         * Events that are neither commands nor sensor data, for example Events sent by users
+         */
+        NORMAL,
+        /**
+         * Incoming protocol messages, Direction=In, and the MinuteEvent
+         */
+        LOW
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * Let the sender wait for free space, at most MAX_BLOCK_TIME_MS
+         */
+        Block,
+        /**
+         * Drop the oldest queued Event of the same priority class
+         */
+        DropOldest,
+        /**
+         * Drop the new Event if an identical Event is already queued, otherwise drop the oldest
+         */
+        Coalesce
+    }
+
+    public enum Outcome {
+        QUEUED, COALESCED, DROPPED_OLDEST, REJECTED
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<QueuedEvent>[] queues;
+    private final OverflowPolicy[] policies;
+    // Number of queued Events per coalesce key, for the priority classes with the Coalesce policy which are
+    // close to full. Building the keys is not free, so it is only done when they may be needed.
+    private final Map<String, Integer>[] queuedKeys;
+    private volatile int capacity;
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PriorityEventQueue(int capacity) {
+        this.capacity = capacity;
+        Priority[] priorities = Priority.values();
+        queues = new ArrayDeque[priorities.length];
+        policies = new OverflowPolicy[priorities.length];
+        queuedKeys = new Map[priorities.length];
+        for (Priority priority : priorities) {
+            queues[priority.ordinal()] = new ArrayDeque<QueuedEvent>();
+        }
+        policies[Priority.HIGH.ordinal()] = OverflowPolicy.Block;
+        policies[Priority.NORMAL.ordinal()] = OverflowPolicy.DropOldest;
+        policies[Priority.LOW.ordinal()] = OverflowPolicy.Coalesce;
+    }
+
+    /**
+     * @return the key which is equal for Events that may be coalesced
+     */
+    private static String coalesceKey(Event event) {
+        return event.toString();
+    }
+
+    public static Priority priorityOf(Event event) {
+        String direction = event.getAttribute(DIRECTION_ATTRIBUTE);
+        if (direction.equals("Out")) {
+            return Priority.HIGH;
+        }
+        if (direction.equals("In") || event.getAttribute(Event.EVENT_TYPE_ATTRIBUTE).equals(HomeService.MINUTE_EVENT_TYPE)) {
+            return Priority.LOW;
+        }
+        return Priority.NORMAL;
+    }
+
+    /**
+     * Add an Event to the queue with the priority given by its attributes
+     *
+     * @param event    the Event to add
+     * @param mayBlock false if the caller must not wait even if the overflow policy is Block
+     * @return what happened to the Event
+     */
+    public Outcome put(Event event, boolean mayBlock) {
+        return put(event, priorityOf(event), mayBlock);
+    }
+
+    /**
+     * Add an Event to the queue
+     *
+     * @param event    the Event to add
+     * @param priority priority class of the Event
+     * @param mayBlock false if the caller must not wait even if the overflow policy is Block
+     * @return what happened to the Event
+     */
+    public Outcome put(Event event, Priority priority, boolean mayBlock) {
+        int index = priority.ordinal();
+        ArrayDeque<QueuedEvent> queue = queues[index];
+        Outcome outcome = Outcome.QUEUED;
+        String key = null;
+        lock.lock();
+        try {
+            Map<String, Integer> keys = queuedKeys[index];
+            if (keys == null && policies[index] == OverflowPolicy.Coalesce
+                    && queue.size() >= capacity - capacity / 4) {
+                keys = indexKeys(index);
+            }
+            if (keys != null) {
+                key = coalesceKey(event);
+            }
+            if (queue.size() >= capacity) {
+                OverflowPolicy policy = policies[index];
+                if (policy == OverflowPolicy.Coalesce && keys.containsKey(key)) {
+                    coalescedCount.incrementAndGet();
+                    return Outcome.COALESCED;
+                }
+                if (policy == OverflowPolicy.Block) {
+                    if (!mayBlock || !awaitSpace(queue)) {
+                        droppedCount.incrementAndGet();
+                        return Outcome.REJECTED;
+                    }
+                } else {
+                    pollFirst(index);
+                    droppedCount.incrementAndGet();
+                    outcome = Outcome.DROPPED_OLDEST;
+                }
+            }
+            queue.addLast(new QueuedEvent(event, key));
+            if (keys != null) {
+                Integer count = keys.get(key);
+                keys.put(key, count == null ? 1 : count + 1);
+            }
+            enqueuedCount.incrementAndGet();
+            notEmpty.signal();
+            return outcome;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Build the coalesce keys of the queued Events of a priority class. Must be called with the lock held.
+     */
+    private Map<String, Integer> indexKeys(int index) {
+        Map<String, Integer> keys = new HashMap<String, Integer>();
+        for (QueuedEvent queued : queues[index]) {
+            queued.key = coalesceKey(queued.event);
+            Integer count = keys.get(queued.key);
+            keys.put(queued.key, count == null ? 1 : count + 1);
+        }
+        queuedKeys[index] = keys;
+        return keys;
+    }
+
+    private boolean awaitSpace(ArrayDeque<QueuedEvent> queue) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(MAX_BLOCK_TIME_MS);
+        try {
+            while (queue.size() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove the first Event of a priority class. Must be called with the lock held.
+     */
+    private Event pollFirst(int index) {
+        QueuedEvent queued = queues[index].pollFirst();
+        if (queued == null) {
+            return null;
+        }
+        Map<String, Integer> keys = queuedKeys[index];
+        if (keys != null) {
+            if (queues[index].size() < capacity / 2) {
+                // Far from full again, stop keeping the keys until the priority class fills up
+                queuedKeys[index] = null;
+            } else {
+                int count = keys.get(queued.key);
+                if (count > 1) {
+                    keys.put(queued.key, count - 1);
+                } else {
+                    keys.remove(queued.key);
+                }
+            }
+        }
+        return queued.event;
+    }
+
+    /**
+     * Take the next Event from the highest priority class with queued Events. Waits if the queue is empty.
+     *
+     * @return the Event
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Event take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                for (int i = 0; i < queues.length; i++) {
+                    Event event = pollFirst(i);
+                    if (event != null) {
+                        notFull.signalAll();
+                        return event;
+                    }
+                }
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            int result = 0;
+            for (ArrayDeque<QueuedEvent> queue : queues) {
+                result += queue.size();
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the capacity of each priority class
+     *
+     * @param capacity max number of queued Events per priority class
+     */
+    public void setCapacity(int capacity) {
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public OverflowPolicy getOverflowPolicy(Priority priority) {
+        return policies[priority.ordinal()];
+    }
+
+    public void setOverflowPolicy(Priority priority, OverflowPolicy policy) {
+        lock.lock();
+        try {
+            int index = priority.ordinal();
+            policies[index] = policy;
+            if (policy != OverflowPolicy.Coalesce) {
+                queuedKeys[index] = null;
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private static class QueuedEvent {
+        private final Event event;
+        private String key;
+
+        QueuedEvent(Event event, String key) {
+            this.event = event;
+            this.key = key;
+        }
+    }
+}
@@ -19,22 +19,28 @@
 
 package nu.nethome.home.impl;
 
-import com.sun.org.apache.xerces.internal.parsers.DOMParser;
 import nu.nethome.home.item.Action;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemModel;
 import nu.nethome.home.item.HomeItemProxy;
-import org.w3c.dom.*;
-import org.xml.sax.InputSource;
+import nu.nethome.home.item.MorphingItem;
 
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class can process the HomeItem model description XML-file and extract the
  * information into Java objects. It is used both internally by the server for model
- * processing and by HomeItems via the HomeItemModel interface
+ * processing and by HomeItems via the HomeItemModel interface.
+ * The description is parsed into a ModelDescriptor, which is shared by all models with the same
+ * description, and the methods it names are then bound to the HomeItem class.
+ * Models are cached per class. Morphing HomeItems which implement MorphingItem have their models
+ * cached per instance and model version instead, and other morphing HomeItems have their model
+ * compared with the cached one at each lookup.
  */
 public class StaticHomeItemModel implements HomeItemModel {
 
@@ -48,43 +54,59 @@ public class StaticHomeItemModel implements HomeItemModel {
     private Map<String, AttributeModel> attributes = new HashMap<String, AttributeModel>();
     private List<AttributeModel> attributesInOrder = new ArrayList<AttributeModel>();
     private List<Action> actionsInOrder = new ArrayList<Action>();
-    private static Map<Class<? extends HomeItem>, StaticHomeItemModel> modelCache = new HashMap<Class<? extends HomeItem>, StaticHomeItemModel>();
+    private static final ConcurrentMap<Class<? extends HomeItem>, StaticHomeItemModel> modelCache = new ConcurrentHashMap<Class<? extends HomeItem>, StaticHomeItemModel>();
+    private static final ConcurrentMap<InstanceKey, VersionedModel> instanceModelCache = new ConcurrentHashMap<InstanceKey, VersionedModel>();
+    private static final ReferenceQueue<HomeItem> collectedItems = new ReferenceQueue<HomeItem>();
     private static AttributeModel nameAttribute = new AttributeModel(HomeItemProxy.NAME_ATTRIBUTE, "String", HomeItem.class, "getName", null, null);
     private static AttributeModel modelAttribute = new AttributeModel(HomeItemProxy.MODEL_ATTRIBUTE, "String", HomeItem.class, "getModel", null, null);
     private boolean isMorphing = false;
 
     public static StaticHomeItemModel getModel(HomeItem item) throws ModelException {
-        synchronized (modelCache) {
-            StaticHomeItemModel foundModel = modelCache.get(item.getClass());
-            if ((foundModel == null) || (foundModel != null && foundModel.isMorphing() && foundModel.hasMorphed(item))) {
-                foundModel = new StaticHomeItemModel(item);
-                modelCache.put(item.getClass(), foundModel);
-            }
-            return foundModel;
+        if (item instanceof MorphingItem) {
+            return getInstanceModel(item, ((MorphingItem) item).getModelVersion());
+        }
+        StaticHomeItemModel foundModel = modelCache.get(item.getClass());
+        if ((foundModel == null) || (foundModel.isMorphing() && foundModel.hasMorphed(item))) {
+            foundModel = new StaticHomeItemModel(item);
+            modelCache.put(item.getClass(), foundModel);
+        }
+        return foundModel;
+    }
+
+    private static StaticHomeItemModel getInstanceModel(HomeItem item, long version) throws ModelException {
+        removeCollectedItems();
+        VersionedModel foundModel = instanceModelCache.get(new InstanceKey(item, null));
+        if (foundModel != null && foundModel.version == version) {
+            return foundModel.model;
+        }
+        StaticHomeItemModel model = new StaticHomeItemModel(item);
+        instanceModelCache.put(new InstanceKey(item, collectedItems), new VersionedModel(version, model));
+        return model;
+    }
+
+    private static void removeCollectedItems() {
+        Reference<? extends HomeItem> collected;
+        while ((collected = collectedItems.poll()) != null) {
+            instanceModelCache.remove(collected);
         }
     }
 
     public static void clearCache() {
         modelCache.clear();
+        instanceModelCache.clear();
+        ModelDescriptor.clearCache();
     }
 
     public StaticHomeItemModel(HomeItem item) throws ModelException {
         String modelXML = item.getModel();
         modelHash = modelXML.hashCode();
-        // Start parsing the Items model description
-        DOMParser parser = new DOMParser();
-        ByteArrayInputStream byteStream;
+        ModelDescriptor descriptor;
         try {
-            byteStream = new ByteArrayInputStream(modelXML.getBytes("UTF-8"));
-            InputSource source = new InputSource(byteStream);
-            parser.parse(source);
-        } catch (UnsupportedEncodingException e1) {
-            throw new ModelException("Failed parsing model for " + item.getName(), e1);
-        } catch (Exception e) {
+            descriptor = ModelDescriptor.forModel(modelXML);
+        } catch (ModelException e) {
             throw new ModelException("Failed parsing model for " + item.getName(), e);
         }
-        Document document = parser.getDocument();
-        parseHomeItemDocument(document, item.getClass());
+        bindModel(descriptor, item.getClass());
         addDefaultAttributes();
     }
 
@@ -93,42 +115,25 @@ public class StaticHomeItemModel implements HomeItemModel {
         attributes.put(modelAttribute.getName(), modelAttribute);
     }
 
-    private void parseHomeItemDocument(Document document, Class<? extends HomeItem> aClass) throws ModelException {
-        Node homeItem = document.getDocumentElement();
-        if (!homeItem.getNodeName().equals("HomeItem")) {
-            throw new ModelException("Parsing failed, Not a HomeItem");
+    private void bindModel(ModelDescriptor descriptor, Class<? extends HomeItem> aClass) {
+        className = descriptor.getClassName();
+        category = descriptor.getCategory();
+        startOrder = descriptor.getStartOrder();
+        isMorphing = descriptor.isMorphing();
+        for (ModelDescriptor.ActionDescriptor action : descriptor.getActions()) {
+            bindAction(action, aClass);
         }
-        parseItemAttributes(homeItem);
-
-        NodeList elements = homeItem.getChildNodes();
-        if (elements != null) {
-            int numberOfChilds = elements.getLength();
-            for (int loopIndex = 0; loopIndex < numberOfChilds; loopIndex++) {
-                Node currentNode = elements.item(loopIndex);
-                if (isActionNode(currentNode)) {
-                    parseActionModel(currentNode, aClass);
-                }
-                if (isAttributeNode(currentNode)) {
-                    parseAttributeModel(currentNode, aClass);
-                }
-            }
+        for (ModelDescriptor.AttributeDescriptor attribute : descriptor.getAttributes()) {
+            bindAttribute(attribute, aClass);
         }
     }
 
-    private void parseAttributeModel(Node attributeNode, Class<? extends HomeItem> aClass) {
-        NamedNodeMap nodeAttributes = attributeNode.getAttributes();
-        String name = getNodeAttributeValue(nodeAttributes, HomeItemProxy.NAME_ATTRIBUTE);
-        String getMethod = getNodeAttributeValue(nodeAttributes, "Get");
-        String setMethod = getNodeAttributeValue(nodeAttributes, "Set");
-        String initMethod = getNodeAttributeValue(nodeAttributes, "Init");
-        String type = getNodeAttributeValue(nodeAttributes, "Type");
-        List<String> values = parseAttributeStringList(attributeNode);
-        if (name != null && type != null) {
-            AttributeModel model = new AttributeModel(name, type, aClass, getMethod, setMethod, initMethod, values);
-            addAttribute(name, model);
-            if (getNodeAttributeValue(nodeAttributes, "Default") != null) {
-                defaultAttribute = model;
-            }
+    private void bindAttribute(ModelDescriptor.AttributeDescriptor attribute, Class<? extends HomeItem> aClass) {
+        AttributeModel model = new AttributeModel(attribute.name, attribute.type, aClass, attribute.getMethod,
+                attribute.setMethod, attribute.initMethod, attribute.values);
+        addAttribute(attribute.name, model);
+        if (attribute.isDefault) {
+            defaultAttribute = model;
         }
     }
 
@@ -137,43 +142,15 @@ public class StaticHomeItemModel implements HomeItemModel {
         attributesInOrder.add(model);
     }
 
-    private List<String> parseAttributeStringList(Node item) {
-        List<String> result = new ArrayList<String>();
-        if (item.hasChildNodes()) {
-            // Grab all the values of the model and save
-            NodeList listOfPossibleAttributeValues = item.getChildNodes();
-            for (int i = 0; i < listOfPossibleAttributeValues.getLength(); i++) {
-                if (listOfPossibleAttributeValues.item(i).getNodeName()
-                        .compareToIgnoreCase("item") == 0) {
-                    result.add(listOfPossibleAttributeValues.item(
-                            i).getTextContent());
-                }
-            }
-        }
-        return result;
-    }
-
-    private String getNodeAttributeValue(NamedNodeMap attributes, String nameAttribute) {
-        if ((attributes == null) || (attributes.getNamedItem(nameAttribute) == null)) {
-            return null;
-        }
-        return attributes.getNamedItem(nameAttribute).getNodeValue();
-    }
-
-    private void parseActionModel(Node actionNode, Class<? extends HomeItem> aClass) {
-        NamedNodeMap attributes = actionNode.getAttributes();
-        String name = getNodeAttributeValue(attributes, HomeItemProxy.NAME_ATTRIBUTE);
-        String method = getNodeAttributeValue(attributes, "Method");
-        if (name != null && method != null) {
-            try {
-                ActionModel model = new ActionModel(name, method, aClass);
-                addAction(name, model);
-                if (getNodeAttributeValue(attributes, "Default") != null) {
-                    defaultAction = model;
-                }
-            } catch (NoSuchMethodException e) {
-                // Not adding the action
+    private void bindAction(ModelDescriptor.ActionDescriptor action, Class<? extends HomeItem> aClass) {
+        try {
+            ActionModel model = new ActionModel(action.name, action.method, aClass);
+            addAction(action.name, model);
+            if (action.isDefault) {
+                defaultAction = model;
             }
+        } catch (NoSuchMethodException e) {
+            // Not adding the action
         }
     }
 
@@ -182,40 +159,6 @@ public class StaticHomeItemModel implements HomeItemModel {
         actionsInOrder.add(model);
     }
 
-    private boolean isAttributeNode(Node currentNode) {
-        return currentNode.getNodeName().equals("Attribute");
-    }
-
-    private boolean isActionNode(Node currentNode) {
-        return currentNode.getNodeName().equals("Action");
-    }
-
-    private void parseItemAttributes(Node homeItem) {
-        int numberAttributes = 0;
-        if (homeItem.getAttributes() != null) {
-            numberAttributes = homeItem.getAttributes().getLength();
-        }
-        // Loop through all the attribute element's attributes and process them
-        for (int elemAttIndex = 0; elemAttIndex < numberAttributes; elemAttIndex++) {
-            Attr attribute = (Attr) homeItem.getAttributes().item(elemAttIndex);
-            String name = attribute.getNodeName();
-            String value = attribute.getNodeValue();
-            // Check for Name Element
-            if (name.equals("Class")) {
-                className = value;
-            }
-            if (name.equals("Category")) {
-                category = value;
-            }
-            if (name.equals("StartOrder")) {
-                startOrder = Integer.parseInt(value);
-            }
-            if (name.equals("Morphing") && value.equalsIgnoreCase("true")) {
-                this.isMorphing = true;
-            }
-        }
-    }
-
     /**
      * @return the Category
      */
@@ -292,4 +235,43 @@ public class StaticHomeItemModel implements HomeItemModel {
     public boolean hasMorphed(HomeItem item) {
         return item.getModel().hashCode() != modelHash;
     }
+
+    /**
+     * Identifies a HomeItem instance without keeping it from being garbage collected
+     */
+    private static class InstanceKey extends WeakReference<HomeItem> {
+        private final int hash;
+
+        InstanceKey(HomeItem item, ReferenceQueue<HomeItem> queue) {
+            super(item, queue);
+            hash = System.identityHashCode(item);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+            if (!(other instanceof InstanceKey)) {
+                return false;
+            }
+            HomeItem item = get();
+            return item != null && item == ((InstanceKey) other).get();
+        }
+    }
+
+    private static class VersionedModel {
+        private final long version;
+        private final StaticHomeItemModel model;
+
+        VersionedModel(long version, StaticHomeItemModel model) {
+            this.version = version;
+            this.model = model;
+        }
+    }
 }
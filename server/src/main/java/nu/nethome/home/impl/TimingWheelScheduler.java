@@ -0,0 +1,422 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.LatencySummary;
+import nu.nethome.home.system.ScheduledTask;
+import nu.nethome.home.system.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scheduler based on a hashed timing wheel. The wheel is a circular array of slots where each slot holds the
+ * tasks due at ticks mapping to that slot. One thread advances the wheel and hands the due tasks to worker
+ * threads. It sleeps until the next slot which holds tasks, or until a task is added which is due before that.
+ * Tasks are run at most one tick late, plus the time they wait for a free worker.<p>
+ * Tasks scheduled directly on this scheduler run on a small pool of workers and must be short. Tasks scheduled
+ * through getItemScheduler() run on a bounded pool of their own. They may block, but a worker which has run the
+ * same task for longer than the stuck timeout is replaced by a new one, so the other item tasks are not held up.
+ */
+public class TimingWheelScheduler implements Scheduler {
+
+    public static final long TICK_MS = 10;
+    public static final int WHEEL_SIZE = 512;
+    public static final int DEFAULT_WORKER_COUNT = 2;
+    public static final int DEFAULT_ITEM_WORKER_COUNT = 4;
+    public static final long DEFAULT_STUCK_TIMEOUT_MS = 30000;
+    // Limit for the item pool including replacements of stuck workers
+    public static final int MAX_ITEM_WORKER_COUNT = 32;
+    private static final int SCHEDULED = 0;
+    private static final int EXECUTED = 1;
+    private static final int CANCELLED = 2;
+
+    private static Logger logger = Logger.getLogger(TimingWheelScheduler.class.getName());
+
+    private final List<Task>[] wheel;
+    private final ConcurrentLinkedQueue<Task> newTasks = new ConcurrentLinkedQueue<Task>();
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor itemWorkers;
+    private final long stuckTimeout;
+    // Start time of the task each item worker is running, and the workers which have been replaced
+    private final Map<Thread, Long> busyItemWorkers = new HashMap<Thread, Long>();
+    private final Set<Thread> stuckItemWorkers = new HashSet<Thread>();
+    private final Scheduler itemScheduler = new ItemScheduler();
+    private final Object wakeLock = new Object();
+    // The tick the thread sleeps until, a task due before it wakes the thread
+    private volatile long wakeTick;
+    private final AtomicInteger scheduledCount = new AtomicInteger();
+    private final LatencyHistogram lateness = new LatencyHistogram("Lateness");
+    private volatile boolean running = false;
+    private Thread tickThread;
+    private long currentTick;
+
+    public TimingWheelScheduler(int workerCount) {
+        this(workerCount, DEFAULT_ITEM_WORKER_COUNT, DEFAULT_STUCK_TIMEOUT_MS);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheelScheduler(int workerCount, int itemWorkerCount, long stuckTimeout) {
+        this.stuckTimeout = stuckTimeout;
+        wheel = new List[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayList<Task>();
+        }
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerFactory("Scheduler-"));
+        // Idle item workers time out, so a server without item tasks does not hold any item threads
+        itemWorkers = new ThreadPoolExecutor(itemWorkerCount, itemWorkerCount, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerFactory("Scheduler-Item-"));
+        itemWorkers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return a scheduler which uses the same wheel, but runs the tasks on a bounded pool of their own.
+     * This is used for the tasks of HomeItems, which may block.
+     */
+    public Scheduler getItemScheduler() {
+        return itemScheduler;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        currentTick = System.currentTimeMillis() / TICK_MS;
+        tickThread = new Thread("Scheduler") {
+            @Override
+            public void run() {
+                tickTask();
+            }
+        };
+        tickThread.setDaemon(true);
+        tickThread.start();
+    }
+
+    /**
+     * Stop the scheduler. Tasks already handed to the workers are completed, other tasks are not run.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (tickThread != null) {
+            tickThread.interrupt();
+            tickThread = null;
+        }
+        workers.shutdown();
+        itemWorkers.shutdown();
+    }
+
+    public ScheduledTask schedule(Runnable task, long delay) {
+        return add(new Task(task, System.currentTimeMillis() + Math.max(0, delay), 0, workers));
+    }
+
+    public ScheduledTask schedule(Runnable task, Date time) {
+        return add(new Task(task, time.getTime(), 0, workers));
+    }
+
+    public ScheduledTask scheduleAtFixedRate(Runnable task, long delay, long period) {
+        return add(new Task(task, System.currentTimeMillis() + Math.max(0, delay), checkPeriod(period), workers));
+    }
+
+    public ScheduledTask scheduleAtFixedRate(Runnable task, Date firstTime, long period) {
+        return add(new Task(task, firstTime.getTime(), checkPeriod(period), workers));
+    }
+
+    private static long checkPeriod(long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Non-positive period.");
+        }
+        return period;
+    }
+
+    private ScheduledTask add(Task task) {
+        scheduledCount.incrementAndGet();
+        enqueue(task);
+        return task;
+    }
+
+    /**
+     * Hand a task to the tick thread, and wake it if the task is due before it would wake up
+     */
+    private void enqueue(Task task) {
+        newTasks.add(task);
+        if (task.deadlineTick() < wakeTick) {
+            synchronized (wakeLock) {
+                wakeLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return number of tasks waiting to be run
+     */
+    public int getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    /**
+     * @return how late the tasks have been run compared to their scheduled time
+     */
+    public LatencySummary getLateness() {
+        return lateness;
+    }
+
+    private void tickTask() {
+        while (running) {
+            try {
+                long nextTick = nextOccupiedTick();
+                synchronized (wakeLock) {
+                    // The wake tick is set before checking for new tasks, so a task added after the check notifies
+                    wakeTick = nextTick;
+                    long sleepTime = nextTick * TICK_MS - System.currentTimeMillis();
+                    if (hasBusyItemWorkers()) {
+                        // Wake up to look for stuck item workers
+                        sleepTime = Math.min(sleepTime, Math.max(TICK_MS, stuckTimeout / 4));
+                    }
+                    if (newTasks.isEmpty() && sleepTime > 0) {
+                        wakeLock.wait(sleepTime);
+                    }
+                    wakeTick = Long.MIN_VALUE;
+                }
+                advanceTo(System.currentTimeMillis() / TICK_MS);
+                replaceStuckItemWorkers(System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                // Do Dinada
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed in scheduler", e);
+            }
+        }
+    }
+
+    /**
+     * @return the tick of the next slot which holds tasks, or one wheel rotation ahead if all slots are empty.
+     * The tasks in the slot may be due in a later rotation.
+     */
+    private long nextOccupiedTick() {
+        for (int i = 1; i < WHEEL_SIZE; i++) {
+            if (!wheel[(int) ((currentTick + i) % WHEEL_SIZE)].isEmpty()) {
+                return currentTick + i;
+            }
+        }
+        return currentTick + WHEEL_SIZE;
+    }
+
+    /**
+     * Move the wheel forward to the specified tick and run all tasks due until then
+     */
+    void advanceTo(long nowTick) {
+        Task newTask;
+        while ((newTask = newTasks.poll()) != null) {
+            long tick = Math.max(newTask.deadlineTick(), currentTick + 1);
+            wheel[(int) (tick % WHEEL_SIZE)].add(newTask);
+        }
+        // If the clock was set back, wait for it to catch up. If we have fallen far behind, visit each slot once
+        long slotsToVisit = Math.min(nowTick - currentTick, WHEEL_SIZE);
+        for (long i = 1; i <= slotsToVisit; i++) {
+            expireSlot(wheel[(int) ((currentTick + i) % WHEEL_SIZE)], nowTick);
+        }
+        if (nowTick > currentTick) {
+            currentTick = nowTick;
+        }
+    }
+
+    private void expireSlot(List<Task> slot, long nowTick) {
+        Iterator<Task> tasks = slot.iterator();
+        while (tasks.hasNext()) {
+            Task task = tasks.next();
+            if (task.state.get() == CANCELLED) {
+                tasks.remove();
+            } else if (task.deadlineTick() <= nowTick) {
+                tasks.remove();
+                task.fire();
+            }
+        }
+    }
+
+    private synchronized boolean hasBusyItemWorkers() {
+        return !busyItemWorkers.isEmpty();
+    }
+
+    private synchronized void itemTaskStarted(long now) {
+        busyItemWorkers.put(Thread.currentThread(), now);
+    }
+
+    private synchronized void itemTaskEnded() {
+        Thread worker = Thread.currentThread();
+        busyItemWorkers.remove(worker);
+        if (stuckItemWorkers.remove(worker)) {
+            // The worker has been replaced, so let the pool shrink back again
+            int size = itemWorkers.getCorePoolSize() - 1;
+            itemWorkers.setCorePoolSize(size);
+            itemWorkers.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Add a worker to the item pool for each item worker which has been running the same task for longer than
+     * the stuck timeout, so the tasks waiting in the queue are run.
+     */
+    synchronized void replaceStuckItemWorkers(long now) {
+        for (Map.Entry<Thread, Long> worker : busyItemWorkers.entrySet()) {
+            if (now - worker.getValue() > stuckTimeout && !stuckItemWorkers.contains(worker.getKey())) {
+                int size = itemWorkers.getMaximumPoolSize() + 1;
+                if (size > MAX_ITEM_WORKER_COUNT) {
+                    logger.warning("Too many stuck scheduler item workers, not replacing " + worker.getKey().getName());
+                    return;
+                }
+                logger.warning("Scheduler item worker " + worker.getKey().getName() + " is stuck, replacing it");
+                stuckItemWorkers.add(worker.getKey());
+                itemWorkers.setMaximumPoolSize(size);
+                itemWorkers.setCorePoolSize(size);
+            }
+        }
+    }
+
+    private class Task implements ScheduledTask, Runnable {
+        private final Runnable runnable;
+        private final long period;
+        private final Executor executor;
+        private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+        private volatile long deadline;
+
+        Task(Runnable runnable, long deadline, long period, Executor executor) {
+            this.runnable = runnable;
+            this.deadline = deadline;
+            this.period = period;
+            this.executor = executor;
+        }
+
+        /**
+         * @return the first tick starting at or after the deadline, so the task is never run early
+         */
+        long deadlineTick() {
+            return (deadline + TICK_MS - 1) / TICK_MS;
+        }
+
+        void fire() {
+            if (period == 0) {
+                if (!state.compareAndSet(SCHEDULED, EXECUTED)) {
+                    return;
+                }
+                scheduledCount.decrementAndGet();
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // The scheduler is stopped
+            }
+        }
+
+        public void run() {
+            if (state.get() == CANCELLED) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            lateness.record(Math.max(0, now - deadline) * 1000000L);
+            boolean itemTask = executor == itemWorkers;
+            if (itemTask) {
+                itemTaskStarted(now);
+            }
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                logger.log(Level.WARNING, "Failed to run scheduled task", e);
+            } finally {
+                if (itemTask) {
+                    itemTaskEnded();
+                }
+            }
+            if (period > 0 && state.get() == SCHEDULED) {
+                // Skip runs that were missed, for example because the computer was suspended
+                long next = deadline + period;
+                now = System.currentTimeMillis();
+                if (next <= now) {
+                    next += ((now - next) / period + 1) * period;
+                }
+                deadline = next;
+                enqueue(this);
+            }
+        }
+
+        public boolean cancel() {
+            if (state.compareAndSet(SCHEDULED, CANCELLED)) {
+                scheduledCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Schedules tasks on the wheel of this scheduler, to be run by the item workers
+     */
+    private class ItemScheduler implements Scheduler {
+
+        public ScheduledTask schedule(Runnable task, long delay) {
+            return add(new Task(task, System.currentTimeMillis() + Math.max(0, delay), 0, itemWorkers));
+        }
+
+        public ScheduledTask schedule(Runnable task, Date time) {
+            return add(new Task(task, time.getTime(), 0, itemWorkers));
+        }
+
+        public ScheduledTask scheduleAtFixedRate(Runnable task, long delay, long period) {
+            return add(new Task(task, System.currentTimeMillis() + Math.max(0, delay), checkPeriod(period),
+                    itemWorkers));
+        }
+
+        public ScheduledTask scheduleAtFixedRate(Runnable task, Date firstTime, long period) {
+            return add(new Task(task, firstTime.getTime(), checkPeriod(period), itemWorkers));
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger workerNumber = new AtomicInteger();
+
+        WorkerFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread result = new Thread(runnable, namePrefix + workerNumber.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
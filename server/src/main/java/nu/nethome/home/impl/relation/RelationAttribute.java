@@ -19,6 +19,11 @@
 
 package nu.nethome.home.impl.relation;
 
+import java.util.Collection;
+
 interface RelationAttribute {
-    boolean hasRelationTo(String item);
+    /**
+     * Add the IDs of the HomeItems the attribute currently points to
+     */
+    void addRelations(Collection<String> relations);
 }
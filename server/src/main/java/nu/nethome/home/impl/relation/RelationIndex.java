@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl.relation;
+
+import nu.nethome.home.impl.ModelException;
+import nu.nethome.home.item.HomeItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track on all attributes that points to another HomeItem, for all HomeItems that are added to the index.
+ * With this information it can answer the questions: which HomeItems points to HomeItem x, and which HomeItems
+ * does HomeItem x point to? Both are answered from maps in both directions, which are updated when a HomeItem
+ * is added or when one of its relation attributes has changed, so a search only costs as much as its result.
+ * The index may be searched while it is changed.
+ */
+public class RelationIndex {
+
+    private final ConcurrentMap<HomeItem, RelationItem> relationItems = new ConcurrentHashMap<HomeItem, RelationItem>();
+    private final ConcurrentMap<String, List<RelationItem>> referringItems = new ConcurrentHashMap<String, List<RelationItem>>();
+    private long nextSequenceNumber = 0;
+
+    /**
+     * @return true if attributes of the type may point to other HomeItems
+     */
+    public static boolean isRelationType(String attributeType) {
+        return attributeType.equals("Item") || attributeType.equals("Items") || attributeType.equals("Command");
+    }
+
+    public synchronized void addItem(HomeItem item) throws ModelException {
+        RelationItem relationItem = new RelationItem(item, nextSequenceNumber++);
+        if (relationItem.hasRelation()) {
+            relationItems.put(item, relationItem);
+            Set<String> relations = relationItem.readRelations();
+            for (String id : relations) {
+                addReferringItem(id, relationItem);
+            }
+            relationItem.setRelations(relations);
+        }
+    }
+
+    /**
+     * Read the relation attributes of a HomeItem again, after one of them may have changed
+     */
+    public synchronized void updateItem(HomeItem item) {
+        RelationItem relationItem = relationItems.get(item);
+        if (relationItem == null) {
+            return;
+        }
+        Set<String> oldRelations = relationItem.getRelations();
+        Set<String> newRelations = relationItem.readRelations();
+        for (String id : oldRelations) {
+            if (!newRelations.contains(id)) {
+                removeReferringItem(id, relationItem);
+            }
+        }
+        for (String id : newRelations) {
+            if (!oldRelations.contains(id)) {
+                addReferringItem(id, relationItem);
+            }
+        }
+        relationItem.setRelations(newRelations);
+    }
+
+    public synchronized void removeItem(HomeItem item) {
+        RelationItem relationItem = relationItems.remove(item);
+        if (relationItem != null) {
+            for (String id : relationItem.getRelations()) {
+                removeReferringItem(id, relationItem);
+            }
+        }
+    }
+
+    /**
+     * @param itemId ID of a HomeItem
+     * @return the HomeItems that point to the HomeItem, in the order they were added
+     */
+    public List<HomeItem> getRelatedTo(String itemId) {
+        List<RelationItem> referring = referringItems.get(itemId);
+        if (referring == null) {
+            return Collections.emptyList();
+        }
+        List<HomeItem> result = new ArrayList<HomeItem>(referring.size());
+        for (RelationItem relationItem : referring) {
+            result.add(relationItem.getItem());
+        }
+        return result;
+    }
+
+    /**
+     * @param item a HomeItem
+     * @return the IDs of the HomeItems the HomeItem points to, in attribute order
+     */
+    public Set<String> getRelationsOf(HomeItem item) {
+        RelationItem relationItem = relationItems.get(item);
+        return relationItem != null ? relationItem.getRelations() : Collections.<String>emptySet();
+    }
+
+    /**
+     * Replace the list of HomeItems pointing to the ID with a copy where the item is inserted in sequence order
+     */
+    private void addReferringItem(String id, RelationItem relationItem) {
+        List<RelationItem> oldList = referringItems.get(id);
+        List<RelationItem> newList = new ArrayList<RelationItem>(oldList != null ? oldList.size() + 1 : 1);
+        boolean added = false;
+        if (oldList != null) {
+            for (RelationItem current : oldList) {
+                if (!added && current.getSequenceNumber() > relationItem.getSequenceNumber()) {
+                    newList.add(relationItem);
+                    added = true;
+                }
+                newList.add(current);
+            }
+        }
+        if (!added) {
+            newList.add(relationItem);
+        }
+        referringItems.put(id, Collections.unmodifiableList(newList));
+    }
+
+    private void removeReferringItem(String id, RelationItem relationItem) {
+        List<RelationItem> oldList = referringItems.get(id);
+        if (oldList == null) {
+            return;
+        }
+        List<RelationItem> newList = new ArrayList<RelationItem>(oldList);
+        newList.remove(relationItem);
+        if (newList.isEmpty()) {
+            referringItems.remove(id);
+        } else {
+            referringItems.put(id, Collections.unmodifiableList(newList));
+        }
+    }
+}
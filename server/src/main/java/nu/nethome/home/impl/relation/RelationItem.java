@@ -19,66 +19,76 @@
 
 package nu.nethome.home.impl.relation;
 
+import nu.nethome.home.impl.AttributeModel;
 import nu.nethome.home.impl.LocalHomeItemProxy;
 import nu.nethome.home.impl.ModelException;
-import nu.nethome.home.item.Attribute;
+import nu.nethome.home.impl.StaticHomeItemModel;
 import nu.nethome.home.item.HomeItem;
 import nu.nethome.home.item.HomeItemProxy;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 class RelationItem {
-    private HomeItem realItem;
-    private HomeItemProxy proxy;
-    private List<RelationAttribute> attributes = new ArrayList<RelationAttribute>();
+    private final HomeItem realItem;
+    private final long sequenceNumber;
+    private final HomeItemProxy proxy;
+    private final List<RelationAttribute> attributes = new ArrayList<RelationAttribute>();
+    private volatile Set<String> relations = Collections.emptySet();
 
     public class ItemRelation implements RelationAttribute {
         String attributeName;
 
-        public ItemRelation(Attribute attribute) {
+        public ItemRelation(AttributeModel attribute) {
             this.attributeName = attribute.getName();
         }
 
         @Override
-        public boolean hasRelationTo(String itemIdToFind) {
-            return proxy.getAttributeValue(attributeName).equals(itemIdToFind);
+        public void addRelations(Collection<String> relations) {
+            addRelation(relations, proxy.getAttributeValue(attributeName));
         }
     }
 
     public class ItemsRelation implements RelationAttribute {
         String attributeName;
 
-        public ItemsRelation(Attribute attribute) {
+        public ItemsRelation(AttributeModel attribute) {
             this.attributeName = attribute.getName();
         }
 
         @Override
-        public boolean hasRelationTo(String itemIdToFind) {
-            List<String> ids = Arrays.asList(proxy.getAttributeValue(attributeName).split(","));
-            return ids.contains(itemIdToFind);
+        public void addRelations(Collection<String> relations) {
+            for (String id : proxy.getAttributeValue(attributeName).split(",")) {
+                addRelation(relations, id);
+            }
         }
     }
 
     public class ActionRelation implements RelationAttribute {
         String attributeName;
 
-        public ActionRelation(Attribute attribute) {
+        public ActionRelation(AttributeModel attribute) {
             this.attributeName = attribute.getName();
         }
 
         @Override
-        public boolean hasRelationTo(String itemIdToFind) {
+        public void addRelations(Collection<String> relations) {
             String actionParams[] = proxy.getAttributeValue(attributeName).split(",");
-            return actionParams != null && actionParams.length >= 2 && actionParams[1].equals(itemIdToFind);
+            if (actionParams.length >= 2) {
+                addRelation(relations, actionParams[1]);
+            }
         }
     }
 
-    RelationItem(HomeItem itemToDecorate) throws ModelException {
+    RelationItem(HomeItem itemToDecorate, long sequenceNumber) throws ModelException {
         proxy = new LocalHomeItemProxy(itemToDecorate);
         realItem = itemToDecorate;
-        for (Attribute attribute : proxy.getAttributeValues()) {
+        this.sequenceNumber = sequenceNumber;
+        for (AttributeModel attribute : StaticHomeItemModel.getModel(itemToDecorate).getAttributes()) {
             if (attribute.getType().equals("Item")) {
                 attributes.add(new ItemRelation(attribute));
             } else if (attribute.getType().equals("Items")) {
@@ -89,13 +99,32 @@ class RelationItem {
         }
     }
 
-    public boolean hasRelationTo(String item) {
+    private static void addRelation(Collection<String> relations, String id) {
+        if (id.length() > 0) {
+            relations.add(id);
+        }
+    }
+
+    /**
+     * @return the IDs the relation attributes of the item point to right now
+     */
+    Set<String> readRelations() {
+        Set<String> result = new LinkedHashSet<String>();
         for (RelationAttribute attribute : attributes) {
-            if (attribute.hasRelationTo(item)) {
-                return true;
-            }
+            attribute.addRelations(result);
         }
-        return false;
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return the IDs the item pointed to when it was last indexed
+     */
+    Set<String> getRelations() {
+        return relations;
+    }
+
+    void setRelations(Set<String> relations) {
+        this.relations = relations;
     }
 
     public boolean hasRelation() {
@@ -105,4 +134,8 @@ class RelationItem {
     HomeItem getItem() {
         return realItem;
     }
+
+    long getSequenceNumber() {
+        return sequenceNumber;
+    }
 }
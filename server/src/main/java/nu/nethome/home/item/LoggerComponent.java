@@ -20,6 +20,7 @@
 package nu.nethome.home.item;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -29,17 +30,25 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Logger;
 
+import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.ScheduledTask;
+import nu.nethome.home.system.Scheduler;
+import nu.nethome.home.system.TimeSeriesStore;
+import nu.nethome.home.util.LogFileIndex;
+
 /**
  * This is a component for adding file logging capabilities to a Value-item, for example
  * a thermometer. It will automatically sample values from the item specified in
- * the constructor and store them in the log file.
+ * the constructor and store them in the time series store of the server, in a series named
+ * after the log file. An existing log file is imported into the series the first time.
+ * If there is no store, the values are appended to the log file as text lines.
  * To add this component, add the following lines to a Value-Item:<br>
  * In Model: <br>
  * <pre> + "  <Attribute Name=\"LogFile\" Type=\"String\" Get=\"getLogFile\" 	Set=\"setLogFile\" />"</pre>
  * As attribute:<br>
  * <pre> protected LoggerComponent m_TempLogger = new LoggerComponent(this);</pre>
  * In Activate:<br>
- * <pre> m_TempLogger.activate();</pre>
+ * <pre> m_TempLogger.activate(server);</pre>
  * In stop:<br>
  * <pre> m_TempLogger.stop();</pre>
  * For access:<br>
@@ -53,27 +62,47 @@ import java.util.logging.Logger;
  * @author Stefan Strömberg
  */
 @SuppressWarnings("UnusedDeclaration")
-public class LoggerComponent extends TimerTask {
+public class LoggerComponent implements Runnable {
+
+    public static final String DEFAULT_TIME_FORMAT = "yyyy.MM.dd HH:mm:ss;";
 
-    private Timer logTimer = new Timer("Logger Component", true);
+    private HomeService server;
+    private Scheduler scheduler;
+    private ScheduledTask logTask;
+    private Timer logTimer;
     private static Logger logger = Logger.getLogger(LoggerComponent.class.getName());
     private boolean loggerIsActivated = false;
     private boolean loggerIsRunning = false;
     // Public attributes
     private String logFileName = "";
     private int logInterval = 15;
-    private String logTimeFormat = "yyyy.MM.dd HH:mm:ss;";
+    private String logTimeFormat = DEFAULT_TIME_FORMAT;
     private ValueItem loggedItem = null;
 
     public LoggerComponent(ValueItem logged) {
         loggedItem = logged;
     }
 
+    /**
+     * Activate the logger, using the scheduler of the server for the sampling
+     *
+     * @param server the server, may be null
+     */
+    public void activate(HomeService server) {
+        this.server = server;
+        scheduler = server != null ? server.getScheduler() : null;
+        activate();
+    }
+
+    /**
+     * Activate the logger. If not activated with a server, the logger uses a timer thread of its own.
+     */
     public void activate() {
         loggerIsActivated = true;
         if (logFileName.length() == 0) {
             return;
         }
+        importLogFile();
         // Get current time
         Calendar date = Calendar.getInstance();
         // Start at next even hour
@@ -81,39 +110,103 @@ public class LoggerComponent extends TimerTask {
         date.set(Calendar.MINUTE, 0);
         date.set(Calendar.SECOND, 0);
         date.set(Calendar.MILLISECOND, 0);
+        // Spread the loggers over the interval, so they are not all due at the same time
+        date.add(Calendar.SECOND, startOffsetSeconds());
         // Schedule the job at m_Interval minutes interval
-        logTimer.schedule(
-                this,
-                date.getTime(),
-                1000L * 60 * logInterval
-        );
+        if (scheduler != null) {
+            logTask = scheduler.scheduleAtFixedRate(this, date.getTime(), 1000L * 60 * logInterval);
+        } else {
+            logTimer = new Timer("Logger Component", true);
+            logTimer.schedule(
+                    new TimerTask() {
+                        @Override
+                        public void run() {
+                            LoggerComponent.this.run();
+                        }
+                    },
+                    date.getTime(),
+                    1000L * 60 * logInterval
+            );
+        }
         loggerIsRunning = true;
     }
 
+    /**
+     * @return an offset within the log interval which is the same for the log file each time it is activated
+     */
+    int startOffsetSeconds() {
+        return (logFileName.hashCode() & Integer.MAX_VALUE) % (60 * Math.max(1, logInterval));
+    }
+
     /**
      * HomeItem method which stops all object activity for program termination
      */
     public void stop() {
-        logTimer.cancel();
+        if (logTask != null) {
+            logTask.cancel();
+            logTask = null;
+        }
+        if (logTimer != null) {
+            logTimer.cancel();
+            logTimer = null;
+        }
         loggerIsRunning = false;
         loggerIsActivated = false;
     }
 
+    private TimeSeriesStore getStore() {
+        return server != null ? server.getTimeSeriesStore() : null;
+    }
+
+    /**
+     * Import the values of an old log file, if the series does not have any values yet
+     */
+    private void importLogFile() {
+        TimeSeriesStore store = getStore();
+        File logFile = new File(logFileName);
+        if (store == null || store.hasSeries(logFileName) || !logFile.isFile()) {
+            return;
+        }
+        try {
+            long count = store.importText(logFileName, logFile, logTimeFormat);
+            logger.info("Imported " + count + " values from log file: " + logFileName);
+        } catch (IOException e) {
+            logger.warning("Failed to import log file: " + logFileName + " Error:" + e.toString());
+        }
+    }
+
     public void run() {
         logger.fine("Value Log Timer Fired");
+        String value = loggedItem.getValue();
+        if (value.length() == 0) {
+            return;
+        }
+        TimeSeriesStore store = getStore();
+        if (store != null) {
+            try {
+                store.append(logFileName, System.currentTimeMillis(), Double.parseDouble(value.replace(',', '.')));
+            } catch (NumberFormatException e) {
+                logger.fine("Cannot log value that is not a number: " + value);
+            }
+        } else {
+            logToFile(value);
+        }
+    }
+
+    private void logToFile(String value) {
         BufferedWriter out = null;
         try {
-            String value = loggedItem.getValue();
-            if (value.length() > 0) {
-                out = new BufferedWriter(new FileWriter(logFileName, true));
-                // Format the current time.
-                SimpleDateFormat formatter
-                        = new SimpleDateFormat(logTimeFormat);
-                Date currentTime = new Date();
-                String newLogLine = formatter.format(currentTime) + value;
-                out.write(newLogLine);
-                out.newLine();
-            }
+            out = new BufferedWriter(new FileWriter(logFileName, true));
+            // Format the current time.
+            SimpleDateFormat formatter
+                    = new SimpleDateFormat(logTimeFormat);
+            Date currentTime = new Date();
+            String newLogLine = formatter.format(currentTime) + value;
+            out.write(newLogLine);
+            out.newLine();
+            out.close();
+            out = null;
+            LogFileIndex.forFile(new File(logFileName)).update();
         } catch (IOException e) {
             logger.warning("Failed to open log file: " + logFileName + " Error:" + e.toString());
         } finally {
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.item;
+
+/**
+ * A HomeItem with Morphing="true" in its model, which means that its model may change over time and may
+ * differ between instances of the class. By implementing this interface the HomeItem promises to step the
+ * model version each time its model changes, so the server only has to render and parse the model when the
+ * version has changed. Morphing HomeItems which do not implement this interface get their model rendered
+ * and compared each time the model is looked up.
+ */
+public interface MorphingItem {
+
+    /**
+     * @return a number which changes each time the model of the HomeItem changes
+     */
+    long getModelVersion();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.item;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Declares which Event types a HomeItem class wants to receive. The value is a comma separated
+ * list of event types, for example "UPM_Message,Init". The server will only offer Events of the listed
+ * types to instances of the class. HomeItems without this annotation, or with the type "*" in the list,
+ * are offered all Events.
+ * The annotation is not inherited, so a subclass which handles other Events than its parent has to
+ * declare its own list.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReceivesEvents {
+    String ALL_EVENTS = "*";
+
+    String value();
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+/**
+ * Keeps connections to hardware open. A HomeItem registers the callbacks for opening, closing and checking its
+ * connection, and the supervisor opens it in the background. If opening fails, or the connection is found to be
+ * lost, it is reopened with exponentially increasing delays. The callbacks are never called from the Event
+ * distribution threads, and never in parallel for the same connection.
+ * Each change of connection state is sent as an Event of type {@link #CONNECTION_STATE_EVENT}.
+ */
+public interface ConnectionSupervisor {
+
+    String CONNECTION_STATE_EVENT = "ConnectionState";
+    String DEVICE_ATTRIBUTE = "Device";
+    String RECONNECTS_ATTRIBUTE = "Reconnects";
+
+    /**
+     * Start supervising a connection. The first attempt to open it is made in the background right away.
+     *
+     * @param deviceName name used in logs and Events, normally the name of the HomeItem
+     * @param device     callbacks for the connection
+     * @return handle for the supervised connection
+     */
+    SupervisedConnection supervise(String deviceName, SupervisedDevice device);
+}
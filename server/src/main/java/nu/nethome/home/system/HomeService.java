@@ -84,9 +84,13 @@ public interface HomeService {
     boolean removeInstance(String instanceName);
 
     /**
-     * List the names of all HomeItem instances in the server
+     * List the names of HomeItem instances in the server, in the order they were registered. The pattern
+     * consists of terms separated by "&amp;", which all have to match. The terms are:
+     * "@class=Plan", "@category=Lamps", "@hasAttribute=LogFile", "@hasAction=On", "@hasAction" (any action),
+     * "@name~regex", "@related=id" (instances pointing to the instance), "@dependencies=name" (instances the
+     * instance points to), "@offset=n" and "@limit=n".
      *
-     * @param pattern a search pattern for finding instances. This is currently ignored
+     * @param pattern a search pattern for finding instances. An empty pattern lists all instances
      * @return list of instance names
      */
     List<DirectoryEntry> listInstances(String pattern);
@@ -108,6 +112,22 @@ public interface HomeService {
      */
     ServiceState getState();
 
+    /**
+     * Get the scheduler shared by all HomeItems for running delayed and periodic tasks
+     */
+    Scheduler getScheduler();
+
+    /**
+     * Get the supervisor which keeps the connections of hardware HomeItems open
+     */
+    ConnectionSupervisor getConnectionSupervisor();
+
+    /**
+     * Get the store where HomeItems log their sampled values. May be null if the service has no store,
+     * in which case values are logged to text files.
+     */
+    TimeSeriesStore getTimeSeriesStore();
+
     /**
      * Stop and exit the server
      */
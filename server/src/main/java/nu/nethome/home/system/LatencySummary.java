@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+/**
+ * Summary of the measured processing times of a HomeItem or an Event type
+ */
+public interface LatencySummary {
+
+    /**
+     * @return name of the HomeItem or Event type that was measured
+     */
+    String getName();
+
+    /**
+     * @return number of measurements
+     */
+    long getCount();
+
+    /**
+     * Get the time in ms which the specified percentage of the measurements did not exceed
+     *
+     * @param percentile percentile between 0 and 100, for example 99.9
+     * @return time in ms
+     */
+    double getPercentile(double percentile);
+
+    /**
+     * @return the longest measured time in ms
+     */
+    double getMax();
+}
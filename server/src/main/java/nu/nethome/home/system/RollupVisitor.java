@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+/**
+ * Receives the rollups read from a {@link TimeSeriesStore}, one for each period with samples
+ */
+public interface RollupVisitor {
+
+    /**
+     * @param time  start of the period in ms
+     * @param min   lowest value in the period
+     * @param max   highest value in the period
+     * @param mean  mean of the values in the period
+     * @param count number of samples in the period
+     */
+    void rollup(long time, double min, double max, double mean, long count);
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+import java.util.Date;
+
+/**
+ * Runs tasks at a later time. All HomeItems share the same scheduler, so HomeItems should use this
+ * instead of creating their own timer threads. Tasks are run on a small pool of worker threads. A worker which
+ * has been blocked on the same task for a long time, for example on network I/O, is replaced, so it does not
+ * hold up the tasks of other HomeItems for long. A periodic task is never run in parallel with itself.
+ */
+public interface Scheduler {
+
+    /**
+     * Run a task once after a delay
+     *
+     * @param task  task to run
+     * @param delay delay in ms
+     * @return handle for cancelling the task
+     */
+    ScheduledTask schedule(Runnable task, long delay);
+
+    /**
+     * Run a task once at the specified time
+     *
+     * @param task task to run
+     * @param time time to run the task
+     * @return handle for cancelling the task
+     */
+    ScheduledTask schedule(Runnable task, Date time);
+
+    /**
+     * Run a task repeatedly with a fixed period, starting after a delay. If a run is late,
+     * the following runs are not delayed. Runs that are missed completely, for example because
+     * the computer was suspended, are skipped.
+     *
+     * @param task   task to run
+     * @param delay  delay in ms before the first run
+     * @param period time in ms between the start of each run
+     * @return handle for cancelling the task
+     */
+    ScheduledTask scheduleAtFixedRate(Runnable task, long delay, long period);
+
+    /**
+     * Run a task repeatedly with a fixed period, starting at the specified time
+     *
+     * @param task      task to run
+     * @param firstTime time of the first run
+     * @param period    time in ms between the start of each run
+     * @return handle for cancelling the task
+     */
+    ScheduledTask scheduleAtFixedRate(Runnable task, Date firstTime, long period);
+}
@@ -20,6 +20,7 @@
 package nu.nethome.home.system;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.LogRecord;
 
 /**
@@ -45,4 +46,17 @@ public interface ServiceState {
      * @return
      */
     long getTotalLogRecordCount();
+
+    /**
+     * Returns the measured event processing times for each HomeItem, sorted with the slowest (by 99th percentile) first
+     * @return latency summaries
+     */
+    List<LatencySummary> getItemLatencies();
+
+    /**
+     * Returns the measured event processing times for each Event type, sorted with the slowest
+     * (by 99th percentile) first
+     * @return latency summaries
+     */
+    List<LatencySummary> getEventTypeLatencies();
 }
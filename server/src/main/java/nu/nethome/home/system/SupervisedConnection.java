@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+/**
+ * A connection supervised by the {@link ConnectionSupervisor}
+ */
+public interface SupervisedConnection {
+
+    String CONNECTED = "Connected";
+    String CONNECTING = "Connecting";
+    String DISCONNECTED = "Disconnected";
+
+    /**
+     * Close and reopen the connection in the background
+     */
+    void reconnect();
+
+    /**
+     * Tell the supervisor that the connection has been lost, for example when writing to it failed.
+     * It is closed and reopened in the background.
+     */
+    void connectionLost();
+
+    /**
+     * Stop supervising the connection and close it. The connection is closed when this method returns, unless
+     * a call to the device which is in progress does not return in time. Then it is closed in the background
+     * when that call returns.
+     */
+    void stop();
+
+    boolean isConnected();
+
+    /**
+     * @return one of CONNECTED, CONNECTING or DISCONNECTED
+     */
+    String getState();
+
+    /**
+     * @return time in ms the connection has been open, 0 if it is not open
+     */
+    long getUptime();
+
+    /**
+     * @return number of times the connection has been reopened after being open
+     */
+    long getReconnectCount();
+
+    /**
+     * @return number of failed attempts to open the connection
+     */
+    long getFailedAttempts();
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+/**
+ * The callbacks a HomeItem registers with the {@link ConnectionSupervisor}
+ */
+public interface SupervisedDevice {
+
+    /**
+     * Open the connection to the device
+     *
+     * @throws Exception if the connection could not be opened. A new attempt is made later.
+     */
+    void open() throws Exception;
+
+    /**
+     * Close the connection to the device. Called before reopening a lost connection.
+     */
+    void close();
+
+    /**
+     * Check if an open connection still works. This is called regularly and should be fast, for example
+     * by checking a flag that is cleared when communication fails.
+     *
+     * @return false if the connection is lost and should be reopened
+     */
+    boolean isHealthy();
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * A central store of sampled values, for example the temperatures logged by a thermometer. Each series
+ * is identified by a name and holds samples in time order. Samples are stored with a resolution of one second.
+ * For each series the store also keeps rollups with the min, max, mean and count of the samples of each hour
+ * and each day, which are updated as samples are added.
+ */
+public interface TimeSeriesStore {
+
+    /**
+     * Resolution of the samples as they were added
+     */
+    String RAW = "raw";
+    /**
+     * Resolution of rollups per hour
+     */
+    String HOUR = "hour";
+    /**
+     * Resolution of rollups per day, starting at local midnight
+     */
+    String DAY = "day";
+
+    /**
+     * Add a sample to a series, which is created if it does not exist. The sample is not guaranteed to be
+     * on disk until the store is flushed.
+     *
+     * @param series name of the series
+     * @param time   time of the sample in ms
+     * @param value  the sampled value
+     * @return false if the sample could not be stored, for example if it is older than the last sample
+     */
+    boolean append(String series, long time, double value);
+
+    /**
+     * Read the samples of a series within a time window, in time order
+     *
+     * @param series  name of the series
+     * @param from    start of the window in ms, inclusive
+     * @param to      end of the window in ms, exclusive
+     * @param visitor receives the samples
+     * @return number of samples read
+     */
+    int read(String series, long from, long to, SampleVisitor visitor);
+
+    /**
+     * Read the rollups of a series within a time window, in time order. The period which is in progress is
+     * included with the samples added so far.
+     *
+     * @param series     name of the series
+     * @param from       start of the window in ms. The period containing the time is included.
+     * @param to         end of the window in ms, exclusive
+     * @param resolution HOUR or DAY
+     * @param visitor    receives the rollups
+     * @return number of rollups read
+     */
+    int readRollups(String series, long from, long to, String resolution, RollupVisitor visitor);
+
+    /**
+     * @param series name of the series
+     * @return true if the series has any samples
+     */
+    boolean hasSeries(String series);
+
+    /**
+     * @param series name of the series
+     * @return number of samples in the series
+     */
+    long getSampleCount(String series);
+
+    /**
+     * @param series name of the series
+     * @return time of the last sample in the series in ms, or 0 if it has no samples
+     */
+    long getLastSampleTime(String series);
+
+    /**
+     * @return names of all series in the store
+     */
+    List<String> getSeriesNames();
+
+    /**
+     * Write the samples of a series within a time window as text lines, in the same format as the old
+     * log files: the time formatted with the time format, directly followed by the value.
+     *
+     * @param series     name of the series
+     * @param from       start of the window in ms, inclusive
+     * @param to         end of the window in ms, exclusive
+     * @param timeFormat format of the time as a SimpleDateFormat pattern, for example "yyyy.MM.dd HH:mm:ss;"
+     * @param out        where to write the lines
+     * @throws IOException if the lines could not be written
+     */
+    void exportText(String series, long from, long to, String timeFormat, Writer out) throws IOException;
+
+    /**
+     * Import the samples of a text log file into a series. Lines which cannot be parsed, or which are older
+     * than the last sample of the series, are skipped.
+     *
+     * @param series     name of the series
+     * @param logFile    the text log file
+     * @param timeFormat format of the time in the file as a SimpleDateFormat pattern
+     * @return number of imported samples
+     * @throws IOException if the file could not be read
+     */
+    long importText(String series, File logFile, String timeFormat) throws IOException;
+
+    /**
+     * Make sure all samples added so far are written to disk
+     */
+    void flush();
+}
@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.util;
+
+import nu.nethome.home.system.SampleVisitor;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A sparse index of a text log file, as written by {@link nu.nethome.home.item.LoggerComponent}, which holds the
+ * file offset of the first line of each hour. The index is kept in a sidecar file next to the log file and is
+ * brought up to date with the lines appended since it was last used, so a query only reads the lines of its own
+ * time window instead of the whole file.
+ * The lines have the fixed layout "yyyy.MM.dd HH:mm:ss;value" with the time in local time.
+ */
+public class LogFileIndex {
+
+    public static final String INDEX_SUFFIX = ".idx";
+    private static final int MAGIC = 0x4E484C49;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int ENTRY_SIZE = 8 + 8;
+    private static final int TIME_LENGTH = 19;
+    private static final int VALUE_START = 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MS_PER_SECOND = 1000;
+    private static final long MS_PER_MINUTE = 60 * MS_PER_SECOND;
+    private static final long MS_PER_HOUR = 60 * MS_PER_MINUTE;
+    private static final long MS_PER_DAY = 24 * MS_PER_HOUR;
+    static final long INVALID_TIME = Long.MIN_VALUE;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static Logger logger = Logger.getLogger(LogFileIndex.class.getName());
+    private static final Map<File, LogFileIndex> indexes = new HashMap<File, LogFileIndex>();
+
+    private final File logFile;
+    private final File indexFile;
+    private final TimeZone timeZone;
+    private long[] hours = new long[64];
+    private long[] offsets = new long[64];
+    private int size = 0;
+    private long indexedLength = 0;
+    private boolean isLoaded = false;
+
+    /**
+     * @param logFile the log file
+     * @return the shared index of the log file
+     */
+    public static synchronized LogFileIndex forFile(File logFile) {
+        File key = logFile.getAbsoluteFile();
+        LogFileIndex result = indexes.get(key);
+        if (result == null) {
+            result = new LogFileIndex(key, TimeZone.getDefault());
+            indexes.put(key, result);
+        }
+        return result;
+    }
+
+    LogFileIndex(File logFile, TimeZone timeZone) {
+        this.logFile = logFile;
+        this.indexFile = new File(logFile.getPath() + INDEX_SUFFIX);
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Read the values of the log file within a time window. Lines which cannot be parsed are skipped.
+     *
+     * @param from    start of the window in ms, inclusive
+     * @param to      end of the window in ms, exclusive
+     * @param visitor receives the values
+     * @return number of values read
+     * @throws IOException if the log file could not be read
+     */
+    public int read(final long from, final long to, final SampleVisitor visitor) throws IOException {
+        long start;
+        long end;
+        synchronized (this) {
+            update();
+            start = offsetBefore(from);
+            end = indexedLength;
+        }
+        final int[] count = new int[1];
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            scan(file.getChannel(), start, end, new LineHandler() {
+                public boolean line(byte[] bytes, int lineStart, int lineEnd, long offset) {
+                    long time = parseTime(bytes, lineStart, lineEnd);
+                    if (time == INVALID_TIME || time < from) {
+                        return true;
+                    }
+                    if (time >= to) {
+                        return false;
+                    }
+                    try {
+                        String value = new String(bytes, lineStart + VALUE_START, lineEnd - lineStart - VALUE_START, ASCII);
+                        visitor.sample(time, Double.parseDouble(value.trim().replace(',', '.')));
+                        count[0]++;
+                    } catch (NumberFormatException e) {
+                        // Bad number format in a line, try to continue
+                    }
+                    return true;
+                }
+            });
+        } finally {
+            file.close();
+        }
+        return count[0];
+    }
+
+    /**
+     * @return the offset of the first line of the last indexed hour before the hour of the time, so lines
+     * slightly out of order are not missed
+     */
+    private long offsetBefore(long time) {
+        long hour = floorDiv(time, MS_PER_HOUR);
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (hours[middle] < hour) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low > 0 ? offsets[low - 1] : 0;
+    }
+
+    /**
+     * Index the lines appended to the log file since the last time. This is also done before each read.
+     *
+     * @throws IOException if the log file could not be read
+     */
+    public synchronized void update() throws IOException {
+        if (!isLoaded) {
+            loadIndexFile();
+            isLoaded = true;
+        }
+        long length = logFile.length();
+        if (length < indexedLength) {
+            // The log file has been replaced, start over
+            size = 0;
+            indexedLength = 0;
+        }
+        if (length == indexedLength) {
+            return;
+        }
+        int oldSize = size;
+        boolean isRebuilt = indexedLength == 0;
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            indexedLength = scan(file.getChannel(), indexedLength, length, new LineHandler() {
+                public boolean line(byte[] bytes, int lineStart, int lineEnd, long offset) {
+                    long time = parseTime(bytes, lineStart, lineEnd);
+                    if (time != INVALID_TIME) {
+                        long hour = floorDiv(time, MS_PER_HOUR);
+                        if (size == 0 || hour > hours[size - 1]) {
+                            add(hour, offset);
+                        }
+                    }
+                    return true;
+                }
+            });
+        } finally {
+            file.close();
+        }
+        saveIndexFile(isRebuilt ? 0 : oldSize);
+    }
+
+    private void add(long hour, long offset) {
+        if (size == hours.length) {
+            long[] newHours = new long[size * 2];
+            long[] newOffsets = new long[size * 2];
+            System.arraycopy(hours, 0, newHours, 0, size);
+            System.arraycopy(offsets, 0, newOffsets, 0, size);
+            hours = newHours;
+            offsets = newOffsets;
+        }
+        hours[size] = hour;
+        offsets[size] = offset;
+        size++;
+    }
+
+    private void loadIndexFile() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                long entries = (indexFile.length() - HEADER_SIZE) / ENTRY_SIZE;
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return;
+                }
+                long length = in.readLong();
+                for (long i = 0; i < entries; i++) {
+                    add(in.readLong(), in.readLong());
+                }
+                indexedLength = length;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not read log index " + indexFile.getPath(), e);
+            size = 0;
+            indexedLength = 0;
+        }
+    }
+
+    /**
+     * Write the entries from the first new one, and then the indexed length. If the index file cannot be
+     * written, the index is only kept in memory.
+     */
+    private void saveIndexFile(int firstNewEntry) {
+        try {
+            RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+            try {
+                if (firstNewEntry == 0) {
+                    file.setLength(0);
+                    file.writeInt(MAGIC);
+                    file.writeInt(VERSION);
+                    file.writeLong(0);
+                }
+                ByteBuffer entries = ByteBuffer.allocate((size - firstNewEntry) * ENTRY_SIZE);
+                for (int i = firstNewEntry; i < size; i++) {
+                    entries.putLong(hours[i]);
+                    entries.putLong(offsets[i]);
+                }
+                entries.flip();
+                file.getChannel().write(entries, HEADER_SIZE + (long) firstNewEntry * ENTRY_SIZE);
+                file.seek(HEADER_SIZE - 8);
+                file.writeLong(indexedLength);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not write log index " + indexFile.getPath(), e);
+        }
+    }
+
+    /**
+     * @return the time in ms of a log line, or INVALID_TIME if the line does not start with a time stamp
+     */
+    long parseTime(byte[] line, int start, int end) {
+        if (end - start <= VALUE_START) {
+            return INVALID_TIME;
+        }
+        int year = number(line, start, 4);
+        int month = number(line, start + 5, 2);
+        int day = number(line, start + 8, 2);
+        int hour = number(line, start + 11, 2);
+        int minute = number(line, start + 14, 2);
+        int second = number(line, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 ||
+                minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID_TIME;
+        }
+        long localTime = daysFromCivil(year, month, day) * MS_PER_DAY + hour * MS_PER_HOUR +
+                minute * MS_PER_MINUTE + second * MS_PER_SECOND;
+        return localTime - timeZone.getOffset(localTime - timeZone.getRawOffset());
+    }
+
+    private static int number(byte[] line, int position, int digits) {
+        int result = 0;
+        for (int i = position; i < position + digits; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * @return number of days since 1970-01-01 of a date in the proleptic Gregorian calendar
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(long value, long divisor) {
+        long result = value / divisor;
+        return (value % divisor < 0) ? result - 1 : result;
+    }
+
+    private interface LineHandler {
+        /**
+         * @return false to stop the scan
+         */
+        boolean line(byte[] bytes, int lineStart, int lineEnd, long offset);
+    }
+
+    /**
+     * Read the complete lines of a part of a file with positional reads
+     *
+     * @return the offset after the last complete line which was handled
+     */
+    private static long scan(FileChannel channel, long position, long end, LineHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        long bufferOffset = position;
+        long scannedEnd = position;
+        int filled = 0;
+        boolean isSkippingLine = false;
+        while (bufferOffset + filled < end) {
+            buffer.clear();
+            buffer.position(filled);
+            buffer.limit((int) Math.min(BUFFER_SIZE, end - bufferOffset));
+            int read = channel.read(buffer, bufferOffset + filled);
+            if (read <= 0) {
+                break;
+            }
+            filled += read;
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (bytes[i] == '\n') {
+                    int lineEnd = (i > lineStart && bytes[i - 1] == '\r') ? i - 1 : i;
+                    if (!isSkippingLine && !handler.line(bytes, lineStart, lineEnd, bufferOffset + lineStart)) {
+                        return bufferOffset + lineStart;
+                    }
+                    isSkippingLine = false;
+                    lineStart = i + 1;
+                    scannedEnd = bufferOffset + lineStart;
+                }
+            }
+            if (lineStart == 0 && filled == BUFFER_SIZE) {
+                // A line longer than the buffer is not a log line, skip it
+                isSkippingLine = true;
+                lineStart = filled;
+            }
+            System.arraycopy(bytes, lineStart, bytes, 0, filled - lineStart);
+            bufferOffset += lineStart;
+            filled -= lineStart;
+        }
+        return scannedEnd;
+    }
+
+    /**
+     * @return number of indexed hours
+     */
+    public synchronized int getIndexedHours() {
+        return size;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+}
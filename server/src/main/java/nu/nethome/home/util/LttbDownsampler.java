@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.util;
+
+import nu.nethome.home.system.SampleVisitor;
+
+/**
+ * Reduces samples in time order to at most a given number of points with the Largest-Triangle-Three-Buckets
+ * algorithm, which keeps the visual shape of the series when it is plotted. The time window is divided into
+ * buckets of equal length, and from each bucket the sample is kept which forms the largest triangle with the
+ * sample kept from the previous bucket and the mean of the next bucket. The first and last samples are always kept.
+ * To do this in one pass only the samples with the lowest and highest value in each bucket are considered,
+ * as these are the ones which normally form the largest triangle. Up to the given number of samples are buffered,
+ * so samples which already fit are passed on unchanged.
+ */
+public class LttbDownsampler implements SampleVisitor {
+
+    /**
+     * The least number of points to keep, as the first and last samples are always kept
+     */
+    public static final int MIN_POINTS = 3;
+
+    private final SampleVisitor out;
+    private final long from;
+    private final int bucketCount;
+    private final double bucketLength;
+    private final long[] bufferedTimes;
+    private final double[] bufferedValues;
+    private int bufferedCount = 0;
+    private boolean isBucketing = false;
+    private boolean hasFirst = false;
+    private boolean hasPending = false;
+    private long pendingTime;
+    private double pendingValue;
+    private long selectedTime;
+    private double selectedValue;
+    private Bucket current = new Bucket();
+    private Bucket next = new Bucket();
+    private int pointCount = 0;
+
+    /**
+     * @param points maximum number of points to keep, at least MIN_POINTS
+     * @param from   start of the time window in ms
+     * @param to     end of the time window in ms
+     * @param out    receives the kept samples
+     */
+    public LttbDownsampler(int points, long from, long to, SampleVisitor out) {
+        if (points < MIN_POINTS) {
+            throw new IllegalArgumentException("At least " + MIN_POINTS + " points must be kept");
+        }
+        this.out = out;
+        this.from = from;
+        bucketCount = points - 2;
+        bucketLength = Math.max(1.0, to - from) / bucketCount;
+        bufferedTimes = new long[points];
+        bufferedValues = new double[points];
+    }
+
+    public void sample(long time, double value) {
+        if (!isBucketing) {
+            if (bufferedCount < bufferedTimes.length) {
+                bufferedTimes[bufferedCount] = time;
+                bufferedValues[bufferedCount] = value;
+                bufferedCount++;
+                return;
+            }
+            // There are more samples than points, so the buffered samples are divided into buckets
+            isBucketing = true;
+            for (int i = 0; i < bufferedCount; i++) {
+                bucket(bufferedTimes[i], bufferedValues[i]);
+            }
+        }
+        bucket(time, value);
+    }
+
+    private void bucket(long time, double value) {
+        if (!hasFirst) {
+            hasFirst = true;
+            keep(time, value);
+            return;
+        }
+        // The latest sample is held back, as it is kept as the last sample if no more samples arrive
+        if (hasPending) {
+            add(pendingTime, pendingValue);
+        }
+        pendingTime = time;
+        pendingValue = value;
+        hasPending = true;
+    }
+
+    /**
+     * Select from the remaining buckets and keep the last sample. Must be called after the last sample.
+     */
+    public void finish() {
+        if (!isBucketing) {
+            for (int i = 0; i < bufferedCount; i++) {
+                keep(bufferedTimes[i], bufferedValues[i]);
+            }
+            bufferedCount = 0;
+            return;
+        }
+        if (!hasPending) {
+            return;
+        }
+        if (current.count > 0) {
+            if (next.count > 0) {
+                select(current, next.meanTime(), next.meanValue());
+            } else {
+                select(current, pendingTime, pendingValue);
+            }
+        }
+        if (next.count > 0) {
+            select(next, pendingTime, pendingValue);
+        }
+        keep(pendingTime, pendingValue);
+        hasPending = false;
+    }
+
+    /**
+     * @return number of kept samples
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    private void add(long time, double value) {
+        long index = Math.min(bucketCount - 1, Math.max(0, (long) ((time - from) / bucketLength)));
+        if (next.count > 0 && index != next.index) {
+            // The next bucket is complete, so the one before it can be selected from
+            if (current.count > 0) {
+                select(current, next.meanTime(), next.meanValue());
+            }
+            Bucket completed = current;
+            current = next;
+            next = completed;
+            next.count = 0;
+        }
+        next.add(index, time, value);
+    }
+
+    private void select(Bucket bucket, double nextTime, double nextValue) {
+        if (bucket.minTime == bucket.maxTime ||
+                area(bucket.minTime, bucket.minValue, nextTime, nextValue) >=
+                        area(bucket.maxTime, bucket.maxValue, nextTime, nextValue)) {
+            keep(bucket.minTime, bucket.minValue);
+        } else {
+            keep(bucket.maxTime, bucket.maxValue);
+        }
+    }
+
+    /**
+     * @return twice the area of the triangle of the selected sample, a candidate and the next point
+     */
+    private double area(long time, double value, double nextTime, double nextValue) {
+        double selectedX = selectedTime - from;
+        return Math.abs((selectedX - (nextTime - from)) * (value - selectedValue) -
+                (selectedX - (time - from)) * (nextValue - selectedValue));
+    }
+
+    private void keep(long time, double value) {
+        selectedTime = time;
+        selectedValue = value;
+        pointCount++;
+        out.sample(time, value);
+    }
+
+    private static class Bucket {
+        private long index;
+        private int count = 0;
+        private double timeSum;
+        private double valueSum;
+        private long minTime;
+        private double minValue;
+        private long maxTime;
+        private double maxValue;
+
+        void add(long index, long time, double value) {
+            if (count == 0) {
+                this.index = index;
+                timeSum = 0;
+                valueSum = 0;
+                minTime = time;
+                minValue = value;
+                maxTime = time;
+                maxValue = value;
+            }
+            if (value < minValue) {
+                minTime = time;
+                minValue = value;
+            }
+            if (value > maxValue) {
+                maxTime = time;
+                maxValue = value;
+            }
+            timeSum += time;
+            valueSum += value;
+            count++;
+        }
+
+        double meanTime() {
+            return timeSum / count;
+        }
+
+        double meanValue() {
+            return valueSum / count;
+        }
+    }
+}
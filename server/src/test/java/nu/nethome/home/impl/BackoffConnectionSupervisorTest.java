@@ -0,0 +1,309 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.ConnectionSupervisor;
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.HomeService;
+import nu.nethome.home.system.SupervisedConnection;
+import nu.nethome.home.system.SupervisedDevice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BackoffConnectionSupervisorTest {
+
+    private static final long TIMEOUT = 2000;
+
+    private TimingWheelScheduler scheduler;
+    private BackoffConnectionSupervisor supervisor;
+    private List<String> sentStates;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TimingWheelScheduler(1);
+        scheduler.start();
+        sentStates = Collections.synchronizedList(new ArrayList<String>());
+        HomeService server = mock(HomeService.class);
+        when(server.createEvent(anyString(), anyString())).thenAnswer(new Answer<Event>() {
+            public Event answer(InvocationOnMock invocation) throws Throwable {
+                Object[] arguments = invocation.getArguments();
+                return new InternalEvent((String) arguments[0], (String) arguments[1]);
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Event event = (Event) invocation.getArguments()[0];
+                sentStates.add(event.getAttribute(ConnectionSupervisor.DEVICE_ATTRIBUTE) + ":" +
+                        event.getAttribute(Event.EVENT_VALUE_ATTRIBUTE));
+                return null;
+            }
+        }).when(server).send(any(Event.class));
+        supervisor = new BackoffConnectionSupervisor(scheduler, server);
+        supervisor.setDelays(10, 40);
+        supervisor.setHealthCheckInterval(20);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        supervisor.stop();
+        scheduler.stop();
+    }
+
+    private static boolean waitFor(SupervisedConnection connection, String state) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!connection.getState().equals(state) && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        return connection.getState().equals(state);
+    }
+
+    private static boolean waitFor(AtomicInteger counter, int value) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (counter.get() < value && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        return counter.get() >= value;
+    }
+
+    @Test
+    public void opensConnection() throws Exception {
+        TestDevice device = new TestDevice(0);
+        SupervisedConnection connection = supervisor.supervise("Port", device);
+
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+        assertThat(device.opened.get(), is(1));
+        assertThat(connection.isConnected(), is(true));
+        assertThat(connection.getFailedAttempts(), is(0L));
+        assertThat(connection.getReconnectCount(), is(0L));
+        assertThat(supervisor.getConnections().size(), is(1));
+    }
+
+    @Test
+    public void retriesWithIncreasingDelay() throws Exception {
+        TestDevice device = new TestDevice(3);
+        SupervisedConnection connection = supervisor.supervise("Port", device);
+
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+        assertThat(connection.getFailedAttempts(), is(3L));
+        assertThat(device.opened.get(), is(4));
+        // Delays are about 10, 20 and 40 ms with jitter
+        assertThat(device.lastOpenTime - device.firstOpenTime >= 50, is(true));
+    }
+
+    @Test
+    public void reconnectsWhenDeviceIsUnhealthy() throws Exception {
+        TestDevice device = new TestDevice(0);
+        SupervisedConnection connection = supervisor.supervise("Port", device);
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+
+        device.isHealthy = false;
+
+        assertThat(waitFor(device.opened, 2), is(true));
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+        assertThat(device.closed.get() >= 1, is(true));
+        assertThat(connection.getReconnectCount() >= 1, is(true));
+    }
+
+    @Test
+    public void reconnectsWhenConnectionIsLost() throws Exception {
+        TestDevice device = new TestDevice(0);
+        SupervisedConnection connection = supervisor.supervise("Port", device);
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+
+        connection.connectionLost();
+
+        assertThat(waitFor(device.opened, 2), is(true));
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+        assertThat(device.closed.get(), is(1));
+        assertThat(connection.getReconnectCount(), is(1L));
+    }
+
+    @Test
+    public void sendsStateChanges() throws Exception {
+        TestDevice device = new TestDevice(1);
+        SupervisedConnection connection = supervisor.supervise("Port", device);
+
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+        // The Event is sent just after the state is changed
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (sentStates.size() < 3 && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+
+        assertThat(sentStates.size(), is(3));
+        assertThat(sentStates.get(0), is("Port:" + SupervisedConnection.CONNECTING));
+        assertThat(sentStates.get(1), is("Port:" + SupervisedConnection.DISCONNECTED));
+        assertThat(sentStates.get(2), is("Port:" + SupervisedConnection.CONNECTED));
+    }
+
+    @Test
+    public void stopClosesConnection() throws Exception {
+        TestDevice device = new TestDevice(0);
+        SupervisedConnection connection = supervisor.supervise("Port", device);
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+
+        connection.stop();
+
+        assertThat(device.closed.get(), is(1));
+        assertThat(connection.isConnected(), is(false));
+        assertThat(connection.getUptime(), is(0L));
+        assertThat(supervisor.getConnections().size(), is(0));
+        Thread.sleep(100);
+        assertThat(device.opened.get(), is(1));
+    }
+
+    @Test
+    public void hangingDeviceDoesNotBlockOtherDevices() throws Exception {
+        HangingDevice hanging = new HangingDevice();
+        supervisor.supervise("Hanging", hanging);
+        assertThat(hanging.isOpening.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+        List<SupervisedConnection> others = new ArrayList<SupervisedConnection>();
+        for (int i = 0; i < 3; i++) {
+            others.add(supervisor.supervise("Port" + i, new TestDevice(1)));
+        }
+
+        for (SupervisedConnection other : others) {
+            assertThat(waitFor(other, SupervisedConnection.CONNECTED), is(true));
+        }
+        hanging.release.countDown();
+    }
+
+    @Test
+    public void stopDoesNotWaitForHangingDevice() throws Exception {
+        supervisor.setStopTimeout(50);
+        HangingDevice device = new HangingDevice();
+        SupervisedConnection connection = supervisor.supervise("Hanging", device);
+        assertThat(device.isOpening.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+        long start = System.currentTimeMillis();
+        connection.stop();
+
+        assertThat(System.currentTimeMillis() - start < TIMEOUT, is(true));
+        assertThat(connection.getState(), is(SupervisedConnection.DISCONNECTED));
+        assertThat(device.closed.get(), is(0));
+        // The device is closed when the open returns, as it is no longer wanted
+        device.release.countDown();
+        assertThat(waitFor(device.closed, 1), is(true));
+        Thread.sleep(100);
+        assertThat(connection.getState(), is(SupervisedConnection.DISCONNECTED));
+        assertThat(device.opened.get(), is(1));
+    }
+
+    @Test
+    public void reconnectDuringOpenIgnoresItsResult() throws Exception {
+        HangingDevice device = new HangingDevice();
+        SupervisedConnection connection = supervisor.supervise("Hanging", device);
+        assertThat(device.isOpening.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+        connection.reconnect();
+        device.release.countDown();
+
+        assertThat(waitFor(device.opened, 2), is(true));
+        assertThat(waitFor(connection, SupervisedConnection.CONNECTED), is(true));
+        assertThat(device.closed.get(), is(1));
+        assertThat(connection.getReconnectCount(), is(0L));
+    }
+
+    @Test
+    public void jitterKeepsDelayWithinLimits() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            long delay = supervisor.withJitter(1000);
+            assertThat(delay >= 800 && delay <= 1200, is(true));
+        }
+    }
+
+    /**
+     * A device which hangs in the first call to open until it is released
+     */
+    private static class HangingDevice implements SupervisedDevice {
+        private final CountDownLatch isOpening = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+
+        public void open() throws Exception {
+            opened.incrementAndGet();
+            isOpening.countDown();
+            release.await();
+        }
+
+        public void close() {
+            closed.incrementAndGet();
+        }
+
+        public boolean isHealthy() {
+            return true;
+        }
+    }
+
+    private static class TestDevice implements SupervisedDevice {
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private final int failures;
+        private volatile boolean isHealthy = true;
+        private volatile long firstOpenTime;
+        private volatile long lastOpenTime;
+
+        /**
+         * @param failures number of attempts to open which fail before it succeeds
+         */
+        TestDevice(int failures) {
+            this.failures = failures;
+        }
+
+        public void open() throws Exception {
+            lastOpenTime = System.currentTimeMillis();
+            if (opened.incrementAndGet() == 1) {
+                firstOpenTime = lastOpenTime;
+            }
+            if (opened.get() <= failures) {
+                throw new Exception("Failed to open");
+            }
+            isHealthy = true;
+        }
+
+        public void close() {
+            closed.incrementAndGet();
+        }
+
+        public boolean isHealthy() {
+            return isHealthy;
+        }
+    }
+}
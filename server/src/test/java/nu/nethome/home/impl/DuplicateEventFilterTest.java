@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.Event;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class DuplicateEventFilterTest {
+
+    DuplicateEventFilter filter;
+
+    @Before
+    public void setUp() throws Exception {
+        filter = new DuplicateEventFilter(500);
+    }
+
+    private Event message(String protocol, int address, int repeat, String sender) {
+        Event event = new InternalEvent(protocol + "_Message", "");
+        event.setAttribute("Direction", "In");
+        event.setAttribute(protocol + ".Address", address);
+        event.setAttribute(protocol + ".Repeat", repeat);
+        event.setAttribute(Event.EVENT_SENDER_ATTRIBUTE, sender);
+        return event;
+    }
+
+    @Test
+    public void repeatsWithinWindowAreSuppressed() throws Exception {
+        assertThat(filter.isDuplicate(message("NexaL", 1, 0, "Tellstick"), 1000), is(false));
+        assertThat(filter.isDuplicate(message("NexaL", 1, 1, "Tellstick"), 1100), is(true));
+        assertThat(filter.isDuplicate(message("NexaL", 1, 0, "CUL"), 1200), is(true));
+        assertThat(filter.isDuplicate(message("NexaL", 2, 0, "Tellstick"), 1200), is(false));
+        assertThat(filter.getSuppressedCounts().get("NexaL"), is(2L));
+    }
+
+    @Test
+    public void messagesWithDifferentValuesAreNotSuppressed() throws Exception {
+        // These attribute values give the same result with a linear string hash
+        Event first = new InternalEvent("Oregon_Message", "");
+        first.setAttribute("Direction", "In");
+        first.setAttribute("Oregon.Temp", "21.5");
+        first.setAttribute("Oregon.Moisture", "512");
+        Event second = new InternalEvent("Oregon_Message", "");
+        second.setAttribute("Direction", "In");
+        second.setAttribute("Oregon.Temp", "21.6");
+        second.setAttribute("Oregon.Moisture", "412");
+
+        assertThat(filter.isDuplicate(first, 1000), is(false));
+        assertThat(filter.isDuplicate(second, 1100), is(false));
+    }
+
+    @Test
+    public void messageIsLetThroughAfterWindow() throws Exception {
+        assertThat(filter.isDuplicate(message("UPM", 1, 0, "Tellstick"), 1000), is(false));
+        assertThat(filter.isDuplicate(message("UPM", 1, 0, "Tellstick"), 1500), is(false));
+        assertThat(filter.isDuplicate(message("UPM", 1, 0, "Tellstick"), 1600), is(true));
+    }
+
+    @Test
+    public void onlyInboundMessagesAreFiltered() throws Exception {
+        Event command = message("NexaL", 1, 0, "");
+        command.setAttribute("Direction", "Out");
+        assertThat(filter.isDuplicate(command, 1000), is(false));
+        assertThat(filter.isDuplicate(command, 1000), is(false));
+        Event other = new InternalEvent("MinuteEvent", "");
+        assertThat(filter.isDuplicate(other, 1000), is(false));
+        assertThat(filter.isDuplicate(other, 1000), is(false));
+    }
+
+    @Test
+    public void zeroWindowDisablesFilter() throws Exception {
+        filter.setWindow(0);
+        assertThat(filter.isDuplicate(message("NexaL", 1, 0, ""), 1000), is(false));
+        assertThat(filter.isDuplicate(message("NexaL", 1, 0, ""), 1000), is(false));
+    }
+
+    @Test
+    public void ignoredAttributesAreConfigurable() throws Exception {
+        filter.setIgnoredAttributes("Sender");
+        assertThat(filter.getIgnoredAttributes(), is("Sender"));
+        assertThat(filter.isDuplicate(message("NexaL", 1, 0, ""), 1000), is(false));
+        assertThat(filter.isDuplicate(message("NexaL", 1, 1, ""), 1000), is(false));
+    }
+}
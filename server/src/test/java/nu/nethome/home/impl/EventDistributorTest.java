@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.HomeItemAdapter;
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.FinalEventListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class EventDistributorTest {
+
+    class RecordingItem extends HomeItemAdapter {
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        volatile boolean handles = false;
+        volatile CountDownLatch blocker = null;
+
+        RecordingItem(long id) {
+            setItemId(id);
+            setName("Item" + id);
+        }
+
+        @Override
+        public boolean receiveEvent(Event event) {
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+            received.add(event.getAttribute(Event.EVENT_VALUE_ATTRIBUTE));
+            return handles;
+        }
+
+        @Override
+        public String getModel() {
+            return null;
+        }
+    }
+
+    class RecordingListener implements FinalEventListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final List<Boolean> handled = Collections.synchronizedList(new ArrayList<Boolean>());
+        final CountDownLatch done;
+
+        RecordingListener(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void receiveFinalEvent(Event event, boolean isHandled) {
+            events.add(event.getAttribute(Event.EVENT_VALUE_ATTRIBUTE));
+            handled.add(isHandled);
+            done.countDown();
+        }
+    }
+
+    EventDistributor distributor;
+    List<FinalEventListener> listeners;
+    EventDistributionStatistics statistics;
+
+    @Before
+    public void setUp() throws Exception {
+        listeners = new LinkedList<FinalEventListener>();
+        statistics = new EventDistributionStatistics();
+        distributor = new EventDistributor(4, statistics, listeners);
+        distributor.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        distributor.stop();
+    }
+
+    @Test
+    public void deliversEventsToEachItemInOrder() throws Exception {
+        List<HomeItem> items = new ArrayList<HomeItem>();
+        for (long id = 1; id <= 10; id++) {
+            items.add(new RecordingItem(id));
+        }
+        RecordingListener listener = new RecordingListener(50);
+        listeners.add(listener);
+
+        for (int i = 0; i < 50; i++) {
+            distributor.distribute(new InternalEvent("Test", Integer.toString(i)), items);
+        }
+
+        assertThat(listener.done.await(5, TimeUnit.SECONDS), is(true));
+        for (HomeItem item : items) {
+            List<String> received = ((RecordingItem) item).received;
+            assertThat(received.size(), is(50));
+            for (int i = 0; i < 50; i++) {
+                assertThat(received.get(i), is(Integer.toString(i)));
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            assertThat(listener.events.get(i), is(Integer.toString(i)));
+        }
+        assertThat(statistics.getNumberOfItems(), is(500L));
+    }
+
+    @Test
+    public void combinesHandledResultFromAllLanes() throws Exception {
+        RecordingItem handler = new RecordingItem(2);
+        handler.handles = true;
+        List<HomeItem> items = Arrays.<HomeItem>asList(new RecordingItem(1), handler, new RecordingItem(3));
+        RecordingListener listener = new RecordingListener(3);
+        listeners.add(listener);
+
+        distributor.distribute(new InternalEvent("Test", "1"), items);
+        distributor.distribute(new InternalEvent("Test", "2"), Collections.<HomeItem>singletonList(items.get(0)));
+        distributor.distribute(new InternalEvent("Test", "3"), Collections.<HomeItem>emptyList());
+
+        assertThat(listener.done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(listener.handled, is(Arrays.asList(true, false, false)));
+    }
+
+    @Test
+    public void slowItemDoesNotBlockItemsOnOtherLanes() throws Exception {
+        RecordingItem slow = new RecordingItem(1);
+        RecordingItem fast = new RecordingItem(2);
+        slow.blocker = new CountDownLatch(1);
+        assertThat(distributor.laneIndexOf(slow) != distributor.laneIndexOf(fast), is(true));
+
+        distributor.distribute(new InternalEvent("Test", "1"), Arrays.<HomeItem>asList(slow, fast));
+        distributor.distribute(new InternalEvent("Test", "2"), Arrays.<HomeItem>asList(slow, fast));
+        long end = System.currentTimeMillis() + 5000;
+        while (fast.received.size() < 2 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        assertThat(fast.received.size(), is(2));
+        assertThat(slow.received.size(), is(0));
+        assertThat(distributor.getLongestBusyLane().getCurrentItemName(), is("Item1"));
+        slow.blocker.countDown();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class EventJournalTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File directory;
+    EventJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(folder.getRoot(), "journal");
+        journal = new EventJournal(directory, SEGMENT_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    private Event event(int value) {
+        Event event = new InternalEvent("UPM_Message", "");
+        event.setAttribute("Direction", "In");
+        event.setAttribute("UPM.Temp", value);
+        event.setAttribute("Text", "Temperatur åäö");
+        return event;
+    }
+
+    @Test
+    public void readsBackEventsInOrder() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            journal.append(event(i), 1000 + i);
+        }
+        journal.close();
+        assertThat(EventJournal.listSegments(directory).size() > 1, is(true));
+
+        EventJournal.Reader reader = new EventJournal.Reader(EventJournal.listSegments(directory));
+        for (int i = 0; i < 100; i++) {
+            Event event = reader.next();
+            assertThat(event.toString(), is(event(i).toString()));
+            assertThat(reader.getTimeStamp(), is(1000L + i));
+        }
+        assertThat(reader.next() == null, is(true));
+        assertThat(journal.getWrittenRecords(), is(100L));
+    }
+
+    @Test
+    public void readsBackSegmentsStartedInSameMillisecond() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            journal.append(event(i), 1000);
+        }
+        journal.close();
+        assertThat(EventJournal.listSegments(directory).size() > 10, is(true));
+
+        EventJournal.Reader reader = new EventJournal.Reader(EventJournal.listSegments(directory));
+        for (int i = 0; i < 300; i++) {
+            assertThat(reader.next().getAttributeInt("UPM.Temp"), is(i));
+        }
+    }
+
+    @Test
+    public void ordersSegmentsWithOldNames() throws Exception {
+        assertThat(directory.mkdirs(), is(true));
+        String[] names = {"000000000001000-2.journal", "000000000001000.journal", "000000000001000-10.journal",
+                "000000000000999.journal", "000000000001000-000003.journal"};
+        for (String name : names) {
+            assertThat(new File(directory, name).createNewFile(), is(true));
+        }
+
+        List<File> segments = EventJournal.listSegments(directory);
+
+        assertThat(segments.get(0).getName(), is("000000000000999.journal"));
+        assertThat(segments.get(1).getName(), is("000000000001000.journal"));
+        assertThat(segments.get(2).getName(), is("000000000001000-2.journal"));
+        assertThat(segments.get(3).getName(), is("000000000001000-000003.journal"));
+        assertThat(segments.get(4).getName(), is("000000000001000-10.journal"));
+    }
+
+    @Test
+    public void readsEventsFromSegmentStillBeingWritten() throws Exception {
+        journal.append(event(1), 1000);
+        journal.append(event(2), 1001);
+
+        EventJournal.Reader reader = new EventJournal.Reader(EventJournal.listSegments(directory));
+        assertThat(reader.next().getAttributeInt("UPM.Temp"), is(1));
+        assertThat(reader.next().getAttributeInt("UPM.Temp"), is(2));
+        assertThat(reader.next() == null, is(true));
+    }
+
+    @Test
+    public void oldSegmentsAreDeletedWhenJournalIsTooLarge() throws Exception {
+        journal.setMaxTotalSize(3 * SEGMENT_SIZE);
+        for (int i = 0; i < 200; i++) {
+            journal.append(event(i), 1000 + i);
+        }
+        assertThat(EventJournal.listSegments(directory).size(), is(3));
+    }
+
+    @Test
+    public void pinnedSegmentsAreKeptUntilUnpinned() throws Exception {
+        journal.setMaxTotalSize(3 * SEGMENT_SIZE);
+        for (int i = 0; i < 100; i++) {
+            journal.append(event(i), 1000 + i);
+        }
+        List<File> pinned = EventJournal.listSegments(directory);
+        journal.pin(pinned);
+        for (int i = 100; i < 200; i++) {
+            journal.append(event(i), 1000 + i);
+        }
+        assertThat(EventJournal.listSegments(directory).containsAll(pinned), is(true));
+
+        EventJournal.Reader reader = new EventJournal.Reader(pinned);
+        assertThat(reader.next() != null, is(true));
+        journal.unpin(pinned);
+        journal.append(event(200), 1200);
+        journal.rotate();
+        journal.append(event(201), 1201);
+        assertThat(EventJournal.listSegments(directory).size(), is(3));
+    }
+
+    @Test
+    public void oldSegmentsAreDeletedWhenTooOld() throws Exception {
+        long day = 24L * 60 * 60 * 1000;
+        journal.setMaxAgeDays(2);
+        for (int i = 0; i < 100; i++) {
+            journal.append(event(i), day * i / 10);
+        }
+        assertThat(EventJournal.listSegments(directory).size() < 5, is(true));
+    }
+}
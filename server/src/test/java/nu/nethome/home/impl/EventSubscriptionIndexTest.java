@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.HomeItemAdapter;
+import nu.nethome.home.item.ReceivesEvents;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class EventSubscriptionIndexTest {
+
+    class LegacyItem extends HomeItemAdapter {
+        @Override
+        public String getModel() {
+            return null;
+        }
+    }
+
+    @ReceivesEvents("UPM_Message, Init")
+    class UpmItem extends HomeItemAdapter {
+        @Override
+        public String getModel() {
+            return null;
+        }
+    }
+
+    @ReceivesEvents("NexaL_Message,*")
+    class WildcardItem extends HomeItemAdapter {
+        @Override
+        public String getModel() {
+            return null;
+        }
+    }
+
+    EventSubscriptionIndex index;
+    HomeItem legacy;
+    HomeItem upm;
+    HomeItem wildcard;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new EventSubscriptionIndex();
+        legacy = new LegacyItem();
+        upm = new UpmItem();
+        wildcard = new WildcardItem();
+        index.addItem(upm);
+        index.addItem(legacy);
+        index.addItem(wildcard);
+    }
+
+    @Test
+    public void subscribedTypeReachesSubscriberAndWildcardsInRegistrationOrder() throws Exception {
+        assertThat(index.getReceivers("UPM_Message"), is(Arrays.asList(upm, legacy, wildcard)));
+        assertThat(index.getReceivers("Init"), is(Arrays.asList(upm, legacy, wildcard)));
+    }
+
+    @Test
+    public void otherTypesSkipSubscriber() throws Exception {
+        assertThat(index.getReceivers("MinuteEvent"), is(Arrays.asList(legacy, wildcard)));
+    }
+
+    @Test
+    public void removedItemIsNoLongerReceiver() throws Exception {
+        index.getReceivers("UPM_Message");
+        index.removeItem(upm);
+        assertThat(index.getReceivers("UPM_Message"), is(Arrays.asList(legacy, wildcard)));
+        assertThat(index.getItemCount(), is(2));
+    }
+
+    @Test
+    public void addedItemIsReceiverOfCachedType() throws Exception {
+        index.getReceivers("UPM_Message");
+        HomeItem other = new UpmItem();
+        index.addItem(other);
+        assertThat(index.getReceivers("UPM_Message"), is(Arrays.asList(upm, legacy, wildcard, other)));
+    }
+}
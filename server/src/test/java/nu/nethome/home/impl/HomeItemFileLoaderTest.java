@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.HomeItemAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+
+public class HomeItemFileLoaderTest {
+
+    private HomeItemFileLoader loader;
+    private HomeItemFactory factory;
+    private HomeServer server;
+    private LoadTimes times;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        loader = new HomeItemFileLoader();
+        factory = new MultiHomeItemFactory(new SingleHomeItemFactory(EarlyItem.class), new SingleHomeItemFactory(LateItem.class));
+        server = mock(HomeServer.class);
+        times = new LoadTimes();
+        file = File.createTempFile("items", ".xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void writeFile(String content) throws Exception {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version = \"1.0\" encoding=\"UTF-8\"?>\n<HomeItems>\n" + content + "</HomeItems>\n");
+        out.close();
+    }
+
+    private static String item(String className, long id, String name, String value) {
+        return "<HomeItem Class=\"" + className + "\" >"
+                + "<Attribute Name=\"ID\">" + id + "</Attribute>"
+                + "<Attribute Name=\"Name\">" + name + "</Attribute>"
+                + "<Attribute Name=\"Value\">" + value + "</Attribute>"
+                + "</HomeItem>\n";
+    }
+
+    @Test
+    public void createsItemsAndAppliesAttributeValues() throws Exception {
+        writeFile(item("LateItem", 7, "Lamp", "a &amp; b"));
+
+        List<HomeItem> items = loader.loadItems(file.getPath(), factory, server, times);
+
+        assertThat(items.size(), is(1));
+        LateItem lamp = (LateItem) items.get(0);
+        assertThat(lamp.getItemId(), is(7L));
+        assertThat(lamp.getName(), is("Lamp"));
+        assertThat(lamp.getValue(), is("a & b"));
+    }
+
+    @Test
+    public void sortsItemsOnStartOrderAndName() throws Exception {
+        writeFile(item("LateItem", 1, "B", "") + item("EarlyItem", 2, "Z", "")
+                + item("LateItem", 3, "A", "") + item("EarlyItem", 4, "Y", ""));
+
+        List<HomeItem> items = loader.loadItems(file.getPath(), factory, server, times);
+
+        assertThat(items.size(), is(4));
+        assertThat(items.get(0).getName(), is("Y"));
+        assertThat(items.get(1).getName(), is("Z"));
+        assertThat(items.get(2).getName(), is("A"));
+        assertThat(items.get(3).getName(), is("B"));
+    }
+
+    @Test
+    public void keepsFirstOfItemsWithSameStartOrderAndName() throws Exception {
+        writeFile(item("LateItem", 1, "Same", "first") + item("LateItem", 2, "Same", "second")
+                + item("EarlyItem", 3, "Same", "early"));
+
+        List<HomeItem> items = loader.loadItems(file.getPath(), factory, server, times);
+
+        assertThat(items.size(), is(2));
+        assertThat(((EarlyItem) items.get(0)).getValue(), is("early"));
+        assertThat(((LateItem) items.get(1)).getValue(), is("first"));
+    }
+
+    @Test
+    public void skipsItemsThatCannotBeCreated() throws Exception {
+        writeFile(item("UnknownItem", 1, "Unknown", "") + "<HomeItem><Attribute Name=\"Name\">NoClass</Attribute></HomeItem>\n"
+                + item("LateItem", 2, "Known", ""));
+
+        List<HomeItem> items = loader.loadItems(file.getPath(), factory, server, times);
+
+        assertThat(items.size(), is(1));
+        assertThat(items.get(0).getName(), is("Known"));
+    }
+
+    @Test
+    public void loadsNothingFromMalformedFile() throws Exception {
+        writeFile(item("LateItem", 1, "Lamp", "") + "<HomeItem Class=\"LateItem\">");
+
+        List<HomeItem> items = loader.loadItems(file.getPath(), factory, server, times);
+
+        assertThat(items.size(), is(0));
+    }
+
+    @Test
+    public void loadsManyItemsInParallel() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append(item(i % 2 == 0 ? "EarlyItem" : "LateItem", i + 1, String.format("Item%03d", i), "v" + i));
+        }
+        writeFile(content.toString());
+
+        List<HomeItem> items = loader.loadItems(file.getPath(), factory, server, times);
+
+        assertThat(items.size(), is(200));
+        for (int i = 0; i < 100; i++) {
+            EarlyItem early = (EarlyItem) items.get(i);
+            assertThat(early.getName(), is(String.format("Item%03d", i * 2)));
+            assertThat(early.getValue(), is("v" + i * 2));
+            assertThat(items.get(i + 100).getName(), is(String.format("Item%03d", i * 2 + 1)));
+        }
+    }
+
+    public static class LateItem extends HomeItemAdapter {
+        private String value = "";
+
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"LateItem\" Category=\"Lamps\" >"
+                    + "  <Attribute Name=\"Value\" Type=\"String\" Get=\"getValue\" Init=\"setValue\" />"
+                    + "</HomeItem> ";
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+
+    public static class EarlyItem extends LateItem {
+        @Override
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"EarlyItem\" Category=\"Ports\" StartOrder=\"1\" >"
+                    + "  <Attribute Name=\"Value\" Type=\"String\" Get=\"getValue\" Init=\"setValue\" />"
+                    + "</HomeItem> ";
+        }
+    }
+}
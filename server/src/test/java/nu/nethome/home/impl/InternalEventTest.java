@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class InternalEventTest {
+
+    InternalEvent event;
+
+    @Before
+    public void setUp() throws Exception {
+        event = new InternalEvent("Test_Message", "Value");
+    }
+
+    @Test
+    public void typedValuesAreReadBackAsStrings() throws Exception {
+        event.setAttribute("Int", -17);
+        event.setAttribute("Float", 21.5F);
+        event.setAttribute("Arr", new int[]{0x01, 0xAB, 0x1FF});
+        assertThat(event.getAttribute("Int"), is("-17"));
+        assertThat(event.getAttribute("Float"), is("21.5"));
+        assertThat(event.getAttribute("Arr"), is("01ABFF"));
+        assertThat(event.getAttributeArr("Arr"), is(new int[]{0x01, 0xAB, 0xFF}));
+    }
+
+    @Test
+    public void valuesConvertBetweenTypes() throws Exception {
+        event.setAttribute("Int", "42");
+        event.setAttribute("Float", 1.5F);
+        event.setAttribute("Arr", "0AFF");
+        assertThat(event.getAttributeInt("Int"), is(42));
+        assertThat(event.getAttributeFloat("Int"), is(42.0F));
+        assertThat(event.getAttributeInt("Float"), is(0));
+        assertThat(event.getAttributeArr("Arr"), is(new int[]{0x0A, 0xFF}));
+        event.setAttribute("Int", 7);
+        assertThat(event.getAttributeFloat("Int"), is(7.0F));
+        assertThat(event.getAttributeInt("Missing"), is(0));
+        assertThat(event.getAttribute("Missing"), is(""));
+    }
+
+    @Test
+    public void attributesAreListedInNameOrder() throws Exception {
+        event.setAttribute("Direction", "In");
+        event.setAttribute("Address", 3);
+        event.setAttribute("Address", 4);
+        assertThat(event.getAttributeNames(), is(new String[]{"Address", "Direction", "Type", "Value"}));
+        assertThat(event.toString(), is("event,Test_Message,Address,4,Direction,In,Value,Value"));
+        assertThat(event.hasAttribute("Direction"), is(true));
+        assertThat(event.hasAttribute("Missing"), is(false));
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            event.setAttribute("A" + (char) ('a' + i), i);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertThat(event.getAttributeInt("A" + (char) ('a' + i)), is(i));
+        }
+        assertThat(event.getAttributeNames().length, is(22));
+    }
+}
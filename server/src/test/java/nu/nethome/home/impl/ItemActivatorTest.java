@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.impl.relation.RelationIndexTest.RelationTestItem;
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.system.HomeService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ItemActivatorTest {
+
+    private ItemDirectory directory;
+    private List<String> activated;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new ItemDirectory();
+        activated = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    private ActivationTestItem register(ActivationTestItem item) throws Exception {
+        assertThat(directory.registerInstance(item), is(0));
+        return item;
+    }
+
+    private int activate(int threads, long timeout, HomeItem... items) throws Exception {
+        return new ItemActivator(directory, threads, timeout).activate(Arrays.asList(items), null);
+    }
+
+    @Test
+    public void activatesAllItems() throws Exception {
+        ActivationTestItem first = register(new ActivationTestItem(1, 0));
+        ActivationTestItem second = register(new ActivationTestItem(2, 0));
+        ActivationTestItem third = register(new ActivationTestItem(3, 0));
+
+        ItemActivator activator = new ItemActivator(directory, 2, 1000);
+        assertThat(activator.activate(Arrays.<HomeItem>asList(first, second, third), null), is(3));
+
+        assertThat(activated.size(), is(3));
+        assertThat(activator.getActivationTimes().size(), is(3));
+    }
+
+    @Test
+    public void activatesLowerStartOrderFirst() throws Exception {
+        ActivationTestItem early = register(new EarlyActivationItem(1, 50));
+        ActivationTestItem late = register(new ActivationTestItem(2, 0));
+
+        assertThat(activate(4, 1000, early, late), is(2));
+
+        assertThat(activated, is(Arrays.asList("Item1", "Item2")));
+    }
+
+    @Test
+    public void waitsForItemsPointedTo() throws Exception {
+        ActivationTestItem dependent = register(new ActivationTestItem(1, 0));
+        ActivationTestItem dependency = register(new ActivationTestItem(2, 50));
+        dependent.setTarget("2");
+        directory.updateRelations(dependent);
+
+        assertThat(activate(4, 1000, dependent, dependency), is(2));
+
+        assertThat(activated, is(Arrays.asList("Item2", "Item1")));
+    }
+
+    @Test
+    public void activatesItemsInCircularDependency() throws Exception {
+        ActivationTestItem first = register(new ActivationTestItem(1, 0));
+        ActivationTestItem second = register(new ActivationTestItem(2, 0));
+        first.setTarget("2");
+        second.setTarget("1");
+        directory.updateRelations(first);
+        directory.updateRelations(second);
+
+        assertThat(activate(4, 1000, first, second), is(2));
+    }
+
+    @Test
+    public void continuesAfterActivationTimeout() throws Exception {
+        ActivationTestItem hanging = register(new ActivationTestItem(1, 0));
+        hanging.hang = new CountDownLatch(1);
+        ActivationTestItem dependent = register(new ActivationTestItem(2, 0));
+        dependent.setTarget("1");
+        directory.updateRelations(dependent);
+        ActivationTestItem other = register(new ActivationTestItem(3, 0));
+
+        ItemActivator activator = new ItemActivator(directory, 1, 100);
+        assertThat(activator.activate(Arrays.<HomeItem>asList(hanging, dependent, other), null), is(2));
+        hanging.hang.countDown();
+
+        assertThat(activator.getTimedOutCount(), is(1));
+        assertThat(activated.contains("Item2"), is(true));
+        assertThat(activated.contains("Item3"), is(true));
+    }
+
+    @Test
+    public void skipsDisabledItemsAndItemsWithoutId() throws Exception {
+        ActivationTestItem disabled = register(new ActivationTestItem(1, 0));
+        disabled.setName("#Disabled");
+        ActivationTestItem noId = new ActivationTestItem(0, 0);
+
+        assertThat(activate(2, 1000, disabled, noId), is(0));
+        assertThat(activated.size(), is(0));
+    }
+
+    public class ActivationTestItem extends RelationTestItem {
+        private final long activationTime;
+        private volatile CountDownLatch hang;
+
+        public ActivationTestItem(long id, long activationTime) {
+            super(id);
+            this.activationTime = activationTime;
+        }
+
+        @Override
+        public void activate(HomeService server) {
+            try {
+                if (hang != null) {
+                    hang.await();
+                }
+                Thread.sleep(activationTime);
+            } catch (InterruptedException e) {
+                // Do Dinada
+            }
+            activated.add(getName());
+        }
+    }
+
+    public class EarlyActivationItem extends ActivationTestItem {
+        public EarlyActivationItem(long id, long activationTime) {
+            super(id, activationTime);
+        }
+
+        @Override
+        public String getModel() {
+            return super.getModel().replace("Category=\"Controls\"", "Category=\"Controls\" StartOrder=\"1\"");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.impl.HomeItemFileLoaderTest.LateItem;
+import nu.nethome.home.item.HomeItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+
+public class ItemChangeLogTest {
+
+    private File directory;
+    private File configFile;
+    private HomeItemFileLoader loader;
+    private ItemChangeLog changeLog;
+    private LateItem first;
+    private LateItem second;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("changelog", "");
+        directory.delete();
+        directory.mkdirs();
+        configFile = new File(directory, "system.xml");
+        loader = new HomeItemFileLoader();
+        first = createItem(1, "First", "a");
+        second = createItem(2, "Second", "b");
+        loader.saveItems(Arrays.<HomeItem>asList(first, second), configFile.getPath(), 0);
+        changeLog = new ItemChangeLog(configFile, loader);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        changeLog.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private LateItem createItem(long id, String name, String value) {
+        LateItem item = new LateItem();
+        item.setItemId(id);
+        item.setName(name);
+        item.setValue(value);
+        return item;
+    }
+
+    private List<HomeItem> load() {
+        return loader.loadItems(configFile.getPath(), new SingleHomeItemFactory(LateItem.class), mock(HomeServer.class), new LoadTimes());
+    }
+
+    private String valueOf(List<HomeItem> items, String name) {
+        for (HomeItem item : items) {
+            if (item.getName().equals(name)) {
+                return ((LateItem) item).getValue();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void flushSavesOnlyChangedItems() throws Exception {
+        first.setValue("changed");
+        second.setValue("not marked");
+        changeLog.itemChanged(first);
+
+        assertThat(changeLog.getPendingChangeCount(), is(1));
+        assertThat(changeLog.flush(), is(1));
+        assertThat(changeLog.getPendingChangeCount(), is(0));
+        assertThat(changeLog.flush(), is(0));
+
+        List<HomeItem> items = load();
+        assertThat(items.size(), is(2));
+        assertThat(valueOf(items, "First"), is("changed"));
+        assertThat(valueOf(items, "Second"), is("b"));
+    }
+
+    @Test
+    public void flushSavesInitOnlyAttributesChangedByItem() throws Exception {
+        changeLog.watchItem(first);
+        changeLog.watchItem(second);
+        assertThat(changeLog.flush(), is(0));
+        // The Value attribute has no Set method, so only the item itself changes it
+        first.setValue("changed by item");
+
+        assertThat(changeLog.flush(), is(1));
+        assertThat(changeLog.flush(), is(0));
+        changeLog.close();
+        List<HomeItem> items = load();
+        assertThat(valueOf(items, "First"), is("changed by item"));
+        assertThat(valueOf(items, "Second"), is("b"));
+    }
+
+    @Test
+    public void flushSavesSettableAttributesChangedByItem() throws Exception {
+        SettableItem item = new SettableItem();
+        item.setItemId(3);
+        item.setName("Settable");
+        item.setValue("before");
+        changeLog.itemChanged(item);
+        changeLog.flush();
+        changeLog.watchItem(item);
+        // Changed by the item itself, not via the proxy, so the change is not marked
+        item.setValue("changed by item");
+
+        assertThat(changeLog.flush(), is(1));
+        assertThat(changeLog.flush(), is(0));
+        changeLog.close();
+        List<HomeItem> items = loader.loadItems(configFile.getPath(), new SingleHomeItemFactory(SettableItem.class),
+                mock(HomeServer.class), new LoadTimes());
+        assertThat(valueOf(items, "Settable"), is("changed by item"));
+    }
+
+    @Test
+    public void removedItemIsNotWatched() throws Exception {
+        changeLog.watchItem(first);
+        changeLog.itemRemoved(first);
+        changeLog.flush();
+        first.setValue("changed by item");
+
+        assertThat(changeLog.flush(), is(0));
+        assertThat(valueOf(load(), "First"), is((String) null));
+    }
+
+    @Test
+    public void appliesCreatedAndRemovedItems() throws Exception {
+        changeLog.itemChanged(createItem(3, "Third", "c"));
+        changeLog.itemRemoved(first);
+        changeLog.flush();
+        second.setName("Renamed");
+        changeLog.itemChanged(second);
+        changeLog.flush();
+
+        List<HomeItem> items = load();
+        assertThat(items.size(), is(2));
+        assertThat(valueOf(items, "Renamed"), is("b"));
+        assertThat(valueOf(items, "Third"), is("c"));
+        assertThat(valueOf(items, "First"), is((String) null));
+    }
+
+    @Test
+    public void ignoresIncompleteBatchAtEndOfLog() throws Exception {
+        first.setValue("saved");
+        changeLog.itemChanged(first);
+        changeLog.flush();
+        first.setValue("cut short");
+        changeLog.itemChanged(first);
+        changeLog.flush();
+        changeLog.close();
+        File log = ItemChangeLog.listLogs(configFile, 0).get(0);
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+
+        assertThat(ItemChangeLog.readBatches(log).size(), is(1));
+        assertThat(valueOf(load(), "First"), is("saved"));
+    }
+
+    @Test
+    public void newChangeLogStartsNewGeneration() throws Exception {
+        changeLog.itemChanged(first);
+        changeLog.flush();
+        changeLog.close();
+        changeLog = new ItemChangeLog(configFile, loader);
+        second.setValue("later");
+        changeLog.itemChanged(second);
+        changeLog.flush();
+
+        assertThat(ItemChangeLog.listLogs(configFile, 0).size(), is(2));
+        assertThat(valueOf(load(), "Second"), is("later"));
+    }
+
+    @Test
+    public void compactionReplacesConfigurationAndOldLogs() throws Exception {
+        first.setValue("logged");
+        changeLog.itemChanged(first);
+        changeLog.flush();
+        second.setValue("not marked");
+
+        changeLog.compact(new ArrayList<HomeItem>(Arrays.<HomeItem>asList(first, second)));
+
+        assertThat(ItemChangeLog.listLogs(configFile, 0).size(), is(0));
+        assertThat(new File(configFile.getPath() + ".tmp").exists(), is(false));
+        assertThat(loader.readLogGeneration(configFile.getPath()), is(1L));
+        List<HomeItem> items = load();
+        assertThat(valueOf(items, "First"), is("logged"));
+        assertThat(valueOf(items, "Second"), is("not marked"));
+    }
+
+    @Test
+    public void changesAfterCompactionAreKept() throws Exception {
+        changeLog.compact(Arrays.<HomeItem>asList(first, second));
+        first.setValue("after");
+        changeLog.itemChanged(first);
+        changeLog.flush();
+
+        assertThat(ItemChangeLog.listLogs(configFile, 1).size(), is(1));
+        assertThat(valueOf(load(), "First"), is("after"));
+    }
+
+    @Test
+    public void logsIncludedInConfigurationAreNotApplied() throws Exception {
+        first.setValue("old");
+        changeLog.itemChanged(first);
+        changeLog.flush();
+        File oldLog = ItemChangeLog.listLogs(configFile, 0).get(0);
+        byte[] oldContent = readFile(oldLog);
+        first.setValue("new");
+        changeLog.compact(Arrays.<HomeItem>asList(first, second));
+        // As if the server stopped before the old log was deleted
+        writeFile(oldLog, oldContent);
+
+        assertThat(valueOf(load(), "First"), is("new"));
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        byte[] result = new byte[(int) in.length()];
+        in.readFully(result);
+        in.close();
+        return result;
+    }
+
+    private static void writeFile(File file, byte[] content) throws Exception {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.write(content);
+        out.close();
+    }
+
+    public static class SettableItem extends LateItem {
+        @Override
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"SettableItem\" Category=\"Lamps\" >"
+                    + "  <Attribute Name=\"Value\" Type=\"String\" Get=\"getValue\" Set=\"setValue\" />"
+                    + "</HomeItem> ";
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.impl.relation.RelationIndexTest;
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.MorphingItem;
+import nu.nethome.home.system.DirectoryEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ItemDirectoryTest {
+
+    ItemDirectory directory;
+    HomeItem first;
+    HomeItem second;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new ItemDirectory();
+        first = createItem("First", 10);
+        second = createItem("Second", 11);
+    }
+
+    private HomeItem createItem(String name, long id) {
+        HomeItem item = new MockHomeItem();
+        item.setName(name);
+        item.setItemId(id);
+        return item;
+    }
+
+    @Test
+    public void canFindRegisteredItemByNameAndId() {
+        assertThat(directory.registerInstance(first), is(0));
+        assertThat(directory.findInstance("First"), is(first));
+        assertThat(directory.findInstance("10"), is(first));
+        assertThat(directory.getItemCount(), is(1));
+    }
+
+    @Test
+    public void returnsNullForUnknownNameOrId() {
+        directory.registerInstance(first);
+        assertThat(directory.findInstance("Foo"), is(nullValue()));
+        assertThat(directory.findInstance("12"), is(nullValue()));
+        assertThat(directory.findInstance("99999999999999999999"), is(nullValue()));
+        assertThat(directory.findInstance(""), is(nullValue()));
+        assertThat(directory.findInstance("-"), is(nullValue()));
+    }
+
+    @Test
+    public void parsesOnlyNumbersAsIds() {
+        assertThat(ItemDirectory.parseItemId("4711"), is(4711L));
+        assertThat(ItemDirectory.parseItemId("-4711"), is(-4711L));
+        assertThat(ItemDirectory.parseItemId("9223372036854775807"), is(Long.MAX_VALUE));
+        assertThat(ItemDirectory.parseItemId("9223372036854775808"), is(nullValue()));
+        assertThat(ItemDirectory.parseItemId("47a11"), is(nullValue()));
+    }
+
+    @Test
+    public void rejectsDuplicateNamesAndIds() {
+        directory.registerInstance(first);
+        assertThat(directory.registerInstance(createItem("First", 12)), is(2));
+        assertThat(directory.registerInstance(createItem("Other", 10)), is(3));
+        assertThat(directory.registerInstance(createItem("Other", 0)), is(3));
+        assertThat(directory.getItemCount(), is(1));
+    }
+
+    @Test
+    public void canRegisterSeveralItemsAtOnce() {
+        directory.registerInstance(first);
+        int[] results = directory.registerInstances(Arrays.asList(second, createItem("First", 12)));
+        assertThat(results.length, is(2));
+        assertThat(results[0], is(0));
+        assertThat(results[1], is(2));
+        assertThat(directory.findInstance("Second"), is(second));
+        assertThat(directory.getItemCount(), is(2));
+    }
+
+    @Test
+    public void listsItemsInRegistrationOrder() {
+        directory.registerInstance(second);
+        directory.registerInstance(first);
+        List<DirectoryEntry> entries = directory.listInstances("");
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(0).getInstanceName(), is("Second"));
+        assertThat(entries.get(1).getInstanceName(), is("First"));
+        assertThat(entries.get(1).getInstanceId(), is(10L));
+        assertThat(entries.get(1).getCategory(), is("Lamps"));
+    }
+
+    @Test
+    public void canRenameItem() {
+        directory.registerInstance(first);
+        directory.registerInstance(second);
+        assertThat(directory.renameInstance("10", "Third"), is(true));
+        assertThat(directory.renameInstance("Third", "Second"), is(false));
+        assertThat(first.getName(), is("Third"));
+        assertThat(directory.findInstance("Third"), is(first));
+        assertThat(directory.findInstance("First"), is(nullValue()));
+    }
+
+    @Test
+    public void canRemoveItemById() {
+        directory.registerInstance(first);
+        directory.registerInstance(second);
+        assertThat(directory.removeInstance("10"), is(first));
+        assertThat(directory.findInstance("First"), is(nullValue()));
+        assertThat(directory.findInstance("10"), is(nullValue()));
+        assertThat(directory.listInstances("").size(), is(1));
+        assertThat(directory.removeInstance("10"), is(nullValue()));
+    }
+
+    @Test
+    public void iteratorIsNotAffectedByLaterChanges() {
+        directory.registerInstance(first);
+        Iterator<HomeItem> iterator = directory.iterator();
+        directory.registerInstance(second);
+        directory.removeInstance("First");
+        assertThat(iterator.next(), is(first));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void listsRelatedItemsAndDependenciesAfterChangeThroughProxy() throws Exception {
+        RelationIndexTest.RelationTestItem referring = new RelationIndexTest.RelationTestItem(20);
+        referring.target = "10";
+        directory.registerInstance(first);
+        directory.registerInstance(second);
+        directory.registerInstance(referring);
+        assertThat(directory.listInstances(ItemDirectory.RELATED_SEARCH_KEYWORD + "10").get(0).getInstanceName(), is("Item20"));
+        assertThat(directory.listInstances(ItemDirectory.DEPENDENCIES_SEARCH_KEYWORD + "Item20").get(0).getInstanceName(), is("First"));
+
+        new LocalHomeItemProxy(referring, null, directory, null).setAttributeValue("Target", "11");
+
+        assertThat(directory.listInstances(ItemDirectory.RELATED_SEARCH_KEYWORD + "10").size(), is(0));
+        assertThat(directory.listInstances(ItemDirectory.RELATED_SEARCH_KEYWORD + "11").get(0).getInstanceName(), is("Item20"));
+        assertThat(directory.listInstances(ItemDirectory.DEPENDENCIES_SEARCH_KEYWORD + "20").get(0).getInstanceName(), is("Second"));
+    }
+
+    private String names(List<DirectoryEntry> entries) {
+        StringBuilder result = new StringBuilder();
+        for (DirectoryEntry entry : entries) {
+            result.append(result.length() > 0 ? "," : "").append(entry.getInstanceName());
+        }
+        return result.toString();
+    }
+
+    private void registerMixedItems() {
+        MockSafeHomeItem safe = new MockSafeHomeItem();
+        safe.setName("Safe");
+        safe.setItemId(12);
+        directory.registerInstance(first);
+        directory.registerInstance(safe);
+        directory.registerInstance(new RelationIndexTest.RelationTestItem(20));
+        directory.registerInstance(second);
+    }
+
+    @Test
+    public void canListByClassCategoryAttributeAndAction() {
+        registerMixedItems();
+        assertThat(names(directory.listInstances("@class=MockHomeItem")), is("First,Second"));
+        assertThat(names(directory.listInstances("@class=MockSafeHomeItem")), is("Safe"));
+        assertThat(names(directory.listInstances("@category=Controls")), is("Item20"));
+        assertThat(names(directory.listInstances("@hasAttribute=AttNoGet")), is("First,Second"));
+        assertThat(names(directory.listInstances("@hasAttribute=Target")), is("Item20"));
+        assertThat(names(directory.listInstances("@hasAction=Extra")), is("Safe"));
+        assertThat(names(directory.listInstances("@hasAction")), is("First,Safe,Second"));
+        assertThat(names(directory.listInstances("@class=Foo")), is(""));
+    }
+
+    @Test
+    public void canListByNamePattern() {
+        registerMixedItems();
+        assertThat(names(directory.listInstances("@name~^S")), is("Safe,Second"));
+        assertThat(names(directory.listInstances("@name~[0-9]+")), is("Item20"));
+    }
+
+    @Test
+    public void canCombineTermsWithLimitAndOffset() {
+        registerMixedItems();
+        assertThat(names(directory.listInstances("@category=Lamps & @name~^S")), is("Safe,Second"));
+        assertThat(names(directory.listInstances("@category=Lamps&@hasAction=Extra")), is("Safe"));
+        assertThat(names(directory.listInstances("@category=Lamps&@limit=2")), is("First,Safe"));
+        assertThat(names(directory.listInstances("@category=Lamps&@offset=1&@limit=1")), is("Safe"));
+        assertThat(names(directory.listInstances("@offset=3")), is("Second"));
+    }
+
+    @Test
+    public void listsNothingForBadPattern() {
+        registerMixedItems();
+        assertThat(directory.listInstances("Foo").size(), is(0));
+        assertThat(directory.listInstances("@class=").size(), is(0));
+        assertThat(directory.listInstances("@name~[").size(), is(0));
+        assertThat(directory.listInstances("@limit=x").size(), is(0));
+        assertThat(directory.listInstances("@class=MockHomeItem&@foo=1").size(), is(0));
+    }
+
+    @Test
+    public void removedItemIsNotListedByIndexes() {
+        registerMixedItems();
+        directory.removeInstance("First");
+        assertThat(names(directory.listInstances("@class=MockHomeItem")), is("Second"));
+        assertThat(names(directory.listInstances("@hasAction")), is("Safe,Second"));
+    }
+
+    @Test
+    public void listsActionAddedToMorphingModelAfterRegistration() {
+        CommandItem commander = new CommandItem();
+        commander.setName("Commander");
+        commander.setItemId(30);
+        directory.registerInstance(commander);
+        assertThat(names(directory.listInstances("@hasAction")), is(""));
+
+        commander.commands = "  <Action Name=\"Play\" Method=\"isDefault\" />";
+        commander.modelVersion++;
+        assertThat(names(directory.listInstances("@hasAction")), is("Commander"));
+        assertThat(names(directory.listInstances("@hasAction=Play")), is("Commander"));
+
+        commander.commands = "";
+        commander.modelVersion++;
+        assertThat(names(directory.listInstances("@hasAction=Play")), is(""));
+    }
+
+    @Test
+    public void matchesCategoryIgnoringCase() {
+        registerMixedItems();
+        assertThat(names(directory.listInstances("@category=controls")), is("Item20"));
+        assertThat(names(directory.listInstances("@category=LAMPS&@name~^S")), is("Safe,Second"));
+    }
+
+    @Test
+    public void canClear() {
+        directory.registerInstance(first);
+        directory.clear();
+        assertThat(directory.getItemCount(), is(0));
+        assertThat(directory.findInstance("First"), is(nullValue()));
+        assertThat(directory.registerInstance(first), is(0));
+    }
+
+    public static class CommandItem extends MockSafeHomeItem implements MorphingItem {
+        long modelVersion = 0;
+        String commands = "";
+
+        @Override
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"CommandItem\" Category=\"Controls\" Morphing=\"true\" >"
+                    + commands
+                    + "</HomeItem> ";
+        }
+
+        public long getModelVersion() {
+            return modelVersion;
+        }
+    }
+}
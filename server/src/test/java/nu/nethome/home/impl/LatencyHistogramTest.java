@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.LatencySummary;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyHistogramTest {
+
+    private static final long NANO_PER_MILLI = 1000000;
+
+    LatencyHistogram histogram;
+
+    @Before
+    public void setUp() throws Exception {
+        histogram = new LatencyHistogram("Test");
+    }
+
+    @Test
+    public void bucketsCoverAllValuesInOrder() throws Exception {
+        int previous = 0;
+        for (long micros = 0; micros < 100000; micros++) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertThat(index >= previous, is(true));
+            assertThat(micros <= LatencyHistogram.bucketUpperBound(index), is(true));
+            previous = index;
+        }
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE), is(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void emptyHistogramGivesZero() throws Exception {
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentile(99), is(0.0));
+        assertThat(histogram.getMax(), is(0.0));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() throws Exception {
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * NANO_PER_MILLI / 10);
+        }
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getMax(), is(100.0));
+        assertWithin(histogram.getPercentile(50), 50.0);
+        assertWithin(histogram.getPercentile(90), 90.0);
+        assertWithin(histogram.getPercentile(99), 99.0);
+        assertThat(histogram.getPercentile(100), is(100.0));
+    }
+
+    @Test
+    public void statisticsListsSlowestFirst() throws Exception {
+        EventDistributionStatistics statistics = new EventDistributionStatistics();
+        for (int i = 0; i < 10; i++) {
+            statistics.itemDistributed(1, "Fast", "Temp", NANO_PER_MILLI);
+            statistics.itemDistributed(2, "Slow", "Temp", 50 * NANO_PER_MILLI);
+            statistics.itemDistributed(1, "Fast", "Command", 2 * NANO_PER_MILLI);
+        }
+        List<LatencySummary> items = statistics.getItemLatencies();
+        assertThat(items.size(), is(2));
+        assertThat(items.get(0).getName(), is("Slow"));
+        assertThat(items.get(1).getCount(), is(20L));
+        assertThat(statistics.getEventTypeLatencies().get(0).getName(), is("Temp"));
+        assertThat(statistics.getMaxItemName(), is("Slow"));
+
+        statistics.resetStatistics();
+        assertThat(statistics.getItemLatencies().size(), is(0));
+    }
+
+    @Test
+    public void removedItemLeavesNoLatenciesForNewItemWithSameName() throws Exception {
+        EventDistributionStatistics statistics = new EventDistributionStatistics();
+        statistics.itemDistributed(1, "Lamp", "Temp", 50 * NANO_PER_MILLI);
+        statistics.itemRemoved(1);
+        assertThat(statistics.getItemLatencies().size(), is(0));
+
+        statistics.itemDistributed(2, "Lamp", "Temp", NANO_PER_MILLI);
+        List<LatencySummary> items = statistics.getItemLatencies();
+        assertThat(items.size(), is(1));
+        assertThat(items.get(0).getCount(), is(1L));
+    }
+
+    private void assertWithin(double value, double expected) {
+        assertThat(value >= expected && value <= expected * 1.25, is(true));
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.RollupVisitor;
+import nu.nethome.home.system.SampleVisitor;
+import nu.nethome.home.system.TimeSeriesStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class MappedTimeSeriesStoreTest {
+
+    private static final int SEGMENT_RECORDS = 4;
+    private static final long START = 1400000000000L;
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final String TIME_FORMAT = "yyyy.MM.dd HH:mm:ss;";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File directory;
+    MappedTimeSeriesStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(folder.getRoot(), "timeseries");
+        store = new MappedTimeSeriesStore(directory, SEGMENT_RECORDS, UTC);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    private List<String> read(String series, long from, long to) {
+        final List<String> result = new ArrayList<String>();
+        store.read(series, from, to, new SampleVisitor() {
+            public void sample(long time, double value) {
+                result.add((time - START) / MINUTE + "=" + value);
+            }
+        });
+        return result;
+    }
+
+    private List<String> readRollups(TimeSeriesStore store, String series, long from, long to, String resolution,
+                                     final long base, final long length) {
+        final List<String> result = new ArrayList<String>();
+        store.readRollups(series, from, to, resolution, new RollupVisitor() {
+            public void rollup(long time, double min, double max, double mean, long count) {
+                result.add((time - base) / length + "=" + min + "/" + max + "/" + mean + "/" + count);
+            }
+        });
+        return result;
+    }
+
+    private List<String> readHours(long from, long to) {
+        return readRollups(store, "temp.log", from, to, TimeSeriesStore.HOUR, START - START % HOUR, HOUR);
+    }
+
+    /**
+     * Append samples every 20 minutes from START, which is 16:53:20 UTC, with the values 0, 1, 2...
+     */
+    private void appendTwentyMinutes(int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(store.append("temp.log", START + i * 20 * MINUTE, i), is(true));
+        }
+    }
+
+    private void appendMinutes(String series, int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(store.append(series, START + i * MINUTE + 123, i * 1.5), is(true));
+        }
+    }
+
+    @Test
+    public void readsAppendedSamples() throws Exception {
+        appendMinutes("temp.log", 3);
+
+        assertThat(store.hasSeries("temp.log"), is(true));
+        assertThat(store.getSampleCount("temp.log"), is(3L));
+        assertThat(store.getLastSampleTime("temp.log"), is(START + 2 * MINUTE));
+        assertThat(store.getLastSampleTime("other.log"), is(0L));
+        assertThat(read("temp.log", START, START + 10 * MINUTE), is(Arrays.asList("0=0.0", "1=1.5", "2=3.0")));
+    }
+
+    @Test
+    public void readsTimeWindowAcrossSegments() throws Exception {
+        appendMinutes("temp.log", 10);
+
+        assertThat(MappedTimeSeriesStore.listSegments(new File(directory, "temp%2Elog")).size(), is(3));
+        assertThat(read("temp.log", START + 3 * MINUTE, START + 8 * MINUTE),
+                is(Arrays.asList("3=4.5", "4=6.0", "5=7.5", "6=9.0", "7=10.5")));
+        assertThat(read("temp.log", START + 30 * MINUTE, START + 40 * MINUTE).size(), is(0));
+    }
+
+    @Test
+    public void readsSegmentsStartedInSameSecond() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            assertThat(store.append("temp.log", START, i), is(true));
+        }
+        store.close();
+        store = new MappedTimeSeriesStore(directory, SEGMENT_RECORDS, UTC);
+
+        final List<Double> values = new ArrayList<Double>();
+        store.read("temp.log", START, START + MINUTE, new SampleVisitor() {
+            public void sample(long time, double value) {
+                values.add(value);
+            }
+        });
+        assertThat(values.size(), is(50));
+        for (int i = 0; i < 50; i++) {
+            assertThat(values.get(i), is((double) i));
+        }
+    }
+
+    @Test
+    public void skipsSamplesOlderThanLastSample() throws Exception {
+        appendMinutes("temp.log", 2);
+
+        assertThat(store.append("temp.log", START, 7.0), is(false));
+        assertThat(store.getSampleCount("temp.log"), is(2L));
+    }
+
+    @Test
+    public void unknownSeriesIsEmpty() throws Exception {
+        assertThat(store.hasSeries("missing.log"), is(false));
+        assertThat(read("missing.log", 0, Long.MAX_VALUE).size(), is(0));
+        assertThat(store.getSeriesNames().size(), is(0));
+    }
+
+    @Test
+    public void continuesStoredSeriesAfterReopen() throws Exception {
+        appendMinutes("temp.log", 6);
+        store.close();
+
+        store = new MappedTimeSeriesStore(directory, SEGMENT_RECORDS, UTC);
+
+        assertThat(store.getSampleCount("temp.log"), is(6L));
+        assertThat(store.append("temp.log", START + 2 * MINUTE, 1.0), is(false));
+        assertThat(store.append("temp.log", START + 6 * MINUTE, 9.0), is(true));
+        assertThat(read("temp.log", START + 5 * MINUTE, START + 10 * MINUTE), is(Arrays.asList("5=7.5", "6=9.0")));
+    }
+
+    @Test
+    public void keepsSeriesNamesWithPathCharacters() throws Exception {
+        store.append("logs/temp 1.log", START, 1.0);
+        store.append("..", START, 2.0);
+
+        assertThat(store.getSeriesNames(), is(Arrays.asList("..", "logs/temp 1.log")));
+        assertThat(new File(directory, "%2E%2E").isDirectory(), is(true));
+    }
+
+    @Test
+    public void importsAndExportsTextLogs() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT);
+        File logFile = folder.newFile("temp.log");
+        FileWriter writer = new FileWriter(logFile);
+        writer.write(format.format(START) + "21,5\n");
+        writer.write("garbage\n");
+        writer.write(format.format(START + MINUTE) + "bad\n");
+        writer.write(format.format(START + 2 * MINUTE) + "-3.25\n");
+        writer.write(format.format(START + 3 * MINUTE) + "21\n");
+        writer.write(format.format(START - MINUTE) + "5.0\n");
+        writer.close();
+
+        assertThat(store.importText("temp.log", logFile, TIME_FORMAT), is(3L));
+
+        StringWriter out = new StringWriter();
+        store.exportText("temp.log", 0, Long.MAX_VALUE, TIME_FORMAT, out);
+        String separator = System.getProperty("line.separator");
+        assertThat(out.toString(), is(format.format(START) + "21.5" + separator +
+                format.format(START + 2 * MINUTE) + "-3.25" + separator +
+                format.format(START + 3 * MINUTE) + "21" + separator));
+    }
+
+    @Test
+    public void formatsValuesAsLogged() throws Exception {
+        assertThat(MappedTimeSeriesStore.formatValue(21.0), is("21"));
+        assertThat(MappedTimeSeriesStore.formatValue(21.5), is("21.5"));
+        assertThat(MappedTimeSeriesStore.formatValue(-0.0001), is("-0.0001"));
+        assertThat(MappedTimeSeriesStore.formatValue(1200.0), is("1200"));
+        assertThat(MappedTimeSeriesStore.formatValue(0.0), is("0"));
+    }
+
+    @Test
+    public void rollsUpSamplesPerHour() throws Exception {
+        appendTwentyMinutes(6);
+
+        assertThat(readHours(0, Long.MAX_VALUE),
+                is(Arrays.asList("0=0.0/0.0/0.0/1", "1=1.0/3.0/2.0/3", "2=4.0/5.0/4.5/2")));
+        assertThat(readHours(START + 40 * MINUTE, START + 60 * MINUTE),
+                is(Arrays.asList("1=1.0/3.0/2.0/3")));
+    }
+
+    @Test
+    public void recreatesPeriodInProgressAfterReopen() throws Exception {
+        appendTwentyMinutes(6);
+        store.close();
+
+        store = new MappedTimeSeriesStore(directory, SEGMENT_RECORDS, UTC);
+        assertThat(store.append("temp.log", START + 130 * MINUTE, 6), is(true));
+
+        assertThat(readHours(0, Long.MAX_VALUE),
+                is(Arrays.asList("0=0.0/0.0/0.0/1", "1=1.0/3.0/2.0/3", "2=4.0/5.0/4.5/2", "3=6.0/6.0/6.0/1")));
+    }
+
+    @Test
+    public void buildsRollupsOfSeriesStoredWithoutThem() throws Exception {
+        appendTwentyMinutes(6);
+        store.close();
+        File hourDirectory = new File(new File(directory, "temp%2Elog"), TimeSeriesStore.HOUR);
+        for (File segment : MappedTimeSeriesStore.listSegments(hourDirectory)) {
+            assertThat(segment.delete(), is(true));
+        }
+
+        store = new MappedTimeSeriesStore(directory, SEGMENT_RECORDS, UTC);
+
+        assertThat(readHours(0, Long.MAX_VALUE),
+                is(Arrays.asList("0=0.0/0.0/0.0/1", "1=1.0/3.0/2.0/3", "2=4.0/5.0/4.5/2")));
+        assertThat(store.getSeriesNames(), is(Arrays.asList("temp.log")));
+    }
+
+    @Test
+    public void rollsUpDaysFromLocalMidnight() throws Exception {
+        TimeZone zone = TimeZone.getTimeZone("Europe/Stockholm");
+        MappedTimeSeriesStore localStore = new MappedTimeSeriesStore(new File(folder.getRoot(), "local"), SEGMENT_RECORDS, zone);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        format.setTimeZone(zone);
+        long midnight = format.parse("2014-05-13 00:00").getTime();
+        localStore.append("temp.log", format.parse("2014-05-13 23:30").getTime(), 1.0);
+        localStore.append("temp.log", format.parse("2014-05-14 00:30").getTime(), 2.0);
+
+        assertThat(readRollups(localStore, "temp.log", midnight, midnight + 2 * DAY, TimeSeriesStore.DAY, midnight, DAY),
+                is(Arrays.asList("0=1.0/1.0/1.0/1", "1=2.0/2.0/2.0/1")));
+        localStore.close();
+    }
+
+    @Test
+    public void rollsUpDaysAcrossDaylightSavingTimeChanges() throws Exception {
+        TimeZone zone = TimeZone.getTimeZone("Europe/Stockholm");
+        MappedTimeSeriesStore localStore = new MappedTimeSeriesStore(new File(folder.getRoot(), "local"), SEGMENT_RECORDS, zone);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        format.setTimeZone(zone);
+        // 2014-03-30 is 23 hours long and 2014-10-26 is 25 hours long in Stockholm
+        long springForward = format.parse("2014-03-30 00:00").getTime();
+        long springNext = format.parse("2014-03-31 00:00").getTime();
+        long fallBack = format.parse("2014-10-26 00:00").getTime();
+        long fallNext = format.parse("2014-10-27 00:00").getTime();
+        for (long time = springForward; time < springNext + 2 * HOUR; time += HOUR) {
+            localStore.append("spring.log", time, time < springNext ? 1.0 : 2.0);
+        }
+        for (long time = fallBack; time < fallNext + 2 * HOUR; time += HOUR) {
+            localStore.append("fall.log", time, time < fallNext ? 1.0 : 2.0);
+        }
+
+        assertThat(readRollups(localStore, "spring.log", springForward, springNext + DAY, TimeSeriesStore.DAY,
+                springForward, 23 * HOUR), is(Arrays.asList("0=1.0/1.0/1.0/23", "1=2.0/2.0/2.0/2")));
+        assertThat(readRollups(localStore, "fall.log", fallBack, fallNext + DAY, TimeSeriesStore.DAY,
+                fallBack, 25 * HOUR), is(Arrays.asList("0=1.0/1.0/1.0/25", "1=2.0/2.0/2.0/2")));
+        localStore.close();
+
+        // The periods in progress are recreated with the same boundaries
+        localStore = new MappedTimeSeriesStore(new File(folder.getRoot(), "local"), SEGMENT_RECORDS, zone);
+        assertThat(readRollups(localStore, "fall.log", fallBack, fallNext + DAY, TimeSeriesStore.DAY,
+                fallBack, 25 * HOUR), is(Arrays.asList("0=1.0/1.0/1.0/25", "1=2.0/2.0/2.0/2")));
+        localStore.close();
+    }
+
+    @Test
+    public void readsYearAsDays() throws Exception {
+        MappedTimeSeriesStore yearStore = new MappedTimeSeriesStore(new File(folder.getRoot(), "year"),
+                MappedTimeSeriesStore.DEFAULT_SEGMENT_RECORDS, UTC);
+        long start = START - START % DAY;
+        for (long time = start; time < start + 365 * DAY; time += 15 * MINUTE) {
+            yearStore.append("temp.log", time, 20.0);
+        }
+
+        assertThat(yearStore.getSampleCount("temp.log"), is(365L * 96));
+        assertThat(readRollups(yearStore, "temp.log", start, start + 365 * DAY, TimeSeriesStore.DAY, start, DAY).size(),
+                is(365));
+        assertThat(readRollups(yearStore, "temp.log", start, start + 365 * DAY, TimeSeriesStore.DAY, start, DAY).get(364),
+                is("364=20.0/20.0/20.0/96"));
+        yearStore.close();
+    }
+}
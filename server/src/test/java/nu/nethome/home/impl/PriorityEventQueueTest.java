@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.Event;
+import nu.nethome.home.system.HomeService;
+import org.junit.Before;
+import org.junit.Test;
+
+import static nu.nethome.home.impl.PriorityEventQueue.OverflowPolicy;
+import static nu.nethome.home.impl.PriorityEventQueue.Outcome;
+import static nu.nethome.home.impl.PriorityEventQueue.Priority;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class PriorityEventQueueTest {
+
+    PriorityEventQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new PriorityEventQueue(2);
+    }
+
+    private Event message(String direction, String value) {
+        Event event = new InternalEvent("UPM_Message", value);
+        event.setAttribute("Direction", direction);
+        return event;
+    }
+
+    @Test
+    public void classifiesEvents() throws Exception {
+        assertThat(PriorityEventQueue.priorityOf(message("Out", "1")), is(Priority.HIGH));
+        assertThat(PriorityEventQueue.priorityOf(message("In", "1")), is(Priority.LOW));
+        assertThat(PriorityEventQueue.priorityOf(new InternalEvent(HomeService.MINUTE_EVENT_TYPE)), is(Priority.LOW));
+        assertThat(PriorityEventQueue.priorityOf(new InternalEvent("ReportItems")), is(Priority.NORMAL));
+    }
+
+    @Test
+    public void takesHighPriorityFirst() throws Exception {
+        Event sensor = message("In", "1");
+        Event other = new InternalEvent("Foo");
+        Event command = message("Out", "2");
+        queue.put(sensor, true);
+        queue.put(other, true);
+        queue.put(command, true);
+
+        assertThat(queue.take(), is(command));
+        assertThat(queue.take(), is(other));
+        assertThat(queue.take(), is(sensor));
+        assertThat(queue.getEnqueuedCount(), is(3L));
+    }
+
+    @Test
+    public void dropsOldestWhenFull() throws Exception {
+        queue.setOverflowPolicy(Priority.NORMAL, OverflowPolicy.DropOldest);
+        queue.put(new InternalEvent("Foo", "1"), true);
+        queue.put(new InternalEvent("Foo", "2"), true);
+
+        assertThat(queue.put(new InternalEvent("Foo", "3"), true), is(Outcome.DROPPED_OLDEST));
+        assertThat(queue.take().getAttribute("Value"), is("2"));
+        assertThat(queue.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void coalescesIdenticalEventsWhenFull() throws Exception {
+        queue.setOverflowPolicy(Priority.LOW, OverflowPolicy.Coalesce);
+        queue.put(message("In", "1"), true);
+        queue.put(message("In", "2"), true);
+
+        assertThat(queue.put(message("In", "1"), true), is(Outcome.COALESCED));
+        assertThat(queue.put(message("In", "3"), true), is(Outcome.DROPPED_OLDEST));
+        assertThat(queue.size(), is(2));
+        assertThat(queue.getCoalescedCount(), is(1L));
+    }
+
+    @Test
+    public void coalescesOnlyWithEventsStillQueued() throws Exception {
+        queue.put(message("In", "1"), true);
+        queue.put(message("In", "2"), true);
+        queue.take();
+
+        queue.put(message("In", "3"), true);
+        assertThat(queue.put(message("In", "1"), true), is(Outcome.DROPPED_OLDEST));
+        assertThat(queue.put(message("In", "3"), true), is(Outcome.COALESCED));
+    }
+
+    @Test
+    public void coalescesEventsQueuedBeforePolicyChange() throws Exception {
+        queue.put(new InternalEvent("Foo", "1"), true);
+        queue.put(new InternalEvent("Foo", "2"), true);
+        queue.setOverflowPolicy(Priority.NORMAL, OverflowPolicy.Coalesce);
+
+        assertThat(queue.put(new InternalEvent("Foo", "2"), true), is(Outcome.COALESCED));
+        queue.setOverflowPolicy(Priority.NORMAL, OverflowPolicy.DropOldest);
+        assertThat(queue.put(new InternalEvent("Foo", "2"), true), is(Outcome.DROPPED_OLDEST));
+    }
+
+    @Test
+    public void buildsCoalesceKeysOnlyWhenCloseToFull() throws Exception {
+        queue = new PriorityEventQueue(8);
+        final int[] keysBuilt = new int[1];
+        for (int i = 0; i < 6; i++) {
+            Event event = new InternalEvent("UPM_Message", Integer.toString(i)) {
+                @Override
+                public String toString() {
+                    keysBuilt[0]++;
+                    return super.toString();
+                }
+            };
+            event.setAttribute("Direction", "In");
+            queue.put(event, true);
+        }
+        assertThat(keysBuilt[0], is(0));
+
+        // At three quarters of the capacity the keys of the queued Events are built
+        queue.put(message("In", "6"), true);
+        assertThat(keysBuilt[0], is(6));
+        queue.put(message("In", "7"), true);
+        assertThat(queue.put(message("In", "0"), true), is(Outcome.COALESCED));
+
+        // Below half the capacity the keys are dropped, and built again when needed
+        for (int i = 0; i < 5; i++) {
+            queue.take();
+        }
+        assertThat(queue.put(message("In", "7"), true), is(Outcome.QUEUED));
+        for (int i = 0; i < 4; i++) {
+            queue.put(message("In", "x" + i), true);
+        }
+        assertThat(queue.put(message("In", "7"), true), is(Outcome.COALESCED));
+    }
+
+    @Test
+    public void rejectsWithoutWaitingWhenNotAllowedToBlock() throws Exception {
+        queue.setOverflowPolicy(Priority.HIGH, OverflowPolicy.Block);
+        queue.put(message("Out", "1"), true);
+        queue.put(message("Out", "2"), true);
+
+        assertThat(queue.put(message("Out", "3"), false), is(Outcome.REJECTED));
+        assertThat(queue.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void blockedSenderContinuesWhenSpaceIsAvailable() throws Exception {
+        queue.setOverflowPolicy(Priority.HIGH, OverflowPolicy.Block);
+        queue.put(message("Out", "1"), true);
+        queue.put(message("Out", "2"), true);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    queue.take();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        consumer.start();
+
+        assertThat(queue.put(message("Out", "3"), true), is(Outcome.QUEUED));
+        consumer.join();
+    }
+}
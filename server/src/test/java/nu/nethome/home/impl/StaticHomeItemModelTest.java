@@ -20,6 +20,7 @@
 package nu.nethome.home.impl;
 
 import nu.nethome.home.item.Action;
+import nu.nethome.home.item.MorphingItem;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -176,6 +177,81 @@ public class StaticHomeItemModelTest {
         assertThat(model1, not(is(model)));
     }
 
+    @Test
+    public void factoryMethodOnlyRendersModelOfVersionedItemWhenVersionChanges() throws ModelException {
+        VersionedItem versionedItem = new VersionedItem();
+        StaticHomeItemModel model1 = StaticHomeItemModel.getModel(versionedItem);
+        StaticHomeItemModel model2 = StaticHomeItemModel.getModel(versionedItem);
+        assertThat(model1, is(model2));
+        assertThat(versionedItem.modelRenderCount, is(1));
+        versionedItem.modelVersion++;
+        StaticHomeItemModel model3 = StaticHomeItemModel.getModel(versionedItem);
+        assertThat(model3, not(is(model2)));
+        assertThat(versionedItem.modelRenderCount, is(2));
+    }
+
+    @Test
+    public void factoryMethodCachesVersionedModelsPerInstance() throws ModelException {
+        VersionedItem versionedItem1 = new VersionedItem();
+        VersionedItem versionedItem2 = new VersionedItem();
+        versionedItem2.modelAddition = " ";
+        StaticHomeItemModel model1 = StaticHomeItemModel.getModel(versionedItem1);
+        StaticHomeItemModel model2 = StaticHomeItemModel.getModel(versionedItem2);
+        assertThat(model1, not(is(model2)));
+        assertThat(StaticHomeItemModel.getModel(versionedItem1), is(model1));
+        assertThat(StaticHomeItemModel.getModel(versionedItem2), is(model2));
+    }
+
+    @Test
+    public void modelsWithSameDescriptionShareParsedDescription() throws ModelException {
+        String description = target.getModel();
+        ModelDescriptor descriptor = ModelDescriptor.forModel(description);
+        assertThat(ModelDescriptor.forModel(new String(description)), is(descriptor));
+        assertThat(descriptor.getActions().size(), is(3));
+        assertThat(descriptor.getAttributes().size(), is(5));
+    }
+
+    @Test
+    public void canParseValueListWithEntitiesAndComments() throws ModelException {
+        MockSafeHomeItem item = new MockSafeHomeItem() {
+            @Override
+            public String getModel() {
+                return "<?xml version = \"1.0\"?> \n"
+                        + "<!-- Comment -->"
+                        + "<HomeItem Class=\"Commented\" Category=\"Lamps\" StartOrder=\"3\">"
+                        + "  <!-- Comment -->"
+                        + "  <Attribute Name=\"AttList\" Type=\"StringList\" Get=\"getAttList\" Set=\"setAttList\" Default=\"true\">"
+                        + "     <item>Foo &amp; Fie</item> <!-- Comment --> <Item><![CDATA[<Fum>]]></Item> </Attribute>"
+                        + "</HomeItem> ";
+            }
+        };
+        StaticHomeItemModel commentedModel = new StaticHomeItemModel(item);
+        assertThat(commentedModel.getStartOrder(), is(3));
+        assertThat(commentedModel.getDefaultAttribute(), is("AttList"));
+        assertThat(commentedModel.getAttribute("AttList").getValueList().size(), is(2));
+        assertThat(commentedModel.getAttribute("AttList").getValueList(), hasItems("Foo & Fie", "<Fum>"));
+    }
+
+    @Test(expected = ModelException.class)
+    public void canNotParseModelWhichIsNotAHomeItem() throws ModelException {
+        ModelDescriptor.parse("<?xml version = \"1.0\"?><Item Class=\"Foo\"/>");
+    }
+
+    public static class VersionedItem extends MockSafeHomeItem implements MorphingItem {
+        long modelVersion = 0;
+        int modelRenderCount = 0;
+
+        @Override
+        public String getModel() {
+            modelRenderCount++;
+            return super.getModel();
+        }
+
+        public long getModelVersion() {
+            return modelVersion;
+        }
+    }
+
     List<String> getActionNames(List<Action> actions) {
         List<String> result = new ArrayList<String>();
         for(Action action : actions) {
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nu.nethome.home.impl;
+
+import nu.nethome.home.system.ScheduledTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TimingWheelSchedulerTest {
+
+    TimingWheelScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TimingWheelScheduler(2);
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.stop();
+    }
+
+    private Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void runsTaskAfterDelay() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        scheduler.schedule(countDown(done), 50);
+        assertThat(scheduler.getScheduledCount(), is(1));
+
+        assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+        assertThat(System.currentTimeMillis() - start >= 50, is(true));
+        assertThat(scheduler.getScheduledCount(), is(0));
+        assertThat(scheduler.getLateness().getCount(), is(1L));
+    }
+
+    @Test
+    public void runsTaskAtTime() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.schedule(countDown(done), new Date(System.currentTimeMillis() + 20));
+        assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void runsTaskBeyondOneWheelRotation() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long delay = TimingWheelScheduler.TICK_MS * TimingWheelScheduler.WHEEL_SIZE + 100;
+        long start = System.currentTimeMillis();
+        scheduler.schedule(countDown(done), delay);
+        assertThat(done.await(delay + 2000, TimeUnit.MILLISECONDS), is(true));
+        assertThat(System.currentTimeMillis() - start >= delay, is(true));
+    }
+
+    @Test
+    public void cancelledTaskIsNotRun() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        ScheduledTask task = scheduler.schedule(countDown(done), 30);
+        assertThat(task.cancel(), is(true));
+        assertThat(task.cancel(), is(false));
+        assertThat(scheduler.getScheduledCount(), is(0));
+        assertThat(done.await(200, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @Test
+    public void repeatsPeriodicTaskUntilCancelled() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(3);
+        final CountDownLatch counter = done;
+        ScheduledTask task = scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+                counter.countDown();
+            }
+        }, 0, 20);
+        assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+        task.cancel();
+        int runsAfterCancel = runs.get();
+        Thread.sleep(100);
+        assertThat(runs.get(), is(runsAfterCancel));
+        assertThat(scheduler.getScheduledCount(), is(0));
+    }
+
+    @Test
+    public void failingTaskDoesNotStopScheduler() throws Exception {
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("Test");
+            }
+        }, 0);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.schedule(countDown(done), 20);
+        assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void wakesForTaskDueBeforeNextOccupiedSlot() throws Exception {
+        CountDownLatch late = new CountDownLatch(1);
+        scheduler.schedule(countDown(late), 4000);
+        // Let the tick thread go to sleep until the slot of the first task
+        Thread.sleep(50);
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        scheduler.schedule(countDown(done), 30);
+
+        assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(System.currentTimeMillis() - start >= 30, is(true));
+        assertThat(late.getCount(), is(1L));
+    }
+
+    @Test
+    public void blockingItemTaskDoesNotDelayOtherTasks() throws Exception {
+        scheduler.stop();
+        scheduler = new TimingWheelScheduler(2, 2, 100);
+        scheduler.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Do Dinada
+                }
+            }
+        };
+        // More blocking tasks than there are item workers, the stuck workers are replaced
+        for (int i = 0; i < 4; i++) {
+            scheduler.getItemScheduler().schedule(blocking, 0);
+        }
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.getItemScheduler().schedule(countDown(done), 20);
+        scheduler.schedule(countDown(done), 20);
+
+        assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+        release.countDown();
+    }
+
+    @Test
+    public void itemTasksDueTogetherShareBoundedPool() throws Exception {
+        scheduler.stop();
+        scheduler = new TimingWheelScheduler(2, 3, 10000);
+        scheduler.start();
+        int taskCount = 50;
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final CountDownLatch done = new CountDownLatch(taskCount);
+        Date due = new Date(System.currentTimeMillis() + 50);
+        for (int i = 0; i < taskCount; i++) {
+            scheduler.getItemScheduler().schedule(new Runnable() {
+                public void run() {
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        // Do Dinada
+                    }
+                    done.countDown();
+                }
+            }, due);
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(threads.size() <= 3, is(true));
+    }
+}
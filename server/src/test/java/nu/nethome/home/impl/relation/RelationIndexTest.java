@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.impl.relation;
+
+import nu.nethome.home.item.HomeItem;
+import nu.nethome.home.item.HomeItemAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class RelationIndexTest {
+
+    public static class RelationTestItem extends HomeItemAdapter {
+        public String target = "";
+        public String targets = "";
+        public String command = "";
+
+        @Override
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"RelationTestItem\" Category=\"Controls\" >"
+                    + "  <Attribute Name=\"Target\" Type=\"Item\" Get=\"getTarget\" Set=\"setTarget\" />"
+                    + "  <Attribute Name=\"Targets\" Type=\"Items\" Get=\"getTargets\" Set=\"setTargets\" />"
+                    + "  <Attribute Name=\"Command\" Type=\"Command\" Get=\"getCommand\" Set=\"setCommand\" />"
+                    + "  <Attribute Name=\"Name\" Type=\"String\" Get=\"getName\" />"
+                    + "</HomeItem> ";
+        }
+
+        public RelationTestItem(long id) {
+            setItemId(id);
+            setName("Item" + id);
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public void setTarget(String target) {
+            this.target = target;
+        }
+
+        public String getTargets() {
+            return targets;
+        }
+
+        public void setTargets(String targets) {
+            this.targets = targets;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public void setCommand(String command) {
+            this.command = command;
+        }
+    }
+
+    public static class PlainItem extends HomeItemAdapter {
+        @Override
+        public String getModel() {
+            return "<?xml version = \"1.0\"?> \n"
+                    + "<HomeItem Class=\"PlainItem\" Category=\"Lamps\" >"
+                    + "  <Attribute Name=\"Name\" Type=\"String\" Get=\"getName\" />"
+                    + "</HomeItem> ";
+        }
+    }
+
+    RelationIndex index;
+    RelationTestItem first;
+    RelationTestItem second;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new RelationIndex();
+        first = new RelationTestItem(1);
+        second = new RelationTestItem(2);
+    }
+
+    @Test
+    public void findsItemsPointingToItemWithAnyRelationType() throws Exception {
+        first.target = "10";
+        second.targets = "11,10";
+        RelationTestItem third = new RelationTestItem(3);
+        third.command = "call,10,on";
+        index.addItem(first);
+        index.addItem(second);
+        index.addItem(third);
+        assertThat(index.getRelatedTo("10"), is(Arrays.<HomeItem>asList(first, second, third)));
+        assertThat(index.getRelatedTo("11"), is(Arrays.<HomeItem>asList(second)));
+        assertThat(index.getRelatedTo("on").size(), is(0));
+        assertThat(index.getRelatedTo("12").size(), is(0));
+    }
+
+    @Test
+    public void knowsWhatAnItemPointsTo() throws Exception {
+        first.target = "10";
+        first.targets = "11,10,12";
+        index.addItem(first);
+        assertThat(index.getRelationsOf(first).toString(), is("[10, 11, 12]"));
+        assertThat(index.getRelationsOf(second).size(), is(0));
+    }
+
+    @Test
+    public void updatesRelationsOfChangedItem() throws Exception {
+        first.target = "10";
+        second.target = "10";
+        index.addItem(first);
+        index.addItem(second);
+        first.target = "11";
+        index.updateItem(first);
+        assertThat(index.getRelatedTo("10"), is(Collections.<HomeItem>singletonList(second)));
+        assertThat(index.getRelatedTo("11"), is(Collections.<HomeItem>singletonList(first)));
+        first.target = "10";
+        index.updateItem(first);
+        assertThat(index.getRelatedTo("10"), is(Arrays.<HomeItem>asList(first, second)));
+        assertThat(index.getRelatedTo("11").size(), is(0));
+    }
+
+    @Test
+    public void forgetsRemovedItem() throws Exception {
+        first.target = "10";
+        index.addItem(first);
+        index.removeItem(first);
+        assertThat(index.getRelatedTo("10").size(), is(0));
+        assertThat(index.getRelationsOf(first).size(), is(0));
+        index.updateItem(first);
+        assertThat(index.getRelatedTo("10").size(), is(0));
+    }
+
+    @Test
+    public void ignoresItemsWithoutRelationAttributes() throws Exception {
+        PlainItem plain = new PlainItem();
+        index.addItem(plain);
+        assertThat(index.getRelationsOf(plain).size(), is(0));
+        List<HomeItem> related = index.getRelatedTo("");
+        assertThat(related.size(), is(0));
+    }
+}
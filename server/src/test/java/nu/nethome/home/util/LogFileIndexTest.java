@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.util;
+
+import nu.nethome.home.system.SampleVisitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LogFileIndexTest {
+
+    private static final long START = 1400000000000L;
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final TimeZone ZONE = TimeZone.getTimeZone("Europe/Stockholm");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File logFile;
+    SimpleDateFormat format;
+
+    @Before
+    public void setUp() throws Exception {
+        logFile = new File(folder.getRoot(), "temp.log");
+        format = new SimpleDateFormat("yyyy.MM.dd HH:mm:ss;");
+        format.setTimeZone(ZONE);
+    }
+
+    @Test
+    public void parsesTimeLikeSimpleDateFormat() throws Exception {
+        LogFileIndex index = new LogFileIndex(logFile, ZONE);
+        // Every 37 minutes for a year, passing both daylight saving time switches
+        for (long time = 1388534400000L; time < 1420070400000L; time += 37 * MINUTE) {
+            byte[] line = (format.format(time) + "12.5").getBytes("US-ASCII");
+            assertThat(index.parseTime(line, 0, line.length), is(format.parse(format.format(time)).getTime()));
+        }
+    }
+
+    @Test
+    public void rejectsLinesWithoutTime() throws Exception {
+        LogFileIndex index = new LogFileIndex(logFile, ZONE);
+        byte[] line = "Not a time stamp;12.5".getBytes("US-ASCII");
+        assertThat(index.parseTime(line, 0, line.length), is(LogFileIndex.INVALID_TIME));
+        line = "2014.05.13 18:13:20;".getBytes("US-ASCII");
+        assertThat(index.parseTime(line, 0, line.length), is(LogFileIndex.INVALID_TIME));
+    }
+
+    @Test
+    public void readsValuesWithinWindow() throws Exception {
+        writeLines(START, 1000, 15 * MINUTE);
+        LogFileIndex index = new LogFileIndex(logFile, ZONE);
+        List<Double> values = new ArrayList<Double>();
+
+        int count = index.read(START + 100 * 15 * MINUTE, START + 110 * 15 * MINUTE, collect(values));
+
+        assertThat(count, is(10));
+        assertThat(values.get(0), is(100.0));
+        assertThat(values.get(9), is(109.0));
+        assertThat(index.getIndexedHours(), is(251));
+    }
+
+    @Test
+    public void handlesWindowsLineEndsCommasAndBadLines() throws Exception {
+        FileWriter out = new FileWriter(logFile);
+        out.write(format.format(START) + "1,5\r\n");
+        out.write("garbage\r\n");
+        out.write(format.format(START + MINUTE) + "not a number\r\n");
+        out.write(format.format(START + 2 * MINUTE) + "2.5\r\n");
+        out.close();
+        List<Double> values = new ArrayList<Double>();
+
+        new LogFileIndex(logFile, ZONE).read(START, START + HOUR, collect(values));
+
+        assertThat(values.size(), is(2));
+        assertThat(values.get(0), is(1.5));
+        assertThat(values.get(1), is(2.5));
+    }
+
+    @Test
+    public void savesIndexInSidecarFile() throws Exception {
+        writeLines(START, 100, HOUR);
+        LogFileIndex index = new LogFileIndex(logFile, ZONE);
+        index.update();
+        assertThat(index.getIndexFile().exists(), is(true));
+
+        LogFileIndex reloaded = new LogFileIndex(logFile, ZONE);
+        List<Double> values = new ArrayList<Double>();
+        reloaded.read(START + 50 * HOUR, START + 51 * HOUR, collect(values));
+
+        assertThat(reloaded.getIndexedHours(), is(100));
+        assertThat(values.size(), is(1));
+        assertThat(values.get(0), is(50.0));
+    }
+
+    @Test
+    public void indexesAppendedLines() throws Exception {
+        writeLines(START, 10, HOUR);
+        LogFileIndex index = new LogFileIndex(logFile, ZONE);
+        index.update();
+        FileWriter out = new FileWriter(logFile, true);
+        out.write(format.format(START + 10 * HOUR) + "10\n");
+        out.close();
+        List<Double> values = new ArrayList<Double>();
+
+        new LogFileIndex(logFile, ZONE).read(START + 10 * HOUR, START + 11 * HOUR, collect(values));
+        index.read(START + 10 * HOUR, START + 11 * HOUR, collect(values));
+
+        assertThat(values.size(), is(2));
+        assertThat(index.getIndexedHours(), is(11));
+    }
+
+    @Test
+    public void rebuildsIndexWhenLogFileIsReplaced() throws Exception {
+        writeLines(START, 100, HOUR);
+        LogFileIndex index = new LogFileIndex(logFile, ZONE);
+        index.update();
+        writeLines(START + 1000 * HOUR, 5, HOUR);
+        List<Double> values = new ArrayList<Double>();
+
+        new LogFileIndex(logFile, ZONE).read(START, START + 2000 * HOUR, collect(values));
+
+        assertThat(values.size(), is(5));
+    }
+
+    private void writeLines(long start, int count, long interval) throws IOException {
+        FileWriter out = new FileWriter(logFile);
+        for (int i = 0; i < count; i++) {
+            out.write(format.format(start + i * interval) + i + "\n");
+        }
+        out.close();
+    }
+
+    private SampleVisitor collect(final List<Double> values) {
+        return new SampleVisitor() {
+            public void sample(long time, double value) {
+                values.add(value);
+            }
+        };
+    }
+}
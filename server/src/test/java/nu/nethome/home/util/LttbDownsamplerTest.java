@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2013, Stefan Strömberg <stefangs@nethome.nu>
+ *
+ * This file is part of OpenNetHome  (http://www.nethome.nu)
+ *
+ * OpenNetHome is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenNetHome is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nu.nethome.home.util;
+
+import nu.nethome.home.system.SampleVisitor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LttbDownsamplerTest {
+
+    private static final long START = 1400000000000L;
+    private static final long MINUTE = 60 * 1000;
+
+    private List<Long> times;
+    private List<Double> values;
+    private SampleVisitor collector;
+
+    @Before
+    public void setUp() throws Exception {
+        times = new ArrayList<Long>();
+        values = new ArrayList<Double>();
+        collector = new SampleVisitor() {
+            public void sample(long time, double value) {
+                times.add(time);
+                values.add(value);
+            }
+        };
+    }
+
+    private LttbDownsampler downsample(int points, int samples, double[] series) {
+        LttbDownsampler downsampler = new LttbDownsampler(points, START, START + samples * MINUTE, collector);
+        for (int i = 0; i < samples; i++) {
+            downsampler.sample(START + i * MINUTE, series[i]);
+        }
+        downsampler.finish();
+        return downsampler;
+    }
+
+    private double[] sine(int samples) {
+        double[] result = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            result[i] = Math.sin(i / 100.0);
+        }
+        return result;
+    }
+
+    @Test
+    public void keepsAtMostPointsInTimeOrder() throws Exception {
+        LttbDownsampler downsampler = downsample(100, 10000, sine(10000));
+
+        assertThat(times.size(), is(100));
+        assertThat(downsampler.getPointCount(), is(100));
+        for (int i = 1; i < times.size(); i++) {
+            assertThat(times.get(i) > times.get(i - 1), is(true));
+        }
+    }
+
+    @Test
+    public void keepsFirstAndLastSample() throws Exception {
+        downsample(10, 1000, sine(1000));
+
+        assertThat(times.get(0), is(START));
+        assertThat(times.get(times.size() - 1), is(START + 999 * MINUTE));
+    }
+
+    @Test
+    public void keepsSpikes() throws Exception {
+        double[] series = new double[1000];
+        series[317] = 100.0;
+        series[741] = -50.0;
+
+        downsample(20, 1000, series);
+
+        assertThat(values.contains(100.0), is(true));
+        assertThat(values.contains(-50.0), is(true));
+        assertThat(times.contains(START + 317 * MINUTE), is(true));
+    }
+
+    @Test
+    public void keepsFewSamples() throws Exception {
+        downsample(100, 2, new double[]{1.0, 2.0});
+
+        assertThat(values.size(), is(2));
+        assertThat(values.get(1), is(2.0));
+    }
+
+    @Test
+    public void passesOnSamplesWhichFit() throws Exception {
+        double[] series = sine(100);
+        LttbDownsampler downsampler = downsample(100, 100, series);
+
+        assertThat(downsampler.getPointCount(), is(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(times.get(i), is(START + i * MINUTE));
+            assertThat(values.get(i), is(series[i]));
+        }
+    }
+
+    @Test
+    public void keepsSamplesClusteredInTime() throws Exception {
+        // All samples are in the first bucket of the window, but they fit and are kept
+        LttbDownsampler downsampler = new LttbDownsampler(10, START, START + 10000 * MINUTE, collector);
+        for (int i = 0; i < 5; i++) {
+            downsampler.sample(START + i * MINUTE, i);
+        }
+        downsampler.finish();
+
+        assertThat(values.size(), is(5));
+    }
+
+    @Test
+    public void downsamplesWhenOneSampleTooMany() throws Exception {
+        downsample(100, 101, sine(101));
+
+        assertThat(times.size() <= 100, is(true));
+        assertThat(times.get(0), is(START));
+        assertThat(times.get(times.size() - 1), is(START + 100 * MINUTE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooFewPoints() throws Exception {
+        new LttbDownsampler(2, START, START + MINUTE, collector);
+    }
+
+    @Test
+    public void handlesNoSamples() throws Exception {
+        downsample(100, 0, new double[0]);
+
+        assertThat(values.size(), is(0));
+    }
+}